@@ -0,0 +1,130 @@
+package projects.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import projects.dao.ConnectionPool;
+import projects.dao.PoolConfig;
+import projects.dao.ProjectDao;
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * Creates and seeds the database the DAO benchmarks run against. The schema is rebuilt from
+ * projects-schema.sql, which drops every table, so point bench.jdbc.url at a schema that only the
+ * benchmarks use.
+ */
+class BenchmarkDatabase {
+
+	// allowMultiQueries lets -Dprojects.db.allowMultiQueries=true measure ProjectDao's one round
+	// trip loads; without that setting the DAO sends its queries one at a time anyway
+	//@formatter:off
+	private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/projects_bench"
+			+ "?user=projects&password=projects&useSSL=false&createDatabaseIfNotExist=true"
+			+ "&allowMultiQueries=true&rewriteBatchedStatements=true";
+	//@formatter:on
+
+	private static final int CATEGORY_COUNT = 5;
+
+
+	static ConnectionPool openPool() {
+		PoolConfig config = new PoolConfig();
+		config.setMinSize(4);
+		config.setMaxSize(16);
+
+		return new ConnectionPool(System.getProperty("bench.jdbc.url", DEFAULT_URL), null, config);
+	}
+
+	/**
+	 * Rebuilds the schema and inserts projectCount projects, each with 3 materials, 5 steps and 2
+	 * categories.
+	 *
+	 * @return The ids of the inserted projects.
+	 */
+	static int[] recreate(ConnectionPool pool, int projectCount) {
+		runSchemaScript(pool);
+
+		ProjectDao projectDao = new ProjectDao(pool);
+		int[] projectIds = new int[projectCount];
+
+		for(int pos = 0; pos < projectCount; pos++) {
+			projectIds[pos] = projectDao.saveProjectAggregate(newProject(pos)).getProjectId();
+		}
+
+		return projectIds;
+	}
+
+	static Project newProject(int seed) {
+		Project project = new Project();
+		project.setProjectName("Benchmark project " + seed);
+		project.setEstimatedHours(new BigDecimal("10.00").add(BigDecimal.valueOf(seed % 40)));
+		project.setActualHours(new BigDecimal("12.50").add(BigDecimal.valueOf(seed % 30)));
+		project.setDifficulty(seed % 5 + 1);
+		project.setNotes("Notes for benchmark project " + seed + ". ".repeat(20));
+
+		for(int pos = 0; pos < 3; pos++) {
+			Material material = new Material();
+			material.setMaterialName("Material " + pos);
+			material.setNumRequired(pos + 1);
+			material.setCost(new BigDecimal("4.99"));
+			project.getMaterials().add(material);
+		}
+
+		for(int pos = 0; pos < 5; pos++) {
+			Step step = new Step();
+			step.setStepText("Step " + pos + " of project " + seed);
+			project.getSteps().add(step);
+		}
+
+		for(int pos = 0; pos < 2; pos++) {
+			Category category = new Category();
+			category.setCategoryId((seed + pos) % CATEGORY_COUNT + 1);
+			project.getCategories().add(category);
+		}
+
+		return project;
+	}
+
+	private static void runSchemaScript(ConnectionPool pool) {
+		List<String> statements = new ArrayList<>();
+
+		try(InputStream in = BenchmarkDatabase.class.getResourceAsStream("/projects-schema.sql")) {
+			if(in == null) {
+				throw new DbException("projects-schema.sql is not on the classpath");
+			}
+
+			for(String sql : new String(in.readAllBytes(), StandardCharsets.UTF_8).split(";")) {
+				if(!sql.isBlank()) {
+					statements.add(sql);
+				}
+			}
+		}
+		catch(IOException e) {
+			throw new DbException(e);
+		}
+
+		for(int pos = 1; pos <= CATEGORY_COUNT; pos++) {
+			statements.add("INSERT INTO category (category_name) VALUES ('Category " + pos + "')");
+		}
+
+		try(Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+			for(String sql : statements) {
+				stmt.execute(sql);
+			}
+		}
+		catch(SQLException e) {
+			throw new DbException(e);
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package projects.benchmark;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import projects.entity.Project;
+import provided.util.DaoBase;
+
+/**
+ * Measures the DaoBase hot paths without a database: mapping rows with extract() and binding
+ * parameters with setParameter(). The reflective benchmark is the original per-row extract
+ * implementation, kept here as the baseline for the cached mapper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBaseBenchmark {
+
+	private static final int ROWS = 1000;
+
+	//@formatter:off
+	private static final String[] PROJECT_COLUMNS = {
+			"project_id", "project_name", "estimated_hours", "actual_hours", "difficulty", "notes"};
+	//@formatter:on
+
+	@Param({"extract", "reflective"})
+	private String mapper;
+
+	private BenchmarkDao dao = new BenchmarkDao();
+	private InMemoryResultSet rows;
+	private PreparedStatement stmt;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Object[][] data = new Object[ROWS][];
+
+		for(int row = 0; row < ROWS; row++) {
+			//@formatter:off
+			data[row] = new Object[] {row + 1, "Project " + row, new BigDecimal("12.50"),
+					new BigDecimal("14.25"), row % 5 + 1, "Notes for project " + row};
+			//@formatter:on
+		}
+
+		rows = new InMemoryResultSet(PROJECT_COLUMNS, data);
+
+		stmt = (PreparedStatement)Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> null);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void mapProjectRows(Blackhole blackhole) throws SQLException {
+		rows.reset();
+
+		// a new result set per invocation, as every query returns one
+		ResultSet rs = rows.asResultSet();
+
+		while(rs.next()) {
+			if("extract".equals(mapper)) {
+				blackhole.consume(dao.extractRow(rs, Project.class));
+			}
+			else {
+				blackhole.consume(reflectiveExtract(rs, Project.class));
+			}
+		}
+	}
+
+	@Benchmark
+	public void setProjectParameters() throws SQLException {
+		dao.bind(stmt, 1, "Project", String.class);
+		dao.bind(stmt, 2, new BigDecimal("12.50"), BigDecimal.class);
+		dao.bind(stmt, 3, null, BigDecimal.class);
+		dao.bind(stmt, 4, 3, Integer.class);
+		dao.bind(stmt, 5, "Notes", String.class);
+	}
+
+
+	/*
+	 * The per-row reflective extract() that DaoBase used before the mapper cache.
+	 */
+	private static <T> T reflectiveExtract(ResultSet rs, Class<T> classType) {
+		try {
+			Constructor<T> con = classType.getConstructor();
+			T obj = con.newInstance();
+
+			for(Field field : classType.getDeclaredFields()) {
+				StringBuilder colName = new StringBuilder();
+
+				for(char ch : field.getName().toCharArray()) {
+					if(Character.isUpperCase(ch)) {
+						colName.append('_').append(Character.toLowerCase(ch));
+					}
+					else {
+						colName.append(ch);
+					}
+				}
+
+				field.setAccessible(true);
+				Object fieldValue = null;
+
+				try {
+					fieldValue = rs.getObject(colName.toString());
+				}
+				catch(SQLException e) {
+					// not in the result set
+				}
+
+				if(Objects.nonNull(fieldValue)) {
+					field.set(obj, fieldValue);
+				}
+			}
+
+			return obj;
+		}
+		catch(Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * Exposes the protected DaoBase methods to the benchmark.
+	 */
+	static class BenchmarkDao extends DaoBase {
+
+		BenchmarkDao() {
+			super(null);
+		}
+
+		<T> T extractRow(ResultSet rs, Class<T> classType) {
+			return extract(rs, classType);
+		}
+
+		void bind(PreparedStatement stmt, int parameterIndex, Object value, Class<?> classType) throws SQLException {
+			setParameter(stmt, parameterIndex, value, classType);
+		}
+	}
+
+}
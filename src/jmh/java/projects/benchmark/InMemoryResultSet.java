@@ -0,0 +1,81 @@
+package projects.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * A forward-only result set over rows held in memory, so row mapping can be measured without the
+ * network and driver costs of a real query. Only the methods the mappers call are implemented.
+ * Like Connector/J, getMetaData() returns a new metadata object on every call, so a mapper cannot
+ * recognize the result set by its metadata.
+ */
+class InMemoryResultSet {
+
+	private final String[] labels;
+	private final Object[][] rows;
+	private int row = -1;
+
+
+	InMemoryResultSet(String[] labels, Object[][] rows) {
+		this.labels = labels;
+		this.rows = rows;
+	}
+
+
+	ResultSet asResultSet() {
+		return (ResultSet)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ResultSet.class},
+				(proxy, method, args) -> {
+					switch(method.getName()) {
+					case "next":
+						return ++row < rows.length;
+					case "getMetaData":
+						return newMetaData();
+					case "getObject":
+						return rows[row][columnIndex(args[0])];
+					case "getInt":
+						Object value = rows[row][columnIndex(args[0])];
+						return value == null ? 0 : (Integer)value;
+					case "close":
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	void reset() {
+		row = -1;
+	}
+
+	private ResultSetMetaData newMetaData() {
+		return (ResultSetMetaData)Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {ResultSetMetaData.class}, (proxy, method, args) -> {
+					switch(method.getName()) {
+					case "getColumnCount":
+						return labels.length;
+					case "getColumnLabel":
+					case "getColumnName":
+						return labels[(Integer)args[0] - 1];
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private int columnIndex(Object column) throws SQLException {
+		if(column instanceof Integer) {
+			return (Integer)column - 1;
+		}
+
+		for(int col = 0; col < labels.length; col++) {
+			if(labels[col].equalsIgnoreCase((String)column)) {
+				return col;
+			}
+		}
+
+		throw new SQLException("Column '" + column + "' not found.");
+	}
+
+}
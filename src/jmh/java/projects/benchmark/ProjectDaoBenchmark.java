@@ -0,0 +1,84 @@
+package projects.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import projects.dao.ConnectionPool;
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+import projects.entity.ProjectSummary;
+
+/**
+ * Read paths of ProjectDao against a real database seeded with projectCount projects. Sample time
+ * mode reports latency percentiles; run with "-prof gc" to add allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProjectDaoBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	private int projectCount;
+
+	private ConnectionPool pool;
+	private ProjectDao projectDao;
+	private int[] projectIds;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		pool = BenchmarkDatabase.openPool();
+		projectIds = BenchmarkDatabase.recreate(pool, projectCount);
+		projectDao = new ProjectDao(pool);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Benchmark
+	public Project fetchProjectById() {
+		int projectId = projectIds[ThreadLocalRandom.current().nextInt(projectIds.length)];
+		return projectDao.fetchProjectById(projectId).orElseThrow();
+	}
+
+	@Benchmark
+	public List<Project> fetchAllProjects() {
+		return projectDao.fetchAllProjects();
+	}
+
+	@Benchmark
+	public void streamAllProjects(Blackhole blackhole) {
+		try(Stream<Project> projects = projectDao.streamAllProjects()) {
+			projects.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public List<ProjectSummary> fetchProjectSummaryPage() {
+		int projectId = projectIds[ThreadLocalRandom.current().nextInt(projectIds.length)];
+		return projectDao.fetchProjectSummaries(projectId, 100);
+	}
+
+}
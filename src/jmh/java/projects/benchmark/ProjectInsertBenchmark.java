@@ -0,0 +1,73 @@
+package projects.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.ConnectionPool;
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+
+/**
+ * Project rows inserted per second by the single-row insertProject path and the batched
+ * insertProjects path. Both report per-project throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProjectInsertBenchmark {
+
+	private static final int BATCH = 500;
+
+	private ConnectionPool pool;
+	private ProjectDao projectDao;
+	private int seed;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		pool = BenchmarkDatabase.openPool();
+		BenchmarkDatabase.recreate(pool, 0);
+		projectDao = new ProjectDao(pool);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Benchmark
+	public Project insertProject() {
+		return projectDao.insertProject(BenchmarkDatabase.newProject(seed++));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<Project> insertProjects() {
+		List<Project> projects = new ArrayList<>(BATCH);
+
+		for(int pos = 0; pos < BATCH; pos++) {
+			projects.add(BenchmarkDatabase.newProject(seed++));
+		}
+
+		return projectDao.insertProjects(projects);
+	}
+
+}
@@ -0,0 +1,163 @@
+package projects.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import projects.dao.ConnectionPool;
+import projects.dao.ProjectDao;
+import projects.dao.ReportDao;
+import projects.entity.Category;
+import projects.entity.CategoryProjectCount;
+import projects.entity.DifficultyAccuracy;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.ProjectMaterialCost;
+
+/**
+ * The rollups in ReportDao, computed by the database, against the same numbers worked out in Java
+ * from every project aggregate read through ProjectDao. The naive versions read projects a page at
+ * a time with fetchProjectsByIds, as a caller without the report API would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProjectReportBenchmark {
+
+	private static final int PAGE_SIZE = 500;
+
+	@Param({"1000", "10000"})
+	private int projectCount;
+
+	private ConnectionPool pool;
+	private ProjectDao projectDao;
+	private ReportDao reportDao;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		pool = BenchmarkDatabase.openPool();
+		BenchmarkDatabase.recreate(pool, projectCount);
+		projectDao = new ProjectDao(pool);
+		reportDao = new ReportDao(pool);
+		reportDao.rebuildMaterialCosts();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Benchmark
+	public List<DifficultyAccuracy> accuracyInSql() {
+		return reportDao.fetchAccuracyByDifficulty();
+	}
+
+	@Benchmark
+	public Map<Integer, BigDecimal[]> accuracyInJava() {
+		// difficulty -> {estimated, actual} over the projects that have both
+		Map<Integer, BigDecimal[]> totals = new TreeMap<>();
+
+		for(Project project : projectDao.fetchAllProjects()) {
+			if(Objects.isNull(project.getEstimatedHours()) || Objects.isNull(project.getActualHours())) {
+				continue;
+			}
+
+			BigDecimal[] sums = totals.computeIfAbsent(project.getDifficulty(), key -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+			sums[0] = sums[0].add(project.getEstimatedHours());
+			sums[1] = sums[1].add(project.getActualHours());
+		}
+
+		return totals;
+	}
+
+	@Benchmark
+	public void materialCostsInSql(Blackhole blackhole) {
+		try(Stream<ProjectMaterialCost> costs = reportDao.streamMaterialCosts(false)) {
+			costs.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public void materialCostsFromSummary(Blackhole blackhole) {
+		try(Stream<ProjectMaterialCost> costs = reportDao.streamMaterialCosts(true)) {
+			costs.forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public List<Map.Entry<Integer, BigDecimal>> materialCostsInJava() {
+		Map<Integer, BigDecimal> costs = new HashMap<>();
+
+		forEachAggregate(project -> {
+			BigDecimal cost = BigDecimal.ZERO;
+
+			for(Material material : project.getMaterials()) {
+				if(Objects.nonNull(material.getNumRequired()) && Objects.nonNull(material.getCost())) {
+					cost = cost.add(material.getCost().multiply(BigDecimal.valueOf(material.getNumRequired())));
+				}
+			}
+
+			costs.put(project.getProjectId(), cost);
+		});
+
+		return costs.entrySet().stream().sorted(Map.Entry.<Integer, BigDecimal>comparingByValue().reversed()).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<CategoryProjectCount> categoryCountsInSql() {
+		return reportDao.fetchCategoryCounts();
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> categoryCountsInJava() {
+		Map<Integer, Integer> counts = new HashMap<>();
+
+		forEachAggregate(project -> {
+			for(Category category : project.getCategories()) {
+				counts.merge(category.getCategoryId(), 1, Integer::sum);
+			}
+		});
+
+		return counts;
+	}
+
+	private void forEachAggregate(Consumer<Project> action) {
+		List<Integer> ids = new ArrayList<>();
+
+		for(Project project : projectDao.fetchAllProjects()) {
+			ids.add(project.getProjectId());
+		}
+
+		for(int from = 0; from < ids.size(); from += PAGE_SIZE) {
+			projectDao.fetchProjectsByIds(ids.subList(from, Math.min(from + PAGE_SIZE, ids.size()))).forEach(action);
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package projects.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.service.ProjectSearchIndex;
+import projects.service.SearchQuery;
+import projects.service.SearchResults;
+
+/**
+ * Searches a ProjectSearchIndex filled with generated projects, without a database. Words are
+ * drawn from a vocabulary by rank with a Zipf-like distribution: the word of rank 1 is in nearly
+ * every project, rank 2 in most, and rank 10000 in a few hundred of a million. Needs a large heap
+ * for a million projects (-jvmArgs -Xmx4g).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProjectSearchBenchmark {
+
+	private static final int VOCABULARY_SIZE = 20_000;
+	private static final int CATEGORY_COUNT = 40;
+
+	@Param({"100000", "1000000"})
+	private int projectCount;
+
+	// ranks of the searched words
+	@Param({"10000", "100", "1 10000", "1 2"})
+	private String ranks;
+
+	private ProjectSearchIndex index;
+	private SearchQuery query;
+	private SearchQuery filteredQuery;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		SplittableRandom random = new SplittableRandom(42);
+
+		index = new ProjectSearchIndex(projectCount);
+
+		for(int projectId = 1; projectId <= projectCount; projectId++) {
+			index.put(project(random, projectId));
+		}
+
+		StringBuilder text = new StringBuilder();
+
+		for(String rank : ranks.split(" ")) {
+			text.append(word(Integer.parseInt(rank))).append(' ');
+		}
+
+		query = new SearchQuery(text.toString());
+		filteredQuery = new SearchQuery(text.toString());
+		filteredQuery.setDifficulty(3);
+		filteredQuery.setCategoryId(7);
+	}
+
+	@Benchmark
+	public SearchResults search() {
+		return index.search(query);
+	}
+
+	@Benchmark
+	public SearchResults searchFiltered() {
+		return index.search(filteredQuery);
+	}
+
+	private static Project project(SplittableRandom random, int projectId) {
+		Project project = new Project();
+
+		project.setProjectId(projectId);
+		project.setProjectName(text(random, 3));
+		project.setDifficulty(random.nextInt(5) + 1);
+		project.setNotes(text(random, 12));
+
+		for(int count = 0; count < 4; count++) {
+			Material material = new Material();
+
+			material.setMaterialName(text(random, 2));
+			project.getMaterials().add(material);
+		}
+
+		for(int count = 0; count < 5; count++) {
+			Step step = new Step();
+
+			step.setStepText(text(random, 10));
+			project.getSteps().add(step);
+		}
+
+		for(int count = random.nextInt(3); count > 0; count--) {
+			Category category = new Category();
+
+			category.setCategoryId(random.nextInt(CATEGORY_COUNT) + 1);
+			project.getCategories().add(category);
+		}
+
+		return project;
+	}
+
+	private static String text(SplittableRandom random, int wordCount) {
+		StringBuilder text = new StringBuilder();
+
+		for(int count = 0; count < wordCount; count++) {
+			// inverse of a 1/rank distribution over the vocabulary
+			int rank = (int)Math.pow(VOCABULARY_SIZE, random.nextDouble());
+			text.append(word(rank)).append(' ');
+		}
+
+		return text.toString();
+	}
+
+	private static String word(int rank) {
+		return "w" + Integer.toString(rank, 36);
+	}
+
+}
@@ -0,0 +1,117 @@
+package projects.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import projects.dao.DbConnection;
+import projects.entity.Project;
+import projects.service.AsyncProjectService;
+import projects.service.ProjectService;
+
+/**
+ * Project lookups per second when CALLERS callers ask for a project at the same time. The
+ * blocking API serves the callers on a pool of CALLER_THREADS platform threads, as a
+ * thread-per-request server would; the async API hands every lookup to AsyncProjectService, which
+ * runs them on virtual threads (platform threads before Java 21) with at most the connection
+ * pool's size against the database.
+ *
+ * Unlike the other database benchmarks this one goes through ProjectService and so through the
+ * projects.db settings. It adds its projects with addProjects and deletes them again afterwards,
+ * and never rebuilds the schema. There are ten times as many projects as the service caches, so
+ * most lookups reach the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProjectServiceLoadBenchmark {
+
+	private static final int CALLERS = 2_000;
+	private static final int CALLER_THREADS = 200;
+	private static final int PROJECT_COUNT = 10_000;
+
+	@Param({"blocking", "async"})
+	private String api;
+
+	private ProjectService projectService;
+	private AsyncProjectService asyncService;
+	private ExecutorService callers;
+	private List<Integer> projectIds;
+
+
+	@Setup(Level.Trial)
+	public void setup() {
+		projectService = new ProjectService();
+
+		List<Project> projects = new ArrayList<>();
+
+		for(int pos = 0; pos < PROJECT_COUNT; pos++) {
+			projects.add(BenchmarkDatabase.newProject(pos));
+		}
+
+		projectIds = new ArrayList<>();
+		projectService.addProjects(projects).forEach(project -> projectIds.add(project.getProjectId()));
+
+		if("async".equals(api)) {
+			asyncService = new AsyncProjectService(projectService, DbConnection.getConfig().getPoolConfig().getMaxSize());
+		}
+		else {
+			callers = Executors.newFixedThreadPool(CALLER_THREADS);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if(asyncService != null) {
+			asyncService.close();
+		}
+
+		if(callers != null) {
+			callers.shutdown();
+		}
+
+		projectIds.forEach(projectService::deleteProject);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CALLERS)
+	public void fetchProjectById() {
+		List<CompletableFuture<Project>> lookups = new ArrayList<>(CALLERS);
+
+		for(int caller = 0; caller < CALLERS; caller++) {
+			Integer projectId = projectIds.get(ThreadLocalRandom.current().nextInt(projectIds.size()));
+
+			if(asyncService != null) {
+				lookups.add(asyncService.fetchProjectById(projectId));
+			}
+			else {
+				lookups.add(CompletableFuture.supplyAsync(() -> projectService.fetchProjectById(projectId), callers));
+			}
+		}
+
+		CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new)).join();
+	}
+
+}
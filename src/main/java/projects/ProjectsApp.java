@@ -6,8 +6,13 @@ import java.util.Objects;
 import java.util.Scanner;
 
 import projects.entity.Project;
+import projects.entity.ProjectSummary;
+import projects.exception.ConcurrentUpdateException;
 import projects.exception.DbException;
 import projects.service.ProjectService;
+import projects.service.ProjectValidator;
+import projects.service.SearchQuery;
+import projects.service.SearchResults;
 
 public class ProjectsApp {
 	
@@ -17,6 +22,8 @@ public class ProjectsApp {
 	private ProjectService projectService = new ProjectService();
 	// Object to represent the current project selected by the user 
 	private Project curProject;
+	// Number of project summaries read per query when listing projects
+	private static final int LIST_PAGE_SIZE = 100;
 	
 	
 	//@formatter:off
@@ -25,7 +32,8 @@ public class ProjectsApp {
 			"2) List projects",
 			"3) Select a project",
 			"4) Update project details",
-			"5) Delete a Project"
+			"5) Delete a Project",
+			"6) Search projects"
 			
 		
 			);
@@ -70,6 +78,10 @@ public class ProjectsApp {
 					deleteProject();
 					break;
 					
+				case 6:
+					searchProjects();
+					break;
+					
 				default:
 					System.out.println("\n" + selection + " is not a valid selection. Please try again.");
 					
@@ -184,7 +196,16 @@ public class ProjectsApp {
 		project.setNotes(Objects.isNull(notes) ? curProject.getNotes() : notes);
 		
 		
-		projectService.modifyProjectDetails(project);
+		// Only the changed details are written, and only if nobody changed the project since we read it
+		
+		try {
+			projectService.modifyChangedDetails(curProject, project);
+		}
+		catch(ConcurrentUpdateException e) {
+			System.out.println("\nProject " + curProject.getProjectId()
+					+ " was changed by someone else while you were editing it. Nothing was saved."
+					+ " The current project is shown below, please make your changes again.");
+		}
 		
 		curProject = projectService.fetchProjectById(curProject.getProjectId());
 		
@@ -207,14 +228,55 @@ public class ProjectsApp {
 	}
 
 
+	private void searchProjects() {
+		// built on first use, since it reads every project with its materials and steps
+		if(projectService.getSearchIndex().isEmpty()) {
+			System.out.println("\nBuilding the search index...");
+			projectService.enableSearchIndex();
+		}
+		
+		SearchQuery query = new SearchQuery(getStringInput("Enter words to search for, or press Enter to list every project"));
+		query.setDifficulty(getIntInput("Enter a difficulty to search within, or press Enter for any"));
+		
+		SearchResults results = projectService.searchProjects(query);
+		
+		System.out.println("\n" + results.getTotalHits() + " matching projects, best first:");
+		results.getHits().forEach(hit -> System.out.println("\t" + hit.getProjectId() + " : " + hit.getProjectName()));
+		
+		if(results.getTotalHits() > results.getHits().size()) {
+			System.out.println("\t...");
+		}
+		
+		System.out.println("Matches by difficulty: " + results.getDifficultyCounts());
+		
+		Integer projectId = getIntInput("Enter a project ID to select a project, or press Enter to go back");
+		
+		if(Objects.nonNull(projectId)) {
+			curProject = projectService.fetchProjectById(projectId);
+		}
+	}
+
+
 	private void listProjects() {
 		curProject = null;
-		List<Project> projects = projectService.fetchAllProjects();
 		
 		System.out.println("\nProjects:");
 		
-		projects.forEach(project -> System.out.println("\t" + project.getProjectId()
-							+ " : " + project.getProjectName()));
+		// Only ids and names are needed, so read them a page at a time instead of whole projects
+		Integer lastProjectId = null;
+		List<ProjectSummary> page;
+		
+		do {
+			page = projectService.fetchProjectSummaryPage(lastProjectId, LIST_PAGE_SIZE);
+			
+			page.forEach(summary -> System.out.println("\t" + summary.getProjectId()
+								+ " : " + summary.getProjectName()));
+			
+			if(!page.isEmpty()) {
+				lastProjectId = page.get(page.size() - 1).getProjectId();
+			}
+			
+		} while(page.size() == LIST_PAGE_SIZE);
 		
 	}
 
@@ -239,44 +301,22 @@ public class ProjectsApp {
 		
 	}
 	
-	// check for not null not a char and is an int between 1 and 5 inclusive 
+	// check for not null not a char and is an int between 1 and 5 inclusive; the rule lives in
+	// ProjectValidator so the bulk importer applies the same one
 	private Integer validateDifficultyInput(String prompt) {
-		String input = getStringInput(prompt);
-		boolean intTest = isInteger(input);
+		Integer difficulty = ProjectValidator.parseDifficulty(getStringInput(prompt));
 		
-		
-
-		while(Objects.isNull(input)
-				|| intTest == false
-				|| Integer.valueOf(input) < 1 
-				|| Integer.valueOf(input) > 5
-				
-				 ) {
+		while(Objects.isNull(difficulty)) {
 			
 			System.out.println("Please enter a valid difficulty");
-			input = getStringInput(prompt);
-			intTest = isInteger(input);
+			difficulty = ProjectValidator.parseDifficulty(getStringInput(prompt));
 			
 		}
 		
-		return Integer.valueOf(input);
+		return difficulty;
 		
 			
 	}
-
-	private boolean isInteger(String input) {
-		if( Objects.isNull(input)) {
-			return false;
-		}
-		else {
-			for (int i = 0; i < input.length(); i++) {
-		        if (!Character.isDigit(input.charAt(i))) {
-		            return false;
-		        }
-		    }
-		    return true;
-		}
-	}
 	
 	
 	private boolean exitMenue() {
@@ -0,0 +1,298 @@
+package projects.cdc;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import projects.metrics.HistogramSnapshot;
+import projects.metrics.LatencyHistogram;
+
+/**
+ * Keeps caches in front of ProjectDao fresh when other services write the projects tables
+ * directly. A background thread reads row changes from a {@link ChangeEventSource} and passes them,
+ * in commit order and in batches, to a {@link ChangeHandler} such as
+ * ProjectService.applyRowChanges.
+ *
+ * A batch that fails is retried until it succeeds, so the handler never sees a change out of order
+ * or misses one. A poll that fails, for example on a change the source cannot read, is retried
+ * the same way rather than skipped. Changes at or before the last applied position are skipped, which makes it safe
+ * for a source to replay events after a restart.
+ *
+ * Lag is measured from each change's commit time to the moment its batch was applied.
+ */
+public class CacheRefresher implements AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(CacheRefresher.class.getName());
+
+	private static final int BATCH_SIZE = 500;
+	private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+	// Wait between retries of a failed batch, doubling up to the maximum
+	private static final long MIN_RETRY_MILLIS = 100;
+	private static final long MAX_RETRY_MILLIS = 30_000;
+
+	private final ChangeEventSource source;
+	private final ChangeHandler handler;
+
+	private volatile long lastAppliedPosition;
+	private volatile long lastAppliedAt;
+	private volatile long lastLagNanos;
+
+	private final LatencyHistogram lag = new LatencyHistogram();
+	private final LongAdder appliedCount = new LongAdder();
+	private final LongAdder skippedCount = new LongAdder();
+	private final LongAdder failedBatchCount = new LongAdder();
+
+	// A batch read from the source that has not been applied yet
+	private List<RowChange> pending;
+
+	private volatile boolean running;
+	private Thread worker;
+
+
+	/**
+	 * @param afterPosition Changes at or before this position are treated as already applied. Pass
+	 *        -1 to apply everything the source returns.
+	 */
+	public CacheRefresher(ChangeEventSource source, ChangeHandler handler, long afterPosition) {
+		this.source = source;
+		this.handler = handler;
+		this.lastAppliedPosition = afterPosition;
+	}
+
+
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+
+		running = true;
+		worker = new Thread(this::run, "cdc-cache-refresher");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops the background thread and closes the source.
+	 */
+	@Override
+	public void close() {
+		Thread thread;
+
+		synchronized(this) {
+			running = false;
+			thread = worker;
+			worker = null;
+		}
+
+		if(Objects.nonNull(thread)) {
+			thread.interrupt();
+
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(10));
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		try {
+			source.close();
+		}
+		catch(IOException e) {
+			LOG.log(Level.WARNING, "Error closing change source", e);
+		}
+	}
+
+	/**
+	 * Applies whatever the source has available without waiting, on the calling thread. Meant for
+	 * tests and for callers that do not start the background thread.
+	 *
+	 * @return The number of changes applied.
+	 */
+	public synchronized int refreshNow() throws IOException, InterruptedException {
+		if(running) {
+			throw new IllegalStateException("The refresher is running in the background");
+		}
+
+		int applied = 0;
+
+		while(true) {
+			if(Objects.isNull(pending)) {
+				pending = source.poll(BATCH_SIZE, Duration.ZERO);
+			}
+
+			if(pending.isEmpty()) {
+				pending = null;
+				return applied;
+			}
+
+			try {
+				applied += applyPending();
+			}
+			catch(RuntimeException e) {
+				failedBatchCount.increment();
+				throw e;
+			}
+		}
+	}
+
+	public long getLastAppliedPosition() {
+		return lastAppliedPosition;
+	}
+
+	public RefresherStats getStats() {
+		long idleNanos = lastAppliedAt == 0 ? -1 : System.nanoTime() - lastAppliedAt;
+
+		//@formatter:off
+		return new RefresherStats(lastAppliedPosition, appliedCount.sum(), skippedCount.sum(),
+				failedBatchCount.sum(), lastLagNanos, idleNanos, lag.snapshot());
+		//@formatter:on
+	}
+
+	private void run() {
+		long retryMillis = MIN_RETRY_MILLIS;
+
+		while(running) {
+			try {
+				if(Objects.isNull(pending)) {
+					pending = source.poll(BATCH_SIZE, POLL_TIMEOUT);
+				}
+
+				if(pending.isEmpty()) {
+					pending = null;
+					continue;
+				}
+
+				applyPending();
+				retryMillis = MIN_RETRY_MILLIS;
+			}
+			catch(InterruptedException e) {
+				break;
+			}
+			catch(Exception e) {
+				failedBatchCount.increment();
+				LOG.log(Level.WARNING, "Unable to apply row changes; retrying in " + retryMillis + " ms", e);
+
+				try {
+					Thread.sleep(retryMillis);
+				}
+				catch(InterruptedException interrupted) {
+					break;
+				}
+
+				retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+			}
+		}
+	}
+
+	// Clears pending only once the handler has accepted the batch
+	private int applyPending() {
+		List<RowChange> changes = new ArrayList<>(pending.size());
+
+		for(RowChange change : pending) {
+			if(change.getPosition() > lastAppliedPosition) {
+				changes.add(change);
+			}
+		}
+
+		if(!changes.isEmpty()) {
+			handler.apply(changes);
+
+			long now = System.currentTimeMillis();
+
+			for(RowChange change : changes) {
+				long lagNanos = TimeUnit.MILLISECONDS.toNanos(now - change.getCommittedAt().toEpochMilli());
+
+				lag.record(lagNanos);
+				lastLagNanos = Math.max(lagNanos, 0);
+			}
+
+			lastAppliedPosition = changes.get(changes.size() - 1).getPosition();
+			lastAppliedAt = System.nanoTime();
+			appliedCount.add(changes.size());
+		}
+
+		skippedCount.add(pending.size() - changes.size());
+		pending = null;
+
+		return changes.size();
+	}
+
+
+	/**
+	 * Point-in-time snapshot of the refresher counters.
+	 */
+	public static class RefresherStats {
+		private final long lastAppliedPosition;
+		private final long appliedCount;
+		private final long skippedCount;
+		private final long failedBatchCount;
+		private final long lastLagNanos;
+		private final long idleNanos;
+		private final HistogramSnapshot lag;
+
+		//@formatter:off
+		RefresherStats(long lastAppliedPosition, long appliedCount, long skippedCount, long failedBatchCount,
+				long lastLagNanos, long idleNanos, HistogramSnapshot lag) {
+		//@formatter:on
+			this.lastAppliedPosition = lastAppliedPosition;
+			this.appliedCount = appliedCount;
+			this.skippedCount = skippedCount;
+			this.failedBatchCount = failedBatchCount;
+			this.lastLagNanos = lastLagNanos;
+			this.idleNanos = idleNanos;
+			this.lag = lag;
+		}
+
+		public long getLastAppliedPosition() {
+			return lastAppliedPosition;
+		}
+
+		public long getAppliedCount() {
+			return appliedCount;
+		}
+
+		// changes at or before the last applied position, replayed by the source
+		public long getSkippedCount() {
+			return skippedCount;
+		}
+
+		public long getFailedBatchCount() {
+			return failedBatchCount;
+		}
+
+		// commit-to-apply lag of the most recently applied change
+		public double getLastLagMillis() {
+			return lastLagNanos / 1_000_000.0;
+		}
+
+		// time since a change was last applied, or -1 if none has been
+		public double getIdleMillis() {
+			return idleNanos < 0 ? -1 : idleNanos / 1_000_000.0;
+		}
+
+		public HistogramSnapshot getLag() {
+			return lag;
+		}
+
+		@Override
+		public String toString() {
+			//@formatter:off
+			return "position = " + lastAppliedPosition
+					+ ", applied = " + appliedCount
+					+ ", skipped = " + skippedCount
+					+ ", failedBatches = " + failedBatchCount
+					+ ", lastLagMillis = " + String.format("%.3f", getLastLagMillis())
+					+ ", idleMillis = " + String.format("%.3f", getIdleMillis())
+					+ ", lag = [" + lag + "]";
+			//@formatter:on
+		}
+	}
+
+}
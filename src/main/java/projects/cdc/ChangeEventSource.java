@@ -0,0 +1,23 @@
+package projects.cdc;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A feed of committed row changes in commit order. A MySQL binlog client (row-based replication
+ * filtered to the projects schema) is the production source; {@link FileChangeEventSource} stands
+ * in for it in tests and development.
+ */
+public interface ChangeEventSource extends AutoCloseable {
+
+	/**
+	 * Returns up to maxEvents changes that follow the ones already returned, waiting up to timeout
+	 * for at least one. Returns an empty list if nothing arrives in time.
+	 */
+	List<RowChange> poll(int maxEvents, Duration timeout) throws IOException, InterruptedException;
+
+	@Override
+	void close() throws IOException;
+
+}
@@ -0,0 +1,14 @@
+package projects.cdc;
+
+import java.util.List;
+
+/**
+ * Applies a batch of row changes, for example by invalidating cached projects. If it throws, the
+ * same batch is offered again so no change is skipped.
+ */
+@FunctionalInterface
+public interface ChangeHandler {
+
+	void apply(List<RowChange> changes);
+
+}
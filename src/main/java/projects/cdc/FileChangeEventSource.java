@@ -0,0 +1,203 @@
+package projects.cdc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import projects.cdc.RowChange.Operation;
+
+/**
+ * Tails a text file of row changes, one per line, the way a binlog client tails the binlog. A
+ * line has five fields separated by whitespace:
+ *
+ * <pre>
+ * position  committed-at-epoch-millis  table  INSERT|UPDATE|DELETE  project_id (or -)
+ * </pre>
+ *
+ * Blank lines and lines starting with # are ignored. Use {@link #format(RowChange)} to write
+ * lines. If the file is truncated or replaced by a shorter one, reading starts again from the
+ * beginning; positions already applied are skipped by the {@link CacheRefresher}.
+ *
+ * A malformed line is never skipped, since the change it stood for would be lost. The changes
+ * before it are returned, then every poll fails with an IOException until the line is fixed.
+ */
+public class FileChangeEventSource implements ChangeEventSource {
+
+	private static final Logger LOG = Logger.getLogger(FileChangeEventSource.class.getName());
+
+	// How often an idle poll checks the file for new lines
+	private static final long IDLE_CHECK_MILLIS = 50;
+	// Bytes read per check. Doubled while the next line does not fit.
+	private static final int READ_WINDOW_BYTES = 1 << 20;
+
+	private final Path file;
+	// Byte offset of the first line not yet returned
+	private long offset;
+	// Lines read from the file but not returned yet because of maxEvents
+	private final List<RowChange> buffered = new ArrayList<>();
+
+
+	public FileChangeEventSource(Path file) {
+		this.file = file;
+	}
+
+
+	public static String format(RowChange change) {
+		//@formatter:off
+		return change.getPosition()
+				+ " " + change.getCommittedAt().toEpochMilli()
+				+ " " + change.getTable()
+				+ " " + change.getOperation()
+				+ " " + (Objects.isNull(change.getProjectId()) ? "-" : change.getProjectId());
+		//@formatter:on
+	}
+
+	@Override
+	public synchronized List<RowChange> poll(int maxEvents, Duration timeout) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+
+		while(buffered.isEmpty()) {
+			readNewLines();
+
+			if(!buffered.isEmpty() || System.nanoTime() >= deadline) {
+				break;
+			}
+
+			Thread.sleep(IDLE_CHECK_MILLIS);
+		}
+
+		List<RowChange> batch = new ArrayList<>(buffered.subList(0, Math.min(maxEvents, buffered.size())));
+		buffered.subList(0, batch.size()).clear();
+
+		return batch;
+	}
+
+	@Override
+	public void close() {
+		// nothing is held open between polls
+	}
+
+	/*
+	 * Reads whole lines from offset to the end of the file. A last line without its newline is
+	 * still being written and is left for the next read.
+	 */
+	private void readNewLines() throws IOException {
+		if(!Files.exists(file)) {
+			return;
+		}
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			if(size < offset) {
+				LOG.warning(file + " was truncated; reading it again from the start");
+				offset = 0;
+			}
+
+			if(size == offset) {
+				return;
+			}
+
+			ByteBuffer bytes = readWholeLines(channel, size);
+			int end = bytes.position();
+			int lineStart = 0;
+
+			for(int pos = 0; pos < end; pos++) {
+				if(bytes.get(pos) == '\n') {
+					String line = new String(bytes.array(), lineStart, pos - lineStart, StandardCharsets.UTF_8);
+
+					try {
+						parse(line);
+					}
+					catch(RuntimeException e) {
+						offset += lineStart;
+
+						if(buffered.isEmpty()) {
+							throw new IOException("Malformed change at byte " + offset + " of " + file + ": " + line, e);
+						}
+
+						// the changes before it are returned first; the next read fails on it
+						return;
+					}
+
+					lineStart = pos + 1;
+				}
+			}
+
+			offset += lineStart;
+		}
+	}
+
+	/*
+	 * Reads from offset until the window holds at least one newline or reaches the end of the
+	 * file, so a line longer than the window is read whole instead of stalling the source.
+	 */
+	private ByteBuffer readWholeLines(FileChannel channel, long size) throws IOException {
+		long window = READ_WINDOW_BYTES;
+
+		while(true) {
+			long length = Math.min(size - offset, window);
+
+			if(length > Integer.MAX_VALUE - 8) {
+				throw new IOException("Line at byte " + offset + " of " + file + " is too long");
+			}
+
+			ByteBuffer bytes = ByteBuffer.allocate((int)length);
+
+			while(bytes.hasRemaining() && channel.read(bytes, offset + bytes.position()) > 0) {
+				// a positional read may return fewer bytes than asked for
+			}
+
+			if(length == size - offset || containsNewline(bytes)) {
+				return bytes;
+			}
+
+			window *= 2;
+		}
+	}
+
+	private static boolean containsNewline(ByteBuffer bytes) {
+		for(int pos = 0; pos < bytes.position(); pos++) {
+			if(bytes.get(pos) == '\n') {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// Adds the change on the line to buffered. Throws if the line is malformed.
+	private void parse(String line) {
+		String trimmed = line.trim();
+
+		if(trimmed.isEmpty() || trimmed.startsWith("#")) {
+			return;
+		}
+
+		String[] fields = trimmed.split("\\s+");
+
+		if(fields.length != 5) {
+			throw new IllegalArgumentException("Expected 5 fields but found " + fields.length);
+		}
+
+		//@formatter:off
+		buffered.add(new RowChange(
+				Long.parseLong(fields[0]),
+				Instant.ofEpochMilli(Long.parseLong(fields[1])),
+				fields[2],
+				Operation.valueOf(fields[3]),
+				fields[4].equals("-") ? null : Integer.valueOf(fields[4])));
+		//@formatter:on
+	}
+
+}
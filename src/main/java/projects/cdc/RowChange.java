@@ -0,0 +1,63 @@
+package projects.cdc;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * One committed row change to a projects table, as read from the binlog or a stand-in source.
+ */
+public class RowChange {
+
+	public enum Operation {
+		INSERT, UPDATE, DELETE
+	}
+
+	private final long position;
+	private final Instant committedAt;
+	private final String table;
+	private final Operation operation;
+	private final Integer projectId;
+
+
+	public RowChange(long position, Instant committedAt, String table, Operation operation, Integer projectId) {
+		this.position = position;
+		this.committedAt = committedAt;
+		this.table = table;
+		this.operation = operation;
+		this.projectId = projectId;
+	}
+
+	// increases with commit order; used to skip events that were already applied
+	public long getPosition() {
+		return position;
+	}
+
+	public Instant getCommittedAt() {
+		return committedAt;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	// project_id of the changed row, or null for a table without one (category)
+	public Integer getProjectId() {
+		return projectId;
+	}
+
+	@Override
+	public String toString() {
+		//@formatter:off
+		return "position = " + position
+				+ ", committedAt = " + committedAt
+				+ ", table = " + table
+				+ ", operation = " + operation
+				+ (Objects.isNull(projectId) ? "" : ", projectId = " + projectId);
+		//@formatter:on
+	}
+
+}
@@ -0,0 +1,702 @@
+package projects.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import projects.exception.DbException;
+import projects.metrics.DaoMetrics;
+import projects.metrics.Phase;
+import projects.metrics.SlowQueryLog;
+import provided.util.ConnectionProvider;
+
+/**
+ * A bounded JDBC connection pool. Physical connections are opened once and reused, so a DAO call
+ * only pays for the TCP/authentication handshake when the pool has to grow.
+ *
+ * Connections handed out by {@link #getConnection()} are proxies. Calling close() on the proxy
+ * rolls back any unfinished transaction, restores auto-commit and returns the physical connection
+ * to the pool. A background thread closes connections that have been idle longer than the idle
+ * timeout (never shrinking below the minimum size) and reports connections that have been
+ * borrowed for longer than the leak detection threshold.
+ *
+ * Each physical connection also keeps an LRU cache of prepared statements, so a DAO method that
+ * prepares the same SQL on every call only makes the driver parse it (or the server prepare it,
+ * with useServerPrepStmts) the first time on each connection. It takes the place of the driver's
+ * cachePrepStmts cache, which DbConfig leaves off. Statements are handed out as
+ * {@link PooledStatement}s, which call the driver's statement directly.
+ */
+public class ConnectionPool implements ConnectionProvider, AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+
+	private final String url;
+	private final Properties connectionProperties;
+	private final PoolConfig config;
+
+	// Most recently returned connection is at the head so cold connections age out at the tail
+	private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	// One permit per connection that may be borrowed at the same time
+	private final ResizableSemaphore permits;
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+	// Run on the committing thread after every successful commit, see setCommitListener
+	private volatile Runnable commitListener;
+
+	private final LongAdder createdCount = new LongAdder();
+	private final LongAdder destroyedCount = new LongAdder();
+	private final LongAdder acquireCount = new LongAdder();
+	private final LongAdder acquireTimeoutCount = new LongAdder();
+	private final LongAdder validationFailureCount = new LongAdder();
+	private final LongAdder leakCount = new LongAdder();
+	private final LongAdder totalAcquireNanos = new LongAdder();
+	private final LongAdder statementPrepareCount = new LongAdder();
+	private final LongAdder statementCacheHitCount = new LongAdder();
+
+
+	public ConnectionPool(String url, Properties connectionProperties, PoolConfig config) {
+		if(config.getMaxSize() < 1 || config.getMinSize() < 0 || config.getMinSize() > config.getMaxSize()) {
+			throw new DbException("Invalid pool size: min = " + config.getMinSize() + ", max = " + config.getMaxSize());
+		}
+
+		this.url = url;
+		this.connectionProperties = Objects.isNull(connectionProperties) ? new Properties() : connectionProperties;
+		this.config = config;
+		this.permits = new ResizableSemaphore(config.getMaxSize());
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long interval = config.getHousekeepingIntervalMillis();
+		// The first run opens the minimum number of connections in the background
+		housekeeper.scheduleWithFixedDelay(this::housekeep, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Borrow a connection, waiting up to the configured connection timeout if every connection is in
+	 * use. Idle connections are reused before new ones are opened.
+	 */
+	@Override
+	public Connection getConnection() {
+		long timeoutMillis = config.getConnectionTimeoutMillis();
+		Connection conn = tryGetConnection(timeoutMillis);
+
+		if(Objects.isNull(conn)) {
+			acquireTimeoutCount.increment();
+			throw new DbException("Timed out after " + timeoutMillis
+					+ "ms waiting for a database connection (" + getStats() + ")");
+		}
+
+		return conn;
+	}
+
+	/**
+	 * Borrow a connection like {@link #getConnection()}, but give up after timeoutMillis. Used where
+	 * there is somewhere else to get a connection from, as ReplicaRouter does when a replica is busy.
+	 *
+	 * @return The connection, or null if none was free within the timeout
+	 * @throws DbException if the pool is closed or a new connection cannot be opened
+	 */
+	Connection tryGetConnection(long timeoutMillis) {
+		if(closed) {
+			throw new DbException("Connection pool is closed");
+		}
+
+		long start = System.nanoTime();
+
+		try {
+			if(!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return null;
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Interrupted while waiting for a database connection", e);
+		}
+
+		try {
+			PooledConnection pooled = takeIdleConnection();
+
+			if(Objects.isNull(pooled)) {
+				pooled = createConnection();
+			}
+
+			pooled.borrowedAt = System.currentTimeMillis();
+			pooled.borrowedBy = config.getLeakDetectionThresholdMillis() > 0
+					? new Exception("Connection borrowed by " + Thread.currentThread().getName())
+					: null;
+			pooled.leakReported = false;
+			borrowed.add(pooled);
+
+			acquireCount.increment();
+			totalAcquireNanos.add(System.nanoTime() - start);
+
+			return pooled.newProxy();
+		}
+		catch(RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Has the listener run after each successful commit on a connection from this pool, on the
+	 * thread that committed. ReplicaRouter uses it to notice a session's writes.
+	 */
+	void setCommitListener(Runnable commitListener) {
+		this.commitListener = commitListener;
+	}
+
+	/**
+	 * Changes the sizes, connection timeout and statement cache size of the running pool. A smaller
+	 * maximum takes effect as borrowed connections come back: they are closed rather than returned
+	 * until the pool is within the new size. Other settings in tunables are ignored.
+	 */
+	public synchronized void applyTunables(PoolConfig tunables) {
+		if(tunables.getMaxSize() < 1 || tunables.getMinSize() < 0 || tunables.getMinSize() > tunables.getMaxSize()) {
+			throw new DbException("Invalid pool size: min = " + tunables.getMinSize() + ", max = " + tunables.getMaxSize());
+		}
+
+		int change = tunables.getMaxSize() - config.getMaxSize();
+
+		// min before max so housekeeping never sees min above max
+		if(change < 0) {
+			config.setMinSize(tunables.getMinSize());
+			config.setMaxSize(tunables.getMaxSize());
+			permits.reduce(-change);
+		}
+		else {
+			config.setMaxSize(tunables.getMaxSize());
+			config.setMinSize(tunables.getMinSize());
+			permits.release(change);
+		}
+
+		config.setConnectionTimeoutMillis(tunables.getConnectionTimeoutMillis());
+		config.setStatementCacheSize(tunables.getStatementCacheSize());
+
+		PooledConnection pooled;
+
+		while(totalConnections.get() > config.getMaxSize() && Objects.nonNull(pooled = idle.pollLast())) {
+			destroy(pooled);
+		}
+	}
+
+	// Connections borrowed right now, without building a full PoolStats
+	int getActiveCount() {
+		return borrowed.size();
+	}
+
+	public PoolStats getStats() {
+		int active = borrowed.size();
+		int idleCount = idle.size();
+
+		//@formatter:off
+		return new PoolStats(totalConnections.get(), idleCount, active, permits.getQueueLength(),
+				createdCount.sum(), destroyedCount.sum(), acquireCount.sum(), acquireTimeoutCount.sum(),
+				validationFailureCount.sum(), leakCount.sum(), totalAcquireNanos.sum(),
+				statementPrepareCount.sum(), statementCacheHitCount.sum());
+		//@formatter:on
+	}
+
+	/**
+	 * Closes every idle connection and stops the housekeeping thread. Borrowed connections are
+	 * closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+
+		PooledConnection pooled;
+
+		while(Objects.nonNull(pooled = idle.pollFirst())) {
+			destroy(pooled);
+		}
+	}
+
+	private PooledConnection takeIdleConnection() {
+		PooledConnection pooled;
+
+		while(Objects.nonNull(pooled = idle.pollFirst())) {
+			if(!config.isValidateOnBorrow() || isValid(pooled)) {
+				return pooled;
+			}
+
+			validationFailureCount.increment();
+			destroy(pooled);
+		}
+
+		return null;
+	}
+
+	private boolean isValid(PooledConnection pooled) {
+		try {
+			return pooled.physical.isValid(config.getValidationTimeoutSeconds());
+		}
+		catch(SQLException e) {
+			return false;
+		}
+	}
+
+	private PooledConnection createConnection() {
+		totalConnections.incrementAndGet();
+
+		try {
+			Connection physical = DriverManager.getConnection(url, connectionProperties);
+			createdCount.increment();
+			return new PooledConnection(physical);
+		}
+		catch(SQLException e) {
+			totalConnections.decrementAndGet();
+			throw new DbException(e);
+		}
+	}
+
+	private void release(PooledConnection pooled) {
+		if(!borrowed.remove(pooled)) {
+			return;
+		}
+
+		try {
+			boolean reusable = !closed && totalConnections.get() <= config.getMaxSize() && resetState(pooled);
+
+			if(reusable) {
+				pooled.lastReturned = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			}
+			else {
+				destroy(pooled);
+			}
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	/*
+	 * The DAO methods turn auto-commit off and a read-only method may never commit. Roll back so the
+	 * next borrower does not inherit an open transaction (and the locks or snapshot that go with it).
+	 */
+	private boolean resetState(PooledConnection pooled) {
+		try {
+			if(pooled.physical.isClosed()) {
+				return false;
+			}
+
+			if(!pooled.physical.getAutoCommit()) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+
+			return true;
+		}
+		catch(SQLException e) {
+			return false;
+		}
+	}
+
+	private void destroy(PooledConnection pooled) {
+		totalConnections.decrementAndGet();
+		destroyedCount.increment();
+
+		try {
+			pooled.physical.close();
+		}
+		catch(SQLException e) {
+			LOG.log(Level.FINE, "Error closing pooled connection", e);
+		}
+	}
+
+	private void housekeep() {
+		try {
+			evictIdleConnections();
+			detectLeaks();
+			fillToMinimum();
+		}
+		catch(RuntimeException e) {
+			LOG.log(Level.WARNING, "Connection pool housekeeping failed", e);
+		}
+	}
+
+	private void evictIdleConnections() {
+		long cutoff = System.currentTimeMillis() - config.getIdleTimeoutMillis();
+
+		for(PooledConnection pooled : idle) {
+			if(totalConnections.get() <= config.getMinSize()) {
+				return;
+			}
+
+			if(pooled.lastReturned < cutoff && idle.remove(pooled)) {
+				destroy(pooled);
+			}
+		}
+	}
+
+	private void detectLeaks() {
+		long threshold = config.getLeakDetectionThresholdMillis();
+
+		if(threshold <= 0) {
+			return;
+		}
+
+		long cutoff = System.currentTimeMillis() - threshold;
+
+		for(PooledConnection pooled : borrowed) {
+			if(!pooled.leakReported && pooled.borrowedAt < cutoff) {
+				pooled.leakReported = true;
+				leakCount.increment();
+				LOG.log(Level.WARNING, "Possible connection leak: connection held for more than " + threshold + "ms",
+						pooled.borrowedBy);
+			}
+		}
+	}
+
+	/*
+	 * Each connection is opened under a permit, as a borrow opens one, so the pool cannot go past
+	 * its maximum when borrowers are opening connections at the same time or the pool was just
+	 * shrunk. With no permit free every connection is in use and there is no need for idle ones.
+	 */
+	private void fillToMinimum() {
+		while(!closed && totalConnections.get() < config.getMinSize()) {
+			try {
+				if(!permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			try {
+				if(totalConnections.get() >= config.getMinSize()) {
+					return;
+				}
+
+				PooledConnection pooled = createConnection();
+				pooled.lastReturned = System.currentTimeMillis();
+				idle.offerLast(pooled);
+			}
+			finally {
+				permits.release();
+			}
+		}
+	}
+
+
+	/*
+	 * Fair, so waiting borrowers are served in order. Shrinking takes permits away even while they
+	 * are handed out; the count goes negative until enough connections come back.
+	 */
+	@SuppressWarnings("serial")
+	private static class ResizableSemaphore extends Semaphore {
+		ResizableSemaphore(int permits) {
+			super(permits, true);
+		}
+
+		void reduce(int reduction) {
+			reducePermits(reduction);
+		}
+	}
+
+
+	/**
+	 * A physical connection plus the bookkeeping the pool needs. Each borrow gets a fresh proxy so a
+	 * caller that closes its connection twice, or keeps using it after close, cannot affect the next
+	 * borrower.
+	 */
+	private class PooledConnection {
+		private final Connection physical;
+		private volatile long lastReturned;
+		private volatile long borrowedAt;
+		private volatile Exception borrowedBy;
+		private volatile boolean leakReported;
+
+		/*
+		 * Prepared statements kept open on this connection, least recently used first. Only the
+		 * borrowing thread touches the cache, so it needs no locking.
+		 */
+		private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+		}
+
+		/*
+		 * Returns the cached statement for the prepareStatement arguments if it is free, otherwise
+		 * prepares a new one. If the cached statement is already open (the same SQL prepared twice
+		 * before the first was closed) the second one is an ordinary statement that is really
+		 * closed on close().
+		 */
+		PreparedStatement prepare(Connection owner, Object[] args) throws SQLException {
+			String sql = (String)args[0];
+			String key = statementKey(args);
+			CachedStatement cached = statements.get(key);
+
+			if(Objects.nonNull(cached) && !cached.inUse) {
+				statementCacheHitCount.increment();
+				cached.inUse = true;
+				return new PooledStatement(cached.physical, ConnectionPool.this, owner, cached, sql);
+			}
+
+			PreparedStatement stmt = prepareStatement(physical, args);
+			statementPrepareCount.increment();
+
+			if(Objects.nonNull(cached)) {
+				return new PooledStatement(stmt, ConnectionPool.this, owner, null, sql);
+			}
+
+			cached = new CachedStatement(this, key, stmt);
+			cached.inUse = true;
+			statements.put(key, cached);
+
+			Iterator<CachedStatement> eldest = statements.values().iterator();
+
+			while(statements.size() > config.getStatementCacheSize()) {
+				CachedStatement evicted = eldest.next();
+				eldest.remove();
+				evicted.evicted = true;
+
+				if(!evicted.inUse) {
+					evicted.closePhysical();
+				}
+			}
+
+			return new PooledStatement(stmt, ConnectionPool.this, owner, cached, sql);
+		}
+
+		Connection newProxy() {
+			//@formatter:off
+			return (Connection)Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] {Connection.class},
+					new ProxyHandler(this));
+			//@formatter:on
+		}
+	}
+
+
+	private class ProxyHandler implements InvocationHandler {
+		private final PooledConnection pooled;
+		private boolean proxyClosed;
+
+		ProxyHandler(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+			case "close":
+				if(!proxyClosed) {
+					proxyClosed = true;
+					release(pooled);
+				}
+				return null;
+
+			case "isClosed":
+				return proxyClosed || pooled.physical.isClosed();
+
+			case "equals":
+				return proxy == args[0];
+
+			case "hashCode":
+				return System.identityHashCode(proxy);
+
+			case "toString":
+				return "Pooled" + pooled.physical;
+
+			case "commit":
+				delegate(method, args);
+
+				Runnable listener = commitListener;
+
+				if(Objects.nonNull(listener)) {
+					listener.run();
+				}
+				return null;
+
+			case "prepareStatement":
+				long start = DaoMetrics.startTimer();
+
+				try {
+					if(!proxyClosed && config.getStatementCacheSize() > 0) {
+						return pooled.prepare((Connection)proxy, args);
+					}
+
+					PreparedStatement stmt = (PreparedStatement)delegate(method, args);
+
+					// uncached statements are only wrapped when there are executions to time or log
+					if(start == 0 && !SlowQueryLog.isEnabled()) {
+						return stmt;
+					}
+
+					return new PooledStatement(stmt, ConnectionPool.this, (Connection)proxy, null, (String)args[0]);
+				}
+				finally {
+					DaoMetrics.stopTimer(Phase.PREPARE, start);
+				}
+
+			default:
+				return delegate(method, args);
+			}
+		}
+
+		private Object delegate(Method method, Object[] args) throws Throwable {
+			if(proxyClosed) {
+				throw new SQLException("Connection is closed");
+			}
+
+			try {
+				return method.invoke(pooled.physical, args);
+			}
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+
+	/*
+	 * Every prepareStatement overload is cached. The key is the SQL plus the options it was
+	 * prepared with, so a statement is only reused for a caller that asked for the same generated
+	 * keys or cursor options. Returning a statement to the cache resets its fetch size, the one
+	 * setting a caller changes on it.
+	 */
+	private static String statementKey(Object[] args) {
+		if(args.length == 1) {
+			return (String)args[0];
+		}
+
+		StringBuilder key = new StringBuilder();
+
+		for(int pos = 1; pos < args.length; pos++) {
+			Object arg = args[pos];
+
+			if(arg instanceof int[]) {
+				key.append(Arrays.toString((int[])arg));
+			}
+			else if(arg instanceof String[]) {
+				key.append(Arrays.toString((String[])arg));
+			}
+			else {
+				key.append(arg);
+			}
+
+			key.append(':');
+		}
+
+		return key.append(args[0]).toString();
+	}
+
+
+	private static PreparedStatement prepareStatement(Connection physical, Object[] args) throws SQLException {
+		String sql = (String)args[0];
+
+		switch(args.length) {
+		case 1:
+			return physical.prepareStatement(sql);
+		case 3:
+			return physical.prepareStatement(sql, (Integer)args[1], (Integer)args[2]);
+		case 4:
+			return physical.prepareStatement(sql, (Integer)args[1], (Integer)args[2], (Integer)args[3]);
+		default:
+			if(args[1] instanceof int[]) {
+				return physical.prepareStatement(sql, (int[])args[1]);
+			}
+
+			if(args[1] instanceof String[]) {
+				return physical.prepareStatement(sql, (String[])args[1]);
+			}
+
+			return physical.prepareStatement(sql, (Integer)args[1]);
+		}
+	}
+
+
+	/**
+	 * A physical prepared statement held open in a connection's statement cache. Callers get a
+	 * {@link PooledStatement} whose close() resets the statement and hands it back to the cache.
+	 */
+	class CachedStatement {
+		private final PooledConnection pooled;
+		private final String key;
+		private final PreparedStatement physical;
+		private boolean inUse;
+		private boolean evicted;
+
+		CachedStatement(PooledConnection pooled, String key, PreparedStatement physical) {
+			this.pooled = pooled;
+			this.key = key;
+			this.physical = physical;
+		}
+
+		/*
+		 * Closes any results still open and clears parameters and batches so the next user starts
+		 * from a freshly prepared state. A statement that cannot be reset is dropped from the cache.
+		 */
+		void giveBack() {
+			try {
+				while(physical.getMoreResults() || physical.getUpdateCount() != -1) {
+					// drain unread results
+				}
+
+				physical.clearParameters();
+				physical.clearBatch();
+
+				if(physical.getFetchSize() != 0) {
+					physical.setFetchSize(0);
+				}
+
+				inUse = false;
+
+				if(evicted) {
+					closePhysical();
+				}
+			}
+			catch(SQLException e) {
+				pooled.statements.remove(key, this);
+				inUse = false;
+				closePhysical();
+			}
+		}
+
+		void closePhysical() {
+			try {
+				physical.close();
+			}
+			catch(SQLException e) {
+				LOG.log(Level.FINE, "Error closing cached statement", e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,435 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import projects.exception.DbException;
+
+/**
+ * Database settings for {@link DbConnection}, checked when they are loaded. Each setting has a
+ * key under projects.db. and a default; later sources override earlier ones:
+ *
+ * <ol>
+ * <li>the defaults below</li>
+ * <li>projects-db.properties on the classpath</li>
+ * <li>the file named by projects.db.config (or PROJECTS_DB_CONFIG)</li>
+ * <li>environment variables: projects.db.poolMaxSize is PROJECTS_DB_POOL_MAX_SIZE</li>
+ * <li>system properties (-Dprojects.db.poolMaxSize=20)</li>
+ * </ol>
+ *
+ * An unknown key or a value of the wrong type or out of range fails the whole load with every
+ * problem listed, so a typo does not quietly leave a default in place.
+ *
+ * The settings in {@link #RELOADABLE} can be changed while the application runs, see
+ * {@link DbConnection#reloadConfig()}. The rest are fixed once the connection pools are created.
+ */
+public class DbConfig {
+
+	public static final String PREFIX = "projects.db.";
+	private static final String ENV_PREFIX = "PROJECTS_DB_";
+	private static final String RESOURCE = "projects-db.properties";
+
+	//@formatter:off
+	private static final Map<String, String> DEFAULTS = defaults(
+			"host", "localhost",
+			"port", "3306",
+			"schema", "projects",
+			"user", "projects",
+			"password", "projects",
+			"useSSL", "false",
+			// Lets ProjectDao load a chunk of project aggregates in one round trip instead of four.
+			// Off because it also lets an injected "; DROP ..." run, should SQL ever be concatenated
+			"allowMultiQueries", "false",
+			// Server-side prepared statements save the server re-parsing SQL but cost an extra round
+			// trip per prepare, which the pool's statement cache pays only once per connection
+			"useServerPrepStmts", "false",
+			// The driver's own cache of parsed SQL. Off because the pool's statement cache already
+			// keeps each statement prepared per connection; turn it on with statementCacheSize=0
+			"cachePrepStmts", "false",
+			"prepStmtCacheSize", "250",
+			"prepStmtCacheSqlLimit", "2048",
+			// Turns batched inserts into multi-row INSERT statements
+			"rewriteBatchedStatements", "true",
+			// Read streamed results defaultFetchSize rows per round trip through a server-side cursor
+			// instead of one row at a time over a connection that stays busy until the end
+			"useCursorFetch", "false",
+			"defaultFetchSize", "1000",
+			"connectTimeoutMillis", "10000",
+			// Zero waits for as long as a statement runs
+			"socketTimeoutMillis", "0",
+			"poolMinSize", "2",
+			"poolMaxSize", "10",
+			"poolConnectionTimeoutMillis", "30000",
+			"statementCacheSize", "64",
+			"migrate", "false",
+			"replicas", "",
+			"replicaMaxLagMillis", "1000",
+			"replicaCheckMillis", "1000",
+			"replicaBorrowTimeoutMillis", "100",
+			// How often the config file is checked for changes. Zero turns the check off.
+			"reloadIntervalMillis", "10000",
+			"config", "");
+	//@formatter:on
+
+	// Settings a running application picks up on reload
+	public static final Set<String> RELOADABLE = Set.of("poolMinSize", "poolMaxSize", "poolConnectionTimeoutMillis", "statementCacheSize", "defaultFetchSize");
+
+	// Setting name -> value, for every setting
+	private final Map<String, String> values;
+	// Setting name -> where its value came from
+	private final Map<String, String> sources;
+
+	private final String host;
+	private final int port;
+	private final List<String> replicas;
+	private final int poolMinSize;
+	private final int poolMaxSize;
+	private final long poolConnectionTimeoutMillis;
+	private final int statementCacheSize;
+	private final boolean useCursorFetch;
+	private final boolean allowMultiQueries;
+	private final int defaultFetchSize;
+	private final boolean migrate;
+	private final long replicaMaxLagMillis;
+	private final long replicaCheckMillis;
+	private final long replicaBorrowTimeoutMillis;
+	private final long reloadIntervalMillis;
+	private final Properties connectionProperties = new Properties();
+
+
+	private DbConfig(Map<String, String> values, Map<String, String> sources) {
+		this.values = Collections.unmodifiableMap(new TreeMap<>(values));
+		this.sources = sources;
+
+		List<String> problems = new ArrayList<>();
+
+		for(String name : values.keySet()) {
+			if(!DEFAULTS.containsKey(name)) {
+				// unmatched environment variables keep their own name
+				String key = name.startsWith(ENV_PREFIX) ? name : PREFIX + name;
+				problems.add(key + " (from " + sources.get(name) + ") is not a known setting");
+			}
+		}
+
+		host = text("host", problems);
+		port = (int)number("port", 1, 65_535, problems);
+		replicas = replicaList(problems);
+		poolMinSize = (int)number("poolMinSize", 0, 10_000, problems);
+		poolMaxSize = (int)number("poolMaxSize", 1, 10_000, problems);
+		poolConnectionTimeoutMillis = number("poolConnectionTimeoutMillis", 0, Long.MAX_VALUE, problems);
+		statementCacheSize = (int)number("statementCacheSize", 0, 10_000, problems);
+		useCursorFetch = flag("useCursorFetch", problems);
+		allowMultiQueries = flag("allowMultiQueries", problems);
+		defaultFetchSize = (int)number("defaultFetchSize", 0, Integer.MAX_VALUE, problems);
+		migrate = flag("migrate", problems);
+		replicaMaxLagMillis = number("replicaMaxLagMillis", 0, Long.MAX_VALUE, problems);
+		replicaCheckMillis = number("replicaCheckMillis", 1, Long.MAX_VALUE, problems);
+		replicaBorrowTimeoutMillis = number("replicaBorrowTimeoutMillis", 0, Long.MAX_VALUE, problems);
+		reloadIntervalMillis = number("reloadIntervalMillis", 0, Long.MAX_VALUE, problems);
+
+		if(poolMinSize > poolMaxSize) {
+			problems.add(PREFIX + "poolMinSize (" + poolMinSize + ") is larger than " + PREFIX + "poolMaxSize (" + poolMaxSize + ")");
+		}
+
+		// a cursor with no fetch size hands back the whole result at once
+		if(useCursorFetch && defaultFetchSize == 0) {
+			problems.add(PREFIX + "defaultFetchSize must be above 0 when " + PREFIX + "useCursorFetch is on");
+		}
+
+		//@formatter:off
+		connectionProperties.setProperty("user", text("user", problems));
+		connectionProperties.setProperty("password", values.get("password"));
+		connectionProperties.setProperty("useSSL", Boolean.toString(flag("useSSL", problems)));
+		connectionProperties.setProperty("allowMultiQueries", Boolean.toString(allowMultiQueries));
+		connectionProperties.setProperty("useServerPrepStmts", Boolean.toString(flag("useServerPrepStmts", problems)));
+		connectionProperties.setProperty("cachePrepStmts", Boolean.toString(flag("cachePrepStmts", problems)));
+		connectionProperties.setProperty("prepStmtCacheSize", Long.toString(number("prepStmtCacheSize", 0, 100_000, problems)));
+		connectionProperties.setProperty("prepStmtCacheSqlLimit", Long.toString(number("prepStmtCacheSqlLimit", 0, 1_000_000, problems)));
+		connectionProperties.setProperty("rewriteBatchedStatements", Boolean.toString(flag("rewriteBatchedStatements", problems)));
+		connectionProperties.setProperty("useCursorFetch", Boolean.toString(useCursorFetch));
+		connectionProperties.setProperty("connectTimeout", Long.toString(number("connectTimeoutMillis", 0, Integer.MAX_VALUE, problems)));
+		connectionProperties.setProperty("socketTimeout", Long.toString(number("socketTimeoutMillis", 0, Integer.MAX_VALUE, problems)));
+		//@formatter:on
+
+		text("schema", problems);
+
+		if(!problems.isEmpty()) {
+			throw new DbException("Invalid database settings:\n  " + String.join("\n  ", problems));
+		}
+	}
+
+
+	/**
+	 * Reads the settings from every source in order of precedence and checks them.
+	 *
+	 * @throws DbException listing every invalid setting
+	 */
+	public static DbConfig load() {
+		Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+		Map<String, String> sources = new LinkedHashMap<>();
+
+		DEFAULTS.keySet().forEach(name -> sources.put(name, "default"));
+
+		try(InputStream in = DbConfig.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+			if(Objects.nonNull(in)) {
+				Properties properties = new Properties();
+				properties.load(in);
+				putAll(values, sources, properties, "classpath " + RESOURCE);
+			}
+		}
+		catch(IOException e) {
+			throw new DbException("Unable to read " + RESOURCE, e);
+		}
+
+		Path file = configFile();
+
+		if(Objects.nonNull(file)) {
+			try(Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				Properties properties = new Properties();
+				properties.load(in);
+				putAll(values, sources, properties, file.toString());
+			}
+			catch(IOException e) {
+				throw new DbException("Unable to read the database config file " + file, e);
+			}
+		}
+
+		for(Map.Entry<String, String> entry : System.getenv().entrySet()) {
+			if(entry.getKey().startsWith(ENV_PREFIX)) {
+				String name = settingName(entry.getKey());
+				values.put(name, entry.getValue());
+				sources.put(name, "environment " + entry.getKey());
+			}
+		}
+
+		putAll(values, sources, System.getProperties(), "system property");
+
+		return new DbConfig(values, sources);
+	}
+
+	/**
+	 * The file named by projects.db.config or PROJECTS_DB_CONFIG, or null if neither is set.
+	 */
+	public static Path configFile() {
+		String name = System.getProperty(PREFIX + "config", System.getenv(ENV_PREFIX + "CONFIG"));
+
+		return Objects.isNull(name) || name.isBlank() ? null : Path.of(name);
+	}
+
+	/**
+	 * This config's fixed settings with the reloadable settings of the newer one.
+	 */
+	DbConfig withReloadableFrom(DbConfig newer) {
+		Map<String, String> merged = new LinkedHashMap<>(values);
+		Map<String, String> mergedSources = new LinkedHashMap<>(sources);
+
+		for(String name : RELOADABLE) {
+			merged.put(name, newer.values.get(name));
+			mergedSources.put(name, newer.sources.get(name));
+		}
+
+		return new DbConfig(merged, mergedSources);
+	}
+
+	/**
+	 * Names of the settings whose values differ from the other config.
+	 */
+	List<String> changedSettings(DbConfig other) {
+		return values.keySet().stream().filter(name -> !Objects.equals(values.get(name), other.values.get(name))).collect(Collectors.toList());
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public String getUrl(String host, int port) {
+		return "jdbc:mysql://" + host + ":" + port + "/" + values.get("schema");
+	}
+
+	// Driver properties, including the user and password
+	public Properties getConnectionProperties() {
+		return (Properties)connectionProperties.clone();
+	}
+
+	// host:port of each replica
+	public List<String> getReplicas() {
+		return replicas;
+	}
+
+	public PoolConfig getPoolConfig() {
+		PoolConfig poolConfig = new PoolConfig();
+
+		poolConfig.setMinSize(poolMinSize);
+		poolConfig.setMaxSize(poolMaxSize);
+		poolConfig.setConnectionTimeoutMillis(poolConnectionTimeoutMillis);
+		poolConfig.setStatementCacheSize(statementCacheSize);
+
+		return poolConfig;
+	}
+
+	public ReplicaConfig getReplicaConfig() {
+		ReplicaConfig replicaConfig = new ReplicaConfig();
+
+		replicaConfig.setMaxLagMillis(replicaMaxLagMillis);
+		replicaConfig.setHealthCheckIntervalMillis(replicaCheckMillis);
+		replicaConfig.setBorrowTimeoutMillis(replicaBorrowTimeoutMillis);
+
+		return replicaConfig;
+	}
+
+	public boolean isUseCursorFetch() {
+		return useCursorFetch;
+	}
+
+	public boolean isAllowMultiQueries() {
+		return allowMultiQueries;
+	}
+
+	public int getDefaultFetchSize() {
+		return defaultFetchSize;
+	}
+
+	public boolean isMigrate() {
+		return migrate;
+	}
+
+	public long getReloadIntervalMillis() {
+		return reloadIntervalMillis;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+
+		values.forEach((name, value) -> {
+			//@formatter:off
+			text.append(PREFIX).append(name).append(" = ")
+					.append(name.equals("password") ? "****" : value)
+					.append(" (").append(sources.get(name)).append(")\n");
+			//@formatter:on
+		});
+
+		return text.toString();
+	}
+
+	private String text(String name, List<String> problems) {
+		String value = values.get(name).trim();
+
+		if(value.isEmpty()) {
+			problems.add(describe(name) + " must not be empty");
+		}
+
+		return value;
+	}
+
+	private long number(String name, long min, long max, List<String> problems) {
+		try {
+			long value = Long.parseLong(values.get(name).trim());
+
+			if(value >= min && value <= max) {
+				return value;
+			}
+
+			problems.add(describe(name) + " must be between " + min + " and " + max);
+		}
+		catch(NumberFormatException e) {
+			problems.add(describe(name) + " must be a whole number");
+		}
+
+		return Long.parseLong(DEFAULTS.get(name));
+	}
+
+	private boolean flag(String name, List<String> problems) {
+		String value = values.get(name).trim();
+
+		if(!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+			problems.add(describe(name) + " must be true or false");
+		}
+
+		return Boolean.parseBoolean(value);
+	}
+
+	private List<String> replicaList(List<String> problems) {
+		List<String> addresses = new ArrayList<>();
+
+		for(String address : values.get("replicas").split(",")) {
+			if(address.isBlank()) {
+				continue;
+			}
+
+			String[] hostPort = address.trim().split(":");
+
+			try {
+				int replicaPort = hostPort.length > 1 ? Integer.parseInt(hostPort[1]) : port;
+
+				if(hostPort.length > 2 || hostPort[0].isEmpty() || replicaPort < 1 || replicaPort > 65_535) {
+					throw new NumberFormatException();
+				}
+
+				addresses.add(hostPort[0] + ":" + replicaPort);
+			}
+			catch(NumberFormatException e) {
+				problems.add(describe("replicas") + " must be a comma separated list of host or host:port");
+			}
+		}
+
+		return Collections.unmodifiableList(addresses);
+	}
+
+	private String describe(String name) {
+		return PREFIX + name + " = '" + (name.equals("password") ? "****" : values.get(name)) + "' (from " + sources.get(name) + ")";
+	}
+
+	private static void putAll(Map<String, String> values, Map<String, String> sources, Properties properties, String source) {
+		for(String key : properties.stringPropertyNames()) {
+			if(key.startsWith(PREFIX)) {
+				String name = key.substring(PREFIX.length());
+				values.put(name, properties.getProperty(key));
+				sources.put(name, source);
+			}
+		}
+	}
+
+	// PROJECTS_DB_POOL_MAX_SIZE -> poolMaxSize, matched against the known names so acronyms like
+	// useSSL map too
+	private static String settingName(String envName) {
+		String flat = envName.substring(ENV_PREFIX.length()).replace("_", "");
+
+		for(String name : DEFAULTS.keySet()) {
+			if(name.equalsIgnoreCase(flat)) {
+				return name;
+			}
+		}
+
+		return envName;
+	}
+
+	private static Map<String, String> defaults(String... namesAndValues) {
+		Map<String, String> defaults = new LinkedHashMap<>();
+
+		for(int pos = 0; pos < namesAndValues.length; pos += 2) {
+			defaults.put(namesAndValues[pos], namesAndValues[pos + 1]);
+		}
+
+		return Collections.unmodifiableMap(defaults);
+	}
+
+}
@@ -1,38 +1,302 @@
- package projects.dao;
+package projects.dao;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import projects.exception.DbException;
+import provided.util.ConnectionProvider;
 
 
 
+/**
+ * The shared connection pools of the application, built from {@link DbConfig}. Settings are read
+ * when first needed; see DbConfig for where they come from.
+ */
 public class DbConnection {
-	
-	private static  String HOST = "Localhost";
-	private static  String PASSWORD = "projects";
-	private static int PORT = 3306;
-	private static String SCHEMA = "projects";
-	private static String USER = "projects";
-
-	
+
+	private static final Logger LOG = Logger.getLogger(DbConnection.class.getName());
+
+	// Loaded on first use. reloadConfig replaces it, keeping the settings fixed at pool creation.
+	private static volatile DbConfig config;
+
+	// Shared by every DAO. Created on the first borrow, so the app does not connect until it needs to.
+	private static ConnectionPool pool;
+	// Wraps pool when replicas are configured
+	private static ReplicaRouter router;
+	// The primary pool and every replica pool, for applying reloaded tunables
+	private static final List<ConnectionPool> pools = new ArrayList<>();
+
+	// Modification time of the config file when it was last read by the reloader
+	private static FileTime configFileTime;
+
+	// Given to the DAOs that a service builds at startup. It only creates the pools on its first
+	// borrow, so starting the app does not connect, migrate or check replicas.
+	private static final ConnectionProvider LAZY_PROVIDER = new ConnectionProvider() {
+		@Override
+		public Connection getConnection() {
+			return getConnectionProvider().getConnection();
+		}
+
+		@Override
+		public Connection getReadConnection() {
+			return getConnectionProvider().getReadConnection();
+		}
+	};
+
+
 	public static Connection getConnection() {
-		
-		String uri = String.format("jdbc:mysql://%s:%d/%s?user=%s&password=%s&useSSL=false", HOST, PORT, SCHEMA, USER, PASSWORD );
-		
-//		System.out.println("Connection with url=" + uri);
-		
+		return getConnectionProvider().getConnection();
+	}
+
+
+	/**
+	 * Applies the bundled migration scripts that the primary database has not seen yet. The first
+	 * borrow only does this when projects.db.migrate is set.
+	 *
+	 * @return The versions applied by this call.
+	 */
+	public static synchronized List<Integer> migrateSchema() {
+		getConnectionProvider();
+		return new SchemaMigrator(pool).migrate();
+	}
+
+
+	/**
+	 * The shared pools, creating them if this is the first call: the primary pool is opened, the
+	 * schema migrated when projects.db.migrate is set, the indexes checked and the replicas
+	 * connected.
+	 */
+	public static synchronized ConnectionProvider getConnectionProvider() {
+		if(Objects.isNull(pool)) {
+			DbConfig settings = getConfig();
+			ConnectionPool created = new ConnectionPool(settings.getUrl(settings.getHost(), settings.getPort()), settings.getConnectionProperties(), settings.getPoolConfig());
+
+			try {
+				if(settings.isMigrate()) {
+					new SchemaMigrator(created).migrate();
+				}
+
+				// a bad replica fails here rather than quietly reading everything from the primary
+				router = settings.getReplicas().isEmpty() ? null : createRouter(settings, created);
+			}
+			catch(RuntimeException e) {
+				created.close();
+				throw e;
+			}
+
+			// Only reports; a missing index makes queries slow, not wrong
+			new IndexAdvisor(created).check(ProjectDao.REQUIRED_INDEXES);
+
+			pools.add(0, created);
+			pool = created;
+		}
+
+		return Objects.isNull(router) ? pool : router;
+	}
+
+
+	/**
+	 * A provider for the shared pools that does not create them until a connection is borrowed. The
+	 * default constructors of the DAOs use it, so building a service does not touch the database.
+	 * Every caller gets the same instance, so DAOs built with it can join each other's transactions.
+	 */
+	public static ConnectionProvider getLazyConnectionProvider() {
+		return LAZY_PROVIDER;
+	}
+
+
+	/**
+	 * The settings in use. Loaded on first call without connecting to the database.
+	 *
+	 * @throws DbException if the settings are invalid
+	 */
+	public static DbConfig getConfig() {
+		DbConfig current = config;
+
+		if(Objects.nonNull(current)) {
+			return current;
+		}
+
+		synchronized(DbConnection.class) {
+			if(Objects.isNull(config)) {
+				config = DbConfig.load();
+				LOG.config(() -> "Database settings:\n" + config);
+				startReloader();
+			}
+
+			return config;
+		}
+	}
+
+
+	/**
+	 * Loads the settings again and applies the ones in {@link DbConfig#RELOADABLE} to the running
+	 * pools and DAOs. Other changed settings are logged and take effect on the next start. Invalid
+	 * settings are rejected and the current ones kept.
+	 *
+	 * @return the settings now in use
+	 * @throws DbException if the new settings are invalid
+	 */
+	public static synchronized DbConfig reloadConfig() {
+		DbConfig current = getConfig();
+		DbConfig loaded = DbConfig.load();
+
+		if(Objects.isNull(pool)) {
+			// nothing has been created from the settings yet, so all of them can change
+			config = loaded;
+			return loaded;
+		}
+
+		List<String> fixed = current.changedSettings(loaded);
+		fixed.removeAll(DbConfig.RELOADABLE);
+
+		if(!fixed.isEmpty()) {
+			LOG.warning("Changed database settings " + fixed + " take effect when the application is restarted");
+		}
+
+		DbConfig applied = current.withReloadableFrom(loaded);
+		PoolConfig tunables = applied.getPoolConfig();
+
+		pools.forEach(created -> created.applyTunables(tunables));
+		config = applied;
+
+		List<String> changed = current.changedSettings(applied);
+
+		if(!changed.isEmpty()) {
+			LOG.info("Applied changed database settings " + changed);
+		}
+
+		return applied;
+	}
+
+
+	/**
+	 * Fetch size for queries that stream their rows. With useCursorFetch the rows come through a
+	 * server-side cursor defaultFetchSize at a time; otherwise Integer.MIN_VALUE has Connector/J
+	 * stream them one by one. Read on every query, so a reloaded fetch size applies to the next one.
+	 */
+	public static int getStreamFetchSize() {
+		DbConfig current = getConfig();
+
+		return current.isUseCursorFetch() ? current.getDefaultFetchSize() : Integer.MIN_VALUE;
+	}
+
+
+	/**
+	 * Stats of the primary pool. Replica pools are reported by {@link #getReplicaRouter()}.
+	 */
+	public static PoolStats getPoolStats() {
+		getConnectionProvider();
+		return pool.getStats();
+	}
+
+
+	/**
+	 * The router that spreads reads over the replicas, if any are configured.
+	 */
+	public static Optional<ReplicaRouter> getReplicaRouter() {
+		getConnectionProvider();
+		return Optional.ofNullable(router);
+	}
+
+
+	/**
+	 * How far behind the primary a read may be: zero without replicas. Known without connecting, so
+	 * the service can size its cache rules before the first query.
+	 */
+	public static Duration getMaxReadStaleness() {
+		DbConfig current = getConfig();
+
+		return current.getReplicas().isEmpty() ? Duration.ZERO : Duration.ofMillis(current.getReplicaConfig().getMaxStalenessMillis());
+	}
+
+
+	private static ReplicaRouter createRouter(DbConfig settings, ConnectionPool primary) {
+		Map<String, ConnectionPool> replicas = new LinkedHashMap<>();
+
 		try {
-			Connection conn = DriverManager.getConnection(uri);
-			System.out.println("Successfully optained connection!");
-			return conn;
-			
-		} catch (SQLException e) {
-			System.out.println("Error getting a connection");
-			throw new DbException(e);
-		}
-		
+			for(String address : settings.getReplicas()) {
+				int colon = address.lastIndexOf(':');
+				String host = address.substring(0, colon);
+				int port = Integer.parseInt(address.substring(colon + 1));
+
+				replicas.put(address, new ConnectionPool(settings.getUrl(host, port), settings.getConnectionProperties(), settings.getPoolConfig()));
+			}
+
+			ReplicaRouter created = new ReplicaRouter(primary, replicas, settings.getReplicaConfig());
+			pools.addAll(replicas.values());
+
+			return created;
+		}
+		catch(RuntimeException e) {
+			replicas.values().forEach(ConnectionPool::close);
+			throw e;
+		}
+	}
+
+
+	/*
+	 * Polls the config file's modification time rather than using a WatchService, which is not
+	 * reliable for files on network or container-mounted volumes.
+	 */
+	private static void startReloader() {
+		Path file = DbConfig.configFile();
+		long interval = config.getReloadIntervalMillis();
+
+		if(Objects.isNull(file) || interval == 0) {
+			return;
+		}
+
+		configFileTime = modifiedTime(file);
+
+		// Watches the config file for changes for as long as the JVM runs
+		ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "db-config-reloader");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		reloader.scheduleWithFixedDelay(() -> {
+			FileTime modified = modifiedTime(file);
+
+			if(Objects.isNull(modified) || modified.equals(configFileTime)) {
+				return;
+			}
+
+			configFileTime = modified;
+
+			try {
+				reloadConfig();
+			}
+			catch(RuntimeException e) {
+				LOG.log(Level.WARNING, "Kept the current database settings; " + file + " is invalid", e);
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+
+	private static FileTime modifiedTime(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		}
+		catch(IOException e) {
+			return null;
+		}
 	}
 
 }
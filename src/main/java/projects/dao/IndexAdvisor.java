@@ -0,0 +1,97 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import projects.exception.DbException;
+import provided.util.ConnectionProvider;
+
+/**
+ * Compares the indexes in the connected schema with the indexes the DAO queries need and reports
+ * the ones that are missing. Run at startup so a database that was built by hand, or restored from
+ * an old dump, is flagged before its queries start scanning whole tables.
+ */
+public class IndexAdvisor {
+
+	private static final Logger LOG = Logger.getLogger(IndexAdvisor.class.getName());
+
+	//@formatter:off
+	private static final String INDEX_COLUMNS_SQL = ""
+			+ "SELECT TABLE_NAME, INDEX_NAME, COLUMN_NAME "
+			+ "FROM information_schema.STATISTICS "
+			+ "WHERE TABLE_SCHEMA = DATABASE() "
+			+ "ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
+	//@formatter:on
+
+	private final ConnectionProvider connectionProvider;
+
+
+	public IndexAdvisor(ConnectionProvider connectionProvider) {
+		this.connectionProvider = connectionProvider;
+	}
+
+
+	/**
+	 * Returns the required indexes that no index in the schema satisfies.
+	 */
+	public List<RequiredIndex> findMissing(List<RequiredIndex> required) {
+		// table name -> columns of each of its indexes, in index order
+		Map<String, Map<String, List<String>>> indexes = new HashMap<>();
+
+		try(Connection conn = connectionProvider.getConnection(); PreparedStatement stmt = conn.prepareStatement(INDEX_COLUMNS_SQL)) {
+			try(ResultSet rs = stmt.executeQuery()) {
+				while(rs.next()) {
+					//@formatter:off
+					indexes.computeIfAbsent(rs.getString("TABLE_NAME").toLowerCase(), table -> new HashMap<>())
+							.computeIfAbsent(rs.getString("INDEX_NAME"), index -> new ArrayList<>())
+							.add(rs.getString("COLUMN_NAME"));
+					//@formatter:on
+				}
+			}
+		}
+		catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+		List<RequiredIndex> missing = new ArrayList<>();
+
+		for(RequiredIndex index : required) {
+			Map<String, List<String>> tableIndexes = indexes.getOrDefault(index.getTable().toLowerCase(), Map.of());
+
+			if(tableIndexes.values().stream().noneMatch(index::isSatisfiedBy)) {
+				missing.add(index);
+			}
+		}
+
+		return missing;
+	}
+
+	/**
+	 * Logs a warning for each missing index. A failure to read the schema is logged, not thrown, so
+	 * the check never stops the application from starting.
+	 */
+	public List<RequiredIndex> check(List<RequiredIndex> required) {
+		try {
+			List<RequiredIndex> missing = findMissing(required);
+
+			for(RequiredIndex index : missing) {
+				LOG.warning("Missing index on " + index);
+			}
+
+			return missing;
+		}
+		catch(DbException e) {
+			LOG.log(Level.WARNING, "Unable to check indexes", e);
+			return List.of();
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package projects.dao;
+
+/**
+ * Tuning values for {@link ConnectionPool}. The defaults are sized for the console application and
+ * a small service; override them with the setters before the pool is created, or change a running
+ * pool with {@link ConnectionPool#applyTunables(PoolConfig)}. The fields are volatile because a
+ * running pool reads them from every borrowing thread.
+ */
+public class PoolConfig {
+
+	// Number of connections the pool tries to keep open even when nothing is borrowed
+	private volatile int minSize = 2;
+	// Hard upper bound on open connections (borrowed + idle)
+	private volatile int maxSize = 10;
+	// How long a caller waits for a free connection before giving up
+	private volatile long connectionTimeoutMillis = 30_000;
+	// Idle connections above minSize are closed after sitting unused this long
+	private volatile long idleTimeoutMillis = 600_000;
+	// Ping idle connections before handing them out
+	private volatile boolean validateOnBorrow = true;
+	private volatile int validationTimeoutSeconds = 5;
+	// Warn when a connection is held longer than this. Zero disables leak detection.
+	private volatile long leakDetectionThresholdMillis = 0;
+	// How often the background thread evicts idle connections and checks for leaks
+	private volatile long housekeepingIntervalMillis = 30_000;
+	// Prepared statements kept open per connection. Zero disables statement caching.
+	private volatile int statementCacheSize = 64;
+
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public void setMinSize(int minSize) {
+		this.minSize = minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public long getConnectionTimeoutMillis() {
+		return connectionTimeoutMillis;
+	}
+
+	public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+		this.connectionTimeoutMillis = connectionTimeoutMillis;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public boolean isValidateOnBorrow() {
+		return validateOnBorrow;
+	}
+
+	public void setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	public long getLeakDetectionThresholdMillis() {
+		return leakDetectionThresholdMillis;
+	}
+
+	public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+	}
+
+	public long getHousekeepingIntervalMillis() {
+		return housekeepingIntervalMillis;
+	}
+
+	public void setHousekeepingIntervalMillis(long housekeepingIntervalMillis) {
+		this.housekeepingIntervalMillis = housekeepingIntervalMillis;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+}
@@ -0,0 +1,119 @@
+package projects.dao;
+
+/**
+ * Point-in-time snapshot of {@link ConnectionPool} counters. The counts are read without locking,
+ * so under load they may be very slightly inconsistent with each other.
+ */
+public class PoolStats {
+
+	private final int totalConnections;
+	private final int idleConnections;
+	private final int activeConnections;
+	private final int waitingThreads;
+	private final long createdCount;
+	private final long destroyedCount;
+	private final long acquireCount;
+	private final long acquireTimeoutCount;
+	private final long validationFailureCount;
+	private final long leakCount;
+	private final long totalAcquireNanos;
+	private final long statementPrepareCount;
+	private final long statementCacheHitCount;
+
+
+	//@formatter:off
+	PoolStats(int totalConnections, int idleConnections, int activeConnections, int waitingThreads,
+			long createdCount, long destroyedCount, long acquireCount, long acquireTimeoutCount,
+			long validationFailureCount, long leakCount, long totalAcquireNanos,
+			long statementPrepareCount, long statementCacheHitCount) {
+	//@formatter:on
+		this.totalConnections = totalConnections;
+		this.idleConnections = idleConnections;
+		this.activeConnections = activeConnections;
+		this.waitingThreads = waitingThreads;
+		this.createdCount = createdCount;
+		this.destroyedCount = destroyedCount;
+		this.acquireCount = acquireCount;
+		this.acquireTimeoutCount = acquireTimeoutCount;
+		this.validationFailureCount = validationFailureCount;
+		this.leakCount = leakCount;
+		this.totalAcquireNanos = totalAcquireNanos;
+		this.statementPrepareCount = statementPrepareCount;
+		this.statementCacheHitCount = statementCacheHitCount;
+	}
+
+	public int getTotalConnections() {
+		return totalConnections;
+	}
+
+	public int getIdleConnections() {
+		return idleConnections;
+	}
+
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	public int getWaitingThreads() {
+		return waitingThreads;
+	}
+
+	public long getCreatedCount() {
+		return createdCount;
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount;
+	}
+
+	public long getAcquireCount() {
+		return acquireCount;
+	}
+
+	public long getAcquireTimeoutCount() {
+		return acquireTimeoutCount;
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount;
+	}
+
+	public long getLeakCount() {
+		return leakCount;
+	}
+
+	// statements the driver actually prepared (cache misses)
+	public long getStatementPrepareCount() {
+		return statementPrepareCount;
+	}
+
+	// prepareStatement calls answered from a connection's statement cache
+	public long getStatementCacheHitCount() {
+		return statementCacheHitCount;
+	}
+
+	// average time a caller spent waiting for a connection, including physical connects
+	public double getAverageAcquireMillis() {
+		return acquireCount == 0 ? 0.0 : totalAcquireNanos / 1_000_000.0 / acquireCount;
+	}
+
+	@Override
+	public String toString() {
+		//@formatter:off
+		return "total = " + totalConnections
+				+ ", idle = " + idleConnections
+				+ ", active = " + activeConnections
+				+ ", waiting = " + waitingThreads
+				+ ", created = " + createdCount
+				+ ", destroyed = " + destroyedCount
+				+ ", acquired = " + acquireCount
+				+ ", timeouts = " + acquireTimeoutCount
+				+ ", validationFailures = " + validationFailureCount
+				+ ", leaks = " + leakCount
+				+ ", statementPrepares = " + statementPrepareCount
+				+ ", statementCacheHits = " + statementCacheHitCount
+				+ ", avgAcquireMillis = " + String.format("%.3f", getAverageAcquireMillis());
+		//@formatter:on
+	}
+
+}
@@ -0,0 +1,861 @@
+package projects.dao;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import projects.metrics.DaoMetrics;
+import projects.metrics.Phase;
+import projects.metrics.SlowQueryLog;
+
+/**
+ * The PreparedStatement that ConnectionPool hands out when it caches, times or logs statements.
+ * Every call goes straight to the driver's statement. Executions are also timed for DaoMetrics,
+ * and slow ones are reported to SlowQueryLog. Closing a cached statement hands it back to its
+ * connection's statement cache instead of closing it.
+ *
+ * Only the borrowing thread uses a statement, so nothing here is synchronized.
+ */
+final class PooledStatement implements PreparedStatement {
+
+	private final PreparedStatement physical;
+	private final ConnectionPool pool;
+	private final Connection owner;
+	// null for a statement that is not in the cache
+	private final ConnectionPool.CachedStatement cached;
+	private final String sql;
+	private boolean closed;
+
+	// Values bound since the last clearParameters, tracked only while the slow query log is on
+	private final SortedMap<Integer, Object> parameters = new TreeMap<>();
+	// The last execution if it was slow. It is logged once its rows have been read.
+	private SlowExecution slow;
+
+
+	PooledStatement(PreparedStatement physical, ConnectionPool pool, Connection owner, ConnectionPool.CachedStatement cached, String sql) {
+		this.physical = physical;
+		this.pool = pool;
+		this.owner = owner;
+		this.cached = cached;
+		this.sql = sql;
+	}
+
+
+	@Override
+	public void close() throws SQLException {
+		if(closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+			if(Objects.nonNull(cached)) {
+				cached.giveBack();
+			}
+			else {
+				physical.close();
+			}
+		}
+		finally {
+			logSlow();
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public Connection getConnection() {
+		return owner;
+	}
+
+	@Override
+	public String toString() {
+		return (Objects.nonNull(cached) ? "Cached" : "Pooled") + physical;
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return iface.isInstance(this) ? iface.cast(this) : physical.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || physical.isWrapperFor(iface);
+	}
+
+
+	@Override
+	public ResultSet executeQuery() throws SQLException {
+		return countReadRows(execute(physical::executeQuery));
+	}
+
+	@Override
+	public int executeUpdate() throws SQLException {
+		return execute(physical::executeUpdate);
+	}
+
+	@Override
+	public long executeLargeUpdate() throws SQLException {
+		return execute(physical::executeLargeUpdate);
+	}
+
+	@Override
+	public boolean execute() throws SQLException {
+		return execute(physical::execute);
+	}
+
+	@Override
+	public int[] executeBatch() throws SQLException {
+		return execute(physical::executeBatch);
+	}
+
+	@Override
+	public long[] executeLargeBatch() throws SQLException {
+		return execute(physical::executeLargeBatch);
+	}
+
+	@Override
+	public ResultSet executeQuery(String sql) throws SQLException {
+		return countReadRows(execute(() -> physical.executeQuery(sql)));
+	}
+
+	@Override
+	public int executeUpdate(String sql) throws SQLException {
+		return execute(() -> physical.executeUpdate(sql));
+	}
+
+	@Override
+	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		return execute(() -> physical.executeUpdate(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return execute(() -> physical.executeUpdate(sql, columnIndexes));
+	}
+
+	@Override
+	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+		return execute(() -> physical.executeUpdate(sql, columnNames));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql) throws SQLException {
+		return execute(() -> physical.executeLargeUpdate(sql));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		return execute(() -> physical.executeLargeUpdate(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return execute(() -> physical.executeLargeUpdate(sql, columnIndexes));
+	}
+
+	@Override
+	public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+		return execute(() -> physical.executeLargeUpdate(sql, columnNames));
+	}
+
+	@Override
+	public boolean execute(String sql) throws SQLException {
+		return execute(() -> physical.execute(sql));
+	}
+
+	@Override
+	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+		return execute(() -> physical.execute(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		return execute(() -> physical.execute(sql, columnIndexes));
+	}
+
+	@Override
+	public boolean execute(String sql, String[] columnNames) throws SQLException {
+		return execute(() -> physical.execute(sql, columnNames));
+	}
+
+
+	@Override
+	public ResultSet getResultSet() throws SQLException {
+		checkOpen();
+		return countReadRows(physical.getResultSet());
+	}
+
+
+	@Override
+	public void clearParameters() throws SQLException {
+		checkOpen();
+		parameters.clear();
+		physical.clearParameters();
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		bind(parameterIndex, null);
+		physical.setNull(parameterIndex, sqlType);
+	}
+
+	@Override
+	public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+		bind(parameterIndex, null);
+		physical.setNull(parameterIndex, sqlType, typeName);
+	}
+
+	@Override
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBoolean(parameterIndex, x);
+	}
+
+	@Override
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setByte(parameterIndex, x);
+	}
+
+	@Override
+	public void setShort(int parameterIndex, short x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setShort(parameterIndex, x);
+	}
+
+	@Override
+	public void setInt(int parameterIndex, int x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setInt(parameterIndex, x);
+	}
+
+	@Override
+	public void setLong(int parameterIndex, long x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setLong(parameterIndex, x);
+	}
+
+	@Override
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setFloat(parameterIndex, x);
+	}
+
+	@Override
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setDouble(parameterIndex, x);
+	}
+
+	@Override
+	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBigDecimal(parameterIndex, x);
+	}
+
+	@Override
+	public void setString(int parameterIndex, String x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setString(parameterIndex, x);
+	}
+
+	@Override
+	public void setNString(int parameterIndex, String value) throws SQLException {
+		bind(parameterIndex, value);
+		physical.setNString(parameterIndex, value);
+	}
+
+	@Override
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBytes(parameterIndex, x);
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setDate(parameterIndex, x);
+	}
+
+	@Override
+	public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setDate(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setTime(parameterIndex, x);
+	}
+
+	@Override
+	public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setTime(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setTimestamp(parameterIndex, x);
+	}
+
+	@Override
+	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setTimestamp(parameterIndex, x, cal);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setObject(parameterIndex, x);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setObject(parameterIndex, x, targetSqlType);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setObject(parameterIndex, x, targetSqlType);
+	}
+
+	@Override
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setAsciiStream(parameterIndex, x);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setAsciiStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setAsciiStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBinaryStream(parameterIndex, x);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBinaryStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBinaryStream(parameterIndex, x, length);
+	}
+
+	@Deprecated
+	@Override
+	public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setUnicodeStream(parameterIndex, x, length);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setCharacterStream(parameterIndex, reader);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setCharacterStream(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+		bind(parameterIndex, value);
+		physical.setNCharacterStream(parameterIndex, value);
+	}
+
+	@Override
+	public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+		bind(parameterIndex, value);
+		physical.setNCharacterStream(parameterIndex, value, length);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setBlob(parameterIndex, x);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+		bind(parameterIndex, inputStream);
+		physical.setBlob(parameterIndex, inputStream);
+	}
+
+	@Override
+	public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+		bind(parameterIndex, inputStream);
+		physical.setBlob(parameterIndex, inputStream, length);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setClob(parameterIndex, x);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setClob(parameterIndex, reader);
+	}
+
+	@Override
+	public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setClob(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, NClob value) throws SQLException {
+		bind(parameterIndex, value);
+		physical.setNClob(parameterIndex, value);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setNClob(parameterIndex, reader);
+	}
+
+	@Override
+	public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+		bind(parameterIndex, reader);
+		physical.setNClob(parameterIndex, reader, length);
+	}
+
+	@Override
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setArray(parameterIndex, x);
+	}
+
+	@Override
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setRef(parameterIndex, x);
+	}
+
+	@Override
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setRowId(parameterIndex, x);
+	}
+
+	@Override
+	public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+		bind(parameterIndex, xmlObject);
+		physical.setSQLXML(parameterIndex, xmlObject);
+	}
+
+	@Override
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+		bind(parameterIndex, x);
+		physical.setURL(parameterIndex, x);
+	}
+
+	@Override
+	public ResultSetMetaData getMetaData() throws SQLException {
+		checkOpen();
+		return physical.getMetaData();
+	}
+
+	@Override
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		checkOpen();
+		return physical.getParameterMetaData();
+	}
+
+	@Override
+	public void addBatch() throws SQLException {
+		checkOpen();
+		physical.addBatch();
+	}
+
+	@Override
+	public void addBatch(String sql) throws SQLException {
+		checkOpen();
+		physical.addBatch(sql);
+	}
+
+	@Override
+	public void clearBatch() throws SQLException {
+		checkOpen();
+		physical.clearBatch();
+	}
+
+	@Override
+	public ResultSet getGeneratedKeys() throws SQLException {
+		checkOpen();
+		return physical.getGeneratedKeys();
+	}
+
+	@Override
+	public boolean getMoreResults() throws SQLException {
+		checkOpen();
+		return physical.getMoreResults();
+	}
+
+	@Override
+	public boolean getMoreResults(int current) throws SQLException {
+		checkOpen();
+		return physical.getMoreResults(current);
+	}
+
+	@Override
+	public int getUpdateCount() throws SQLException {
+		checkOpen();
+		return physical.getUpdateCount();
+	}
+
+	@Override
+	public long getLargeUpdateCount() throws SQLException {
+		checkOpen();
+		return physical.getLargeUpdateCount();
+	}
+
+	@Override
+	public int getMaxFieldSize() throws SQLException {
+		checkOpen();
+		return physical.getMaxFieldSize();
+	}
+
+	@Override
+	public void setMaxFieldSize(int max) throws SQLException {
+		checkOpen();
+		physical.setMaxFieldSize(max);
+	}
+
+	@Override
+	public int getMaxRows() throws SQLException {
+		checkOpen();
+		return physical.getMaxRows();
+	}
+
+	@Override
+	public void setMaxRows(int max) throws SQLException {
+		checkOpen();
+		physical.setMaxRows(max);
+	}
+
+	@Override
+	public long getLargeMaxRows() throws SQLException {
+		checkOpen();
+		return physical.getLargeMaxRows();
+	}
+
+	@Override
+	public void setLargeMaxRows(long max) throws SQLException {
+		checkOpen();
+		physical.setLargeMaxRows(max);
+	}
+
+	@Override
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		checkOpen();
+		physical.setEscapeProcessing(enable);
+	}
+
+	@Override
+	public int getQueryTimeout() throws SQLException {
+		checkOpen();
+		return physical.getQueryTimeout();
+	}
+
+	@Override
+	public void setQueryTimeout(int seconds) throws SQLException {
+		checkOpen();
+		physical.setQueryTimeout(seconds);
+	}
+
+	@Override
+	public void cancel() throws SQLException {
+		checkOpen();
+		physical.cancel();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		checkOpen();
+		return physical.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		checkOpen();
+		physical.clearWarnings();
+	}
+
+	@Override
+	public void setCursorName(String name) throws SQLException {
+		checkOpen();
+		physical.setCursorName(name);
+	}
+
+	@Override
+	public void setFetchDirection(int direction) throws SQLException {
+		checkOpen();
+		physical.setFetchDirection(direction);
+	}
+
+	@Override
+	public int getFetchDirection() throws SQLException {
+		checkOpen();
+		return physical.getFetchDirection();
+	}
+
+	@Override
+	public void setFetchSize(int rows) throws SQLException {
+		checkOpen();
+		physical.setFetchSize(rows);
+	}
+
+	@Override
+	public int getFetchSize() throws SQLException {
+		checkOpen();
+		return physical.getFetchSize();
+	}
+
+	@Override
+	public int getResultSetConcurrency() throws SQLException {
+		checkOpen();
+		return physical.getResultSetConcurrency();
+	}
+
+	@Override
+	public int getResultSetType() throws SQLException {
+		checkOpen();
+		return physical.getResultSetType();
+	}
+
+	@Override
+	public int getResultSetHoldability() throws SQLException {
+		checkOpen();
+		return physical.getResultSetHoldability();
+	}
+
+	@Override
+	public void setPoolable(boolean poolable) throws SQLException {
+		checkOpen();
+		physical.setPoolable(poolable);
+	}
+
+	@Override
+	public boolean isPoolable() throws SQLException {
+		checkOpen();
+		return physical.isPoolable();
+	}
+
+	@Override
+	public void closeOnCompletion() throws SQLException {
+		checkOpen();
+		physical.closeOnCompletion();
+	}
+
+	@Override
+	public boolean isCloseOnCompletion() throws SQLException {
+		checkOpen();
+		return physical.isCloseOnCompletion();
+	}
+
+
+	private void checkOpen() throws SQLException {
+		if(closed) {
+			throw new SQLException("Statement is closed");
+		}
+	}
+
+	// setNull binds SQL NULL whatever its type argument
+	private void bind(int parameterIndex, Object value) throws SQLException {
+		checkOpen();
+
+		if(SlowQueryLog.isEnabled()) {
+			parameters.put(parameterIndex, value);
+		}
+	}
+
+	private <T> T execute(SqlCall<T> call) throws SQLException {
+		checkOpen();
+		logSlow();
+
+		long start = DaoMetrics.startTimer();
+		long slowStart = SlowQueryLog.isEnabled() ? System.nanoTime() : 0;
+
+		try {
+			T result = call.call();
+
+			if(start != 0) {
+				DaoMetrics.addRows(updatedRows(result));
+			}
+
+			if(slowStart != 0) {
+				long elapsed = System.nanoTime() - slowStart;
+
+				if(SlowQueryLog.isSlow(elapsed)) {
+					slow = new SlowExecution(new TreeMap<>(parameters), elapsed, updatedRows(result));
+				}
+			}
+
+			return result;
+		}
+		finally {
+			DaoMetrics.stopTimer(Phase.EXECUTE, start);
+		}
+	}
+
+	private ResultSet countReadRows(ResultSet rs) {
+		return Objects.nonNull(slow) && Objects.nonNull(rs) ? slow.countRows(rs) : rs;
+	}
+
+	// executeUpdate and executeBatch report rows written; rows read are counted as they are mapped
+	private static long updatedRows(Object result) {
+		long total = 0;
+
+		if(result instanceof Integer || result instanceof Long) {
+			total = Math.max(((Number)result).longValue(), 0);
+		}
+		else if(result instanceof int[]) {
+			for(int rows : (int[])result) {
+				total += Math.max(rows, 0);
+			}
+		}
+		else if(result instanceof long[]) {
+			for(long rows : (long[])result) {
+				total += Math.max(rows, 0);
+			}
+		}
+
+		return total;
+	}
+
+	/*
+	 * Runs after the statement is closed or executed again, so the rows of the slow execution
+	 * have been counted. The plan is read on another connection of the pool, and only if one is
+	 * free, as the caller's may be in the middle of a transaction.
+	 */
+	private void logSlow() {
+		if(Objects.nonNull(slow)) {
+			SlowExecution execution = slow;
+			slow = null;
+
+			SlowQueryLog.record(sql, execution.parameters, execution.nanos, execution.rows, () -> pool.tryGetConnection(0));
+		}
+	}
+
+
+	@FunctionalInterface
+	private interface SqlCall<T> {
+		T call() throws SQLException;
+	}
+
+
+	/*
+	 * A statement execution that went over the slow query threshold. Rows read through its result
+	 * sets are added to the update count as they are fetched. This is the one proxy left, and only
+	 * slow executions get it.
+	 */
+	private static class SlowExecution {
+		private final SortedMap<Integer, Object> parameters;
+		private final long nanos;
+		private long rows;
+
+		SlowExecution(SortedMap<Integer, Object> parameters, long nanos, long rows) {
+			this.parameters = parameters;
+			this.nanos = nanos;
+			this.rows = rows;
+		}
+
+		ResultSet countRows(ResultSet rs) {
+			//@formatter:off
+			return (ResultSet)Proxy.newProxyInstance(
+					ResultSet.class.getClassLoader(),
+					new Class<?>[] {ResultSet.class},
+					(proxy, method, args) -> {
+						try {
+							Object result = method.invoke(rs, args);
+
+							if(method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+								rows++;
+							}
+
+							return result;
+						}
+						catch(InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+			//@formatter:on
+		}
+	}
+
+}
@@ -6,17 +6,35 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import projects.entity.Category;
 import projects.entity.Material;
 import projects.entity.Project;
+import projects.entity.ProjectSummary;
 import projects.entity.Step;
+import projects.exception.ConcurrentUpdateException;
 import projects.exception.DbException;
+import projects.metrics.DaoMetrics;
+import projects.metrics.MetricsDaoListener;
+import provided.util.ConnectionProvider;
 import provided.util.DaoBase;
+import provided.util.TransactionOptions;
 
 public class ProjectDao extends DaoBase {
 	
@@ -26,314 +44,1482 @@ public class ProjectDao extends DaoBase {
 	public static final String PROJECT_CATEGORY_TABLE = "project_category";
 	public static final String STEP_TABLE = "step";
 	
+	//@formatter:off
+	private static final String INSERT_PROJECT_SQL = ""
+			+ "INSERT INTO " + PROJECT_TABLE +  " "
+			+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
+			+ "VALUES "
+			+ "(?, ?, ?, ?, ?)";
+	//@formatter:on
+	
+	//@formatter:off
+	private static final String UPDATE_PROJECT_SQL = ""
+			+ "UPDATE " + PROJECT_TABLE + " SET "
+			+ "project_name = ?, "
+			+ "estimated_hours = ?, "
+			+ "actual_hours = ?, "
+			+ "difficulty = ?, "
+			+ "notes = ?, "
+			+ "version = version + 1 "
+			+ "WHERE project_id = ?";
+	//@formatter:on
+	
+	// Appended to an update of a row the caller read at a known version, so that the update matches
+	// nothing if another writer has changed the row since
+	private static final String VERSION_CHECK = " AND version = ?";
+	
+	// Rows sent per JDBC batch and committed per transaction by insertProjects
+	public static final int DEFAULT_INSERT_CHUNK_SIZE = 1000;
+	
+	// Distance between consecutive step_order values so a step can be moved without renumbering
+	public static final int STEP_ORDER_GAP = 1024;
+	
+	// Upper bound on ids bound into one IN (...) list so the statement stays a reasonable size. A
+	// power of two because fetchAggregates pads its IN lists up to one, so a full chunk needs no padding.
+	private static final int MAX_IDS_PER_QUERY = 512;
+	
+	// The four aggregate queries by IN list size. Sizes are rounded up to a power of two (see
+	// fetchAggregates) so only a handful of distinct statements reach the statement cache.
+	private static final Map<Integer, List<String>> AGGREGATE_SQL = new ConcurrentHashMap<>();
+	
+	// Indexes the queries below depend on. DbConnection checks for them at startup; the migrations in
+	// db/migration create them.
+	//@formatter:off
+	public static final List<RequiredIndex> REQUIRED_INDEXES = List.of(
+			new RequiredIndex(MATERIAL_TABLE, List.of("project_id"), "fetchProjectsByIds, saveProjectAggregate"),
+			new RequiredIndex(STEP_TABLE, List.of("project_id", "step_order"), "fetchProjectsByIds, addStep, moveStep"),
+			new RequiredIndex(PROJECT_CATEGORY_TABLE, List.of("project_id", "category_id"), "fetchProjectsByIds, saveProjectAggregate"),
+			new RequiredIndex(PROJECT_CATEGORY_TABLE, List.of("category_id", "project_id"), "category deletes and category lookups"));
+	//@formatter:on
+	
+	
+	public ProjectDao() {
+		this(DbConnection.getLazyConnectionProvider());
+	}
+	
+	
+	public ProjectDao(ConnectionProvider connectionProvider) {
+		super(connectionProvider, MetricsDaoListener.INSTANCE, DbException::new);
+	}
+	
 	
 	public Project insertProject(Project project) {
-		//@formatter:off
-		String sql = ""
-				+ "INSERT INTO " + PROJECT_TABLE +  " "
-				+ "(project_name, estimated_hours, actual_hours, difficulty, notes) "
-				+ "VALUES "
-				+ "(?, ?, ?, ?, ?)";
-				
-		//@formatter:on
+		return DaoMetrics.measure("insertProject", () -> {
+			String sql = INSERT_PROJECT_SQL;
 		
-		/** Steps to insert data in to DB
-		 * 1) open a connection 
-		 * 2) start the transaction 
-		 * 3) define prepared statement 
-		 * 4) execute update or query 
-		 * 5) commit transaction *** if we are changing data 
-		 * 
-		 */
+			/** Steps to insert data in to DB
+			 * 1) open a connection 
+			 * 2) start the transaction 
+			 * 3) define prepared statement 
+			 * 4) execute update or query 
+			 * 5) commit transaction *** if we are changing data 
+			 * 
+			 * executeInTransaction takes care of steps 1, 2 and 5, and rolls back if anything fails
+			 */
 		
 		
-		// Step 1 -  get a connection object 
-		try(Connection conn = DbConnection.getConnection()){
+			return executeInTransaction(conn -> {
+				// the id is put back if this or an outer transaction is rolled back
+				restoreProjectOnRollback(project);
 			
-			// Step 2 start the transaction
-			startTransaction(conn);
-			
-			// Step 3 Build and define the prepared statement 
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
+				// Step 3 Build and define the prepared statement 
+				try(PreparedStatement stmt = conn.prepareStatement(sql)){
 				
-				// replace substitution variables in the prepared statement with instance variables from Project object
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
+					// replace substitution variables in the prepared statement with instance variables from Project object
+					setParameter(stmt, 1, project.getProjectName(), String.class);
+					setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+					setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+					setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+					setParameter(stmt, 5, project.getNotes(), String.class);
 				
-				// Step 4 Sends the SQL prepared statement  "INSERT INTO..." command 
-				stmt.executeUpdate();
+					// Step 4 Sends the SQL prepared statement  "INSERT INTO..." command 
+					stmt.executeUpdate();
 				
-				// retrieves the last Id inserted ( the project id is defined by the DB after creation) 
-				Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
+					// retrieves the last Id inserted ( the project id is defined by the DB after creation) 
+					Integer projectId = getLastInsertId(conn, PROJECT_TABLE);
 				
+					// sets the Id retrieved to be the projectId value on the project object
+					project.setProjectId(projectId);
+					project.setVersion(0);
+					return project;
+				}
+			});
+		});
+	}
+
+
+	public List<Project> insertProjects(List<Project> projects) {
+		return insertProjects(projects, DEFAULT_INSERT_CHUNK_SIZE);
+	}
+
+
+	/**
+	 * Inserts many projects using JDBC batching. With rewriteBatchedStatements on the connection URL
+	 * the driver sends each chunk as a single multi-row INSERT, and the generated project ids for the
+	 * whole chunk come back from getGeneratedKeys() without an extra query.
+	 * 
+	 * Each chunk is its own transaction. If a chunk fails it is rolled back and a DbException is
+	 * thrown; chunks before it stay committed and their projects have their ids set, while the
+	 * projects of the failed chunk and the ones after it have none. Called inside an outer
+	 * transaction (see inTransaction) the chunks join it and commit with it instead.
+	 */
+	public List<Project> insertProjects(List<Project> projects, int chunkSize) {
+		return DaoMetrics.measure("insertProjects", () -> {
+			if(chunkSize < 1) {
+				throw new DbException("Chunk size must be at least 1 but was " + chunkSize);
+			}
+		
+			for(int from = 0; from < projects.size(); from += chunkSize) {
+				List<Project> chunk = projects.subList(from, Math.min(from + chunkSize, projects.size()));
+			
+				executeInTransaction(conn -> {
+					try(PreparedStatement stmt = conn.prepareStatement(INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS)){
+						for(Project project : chunk) {
+							setParameter(stmt, 1, project.getProjectName(), String.class);
+							setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+							setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+							setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+							setParameter(stmt, 5, project.getNotes(), String.class);
+							stmt.addBatch();
+						}
+					
+						stmt.executeBatch();
+					
+						// keys come back in the same order as the rows were added to the batch
+						try(ResultSet keys = stmt.getGeneratedKeys()){
+							for(Project project : chunk) {
+								if(!keys.next()) {
+									throw new SQLException("Missing generated key for project " + project.getProjectName());
+								}
+							
+								Integer projectId = project.getProjectId();
+								Integer version = project.getVersion();
+								restoreOnRollback(() -> {
+									project.setProjectId(projectId);
+									project.setVersion(version);
+								});
+							
+								project.setProjectId(keys.getInt(1));
+								project.setVersion(0);
+							}
+						}
+					}
 				
-				//Step 5 Commits the transaction and closes the connection 
-				commitTransaction(conn);
+					return null;
+				});
+			}
+		
+			return projects;
+		});
+	}
+
+
+	/**
+	 * How saveProjectAggregate writes the material, step and project_category rows of an existing
+	 * project.
+	 */
+	public enum ChildSaveMode {
+		// Delete every child row of the project and insert the ones on the Project object
+		REPLACE,
+		// Compare with the rows in the DB and only insert, update or delete the ones that differ
+		DIFF
+	}
+
+
+	public Project saveProjectAggregate(Project project) {
+		return saveProjectAggregate(project, ChildSaveMode.DIFF);
+	}
+
+
+	/**
+	 * Writes a project together with its materials, steps and categories in one transaction. A
+	 * project without an id is inserted along with all of its children. A project with an id is
+	 * updated and its children are written according to the mode.
+	 * 
+	 * Materials and steps without an id are new rows; their generated ids are set on the objects.
+	 * Steps without a step order get one that matches their position in the list, between the
+	 * orders of the steps around them. Categories must
+	 * already exist in the category table and are linked by id. Each kind of write is sent as one
+	 * JDBC batch, so the number of round trips does not grow with the number of child rows.
+	 * 
+	 * If the transaction fails, the ids, versions and orders it set on the objects are put back, so
+	 * the same project can be saved again or the transaction run again after a deadlock.
+	 */
+	public Project saveProjectAggregate(Project project, ChildSaveMode mode) {
+		return DaoMetrics.measure("saveProjectAggregate", () -> {
+			return executeInTransaction(conn -> {
+				restoreProjectOnRollback(project);
+				assignStepOrders(project);
+			
+				if(Objects.isNull(project.getProjectId())) {
+					insertProjectRow(conn, project);
+					insertMaterials(conn, project.getProjectId(), project.getMaterials());
+					insertSteps(conn, project.getProjectId(), project.getSteps());
+					insertProjectCategories(conn, project.getProjectId(), categoryIds(project.getCategories()));
+				}
+				else {
+					if(!updateProjectRow(conn, project)) {
+						throw new DbException("Project with ID = " + project.getProjectId() + " does not exist");
+					}
 				
-				// sets the Id retrieved to be the projectId value on the project object
-				project.setProjectId(projectId);
+					if(mode == ChildSaveMode.REPLACE) {
+						replaceChildren(conn, project);
+					}
+					else {
+						diffChildren(conn, project);
+					}
+				}
+			
 				return project;
+			});
+		});
+	}
+
+
+	/**
+	 * Inserts new projects together with their materials, steps and categories in a single
+	 * transaction, for bulk loads. Every kind of row is sent as one JDBC batch for all of the projects,
+	 * so a call costs five round trips no matter how many projects or child rows it writes; callers
+	 * control the transaction size through the size of the list.
+	 * 
+	 * The generated ids are set on the projects, materials and steps. If any row fails the whole
+	 * transaction is rolled back and a DbException is thrown, and the ids, versions and orders set on
+	 * the objects are put back.
+	 */
+	public List<Project> insertProjectAggregates(List<Project> projects) {
+		return DaoMetrics.measure("insertProjectAggregates", () -> {
+			if(projects.isEmpty()) {
+				return projects;
+			}
+		
+			return executeInTransaction(conn -> {
+				projects.forEach(this::restoreProjectOnRollback);
+			
+				try(PreparedStatement stmt = conn.prepareStatement(INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS)){
+					for(Project project : projects) {
+						setParameter(stmt, 1, project.getProjectName(), String.class);
+						setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+						setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+						setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+						setParameter(stmt, 5, project.getNotes(), String.class);
+						stmt.addBatch();
+					}
 				
+					stmt.executeBatch();
 				
-			}
-			catch(Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
+					try(ResultSet keys = stmt.getGeneratedKeys()){
+						for(Project project : projects) {
+							if(!keys.next()) {
+								throw new SQLException("Missing generated key for project " + project.getProjectName());
+							}
+						
+							project.setProjectId(keys.getInt(1));
+							project.setVersion(0);
+						}
+					}
+				}
+			
+				List<Material> materials = new ArrayList<>();
+				List<Step> steps = new ArrayList<>();
+				Map<Integer, Set<Integer>> categoryIds = new LinkedHashMap<>();
+			
+				for(Project project : projects) {
+					assignStepOrders(project);
+					project.getMaterials().forEach(material -> material.setProjectId(project.getProjectId()));
+					project.getSteps().forEach(step -> step.setProjectId(project.getProjectId()));
+				
+					materials.addAll(project.getMaterials());
+					steps.addAll(project.getSteps());
+					categoryIds.put(project.getProjectId(), categoryIds(project.getCategories()));
+				}
+			
+				insertMaterials(conn, materials);
+				insertSteps(conn, steps);
+				insertProjectCategories(conn, categoryIds);
+			
+				return projects;
+			});
+		});
+	}
+
+
+	/*
+	 * Registers the project's id and version, and the ids, versions, project ids and orders of its
+	 * materials and steps as they are now, to be put back if the transaction fails. Otherwise a
+	 * retry or a later save would take rows that were rolled back for existing ones, or fail the
+	 * version checks.
+	 */
+	private void restoreProjectOnRollback(Project project) {
+		Integer projectId = project.getProjectId();
+		Integer version = project.getVersion();
+		List<Runnable> restores = new ArrayList<>();
 		
+		for(Material material : project.getMaterials()) {
+			Integer materialId = material.getMaterialId();
+			Integer materialVersion = material.getVersion();
+			Integer materialProjectId = material.getProjectId();
+			
+			restores.add(() -> {
+				material.setMaterialId(materialId);
+				material.setVersion(materialVersion);
+				material.setProjectId(materialProjectId);
+			});
+		}
+		
+		for(Step step : project.getSteps()) {
+			Integer stepId = step.getStepId();
+			Integer stepVersion = step.getVersion();
+			Integer stepProjectId = step.getProjectId();
+			Integer stepOrder = step.getStepOrder();
+			
+			restores.add(() -> {
+				step.setStepId(stepId);
+				step.setVersion(stepVersion);
+				step.setProjectId(stepProjectId);
+				step.setStepOrder(stepOrder);
+			});
+		}
+		
+		restoreOnRollback(() -> {
+			project.setProjectId(projectId);
+			project.setVersion(version);
+			restores.forEach(Runnable::run);
+		});
+	}
+
+
+	/*
+	 * Gives the steps without a step order one that puts them at their place in the list: spread
+	 * between the orders of the steps around them, or STEP_ORDER_GAP apart after the last one. Steps
+	 * that have an order keep it, so an update only writes the new steps. If there is no room
+	 * between two neighbors, or the ordered steps are not in step order in the list, every step is
+	 * renumbered STEP_ORDER_GAP apart in list order instead.
+	 */
+	private void assignStepOrders(Project project) {
+		List<Step> steps = project.getSteps();
+		
+		if(steps.stream().allMatch(step -> Objects.nonNull(step.getStepOrder()))) {
+			return;
+		}
+		
+		long lower = 0;
+		int pos = 0;
+		
+		while(pos < steps.size()) {
+			Integer order = steps.get(pos).getStepOrder();
+			
+			if(Objects.nonNull(order)) {
+				if(order <= lower) {
+					renumberInListOrder(steps);
+					return;
+				}
 				
+				lower = order;
+				pos++;
+				continue;
 			}
+			
+			int end = pos;
+			
+			while(end < steps.size() && Objects.isNull(steps.get(end).getStepOrder())) {
+				end++;
+			}
+			
+			int count = end - pos;
+			long upper = end < steps.size() ? steps.get(end).getStepOrder() : lower + (long)(count + 1) * STEP_ORDER_GAP;
+			long spacing = (upper - lower) / (count + 1);
+			
+			if(spacing < 1 || lower + count * spacing > Integer.MAX_VALUE) {
+				renumberInListOrder(steps);
+				return;
+			}
+			
+			for(int run = 1; run <= count; run++) {
+				steps.get(pos + run - 1).setStepOrder((int)(lower + run * spacing));
+			}
+			
+			lower += count * spacing;
+			pos = end;
 		}
-		catch(SQLException e) {
-			throw new DbException(e);
+	}
+
+
+	private void renumberInListOrder(List<Step> steps) {
+		for(int pos = 0; pos < steps.size(); pos++) {
+			steps.get(pos).setStepOrder((pos + 1) * STEP_ORDER_GAP);
+		}
+	}
+
+
+	private void insertProjectRow(Connection conn, Project project) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(INSERT_PROJECT_SQL, Statement.RETURN_GENERATED_KEYS)){
+			setParameter(stmt, 1, project.getProjectName(), String.class);
+			setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+			setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+			setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+			setParameter(stmt, 5, project.getNotes(), String.class);
+			
+			stmt.executeUpdate();
 			
+			try(ResultSet keys = stmt.getGeneratedKeys()){
+				if(!keys.next()) {
+					throw new SQLException("Unable to retrieve the generated project ID");
+				}
+				
+				project.setProjectId(keys.getInt(1));
+				project.setVersion(0);
+			}
 		}
 	}
 
 
-	public List<Project> fetchAllProjects() {
+	/*
+	 * Writes all five detail columns. A project with a version is only updated at that version; the
+	 * new version is set on the project either way.
+	 * 
+	 * @return false if the project does not exist
+	 * @throws ConcurrentUpdateException if it exists at another version
+	 */
+	private boolean updateProjectRow(Connection conn, Project project) throws SQLException {
+		boolean checked = Objects.nonNull(project.getVersion());
+		
+		try(PreparedStatement stmt = conn.prepareStatement(checked ? UPDATE_PROJECT_SQL + VERSION_CHECK : UPDATE_PROJECT_SQL)){
+			setParameter(stmt, 1, project.getProjectName(), String.class);
+			setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
+			setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
+			setParameter(stmt, 4, project.getDifficulty(), Integer.class);
+			setParameter(stmt, 5, project.getNotes(), String.class);
+			setParameter(stmt, 6, project.getProjectId(), Integer.class);
+			
+			if(checked) {
+				setParameter(stmt, 7, project.getVersion(), Integer.class);
+			}
+			
+			if(stmt.executeUpdate() == 0) {
+				if(checked) {
+					throwIfConflict(conn, PROJECT_TABLE, "project_id", project.getProjectId(), project.getVersion());
+				}
+				
+				return false;
+			}
+		}
+		
+		// the row is locked by the update, so a blind write can read back the version it made
+		project.setVersion(checked ? project.getVersion() + 1 : fetchVersion(conn, PROJECT_TABLE, "project_id", project.getProjectId()));
+		return true;
+	}
+
+
+	/*
+	 * Called when an update guarded by a version matched no row. If the row still exists another
+	 * writer has changed it; if not, the caller reports it as missing.
+	 */
+	private void throwIfConflict(Connection conn, String table, String idColumn, Integer id, Integer expectedVersion) throws SQLException {
+		Integer currentVersion = fetchVersion(conn, table, idColumn, id);
+		
+		if(Objects.nonNull(currentVersion)) {
+			throw new ConcurrentUpdateException(table, id, expectedVersion, currentVersion);
+		}
+	}
+
+
+	private Integer fetchVersion(Connection conn, String table, String idColumn, Integer id) throws SQLException {
+		return fetchInteger(conn, "SELECT version FROM " + table + " WHERE " + idColumn + " = ?", id);
+	}
+
+
+	private void replaceChildren(Connection conn, Project project) throws SQLException {
 		//@formatter:off
+		String sql = ""
+				+ "DELETE FROM " + MATERIAL_TABLE + " WHERE project_id = ?; "
+				+ "DELETE FROM " + STEP_TABLE + " WHERE project_id = ?; "
+				+ "DELETE FROM " + PROJECT_CATEGORY_TABLE + " WHERE project_id = ?";
+		//@formatter:on
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			setParameter(stmt, 1, project.getProjectId(), Integer.class);
+			setParameter(stmt, 2, project.getProjectId(), Integer.class);
+			setParameter(stmt, 3, project.getProjectId(), Integer.class);
+			stmt.execute();
+		}
+		
+		project.getMaterials().forEach(material -> material.setMaterialId(null));
+		project.getSteps().forEach(step -> step.setStepId(null));
+		
+		insertMaterials(conn, project.getProjectId(), project.getMaterials());
+		insertSteps(conn, project.getProjectId(), project.getSteps());
+		insertProjectCategories(conn, project.getProjectId(), categoryIds(project.getCategories()));
+	}
+
+
+	/*
+	 * Reads the current child rows in one round trip, then batches only the differences. A changed
+	 * material or step that carries a version must still be at that version; one without a version
+	 * is checked against the version just read.
+	 */
+	private void diffChildren(Connection conn, Project project) throws SQLException {
+		Project current = fetchAggregates(conn, List.of(project.getProjectId())).iterator().next();
+		Integer projectId = project.getProjectId();
+		
+		Map<Integer, Material> currentMaterials = new HashMap<>();
+		current.getMaterials().forEach(material -> currentMaterials.put(material.getMaterialId(), material));
+		
+		List<Material> newMaterials = new ArrayList<>();
+		List<Material> changedMaterials = new ArrayList<>();
+		
+		for(Material material : project.getMaterials()) {
+			Material existing = currentMaterials.remove(material.getMaterialId());
+			
+			if(Objects.isNull(existing)) {
+				material.setMaterialId(null);
+				newMaterials.add(material);
+			}
+			else if(!sameMaterial(existing, material)) {
+				checkVersion(MATERIAL_TABLE, material.getMaterialId(), material.getVersion(), existing.getVersion());
+				material.setVersion(existing.getVersion());
+				changedMaterials.add(material);
+			}
+		}
+		
+		Map<Integer, Step> currentSteps = new HashMap<>();
+		current.getSteps().forEach(step -> currentSteps.put(step.getStepId(), step));
 		
-		// Step 1 define a SQL statement to send to DB ( with substitution variables)
+		List<Step> newSteps = new ArrayList<>();
+		List<Step> changedSteps = new ArrayList<>();
+		
+		for(Step step : project.getSteps()) {
+			Step existing = currentSteps.remove(step.getStepId());
+			
+			if(Objects.isNull(existing)) {
+				step.setStepId(null);
+				newSteps.add(step);
+			}
+			else if(!sameStep(existing, step)) {
+				checkVersion(STEP_TABLE, step.getStepId(), step.getVersion(), existing.getVersion());
+				step.setVersion(existing.getVersion());
+				changedSteps.add(step);
+			}
+		}
+		
+		Set<Integer> wantedCategories = categoryIds(project.getCategories());
+		Set<Integer> currentCategories = categoryIds(current.getCategories());
+		
+		Set<Integer> addedCategories = new LinkedHashSet<>(wantedCategories);
+		addedCategories.removeAll(currentCategories);
+		
+		Set<Integer> removedCategories = new LinkedHashSet<>(currentCategories);
+		removedCategories.removeAll(wantedCategories);
+		
+		// whatever is left in the current maps is no longer on the project
+		deleteByIds(conn, MATERIAL_TABLE, "material_id", currentMaterials.keySet());
+		deleteByIds(conn, STEP_TABLE, "step_id", currentSteps.keySet());
+		deleteProjectCategories(conn, projectId, removedCategories);
+		
+		updateMaterials(conn, projectId, changedMaterials);
+		updateSteps(conn, projectId, changedSteps);
+		
+		insertMaterials(conn, projectId, newMaterials);
+		insertSteps(conn, projectId, newSteps);
+		insertProjectCategories(conn, projectId, addedCategories);
+	}
+
+
+	// Fails before anything is written when the caller's copy of a child row is out of date
+	private void checkVersion(String table, Integer id, Integer expectedVersion, Integer currentVersion) {
+		if(Objects.nonNull(expectedVersion) && !expectedVersion.equals(currentVersion)) {
+			throw new ConcurrentUpdateException(table, id, expectedVersion, currentVersion);
+		}
+	}
+
+
+	/*
+	 * Checks the update counts of a batch of version-guarded child updates. The project row is
+	 * locked by then, so a miss means the row was changed by a writer that does not go through this
+	 * class. A count the driver did not report is taken as a success.
+	 */
+	private void checkUpdateCounts(Connection conn, String table, String idColumn, int[] counts, List<Integer> ids, List<Integer> versions) throws SQLException {
+		for(int pos = 0; pos < counts.length; pos++) {
+			if(counts[pos] == 0) {
+				throwIfConflict(conn, table, idColumn, ids.get(pos), versions.get(pos));
+				throw new ConcurrentUpdateException(table, ids.get(pos), versions.get(pos), null);
+			}
+		}
+	}
+
+
+	private void insertMaterials(Connection conn, Integer projectId, List<Material> materials) throws SQLException {
+		materials.forEach(material -> material.setProjectId(projectId));
+		insertMaterials(conn, materials);
+	}
+
+
+	// Each material carries its own project id, so one batch can hold the materials of many projects
+	private void insertMaterials(Connection conn, List<Material> materials) throws SQLException {
+		//@formatter:off
 		String sql = ""
-				+ "SELECT * FROM " + PROJECT_TABLE 
-				+ " ORDER BY project_id";
+				+ "INSERT INTO " + MATERIAL_TABLE + " "
+				+ "(project_id, material_name, num_required, cost) "
+				+ "VALUES "
+				+ "(?, ?, ?, ?)";
 		//@formatter:on
 		
-		// Opens a connection to DB
-		try(Connection conn = DbConnection.getConnection()){
-			// Step 2 start the transaction 
-			startTransaction(conn);
+		if(materials.isEmpty()) {
+			return;
+		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+			for(Material material : materials) {
+				setParameter(stmt, 1, material.getProjectId(), Integer.class);
+				setParameter(stmt, 2, material.getMaterialName(), String.class);
+				setParameter(stmt, 3, material.getNumRequired(), Integer.class);
+				setParameter(stmt, 4, material.getCost(), BigDecimal.class);
+				stmt.addBatch();
+			}
 			
+			stmt.executeBatch();
 			
-			// Step 3 define the prepared statement using the sql string defined in step 1   
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
-				
-				// Step 4 execute query 
-				try(ResultSet rs = stmt.executeQuery(sql)){
-					
-					List<Project> projects = new LinkedList<Project>();
-					
-					/**
-					 *  For each row returned from the DB extract the content of the row into a new Project object
-					 *  then add that new Project object to the LinkedLis called "projects"
-					 */
-					while(rs.next()) {
-						
-						projects.add(extract(rs, Project.class));
-						
+			try(ResultSet keys = stmt.getGeneratedKeys()){
+				for(Material material : materials) {
+					if(!keys.next()) {
+						throw new SQLException("Missing generated key for material " + material.getMaterialName());
 					}
-					// retun the populated list of project ( this can be an empty list if we returned NULL ) 
-					return projects;
 					
+					material.setMaterialId(keys.getInt(1));
+					material.setVersion(0);
 				}
-				
-				
-			} /** Step 5 We are using not updating records 
-			the try with resource logic will close the connection when we exit the method
-			**/   
-			catch (Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);	
 			}
 		}
-		catch(SQLException e) {
-			throw new DbException(e);
+	}
+
+
+	private void updateMaterials(Connection conn, Integer projectId, List<Material> materials) throws SQLException {
+		//@formatter:off
+		String sql = ""
+				+ "UPDATE " + MATERIAL_TABLE + " SET "
+				+ "material_name = ?, "
+				+ "num_required = ?, "
+				+ "cost = ?, "
+				+ "version = version + 1 "
+				+ "WHERE material_id = ? AND project_id = ?"
+				+ VERSION_CHECK;
+		//@formatter:on
+		
+		if(materials.isEmpty()) {
+			return;
 		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			for(Material material : materials) {
+				setParameter(stmt, 1, material.getMaterialName(), String.class);
+				setParameter(stmt, 2, material.getNumRequired(), Integer.class);
+				setParameter(stmt, 3, material.getCost(), BigDecimal.class);
+				setParameter(stmt, 4, material.getMaterialId(), Integer.class);
+				setParameter(stmt, 5, projectId, Integer.class);
+				setParameter(stmt, 6, material.getVersion(), Integer.class);
+				stmt.addBatch();
+			}
+			
+			//@formatter:off
+			checkUpdateCounts(conn, MATERIAL_TABLE, "material_id", stmt.executeBatch(),
+					materials.stream().map(Material::getMaterialId).collect(Collectors.toList()),
+					materials.stream().map(Material::getVersion).collect(Collectors.toList()));
+			//@formatter:on
+		}
+		
+		materials.forEach(material -> material.setVersion(material.getVersion() + 1));
 	}
 
 
-	public Optional<Project> fetchProjectById(Integer projectId) {
-		String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE project_id = ? ";
+	private void insertSteps(Connection conn, Integer projectId, List<Step> steps) throws SQLException {
+		steps.forEach(step -> step.setProjectId(projectId));
+		insertSteps(conn, steps);
+	}
+
+
+	// Each step carries its own project id, so one batch can hold the steps of many projects
+	private void insertSteps(Connection conn, List<Step> steps) throws SQLException {
+		//@formatter:off
+		String sql = ""
+				+ "INSERT INTO " + STEP_TABLE + " "
+				+ "(project_id, step_text, step_order) "
+				+ "VALUES "
+				+ "(?, ?, ?)";
+		//@formatter:on
+		
+		if(steps.isEmpty()) {
+			return;
+		}
 		
-		try(Connection conn =DbConnection.getConnection()){
-			startTransaction(conn);
+		try(PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)){
+			for(Step step : steps) {
+				setParameter(stmt, 1, step.getProjectId(), Integer.class);
+				setParameter(stmt, 2, step.getStepText(), String.class);
+				setParameter(stmt, 3, step.getStepOrder(), Integer.class);
+				stmt.addBatch();
+			}
 			
-			try{
-				Project project = null;
-				
-				try (PreparedStatement stmt = conn.prepareStatement(sql)){
-					setParameter(stmt,1, projectId, Integer.class);
-					
-					try(ResultSet rs = stmt.executeQuery()){
-						
-						if(rs.next()) {
-							project = extract(rs,Project.class);
-						}
-						
+			stmt.executeBatch();
+			
+			try(ResultSet keys = stmt.getGeneratedKeys()){
+				for(Step step : steps) {
+					if(!keys.next()) {
+						throw new SQLException("Missing generated key for step " + step.getStepText());
 					}
 					
+					step.setStepId(keys.getInt(1));
+					step.setVersion(0);
 				}
-				if(Objects.nonNull(project)) {
-					project.getMaterials().addAll(fetchMaterialsForProjectId(conn, projectId));
-					project.getSteps().addAll(fetchStepsForProjectId(conn, projectId));
-					project.getCategories().addAll(fetchCategoriesForProjectId(conn, projectId));
-					
-				}
-				
-				commitTransaction(conn);
-				
-				return Optional.ofNullable(project);
-				
 			}
-			catch(Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
+		}
+	}
+
+
+	private void updateSteps(Connection conn, Integer projectId, List<Step> steps) throws SQLException {
+		//@formatter:off
+		String sql = ""
+				+ "UPDATE " + STEP_TABLE + " SET "
+				+ "step_text = ?, "
+				+ "step_order = ?, "
+				+ "version = version + 1 "
+				+ "WHERE step_id = ? AND project_id = ?"
+				+ VERSION_CHECK;
+		//@formatter:on
+		
+		if(steps.isEmpty()) {
+			return;
+		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			for(Step step : steps) {
+				setParameter(stmt, 1, step.getStepText(), String.class);
+				setParameter(stmt, 2, step.getStepOrder(), Integer.class);
+				setParameter(stmt, 3, step.getStepId(), Integer.class);
+				setParameter(stmt, 4, projectId, Integer.class);
+				setParameter(stmt, 5, step.getVersion(), Integer.class);
+				stmt.addBatch();
 			}
+			
+			//@formatter:off
+			checkUpdateCounts(conn, STEP_TABLE, "step_id", stmt.executeBatch(),
+					steps.stream().map(Step::getStepId).collect(Collectors.toList()),
+					steps.stream().map(Step::getVersion).collect(Collectors.toList()));
+			//@formatter:on
 		}
-		catch(SQLException e) {
-			throw new DbException(e);
+		
+		steps.forEach(step -> step.setVersion(step.getVersion() + 1));
+	}
+
+
+	private void insertProjectCategories(Connection conn, Integer projectId, Set<Integer> categoryIds) throws SQLException {
+		insertProjectCategories(conn, Map.of(projectId, categoryIds));
+	}
+
+
+	// project_id -> category ids to link to it
+	private void insertProjectCategories(Connection conn, Map<Integer, Set<Integer>> categoryIds) throws SQLException {
+		String sql = "INSERT INTO " + PROJECT_CATEGORY_TABLE + " (project_id, category_id) VALUES (?, ?)";
+		
+		if(categoryIds.values().stream().allMatch(Set::isEmpty)) {
+			return;
+		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			for(Map.Entry<Integer, Set<Integer>> entry : categoryIds.entrySet()) {
+				for(Integer categoryId : entry.getValue()) {
+					setParameter(stmt, 1, entry.getKey(), Integer.class);
+					setParameter(stmt, 2, categoryId, Integer.class);
+					stmt.addBatch();
+				}
+			}
+			
+			stmt.executeBatch();
 		}
 	}
 
 
-	private List<Material> fetchMaterialsForProjectId(Connection conn, Integer projectId) throws SQLException {
-		String sql = "SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id = ? ";
+	private void deleteProjectCategories(Connection conn, Integer projectId, Set<Integer> categoryIds) throws SQLException {
+		String sql = "DELETE FROM " + PROJECT_CATEGORY_TABLE + " WHERE project_id = ? AND category_id = ?";
+		
+		if(categoryIds.isEmpty()) {
+			return;
+		}
 		
 		try(PreparedStatement stmt = conn.prepareStatement(sql)){
-			setParameter(stmt, 1, projectId, Integer.class);
+			for(Integer categoryId : categoryIds) {
+				setParameter(stmt, 1, projectId, Integer.class);
+				setParameter(stmt, 2, categoryId, Integer.class);
+				stmt.addBatch();
+			}
 			
-			try(ResultSet rs = stmt.executeQuery()){
-				List<Material> materials = new LinkedList<Material>();
-				
-				while(rs.next()) {
-					materials.add(extract(rs, Material.class));
-				}
-				return materials;
+			stmt.executeBatch();
+		}
+	}
+
+
+	private void deleteByIds(Connection conn, String table, String idColumn, Collection<Integer> ids) throws SQLException {
+		String sql = "DELETE FROM " + table + " WHERE " + idColumn + " = ?";
+		
+		if(ids.isEmpty()) {
+			return;
+		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			for(Integer id : ids) {
+				setParameter(stmt, 1, id, Integer.class);
+				stmt.addBatch();
 			}
 			
+			stmt.executeBatch();
+		}
+	}
+
+
+	private Set<Integer> categoryIds(List<Category> categories) {
+		Set<Integer> ids = new LinkedHashSet<>();
+		
+		for(Category category : categories) {
+			if(Objects.isNull(category.getCategoryId())) {
+				throw new DbException("Category " + category.getCategoryName() + " has no ID. Categories must already exist.");
+			}
+			
+			ids.add(category.getCategoryId());
 		}
 		
+		return ids;
 	}
 
 
-	private List<Step> fetchStepsForProjectId(Connection conn, Integer projectId) throws SQLException {
+	private boolean sameMaterial(Material current, Material wanted) {
+		//@formatter:off
+		return Objects.equals(current.getMaterialName(), wanted.getMaterialName())
+				&& Objects.equals(current.getNumRequired(), wanted.getNumRequired())
+				&& sameDecimal(current.getCost(), wanted.getCost());
+		//@formatter:on
+	}
 
-		String sql = "SELECT * FROM " + STEP_TABLE + " WHERE project_id = ? ";
 
-		try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+	private boolean sameStep(Step current, Step wanted) {
+		//@formatter:off
+		return Objects.equals(current.getStepText(), wanted.getStepText())
+				&& Objects.equals(current.getStepOrder(), wanted.getStepOrder());
+		//@formatter:on
+	}
 
-			setParameter(stmt, 1, projectId, Integer.class);
 
-			try (ResultSet rs = stmt.executeQuery()) {
-				List<Step> steps = new LinkedList<Step>();
+	// BigDecimal.equals() treats 1.5 and 1.50 as different, the DB column does not
+	private boolean sameDecimal(BigDecimal current, BigDecimal wanted) {
+		if(Objects.isNull(current) || Objects.isNull(wanted)) {
+			return Objects.isNull(current) && Objects.isNull(wanted);
+		}
+		
+		return current.compareTo(wanted) == 0;
+	}
 
-				while (rs.next()) {
-					steps.add(extract(rs, Step.class));
+
+	/**
+	 * Appends a step to the end of a project. The project row is locked for the rest of the
+	 * transaction so concurrent appends to the same project get distinct orders, while appends to
+	 * different projects do not wait for each other.
+	 */
+	public Step addStep(Integer projectId, String stepText) {
+		return DaoMetrics.measure("addStep", () -> {
+			return executeInTransaction(conn -> {
+				if(!lockProject(conn, projectId)) {
+					throw new DbException("Project with ID = " + projectId + " does not exist");
 				}
+			
+				Step step = new Step();
+				step.setStepText(stepText);
+				step.setStepOrder(getNextOrderValue(conn, projectId, STEP_TABLE, "project_id", "step_order", STEP_ORDER_GAP));
+			
+				insertSteps(conn, projectId, List.of(step));
+			
+				return step;
+			});
+		});
+	}
 
-				return steps;
 
-			}
+	/**
+	 * Moves a step so it comes just before another step of the same project, or to the end if
+	 * beforeStepId is null. The moved step takes the midpoint of its new neighbors' orders, so
+	 * normally only that one row is updated. When two neighbors have no gap left between them the
+	 * project's steps are renumbered first.
+	 * 
+	 * @return false if the project has no step with that id
+	 */
+	public boolean moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+		return DaoMetrics.measure("moveStep", () -> {
+			//@formatter:off
+			String sql = ""
+					+ "SELECT step_id FROM " + STEP_TABLE + " "
+					+ "WHERE step_id = ? AND project_id = ?";
+			//@formatter:on
+		
+			return executeInTransaction(conn -> {
+				// rolled back rather than committed so nothing, including the version, changes
+				if(!lockProject(conn, projectId) || Objects.isNull(fetchInteger(conn, sql, stepId, projectId))) {
+					skipCommit();
+					return false;
+				}
+			
+				int newOrder;
+			
+				if(Objects.isNull(beforeStepId)) {
+					newOrder = getNextOrderValue(conn, projectId, STEP_TABLE, "project_id", "step_order", STEP_ORDER_GAP);
+				}
+				else if(beforeStepId.equals(stepId)) {
+					skipCommit();
+					return true;
+				}
+				else {
+					int[] bounds = fetchMoveBounds(conn, projectId, stepId, beforeStepId);
+				
+					if(bounds[1] - bounds[0] < 2) {
+						renumberSteps(conn, projectId);
+						bounds = fetchMoveBounds(conn, projectId, stepId, beforeStepId);
+					}
+				
+					newOrder = bounds[0] + (bounds[1] - bounds[0]) / 2;
+				}
+			
+				String update = "UPDATE " + STEP_TABLE + " SET step_order = ?, version = version + 1 WHERE step_id = ?";
+			
+				try(PreparedStatement stmt = conn.prepareStatement(update)){
+					setParameter(stmt, 1, newOrder, Integer.class);
+					setParameter(stmt, 2, stepId, Integer.class);
+					stmt.executeUpdate();
+				}
+			
+				return true;
+			});
+		});
+	}
 
-		}
+
+	/**
+	 * Deletes a step. The other steps keep their orders; the gap it leaves is simply larger. The
+	 * project's version is advanced.
+	 */
+	public boolean deleteStep(Integer projectId, Integer stepId) {
+		return DaoMetrics.measure("deleteStep", () -> {
+			String sql = "DELETE FROM " + STEP_TABLE + " WHERE step_id = ? AND project_id = ?";
+		
+			return executeInTransaction(conn -> {
+				try(PreparedStatement stmt = conn.prepareStatement(sql)){
+					// locked first, like the other step writers, and rolled back if there is no such step
+					boolean deleted = lockProject(conn, projectId);
+					
+					if(deleted) {
+						setParameter(stmt, 1, stepId, Integer.class);
+						setParameter(stmt, 2, projectId, Integer.class);
+						deleted = stmt.executeUpdate() == 1;
+					}
+				
+					if(!deleted) {
+						skipCommit();
+					}
+				
+					return deleted;
+				}
+			});
+		});
 	}
 
 
-	private List<Category> fetchCategoriesForProjectId(Connection conn, Integer projectId) throws SQLException {
+	/*
+	 * Returns the orders the moved step must fit between: the order of the step before beforeStepId
+	 * (ignoring the moved step itself, 0 if there is none) and the order of beforeStepId.
+	 */
+	private int[] fetchMoveBounds(Connection conn, Integer projectId, Integer stepId, Integer beforeStepId) throws SQLException {
 		//@formatter:off
-		String sql = ""
-				+ "SELECT c.* FROM " + CATEGORY_TABLE + " c "
-				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
-				+ "WHERE project_id = ? ";
+		Integer upper = fetchInteger(conn, ""
+				+ "SELECT step_order FROM " + STEP_TABLE + " "
+				+ "WHERE step_id = ? AND project_id = ?", beforeStepId, projectId);
+		//@formatter:on
+		
+		if(Objects.isNull(upper)) {
+			throw new DbException("Step with ID = " + beforeStepId + " is not a step of project " + projectId);
+		}
+		
+		//@formatter:off
+		Integer lower = fetchInteger(conn, ""
+				+ "SELECT MAX(step_order) FROM " + STEP_TABLE + " "
+				+ "WHERE project_id = ? AND step_order < ? AND step_id <> ?", projectId, upper, stepId);
 		//@formatter:on
-		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+		
+		return new int[] {Objects.isNull(lower) ? 0 : lower, upper};
+	}
+
+
+	/*
+	 * Respaces the orders of a project's steps to STEP_ORDER_GAP apart, keeping their current order.
+	 * This only runs when a move finds no room between two neighbors.
+	 */
+	private void renumberSteps(Connection conn, Integer projectId) throws SQLException {
+		String select = "SELECT step_id FROM " + STEP_TABLE + " WHERE project_id = ? ORDER BY step_order, step_id";
+		String update = "UPDATE " + STEP_TABLE + " SET step_order = ?, version = version + 1 WHERE step_id = ?";
+		
+		List<Integer> stepIds = new ArrayList<>();
+		
+		try(PreparedStatement stmt = conn.prepareStatement(select)){
 			setParameter(stmt, 1, projectId, Integer.class);
 			
 			try(ResultSet rs = stmt.executeQuery()){
-				List<Category> categories = new LinkedList<Category>();
-				
-				while (rs.next()) {
-					categories.add(extract(rs, Category.class));
-					
+				while(rs.next()) {
+					stepIds.add(rs.getInt(1));
 				}
-				return categories;
 			}
 		}
 		
-		
+		try(PreparedStatement stmt = conn.prepareStatement(update)){
+			for(int pos = 0; pos < stepIds.size(); pos++) {
+				setParameter(stmt, 1, (pos + 1) * STEP_ORDER_GAP, Integer.class);
+				setParameter(stmt, 2, stepIds.get(pos), Integer.class);
+				stmt.addBatch();
+			}
+			
+			stmt.executeBatch();
+		}
 	}
 
 
-	public boolean modifyProjectDetails(Project project) {
-		//@formatter:off
-		String sql = ""
-				+ "UPDATE " + PROJECT_TABLE + " SET "
-				+ "project_name = ?, "
-				+ "estimated_hours = ?, "
-				+ "actual_hours = ?, "
-				+ "difficulty = ?, "
-				+ "notes = ? "
-				+ "WHERE project_id = ?";
-		//@formatter:on
+	/*
+	 * Takes a row lock on the project so writers that change its steps run one at a time, and
+	 * advances its version because the aggregate is about to change. A writer holding the old
+	 * version, such as a saveProjectAggregate that would delete the new step, then gets a conflict.
+	 */
+	private boolean lockProject(Connection conn, Integer projectId) throws SQLException {
+		String sql = "UPDATE " + PROJECT_TABLE + " SET version = version + 1 WHERE project_id = ?";
 		
-		try(Connection conn = DbConnection.getConnection()){
-			startTransaction(conn);
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			setParameter(stmt, 1, projectId, Integer.class);
+			return stmt.executeUpdate() == 1;
+		}
+	}
+
+
+	private Integer fetchInteger(Connection conn, String sql, Integer... params) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(sql)){
+			for(int pos = 0; pos < params.length; pos++) {
+				setParameter(stmt, pos + 1, params[pos], Integer.class);
+			}
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
-				setParameter(stmt, 1, project.getProjectName(), String.class);
-				setParameter(stmt, 2, project.getEstimatedHours(), BigDecimal.class);
-				setParameter(stmt, 3, project.getActualHours(), BigDecimal.class);
-				setParameter(stmt, 4, project.getDifficulty(), Integer.class);
-				setParameter(stmt, 5, project.getNotes(), String.class);
-				setParameter(stmt, 6, project.getProjectId(), Integer.class);
+			try(ResultSet rs = stmt.executeQuery()){
+				if(rs.next()) {
+					int value = rs.getInt(1);
+					return rs.wasNull() ? null : value;
+				}
 				
-				boolean modified = stmt.executeUpdate() == 1;
+				return null;
+			}
+		}
+	}
+
+
+	public List<Project> fetchAllProjects() {
+		return DaoMetrics.measure("fetchAllProjects", () -> {
+			//@formatter:off
+		
+			// Step 1 define a SQL statement to send to DB ( with substitution variables)
+			String sql = ""
+					+ "SELECT * FROM " + PROJECT_TABLE 
+					+ " ORDER BY project_id";
+			//@formatter:on
+		
+			/**
+			 * Step 2 open a connection and start a read-only transaction. A read-only transaction can go
+			 * to a replica if there are any (see ReplicaRouter)
+			 */
+			return executeInTransaction(TransactionOptions.READ_ONLY, conn -> {
+			
+				// Step 3 define the prepared statement using the sql string defined in step 1   
+				try(PreparedStatement stmt = conn.prepareStatement(sql)){
 				
-				commitTransaction(conn);
+					// Step 4 execute query 
+					try(ResultSet rs = stmt.executeQuery()){
+					
+						List<Project> projects = new LinkedList<Project>();
+					
+						/**
+						 *  For each row returned from the DB extract the content of the row into a new Project object
+						 *  then add that new Project object to the LinkedLis called "projects"
+						 */
+						while(rs.next()) {
+						
+							projects.add(extract(rs, Project.class));
+						
+						}
+						// retun the populated list of project ( this can be an empty list if we returned NULL ) 
+						return projects;
+					
+					}
 				
-				return modified;
 				
+				} /** Step 5 We are using not updating records 
+				the transaction is ended and the connection closed when the work returns
+				**/   
+			});
+		});
+	}
+
+
+	/**
+	 * Returns one page of project ids and names using keyset (seek) pagination: the page starts
+	 * after the given project_id and walks the primary key, so each page costs the same no matter
+	 * how deep into the table it is. Pass null to get the first page and the id of the last summary
+	 * returned to get the next one. An empty list means there are no more projects.
+	 */
+	public List<ProjectSummary> fetchProjectSummaries(Integer afterProjectId, int pageSize) {
+		return DaoMetrics.measure("fetchProjectSummaries", () -> {
+			//@formatter:off
+			String sql = ""
+					+ "SELECT project_id, project_name FROM " + PROJECT_TABLE + " "
+					+ "WHERE project_id > ? "
+					+ "ORDER BY project_id "
+					+ "LIMIT ?";
+			//@formatter:on
+		
+			if(pageSize < 1) {
+				throw new DbException("Page size must be at least 1 but was " + pageSize);
 			}
-			catch (Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
+		
+			return executeInTransaction(TransactionOptions.SUPPORTS, conn -> {
+				try(PreparedStatement stmt = conn.prepareStatement(sql)){
+					// auto-increment ids start at 1 so 0 is before the first project
+					setParameter(stmt, 1, Objects.isNull(afterProjectId) ? 0 : afterProjectId, Integer.class);
+					setParameter(stmt, 2, pageSize, Integer.class);
 				
+					try(ResultSet rs = stmt.executeQuery()){
+						List<ProjectSummary> summaries = new ArrayList<>(pageSize);
+					
+						while(rs.next()) {
+							summaries.add(extract(rs, ProjectSummary.class));
+						}
+					
+						return summaries;
+					}
+				}
+			});
+		});
+	}
+
+
+	/**
+	 * Streams every project row in project_id order without holding them all in memory. The rows
+	 * are read from the server one at a time as the stream is consumed, so the first project is
+	 * available as soon as it arrives and heap use does not grow with the size of the table.
+	 * 
+	 * The stream holds a connection open until it is closed, so always use it in a
+	 * try-with-resources block:
+	 * 
+	 * <pre>
+	 * try(Stream&lt;Project&gt; projects = projectDao.streamAllProjects()) {
+	 *   projects.forEach(...);
+	 * }
+	 * </pre>
+	 * 
+	 * Only the project rows are loaded; materials, steps and categories are left empty. Closing the
+	 * stream early still reads the remaining rows off the wire before the connection is reused.
+	 */
+	public Stream<Project> streamAllProjects() {
+		return DaoMetrics.measure("streamAllProjects", () -> {
+			String sql = "SELECT * FROM " + PROJECT_TABLE + " ORDER BY project_id";
+		
+			return ResultStreams.stream(getConnection(), sql, rs -> extract(rs, Project.class));
+		});
+	}
+
+
+	/**
+	 * Loads a project with its materials, steps and categories in a single round trip to the DB.
+	 * Like fetchProjectsByIds it may read from a replica.
+	 */
+	public Optional<Project> fetchProjectById(Integer projectId) {
+		return DaoMetrics.measure("fetchProjectById", () -> {
+			List<Project> projects = fetchProjectsByIds(List.of(projectId));
+		
+			return projects.stream().findFirst();
+		});
+	}
+
+
+	/**
+	 * Loads many projects with their materials, steps and categories. Each chunk of up to
+	 * MAX_IDS_PER_QUERY ids is four queries (one round trip with allowMultiQueries) regardless of
+	 * how many projects it contains, so the cost no longer grows as 4 queries per project. Ids that do not exist are skipped. The
+	 * projects are returned in project_id order.
+	 * 
+	 * The read may go to a replica, which can be a little behind other sessions' writes but always
+	 * has this session's own. Wrap the call in ReadSession.readFromPrimary when it must see every
+	 * committed write.
+	 */
+	public List<Project> fetchProjectsByIds(Collection<Integer> projectIds) {
+		return DaoMetrics.measure("fetchProjectsByIds", () -> {
+			List<Integer> ids = projectIds.stream().filter(Objects::nonNull).distinct().sorted().collect(Collectors.toList());
+		
+			if(ids.isEmpty()) {
+				return new ArrayList<>();
 			}
+		
+			// one read-only transaction, so every chunk sees the same snapshot
+			return executeInTransaction(TransactionOptions.READ_ONLY, conn -> {
+				List<Project> projects = new ArrayList<>(ids.size());
+			
+				for(int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+					List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+					projects.addAll(fetchAggregates(conn, chunk));
+				}
 			
+				return projects;
+			});
+		});
+	}
+
+
+	/*
+	 * Runs the project, material, step and category queries and stitches the four result sets
+	 * together by project_id. With the allowMultiQueries setting on they go as one multi-statement
+	 * batch, so the chunk is one round trip; otherwise as four statements in the caller's
+	 * transaction. Separate child queries are used rather than one big join so the rows are not
+	 * multiplied materials x steps x categories.
+	 */
+	private Collection<Project> fetchAggregates(Connection conn, List<Integer> projectIds) throws SQLException {
+		int slots = Integer.highestOneBit(projectIds.size());
+		
+		if(slots < projectIds.size()) {
+			slots <<= 1;
 		}
-		catch (SQLException e) {
-			throw new DbException(e);
+		
+		List<String> queries = AGGREGATE_SQL.computeIfAbsent(slots, this::buildAggregateSql);
+		Map<Integer, Project> projects = new LinkedHashMap<>();
+		
+		if(!DbConnection.getConfig().isAllowMultiQueries()) {
+			for(int query = 0; query < queries.size(); query++) {
+				try(PreparedStatement stmt = conn.prepareStatement(queries.get(query))){
+					bindAggregateIds(stmt, 1, projectIds, slots);
+					
+					try(ResultSet rs = stmt.executeQuery()){
+						readAggregateRows(query, rs, projects);
+					}
+				}
+			}
+			
+			return projects.values();
+		}
+		
+		try(PreparedStatement stmt = conn.prepareStatement(String.join("; ", queries))){
+			int parameterIndex = 1;
+			
+			// the same id list is bound once for each of the four statements
+			for(int query = 0; query < queries.size(); query++) {
+				parameterIndex = bindAggregateIds(stmt, parameterIndex, projectIds, slots);
+			}
+			
+			stmt.execute();
+			
+			for(int query = 0; query < queries.size(); query++) {
+				try(ResultSet rs = query == 0 ? stmt.getResultSet() : nextResultSet(stmt)){
+					readAggregateRows(query, rs, projects);
+				}
+			}
+			
+			return projects.values();
 		}
 	}
 
 
-	public boolean deleteProject(Integer projectId) {
+	/*
+	 * Binds the ids to the slots of one IN list from parameterIndex on, padding the unused slots
+	 * with the last id (a repeated value in IN (...) matches nothing extra). Returns the index after
+	 * the list.
+	 */
+	private int bindAggregateIds(PreparedStatement stmt, int parameterIndex, List<Integer> projectIds, int slots) throws SQLException {
+		for(int slot = 0; slot < slots; slot++) {
+			Integer projectId = projectIds.get(Math.min(slot, projectIds.size() - 1));
+			setParameter(stmt, parameterIndex++, projectId, Integer.class);
+		}
+		
+		return parameterIndex;
+	}
+
+
+	// Adds the rows of the query-th aggregate query to the projects read by the first one
+	private void readAggregateRows(int query, ResultSet rs, Map<Integer, Project> projects) throws SQLException {
+		while(rs.next()) {
+			switch(query) {
+			case 0:
+				Project project = extract(rs, Project.class);
+				projects.put(project.getProjectId(), project);
+				break;
+			case 1:
+				Material material = extract(rs, Material.class);
+				projects.get(material.getProjectId()).getMaterials().add(material);
+				break;
+			case 2:
+				Step step = extract(rs, Step.class);
+				projects.get(step.getProjectId()).getSteps().add(step);
+				break;
+			default:
+				// Category has no project id so it is read straight from the join column
+				projects.get(rs.getInt("project_id")).getCategories().add(extract(rs, Category.class));
+				break;
+			}
+		}
+	}
+
+
+	private List<String> buildAggregateSql(int idCount) {
+		String in = String.join(", ", Collections.nCopies(idCount, "?"));
+		
 		//@formatter:off
-		String sql = ""
-				+ "DELETE FROM " 
-				+ PROJECT_TABLE 
-				+ " WHERE project_id = ?";
+		return List.of(
+				"SELECT * FROM " + PROJECT_TABLE + " WHERE project_id IN (" + in + ") ORDER BY project_id",
+				"SELECT * FROM " + MATERIAL_TABLE + " WHERE project_id IN (" + in + ") ORDER BY material_id",
+				"SELECT * FROM " + STEP_TABLE + " WHERE project_id IN (" + in + ") ORDER BY project_id, step_order",
+				"SELECT c.*, pc.project_id FROM " + CATEGORY_TABLE + " c "
+				+ "JOIN " + PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+				+ "WHERE pc.project_id IN (" + in + ") ORDER BY c.category_id");
 		//@formatter:on
+	}
+
+
+	private ResultSet nextResultSet(PreparedStatement stmt) throws SQLException {
+		if(!stmt.getMoreResults()) {
+			throw new SQLException("Expected another result set from the project aggregate query");
+		}
 		
-		try(Connection conn = DbConnection.getConnection()){
-			startTransaction(conn);
+		return stmt.getResultSet();
+	}
+
+
+	/**
+	 * Overwrites the five detail columns of a project. If the project has a version (it was read
+	 * from the DB) the update only succeeds while the row is still at that version, so a concurrent
+	 * change is reported instead of overwritten. Without a version the columns are overwritten
+	 * regardless. Either way the new version is set on the project.
+	 * 
+	 * @return false if the project does not exist
+	 * @throws ConcurrentUpdateException if another writer changed the project since it was read
+	 */
+	public boolean modifyProjectDetails(Project project) {
+		return DaoMetrics.measure("modifyProjectDetails", () -> {
+			return executeInTransaction(conn -> {
+				Integer version = project.getVersion();
+				restoreOnRollback(() -> project.setVersion(version));
 			
-			try(PreparedStatement stmt = conn.prepareStatement(sql)){
-				setParameter(stmt, 1, projectId, Integer.class);
-				
-				boolean deletedProject = stmt.executeUpdate() == 1;
-				
-				commitTransaction(conn);
-				
-				return deletedProject;
-				
-			}
-			catch (Exception e) {
-				rollbackTransaction(conn);
-				throw new DbException(e);
-				
+				return updateProjectRow(conn, project);
+			});
+		});
+	}
+
+
+	/**
+	 * Writes only the detail columns whose values differ between original, the project as it was
+	 * read, and modified, the project as it should be. With a version on original the update is
+	 * made only at that version, as in modifyProjectDetails. Without one, columns changed by other
+	 * writers are left alone, so editors changing different columns of the same project do not
+	 * overwrite each other. The new version is set on modified.
+	 * 
+	 * If nothing differs nothing is written and true is returned without checking the project.
+	 * 
+	 * @return false if the project does not exist
+	 * @throws ConcurrentUpdateException if another writer changed the project since it was read
+	 */
+	public boolean modifyChangedDetails(Project original, Project modified) {
+		return DaoMetrics.measure("modifyChangedDetails", () -> {
+			List<String> columns = new ArrayList<>();
+			List<Object> values = new ArrayList<>();
+			List<Class<?>> types = new ArrayList<>();
+			
+			//@formatter:off
+			addChange(columns, values, types, "project_name", !Objects.equals(original.getProjectName(), modified.getProjectName()),
+					modified.getProjectName(), String.class);
+			addChange(columns, values, types, "estimated_hours", !sameDecimal(original.getEstimatedHours(), modified.getEstimatedHours()),
+					modified.getEstimatedHours(), BigDecimal.class);
+			addChange(columns, values, types, "actual_hours", !sameDecimal(original.getActualHours(), modified.getActualHours()),
+					modified.getActualHours(), BigDecimal.class);
+			addChange(columns, values, types, "difficulty", !Objects.equals(original.getDifficulty(), modified.getDifficulty()),
+					modified.getDifficulty(), Integer.class);
+			addChange(columns, values, types, "notes", !Objects.equals(original.getNotes(), modified.getNotes()),
+					modified.getNotes(), String.class);
+			//@formatter:on
+			
+			if(columns.isEmpty()) {
+				modified.setVersion(original.getVersion());
+				return true;
 			}
 			
-		}
-		catch(SQLException e) {
-			throw new DbException(e);
+			boolean checked = Objects.nonNull(original.getVersion());
 			
+			//@formatter:off
+			String sql = ""
+					+ "UPDATE " + PROJECT_TABLE + " SET "
+					+ columns.stream().map(column -> column + " = ?, ").collect(Collectors.joining())
+					+ "version = version + 1 "
+					+ "WHERE project_id = ?"
+					+ (checked ? VERSION_CHECK : "");
+			//@formatter:on
+			
+			return executeInTransaction(conn -> {
+				try(PreparedStatement stmt = conn.prepareStatement(sql)){
+					int pos = 0;
+					
+					for(; pos < values.size(); pos++) {
+						setParameter(stmt, pos + 1, values.get(pos), types.get(pos));
+					}
+					
+					setParameter(stmt, ++pos, original.getProjectId(), Integer.class);
+					
+					if(checked) {
+						setParameter(stmt, ++pos, original.getVersion(), Integer.class);
+					}
+					
+					if(stmt.executeUpdate() == 0) {
+						if(checked) {
+							throwIfConflict(conn, PROJECT_TABLE, "project_id", original.getProjectId(), original.getVersion());
+						}
+						
+						return false;
+					}
+				}
+			
+				Integer version = modified.getVersion();
+				restoreOnRollback(() -> modified.setVersion(version));
+			
+				modified.setVersion(checked ? original.getVersion() + 1 : fetchVersion(conn, PROJECT_TABLE, "project_id", original.getProjectId()));
+				return true;
+			});
+		});
+	}
+
+
+	private void addChange(List<String> columns, List<Object> values, List<Class<?>> types, String column, boolean changed, Object value, Class<?> type) {
+		if(changed) {
+			columns.add(column);
+			values.add(value);
+			types.add(type);
 		}
+	}
+
+
+	public boolean deleteProject(Integer projectId) {
+		return DaoMetrics.measure("deleteProject", () -> {
+			//@formatter:off
+			String sql = ""
+					+ "DELETE FROM " 
+					+ PROJECT_TABLE 
+					+ " WHERE project_id = ?";
+			//@formatter:on
 		
-		
+			return executeInTransaction(conn -> {
+				try(PreparedStatement stmt = conn.prepareStatement(sql)){
+					setParameter(stmt, 1, projectId, Integer.class);
+				
+					return stmt.executeUpdate() == 1;
+				}
+			});
+		});
 	}
 
 }
@@ -0,0 +1,77 @@
+package projects.dao;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The unit of read-your-writes consistency for {@link ReplicaRouter}. After a session commits a
+ * write on the primary, its reads stay on the primary until every replica that could serve them
+ * must have applied the write. Other sessions may still read the older rows from a replica.
+ *
+ * Each thread has its own session by default. Work handed to another thread on behalf of the same
+ * caller should run in the caller's session, see {@link #callIn(ReadSession, Supplier)}.
+ */
+public class ReadSession {
+
+	private static final ThreadLocal<ReadSession> CURRENT = ThreadLocal.withInitial(ReadSession::new);
+	// Set while readFromPrimary runs on this thread, whatever the session
+	private static final ThreadLocal<Boolean> PRIMARY_ONLY = ThreadLocal.withInitial(() -> false);
+
+	// System.nanoTime() of the last commit on the primary. Only meaningful once hasWritten is set.
+	private volatile long lastWriteNanos;
+	private volatile boolean hasWritten;
+
+
+	public static ReadSession current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Runs the call on this thread in the given session, then restores the thread's own session.
+	 */
+	public static <T> T callIn(ReadSession session, Supplier<T> call) {
+		ReadSession previous = CURRENT.get();
+		CURRENT.set(Objects.requireNonNull(session));
+
+		try {
+			return call.get();
+		}
+		finally {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Runs the call with every read on this thread sent to the primary. Used for reads whose result
+	 * is kept, such as the service's caches and indexes, where a row a replica has not caught up
+	 * with yet would stay wrong after the session's own write window has passed.
+	 */
+	public static <T> T readFromPrimary(Supplier<T> call) {
+		if(PRIMARY_ONLY.get()) {
+			return call.get();
+		}
+
+		PRIMARY_ONLY.set(true);
+
+		try {
+			return call.get();
+		}
+		finally {
+			PRIMARY_ONLY.set(false);
+		}
+	}
+
+	static boolean isPrimaryOnly() {
+		return PRIMARY_ONLY.get();
+	}
+
+	void recordWrite() {
+		lastWriteNanos = System.nanoTime();
+		hasWritten = true;
+	}
+
+	boolean wroteWithin(long nanos) {
+		return hasWritten && System.nanoTime() - lastWriteNanos < nanos;
+	}
+
+}
@@ -0,0 +1,59 @@
+package projects.dao;
+
+/**
+ * Tuning values for {@link ReplicaRouter}. Override them with the setters before the router is
+ * created.
+ */
+public class ReplicaConfig {
+
+	// A replica further behind the primary than this is not read from until it catches up
+	private long maxLagMillis = 1_000;
+	// How often each replica's replication status is checked
+	private long healthCheckIntervalMillis = 1_000;
+	private int healthCheckTimeoutSeconds = 2;
+	// How long a read waits for a busy replica before trying the next one or the primary
+	private long borrowTimeoutMillis = 100;
+
+
+	public long getMaxLagMillis() {
+		return maxLagMillis;
+	}
+
+	public void setMaxLagMillis(long maxLagMillis) {
+		this.maxLagMillis = maxLagMillis;
+	}
+
+	public long getHealthCheckIntervalMillis() {
+		return healthCheckIntervalMillis;
+	}
+
+	public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+		this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+	}
+
+	public int getHealthCheckTimeoutSeconds() {
+		return healthCheckTimeoutSeconds;
+	}
+
+	public void setHealthCheckTimeoutSeconds(int healthCheckTimeoutSeconds) {
+		this.healthCheckTimeoutSeconds = healthCheckTimeoutSeconds;
+	}
+
+	public long getBorrowTimeoutMillis() {
+		return borrowTimeoutMillis;
+	}
+
+	public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+	}
+
+	/**
+	 * The most a replica read can be behind the primary. A replica is only used while its last
+	 * check, at most two intervals old, showed it within maxLagMillis. MySQL reports the lag in
+	 * whole seconds, which can hide up to one more second.
+	 */
+	public long getMaxStalenessMillis() {
+		return maxLagMillis + 2 * healthCheckIntervalMillis + 1_000;
+	}
+
+}
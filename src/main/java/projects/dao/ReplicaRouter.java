@@ -0,0 +1,376 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import projects.exception.DbException;
+import provided.util.ConnectionProvider;
+
+/**
+ * Sends writes to the primary and spreads reads over a set of MySQL replicas. Everything borrowed
+ * with {@link #getConnection()} goes to the primary; only reads that a DAO borrows with
+ * {@link #getReadConnection()} can go to a replica.
+ *
+ * A background thread checks each replica's replication status every health check interval. A
+ * replica is read from only while its last check is recent, replication is running and the
+ * reported lag is within {@link ReplicaConfig#getMaxLagMillis()}. Among those, a read goes to the
+ * replica with the fewest borrowed connections, taking turns on ties. A read waits at most
+ * {@link ReplicaConfig#getBorrowTimeoutMillis()} for a busy replica before trying the next one. A
+ * replica that cannot open a connection is skipped until its next good check. With no usable
+ * replica free, reads go to the primary.
+ *
+ * For read-your-writes, every commit on the primary is recorded against the committing thread's
+ * {@link ReadSession}. That session's reads then stay on the primary for
+ * {@link ReplicaConfig#getMaxStalenessMillis()}, after which every usable replica has the write.
+ */
+public class ReplicaRouter implements ConnectionProvider, AutoCloseable {
+
+	private static final Logger LOG = Logger.getLogger(ReplicaRouter.class.getName());
+
+	// MySQL 8.0.22 renamed the replication status statement and columns; older servers reject the new name
+	private static final int ER_PARSE_ERROR = 1064;
+
+	private final ConnectionPool primary;
+	private final List<Replica> replicas = new ArrayList<>();
+	private final ReplicaConfig config;
+	private final long maxStalenessNanos;
+	private final ScheduledExecutorService healthChecker;
+	// Rotates the starting replica so ties in borrowed connections are shared out in turn
+	private final AtomicInteger nextReplica = new AtomicInteger();
+
+	private final LongAdder primaryReadCount = new LongAdder();
+	private final LongAdder fallbackReadCount = new LongAdder();
+
+
+	/**
+	 * @param replicaPools one pool per replica, keyed by a name for logs and status (host:port)
+	 */
+	public ReplicaRouter(ConnectionPool primary, Map<String, ConnectionPool> replicaPools, ReplicaConfig config) {
+		if(config.getMaxLagMillis() < 0 || config.getHealthCheckIntervalMillis() < 1 || config.getHealthCheckTimeoutSeconds() < 1 || config.getBorrowTimeoutMillis() < 0) {
+			//@formatter:off
+			throw new DbException("Invalid replica config: maxLagMillis = " + config.getMaxLagMillis()
+					+ ", healthCheckIntervalMillis = " + config.getHealthCheckIntervalMillis()
+					+ ", healthCheckTimeoutSeconds = " + config.getHealthCheckTimeoutSeconds()
+					+ ", borrowTimeoutMillis = " + config.getBorrowTimeoutMillis());
+			//@formatter:on
+		}
+
+		this.primary = primary;
+		this.config = config;
+		this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxStalenessMillis());
+
+		replicaPools.forEach((name, pool) -> replicas.add(new Replica(name, pool)));
+
+		primary.setCommitListener(() -> ReadSession.current().recordWrite());
+
+		this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replica-health-check");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Until the first check has run every read goes to the primary
+		healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, config.getHealthCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * A connection to the primary, for writes and for reads that must see the latest data.
+	 */
+	@Override
+	public Connection getConnection() {
+		return primary.getConnection();
+	}
+
+	/**
+	 * A connection to the least busy usable replica, or to the primary if the current session wrote
+	 * recently, the caller is inside {@link ReadSession#readFromPrimary}, or no replica is usable.
+	 */
+	@Override
+	public Connection getReadConnection() {
+		if(ReadSession.isPrimaryOnly() || ReadSession.current().wroteWithin(maxStalenessNanos)) {
+			primaryReadCount.increment();
+			return primary.getConnection();
+		}
+
+		long now = System.nanoTime();
+		long maxCheckAge = TimeUnit.MILLISECONDS.toNanos(2 * config.getHealthCheckIntervalMillis());
+		int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(replicas.size(), 1));
+		List<Replica> candidates = new ArrayList<>(replicas.size());
+
+		for(int pos = 0; pos < replicas.size(); pos++) {
+			Replica replica = replicas.get((start + pos) % replicas.size());
+
+			if(replica.usable && now - replica.checkedAt <= maxCheckAge) {
+				candidates.add(replica);
+			}
+		}
+
+		while(!candidates.isEmpty()) {
+			Replica best = candidates.get(0);
+
+			for(Replica replica : candidates) {
+				if(replica.pool.getActiveCount() < best.pool.getActiveCount()) {
+					best = replica;
+				}
+			}
+
+			candidates.remove(best);
+
+			try {
+				// a saturated replica is only busy, so it stays usable for the next read
+				Connection conn = best.pool.tryGetConnection(config.getBorrowTimeoutMillis());
+
+				if(Objects.nonNull(conn)) {
+					best.readCount.increment();
+					return conn;
+				}
+
+				best.busyCount.increment();
+			}
+			catch(DbException e) {
+				markUnusable(best, "cannot borrow a connection: " + e.getMessage());
+			}
+		}
+
+		fallbackReadCount.increment();
+		return primary.getConnection();
+	}
+
+	public ConnectionPool getPrimary() {
+		return primary;
+	}
+
+	public ReplicaConfig getConfig() {
+		return config;
+	}
+
+	// Reads sent to the primary because of a recent write in the session or readFromPrimary
+	public long getPrimaryReadCount() {
+		return primaryReadCount.sum();
+	}
+
+	// Reads sent to the primary because no replica was usable or had a connection free
+	public long getFallbackReadCount() {
+		return fallbackReadCount.sum();
+	}
+
+	public List<ReplicaStatus> getReplicaStatus() {
+		List<ReplicaStatus> status = new ArrayList<>(replicas.size());
+
+		for(Replica replica : replicas) {
+			//@formatter:off
+			status.add(new ReplicaStatus(replica.name, replica.usable, replica.lagMillis, replica.problem,
+					replica.readCount.sum(), replica.busyCount.sum(), replica.pool.getStats()));
+			//@formatter:on
+		}
+
+		return status;
+	}
+
+	/**
+	 * Stops the health checks and closes the primary and replica pools.
+	 */
+	@Override
+	public void close() {
+		healthChecker.shutdownNow();
+		primary.setCommitListener(null);
+		primary.close();
+		replicas.forEach(replica -> replica.pool.close());
+	}
+
+	private void checkReplicas() {
+		for(Replica replica : replicas) {
+			try {
+				checkReplica(replica);
+			}
+			catch(SQLException | RuntimeException e) {
+				markUnusable(replica, e.toString());
+			}
+		}
+	}
+
+	/*
+	 * Seconds_Behind_Source is null while the replication SQL thread is stopped, and there is no
+	 * row at all when the server is not a replica. Either way its data cannot be trusted to follow
+	 * the primary.
+	 *
+	 * A replica whose pool has no connection free within the borrow timeout is skipped rather than
+	 * waited for, so it cannot hold up the checks of the others. Its last check then ages, and once
+	 * it is too old reads stop going to that replica until a check gets through.
+	 */
+	private void checkReplica(Replica replica) throws SQLException {
+		Connection borrowed = replica.pool.tryGetConnection(config.getBorrowTimeoutMillis());
+
+		if(Objects.isNull(borrowed)) {
+			return;
+		}
+
+		try(Connection conn = borrowed; Statement stmt = conn.createStatement()) {
+			stmt.setQueryTimeout(config.getHealthCheckTimeoutSeconds());
+
+			try(ResultSet rs = executeStatusQuery(replica, stmt)) {
+				if(!rs.next()) {
+					markUnusable(replica, "the server is not replicating from a primary");
+					return;
+				}
+
+				long lagSeconds = rs.getLong(replica.legacyStatus ? "Seconds_Behind_Master" : "Seconds_Behind_Source");
+
+				if(rs.wasNull()) {
+					markUnusable(replica, "replication is stopped");
+					return;
+				}
+
+				long lagMillis = TimeUnit.SECONDS.toMillis(lagSeconds);
+
+				if(lagMillis > config.getMaxLagMillis()) {
+					replica.lagMillis = lagMillis;
+					markUnusable(replica, "lag is over the limit of " + config.getMaxLagMillis() + "ms");
+					return;
+				}
+
+				if(!replica.usable) {
+					LOG.info(() -> "Reading from replica " + replica.name + " again");
+				}
+
+				replica.lagMillis = lagMillis;
+				replica.problem = null;
+				replica.checkedAt = System.nanoTime();
+				replica.usable = true;
+			}
+		}
+	}
+
+	private ResultSet executeStatusQuery(Replica replica, Statement stmt) throws SQLException {
+		if(!replica.legacyStatus) {
+			try {
+				return stmt.executeQuery("SHOW REPLICA STATUS");
+			}
+			catch(SQLException e) {
+				if(e.getErrorCode() != ER_PARSE_ERROR) {
+					throw e;
+				}
+
+				replica.legacyStatus = true;
+			}
+		}
+
+		return stmt.executeQuery("SHOW SLAVE STATUS");
+	}
+
+	private void markUnusable(Replica replica, String problem) {
+		if(replica.usable || !Objects.equals(replica.problem, problem)) {
+			LOG.log(Level.WARNING, "Not reading from replica " + replica.name + ": " + problem);
+		}
+
+		replica.usable = false;
+		replica.problem = problem;
+	}
+
+
+	/**
+	 * A replica's pool and the result of its last health check.
+	 */
+	private static class Replica {
+		private final String name;
+		private final ConnectionPool pool;
+		private final LongAdder readCount = new LongAdder();
+		// Reads that found every connection in use and went elsewhere
+		private final LongAdder busyCount = new LongAdder();
+		private volatile boolean usable;
+		// System.nanoTime() of the last check that found the replica usable
+		private volatile long checkedAt;
+		private volatile long lagMillis;
+		private volatile String problem = "not checked yet";
+		// Set once the server turns out to be older than MySQL 8.0.22
+		private volatile boolean legacyStatus;
+
+		Replica(String name, ConnectionPool pool) {
+			this.name = name;
+			this.pool = pool;
+		}
+	}
+
+
+	/**
+	 * Point-in-time view of one replica for monitoring.
+	 */
+	public static class ReplicaStatus {
+		private final String name;
+		private final boolean usable;
+		private final long lagMillis;
+		private final String problem;
+		private final long readCount;
+		private final long busyCount;
+		private final PoolStats poolStats;
+
+		ReplicaStatus(String name, boolean usable, long lagMillis, String problem, long readCount, long busyCount, PoolStats poolStats) {
+			this.name = name;
+			this.usable = usable;
+			this.lagMillis = lagMillis;
+			this.problem = problem;
+			this.readCount = readCount;
+			this.busyCount = busyCount;
+			this.poolStats = poolStats;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isUsable() {
+			return usable;
+		}
+
+		// Lag reported by the last check, in whole seconds
+		public long getLagMillis() {
+			return lagMillis;
+		}
+
+		// Why the replica is not being read from. Null while it is usable.
+		public String getProblem() {
+			return problem;
+		}
+
+		public long getReadCount() {
+			return readCount;
+		}
+
+		// Reads that gave up waiting for a connection to this replica
+		public long getBusyCount() {
+			return busyCount;
+		}
+
+		public PoolStats getPoolStats() {
+			return poolStats;
+		}
+
+		@Override
+		public String toString() {
+			//@formatter:off
+			return name
+					+ ": usable = " + usable
+					+ ", lagMillis = " + lagMillis
+					+ (Objects.isNull(problem) ? "" : ", problem = " + problem)
+					+ ", reads = " + readCount
+					+ ", busy = " + busyCount
+					+ ", pool = [" + poolStats + "]";
+			//@formatter:on
+		}
+	}
+
+}
@@ -0,0 +1,257 @@
+package projects.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import projects.entity.CategoryProjectCount;
+import projects.entity.DifficultyAccuracy;
+import projects.entity.HoursTotals;
+import projects.entity.ProjectMaterialCost;
+import projects.exception.DbException;
+import projects.metrics.DaoMetrics;
+import projects.metrics.MetricsDaoListener;
+import provided.util.ConnectionProvider;
+import provided.util.DaoBase;
+import provided.util.TransactionOptions;
+
+/**
+ * Reporting queries over the project tables. Every rollup is computed by the database with GROUP BY
+ * and window functions, so only result rows cross the wire: a handful for the per-difficulty and
+ * per-category reports and one per project for material costs, which are streamed.
+ *
+ * The material cost report can read from the project_material_cost summary table instead of
+ * grouping the material table. The summary is only as fresh as the last refresh of each project;
+ * ProjectService keeps it current once summaries are enabled.
+ */
+public class ReportDao extends DaoBase {
+
+	public static final String MATERIAL_COST_TABLE = "project_material_cost";
+
+	// Upper bound on ids bound into one IN (...) list by refreshMaterialCosts, the same as ProjectDao's
+	private static final int MAX_IDS_PER_QUERY = 512;
+
+	//@formatter:off
+	private static final String HOURS_TOTALS_SQL = ""
+			+ "SELECT COUNT(*) AS project_count, "
+			+ "COUNT(estimated_hours) AS estimated_count, "
+			+ "SUM(estimated_hours) AS total_estimated_hours, "
+			+ "AVG(estimated_hours) AS average_estimated_hours, "
+			+ "COUNT(actual_hours) AS actual_count, "
+			+ "SUM(actual_hours) AS total_actual_hours, "
+			+ "AVG(actual_hours) AS average_actual_hours, "
+			+ "SUM(actual_hours - estimated_hours) AS total_overrun_hours "
+			+ "FROM " + ProjectDao.PROJECT_TABLE;
+	//@formatter:on
+
+	// Hours of the projects whose estimate can be compared with the actual hours, NULL otherwise
+	private static final String COMPARED = "estimated_hours > 0 AND actual_hours IS NOT NULL";
+
+	//@formatter:off
+	private static final String ACCURACY_SQL = ""
+			+ "SELECT difficulty, "
+			+ "COUNT(*) AS project_count, "
+			+ "CAST(100 * COUNT(*) / SUM(COUNT(*)) OVER () AS DECIMAL(5,2)) AS project_percent, "
+			+ "AVG(estimated_hours) AS average_estimated_hours, "
+			+ "AVG(actual_hours) AS average_actual_hours, "
+			+ "COUNT(CASE WHEN " + COMPARED + " THEN 1 END) AS compared_count, "
+			+ "CAST(SUM(CASE WHEN " + COMPARED + " THEN actual_hours END) "
+			+ "/ SUM(CASE WHEN " + COMPARED + " THEN estimated_hours END) AS DECIMAL(12,4)) AS actual_to_estimate_ratio, "
+			+ "CAST(AVG(CASE WHEN " + COMPARED + " THEN actual_hours / estimated_hours END) AS DECIMAL(12,4)) "
+			+ "AS average_actual_to_estimate, "
+			+ "COUNT(CASE WHEN actual_hours > estimated_hours THEN 1 END) AS over_estimate_count "
+			+ "FROM " + ProjectDao.PROJECT_TABLE + " "
+			+ "GROUP BY difficulty "
+			+ "ORDER BY difficulty";
+	//@formatter:on
+
+	// One row per project that has materials, computed from the material table
+	//@formatter:off
+	private static final String LIVE_COSTS = ""
+			+ "SELECT project_id, COUNT(*) AS material_count, SUM(num_required * cost) AS material_cost "
+			+ "FROM " + ProjectDao.MATERIAL_TABLE + " "
+			+ "GROUP BY project_id";
+	//@formatter:on
+
+	/*
+	 * The outer query is the same for both sources. Projects without a cost row cost 0. The running
+	 * SUM is ordered by project_id within equal costs so every row gets its own cumulative share.
+	 */
+	//@formatter:off
+	private static final String MATERIAL_COST_SQL = ""
+			+ "SELECT p.project_id, p.project_name, "
+			+ "CAST(COALESCE(c.material_count, 0) AS SIGNED) AS material_count, "
+			+ "COALESCE(c.material_cost, 0) AS material_cost, "
+			+ "CAST(RANK() OVER (ORDER BY COALESCE(c.material_cost, 0) DESC) AS SIGNED) AS cost_rank, "
+			+ "CAST(100 * SUM(COALESCE(c.material_cost, 0)) OVER "
+			+ "(ORDER BY COALESCE(c.material_cost, 0) DESC, p.project_id ROWS UNBOUNDED PRECEDING) "
+			+ "/ NULLIF(SUM(COALESCE(c.material_cost, 0)) OVER (), 0) AS DECIMAL(6,2)) AS cumulative_cost_percent "
+			+ "FROM " + ProjectDao.PROJECT_TABLE + " p "
+			+ "LEFT JOIN (%s) c USING (project_id) "
+			+ "ORDER BY material_cost DESC, p.project_id";
+	//@formatter:on
+
+	//@formatter:off
+	private static final String CATEGORY_COUNT_SQL = ""
+			+ "SELECT c.category_id, c.category_name, "
+			+ "COUNT(pc.project_id) AS project_count, "
+			+ "CAST(100 * COUNT(pc.project_id) / NULLIF((SELECT COUNT(*) FROM " + ProjectDao.PROJECT_TABLE + "), 0) "
+			+ "AS DECIMAL(6,2)) AS project_percent, "
+			+ "CAST(RANK() OVER (ORDER BY COUNT(pc.project_id) DESC) AS SIGNED) AS count_rank "
+			+ "FROM " + ProjectDao.CATEGORY_TABLE + " c "
+			+ "LEFT JOIN " + ProjectDao.PROJECT_CATEGORY_TABLE + " pc USING (category_id) "
+			+ "GROUP BY c.category_id, c.category_name "
+			+ "ORDER BY count_rank, c.category_id";
+	//@formatter:on
+
+	/*
+	 * Writes a cost row for every project the WHERE clause selects, including projects with no
+	 * materials, so a refresh also clears the cost of a project that lost its last material. REPLACE
+	 * lets two refreshes of the same project run at once without a duplicate key error.
+	 */
+	//@formatter:off
+	private static final String REFRESH_COSTS_SQL = ""
+			+ "REPLACE INTO " + MATERIAL_COST_TABLE + " (project_id, material_count, material_cost) "
+			+ "SELECT p.project_id, COUNT(m.material_id), COALESCE(SUM(m.num_required * m.cost), 0) "
+			+ "FROM " + ProjectDao.PROJECT_TABLE + " p "
+			+ "LEFT JOIN " + ProjectDao.MATERIAL_TABLE + " m USING (project_id) "
+			+ "%s"
+			+ "GROUP BY p.project_id";
+	//@formatter:on
+
+
+	public ReportDao() {
+		this(DbConnection.getLazyConnectionProvider());
+	}
+
+	public ReportDao(ConnectionProvider connectionProvider) {
+		super(connectionProvider, MetricsDaoListener.INSTANCE, DbException::new);
+	}
+
+
+	public HoursTotals fetchHoursTotals() {
+		return DaoMetrics.measure("fetchHoursTotals", () -> fetchList(HOURS_TOTALS_SQL, HoursTotals.class).get(0));
+	}
+
+	/**
+	 * One row per difficulty in difficulty order, with projects that have no difficulty first.
+	 */
+	public List<DifficultyAccuracy> fetchAccuracyByDifficulty() {
+		return DaoMetrics.measure("fetchAccuracyByDifficulty", () -> fetchList(ACCURACY_SQL, DifficultyAccuracy.class));
+	}
+
+	/**
+	 * Every category, including empty ones, with the most used first.
+	 */
+	public List<CategoryProjectCount> fetchCategoryCounts() {
+		return DaoMetrics.measure("fetchCategoryCounts", () -> fetchList(CATEGORY_COUNT_SQL, CategoryProjectCount.class));
+	}
+
+	/**
+	 * Streams every project with its material cost, most expensive first. The stream holds a
+	 * connection until it is closed:
+	 *
+	 * <pre>
+	 * try(Stream&lt;ProjectMaterialCost&gt; costs = reportDao.streamMaterialCosts(false)) {
+	 *   costs.forEach(...);
+	 * }
+	 * </pre>
+	 *
+	 * @param fromSummary Read the costs from the project_material_cost summary table instead of
+	 *        grouping the material table.
+	 */
+	public Stream<ProjectMaterialCost> streamMaterialCosts(boolean fromSummary) {
+		return DaoMetrics.measure("streamMaterialCosts", () -> {
+			String sql = String.format(MATERIAL_COST_SQL, costSource(fromSummary));
+			return ResultStreams.stream(getConnection(), sql, rs -> extract(rs, ProjectMaterialCost.class));
+		});
+	}
+
+	/**
+	 * The limit most expensive projects. Ranks and cumulative shares are still computed over all
+	 * projects.
+	 */
+	public List<ProjectMaterialCost> fetchMostExpensiveProjects(int limit, boolean fromSummary) {
+		return DaoMetrics.measure("fetchMostExpensiveProjects", () -> {
+			if(limit < 1) {
+				throw new DbException("Limit must be at least 1 but was " + limit);
+			}
+
+			String sql = String.format(MATERIAL_COST_SQL, costSource(fromSummary)) + " LIMIT ?";
+			return fetchList(sql, ProjectMaterialCost.class, limit);
+		});
+	}
+
+	/**
+	 * Recomputes the summary cost rows of the given projects. Ids of projects that no longer exist
+	 * are ignored.
+	 */
+	public void refreshMaterialCosts(Collection<Integer> projectIds) {
+		DaoMetrics.measure("refreshMaterialCosts", () -> {
+			List<Integer> ids = new ArrayList<>(projectIds);
+
+			for(int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+				List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+				String placeholders = Collections.nCopies(chunk.size(), "?").stream().collect(Collectors.joining(", "));
+
+				execute(String.format(REFRESH_COSTS_SQL, "WHERE p.project_id IN (" + placeholders + ") "), chunk);
+			}
+
+			return null;
+		});
+	}
+
+	/**
+	 * Recomputes the summary cost row of every project, for when summaries are first enabled or may
+	 * have missed changes.
+	 */
+	public void rebuildMaterialCosts() {
+		DaoMetrics.measure("rebuildMaterialCosts", () -> {
+			execute(String.format(REFRESH_COSTS_SQL, ""), List.of());
+			return null;
+		});
+	}
+
+	private String costSource(boolean fromSummary) {
+		return fromSummary ? "SELECT project_id, material_count, material_cost FROM " + MATERIAL_COST_TABLE : LIVE_COSTS;
+	}
+
+	private <T> List<T> fetchList(String sql, Class<T> classType, Integer... params) {
+		// joins a caller's transaction, so a report run inside one sees its changes
+		return executeInTransaction(TransactionOptions.SUPPORTS, conn -> {
+			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+				for(int pos = 0; pos < params.length; pos++) {
+					setParameter(stmt, pos + 1, params[pos], Integer.class);
+				}
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<T> rows = new ArrayList<>();
+
+					while(rs.next()) {
+						rows.add(extract(rs, classType));
+					}
+
+					return rows;
+				}
+			}
+		});
+	}
+
+	private void execute(String sql, List<Integer> projectIds) {
+		executeInTransaction(conn -> {
+			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+				for(int pos = 0; pos < projectIds.size(); pos++) {
+					setParameter(stmt, pos + 1, projectIds.get(pos), Integer.class);
+				}
+
+				return stmt.executeUpdate();
+			}
+		});
+	}
+
+}
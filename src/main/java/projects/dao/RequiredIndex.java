@@ -0,0 +1,54 @@
+package projects.dao;
+
+import java.util.List;
+
+/**
+ * An index a DAO query depends on: any index on the table whose leading columns are these columns,
+ * in this order, satisfies it.
+ */
+public class RequiredIndex {
+
+	private final String table;
+	private final List<String> columns;
+	private final String usedBy;
+
+
+	public RequiredIndex(String table, List<String> columns, String usedBy) {
+		this.table = table;
+		this.columns = List.copyOf(columns);
+		this.usedBy = usedBy;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	// the queries that need the index, for the startup report
+	public String getUsedBy() {
+		return usedBy;
+	}
+
+	public boolean isSatisfiedBy(List<String> indexColumns) {
+		if(indexColumns.size() < columns.size()) {
+			return false;
+		}
+
+		for(int pos = 0; pos < columns.size(); pos++) {
+			if(!columns.get(pos).equalsIgnoreCase(indexColumns.get(pos))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return table + " (" + String.join(", ", columns) + ") used by " + usedBy;
+	}
+
+}
@@ -0,0 +1,103 @@
+package projects.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import projects.exception.DbException;
+
+/**
+ * Runs a query whose rows are read from the server as a Stream is consumed instead of being
+ * buffered first. The connection stays open until the stream is closed, so callers must close it,
+ * normally with try-with-resources.
+ */
+final class ResultStreams {
+
+	private ResultStreams() {
+	}
+
+
+	/**
+	 * @param conn Closed with the stream, or before returning if the query fails.
+	 * @param mapper Builds one element from the current row.
+	 */
+	static <T> Stream<T> stream(Connection conn, String sql, Function<ResultSet, T> mapper) {
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		
+		try {
+			stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			
+			// streams the rows instead of buffering the result, by cursor or row by row depending on the
+			// useCursorFetch setting
+			stmt.setFetchSize(DbConnection.getStreamFetchSize());
+			rs = stmt.executeQuery();
+		}
+		catch(SQLException e) {
+			closeAll(rs, stmt, conn);
+			throw new DbException(e);
+		}
+		
+		ResultSet streamed = rs;
+		PreparedStatement openStmt = stmt;
+		
+		Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					if(!streamed.next()) {
+						return false;
+					}
+					
+					action.accept(mapper.apply(streamed));
+					return true;
+				}
+				catch(SQLException e) {
+					throw new DbException(e);
+				}
+			}
+		};
+		
+		return StreamSupport.stream(rows, false).onClose(() -> closeAll(streamed, openStmt, conn));
+	}
+
+
+	/*
+	 * Closes the result set, statement and connection in that order, attempting every close even if
+	 * an earlier one fails.
+	 */
+	private static void closeAll(AutoCloseable... resources) {
+		DbException failure = null;
+		
+		for(AutoCloseable resource : resources) {
+			try {
+				if(Objects.nonNull(resource)) {
+					resource.close();
+				}
+			}
+			catch(Exception e) {
+				if(Objects.isNull(failure)) {
+					failure = new DbException(e);
+				}
+				else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		
+		if(Objects.nonNull(failure)) {
+			throw failure;
+		}
+	}
+
+}
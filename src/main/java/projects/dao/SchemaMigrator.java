@@ -0,0 +1,288 @@
+package projects.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import projects.exception.DbException;
+import provided.util.ConnectionProvider;
+
+/**
+ * Brings the schema up to date with the migration scripts bundled in db/migration. Scripts are
+ * named V1.sql, V2.sql, ... and run in order; the first comment line of a script is its
+ * description. Each applied version is recorded in the schema_version table, so a script runs once
+ * per database.
+ *
+ * Applied scripts must not be edited. A script whose checksum no longer matches the one recorded
+ * when it ran is reported but not re-run; add a new version instead. Each ALTER TABLE in a script
+ * makes a single change, so an error can be traced to the one change that caused it.
+ *
+ * Migrations only run when asked for: on the first borrow when projects.db.migrate is set, or
+ * through {@link DbConnection#migrateSchema()}, which the main method of this class calls.
+ */
+public class SchemaMigrator {
+
+	private static final Logger LOG = Logger.getLogger(SchemaMigrator.class.getName());
+
+	private static final String SCRIPT_PATH = "db/migration/V%d.sql";
+	public static final String VERSION_TABLE = "schema_version";
+
+	// Held while migrating so two application instances starting together do not both run a script
+	private static final String LOCK_NAME = "projects.schema_migration";
+	private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+	/*
+	 * MySQL has no IF NOT EXISTS for columns, keys and indexes. A database built from
+	 * projects-schema.sql already has the changes the scripts make, so a statement that fails
+	 * because its own change is already there (or, for a drop, already gone) is skipped. Every
+	 * other error stops the migration.
+	 */
+	private static final int ER_DUP_FIELDNAME = 1060;
+	private static final int ER_DUP_KEYNAME = 1061;
+	private static final int ER_MULTIPLE_PRI_KEY = 1068;
+	private static final int ER_CANT_DROP_FIELD_OR_KEY = 1091;
+
+	private final ConnectionProvider connectionProvider;
+
+
+	public SchemaMigrator(ConnectionProvider connectionProvider) {
+		this.connectionProvider = connectionProvider;
+	}
+
+
+	/**
+	 * Migrates the database configured in the projects.db settings, for example as a deployment
+	 * step: java -cp ... projects.dao.SchemaMigrator
+	 */
+	public static void main(String[] args) {
+		List<Integer> applied = DbConnection.migrateSchema();
+
+		System.out.println(applied.isEmpty() ? "The schema is up to date" : "Applied migrations " + applied);
+	}
+
+
+	/**
+	 * Runs every bundled script that has not been applied to this database yet.
+	 *
+	 * @return The versions applied by this call.
+	 */
+	public List<Integer> migrate() {
+		try(Connection conn = connectionProvider.getConnection()) {
+			lock(conn);
+
+			try {
+				createVersionTable(conn);
+
+				Map<Integer, Long> applied = fetchAppliedVersions(conn);
+				List<Integer> newlyApplied = new ArrayList<>();
+
+				for(int version = 1;; version++) {
+					String script = loadScript(version);
+
+					if(Objects.isNull(script)) {
+						break;
+					}
+
+					long checksum = checksum(script);
+
+					if(applied.containsKey(version)) {
+						if(applied.get(version) != checksum) {
+							LOG.warning("Migration V" + version + " has changed since it was applied. Add a new version instead.");
+						}
+						continue;
+					}
+
+					apply(conn, version, script, checksum);
+					newlyApplied.add(version);
+				}
+
+				return newlyApplied;
+			}
+			finally {
+				unlock(conn);
+			}
+		}
+		catch(SQLException e) {
+			throw new DbException("Schema migration failed", e);
+		}
+	}
+
+
+	private void apply(Connection conn, int version, String script, long checksum) throws SQLException {
+		LOG.info("Applying schema migration V" + version + ": " + description(script));
+
+		try(Statement stmt = conn.createStatement()) {
+			for(String sql : splitStatements(script)) {
+				try {
+					stmt.execute(sql);
+				}
+				catch(SQLException e) {
+					if(e.getErrorCode() != alreadyAppliedError(sql)) {
+						throw new SQLException("V" + version + " failed on: " + sql, e.getSQLState(), e.getErrorCode(), e);
+					}
+				}
+			}
+		}
+
+		String sql = "INSERT INTO " + VERSION_TABLE + " (version, description, checksum) VALUES (?, ?, ?)";
+
+		try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+			stmt.setInt(1, version);
+			stmt.setString(2, description(script));
+			stmt.setLong(3, checksum);
+			stmt.executeUpdate();
+		}
+	}
+
+	/*
+	 * The error the statement fails with when its change is already in the schema, or 0 for a
+	 * statement that has no such error.
+	 */
+	static int alreadyAppliedError(String sql) {
+		String normalized = sql.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+
+		if(normalized.startsWith("CREATE INDEX ") || normalized.startsWith("CREATE UNIQUE INDEX ")) {
+			return ER_DUP_KEYNAME;
+		}
+
+		if(!normalized.startsWith("ALTER TABLE ")) {
+			return 0;
+		}
+
+		if(normalized.contains(" ADD COLUMN ")) {
+			return ER_DUP_FIELDNAME;
+		}
+
+		if(normalized.contains(" ADD PRIMARY KEY")) {
+			return ER_MULTIPLE_PRI_KEY;
+		}
+
+		if(normalized.matches(".* ADD (UNIQUE )?(INDEX|KEY) .*")) {
+			return ER_DUP_KEYNAME;
+		}
+
+		if(normalized.matches(".* DROP (INDEX|KEY) .*")) {
+			return ER_CANT_DROP_FIELD_OR_KEY;
+		}
+
+		return 0;
+	}
+
+	private void createVersionTable(Connection conn) throws SQLException {
+		//@formatter:off
+		String sql = ""
+				+ "CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " ("
+				+ "version INT NOT NULL, "
+				+ "description VARCHAR(255), "
+				+ "checksum BIGINT NOT NULL, "
+				+ "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+				+ "PRIMARY KEY (version))";
+		//@formatter:on
+
+		try(Statement stmt = conn.createStatement()) {
+			stmt.execute(sql);
+		}
+	}
+
+	private Map<Integer, Long> fetchAppliedVersions(Connection conn) throws SQLException {
+		Map<Integer, Long> applied = new HashMap<>();
+
+		try(PreparedStatement stmt = conn.prepareStatement("SELECT version, checksum FROM " + VERSION_TABLE)) {
+			try(ResultSet rs = stmt.executeQuery()) {
+				while(rs.next()) {
+					applied.put(rs.getInt("version"), rs.getLong("checksum"));
+				}
+			}
+		}
+
+		return applied;
+	}
+
+	private void lock(Connection conn) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+			stmt.setString(1, LOCK_NAME);
+			stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				if(!rs.next() || rs.getInt(1) != 1) {
+					throw new SQLException("Timed out waiting for another instance to finish migrating the schema");
+				}
+			}
+		}
+	}
+
+	private void unlock(Connection conn) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+			stmt.setString(1, LOCK_NAME);
+			stmt.executeQuery().close();
+		}
+	}
+
+	// Returns null once there is no script for the version
+	private String loadScript(int version) {
+		String path = String.format(SCRIPT_PATH, version);
+
+		try(InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+			return Objects.isNull(in) ? null : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		catch(IOException e) {
+			throw new DbException("Unable to read " + path, e);
+		}
+	}
+
+	/*
+	 * Statements end with a semicolon at the end of a line. Whole-line "--" comments are dropped so
+	 * a semicolon in a comment does not end a statement.
+	 */
+	private List<String> splitStatements(String script) {
+		List<String> statements = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+
+		for(String line : script.split("\\R")) {
+			String trimmed = line.trim();
+
+			if(trimmed.isEmpty() || trimmed.startsWith("--")) {
+				continue;
+			}
+
+			current.append(line).append('\n');
+
+			if(trimmed.endsWith(";")) {
+				statements.add(current.substring(0, current.lastIndexOf(";")));
+				current.setLength(0);
+			}
+		}
+
+		if(!current.toString().isBlank()) {
+			statements.add(current.toString());
+		}
+
+		return statements;
+	}
+
+	private String description(String script) {
+		String firstLine = script.strip().split("\\R", 2)[0];
+		return firstLine.startsWith("--") ? firstLine.substring(2).trim() : "";
+	}
+
+	// Line endings are normalized so a checkout with CRLF line endings has the same checksum
+	private long checksum(String script) {
+		CRC32 crc = new CRC32();
+		crc.update(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+}
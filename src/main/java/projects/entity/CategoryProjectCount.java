@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * The number of projects in a category. A project can be in several categories, so the
+ * percentages of all categories can add up to more than 100.
+ * 
+ * @author Promineo
+ *
+ */
+public class CategoryProjectCount {
+  private Integer categoryId;
+  private String categoryName;
+  private Long projectCount;
+  // share of all projects that are in this category
+  private BigDecimal projectPercent;
+  // 1 for the category with the most projects
+  private Long countRank;
+
+  public Integer getCategoryId() {
+    return categoryId;
+  }
+
+  public void setCategoryId(Integer categoryId) {
+    this.categoryId = categoryId;
+  }
+
+  public String getCategoryName() {
+    return categoryName;
+  }
+
+  public void setCategoryName(String categoryName) {
+    this.categoryName = categoryName;
+  }
+
+  public Long getProjectCount() {
+    return projectCount;
+  }
+
+  public void setProjectCount(Long projectCount) {
+    this.projectCount = projectCount;
+  }
+
+  public BigDecimal getProjectPercent() {
+    return projectPercent;
+  }
+
+  public void setProjectPercent(BigDecimal projectPercent) {
+    this.projectPercent = projectPercent;
+  }
+
+  public Long getCountRank() {
+    return countRank;
+  }
+
+  public void setCountRank(Long countRank) {
+    this.countRank = countRank;
+  }
+
+  @Override
+  public String toString() {
+    return "ID = " + categoryId + ", name = " + categoryName
+        + ", projects = " + projectCount + " (" + projectPercent + "%)"
+        + ", rank = " + countRank;
+  }
+}
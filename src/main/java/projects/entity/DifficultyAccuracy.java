@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * How well hours were estimated for the projects of one difficulty. The ratios compare actual to
+ * estimated hours for the projects that have both and an estimate above zero: 1 is on target and
+ * above 1 took longer than estimated.
+ * 
+ * @author Promineo
+ *
+ */
+public class DifficultyAccuracy {
+  // null for projects without a difficulty
+  private Integer difficulty;
+  private Long projectCount;
+  // share of all projects with this difficulty
+  private BigDecimal projectPercent;
+  private BigDecimal averageEstimatedHours;
+  private BigDecimal averageActualHours;
+  // projects that have both hours and an estimate above zero
+  private Long comparedCount;
+  // total actual over total estimated hours
+  private BigDecimal actualToEstimateRatio;
+  // mean of each project's own actual over estimated hours
+  private BigDecimal averageActualToEstimate;
+  // projects that took more hours than estimated
+  private Long overEstimateCount;
+
+  public Integer getDifficulty() {
+    return difficulty;
+  }
+
+  public void setDifficulty(Integer difficulty) {
+    this.difficulty = difficulty;
+  }
+
+  public Long getProjectCount() {
+    return projectCount;
+  }
+
+  public void setProjectCount(Long projectCount) {
+    this.projectCount = projectCount;
+  }
+
+  public BigDecimal getProjectPercent() {
+    return projectPercent;
+  }
+
+  public void setProjectPercent(BigDecimal projectPercent) {
+    this.projectPercent = projectPercent;
+  }
+
+  public BigDecimal getAverageEstimatedHours() {
+    return averageEstimatedHours;
+  }
+
+  public void setAverageEstimatedHours(BigDecimal averageEstimatedHours) {
+    this.averageEstimatedHours = averageEstimatedHours;
+  }
+
+  public BigDecimal getAverageActualHours() {
+    return averageActualHours;
+  }
+
+  public void setAverageActualHours(BigDecimal averageActualHours) {
+    this.averageActualHours = averageActualHours;
+  }
+
+  public Long getComparedCount() {
+    return comparedCount;
+  }
+
+  public void setComparedCount(Long comparedCount) {
+    this.comparedCount = comparedCount;
+  }
+
+  public BigDecimal getActualToEstimateRatio() {
+    return actualToEstimateRatio;
+  }
+
+  public void setActualToEstimateRatio(BigDecimal actualToEstimateRatio) {
+    this.actualToEstimateRatio = actualToEstimateRatio;
+  }
+
+  public BigDecimal getAverageActualToEstimate() {
+    return averageActualToEstimate;
+  }
+
+  public void setAverageActualToEstimate(BigDecimal averageActualToEstimate) {
+    this.averageActualToEstimate = averageActualToEstimate;
+  }
+
+  public Long getOverEstimateCount() {
+    return overEstimateCount;
+  }
+
+  public void setOverEstimateCount(Long overEstimateCount) {
+    this.overEstimateCount = overEstimateCount;
+  }
+
+  @Override
+  public String toString() {
+    return "difficulty = " + difficulty
+        + ", projects = " + projectCount + " (" + projectPercent + "%)"
+        + ", average estimated = " + averageEstimatedHours
+        + ", average actual = " + averageActualHours
+        + ", actual/estimate = " + actualToEstimateRatio
+        + ", over estimate = " + overEstimateCount + " of " + comparedCount;
+  }
+}
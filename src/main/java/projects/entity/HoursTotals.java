@@ -0,0 +1,97 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * Estimated and actual hours summed and averaged over every project. Counts, totals and averages
+ * each skip the projects where that column is NULL.
+ * 
+ * @author Promineo
+ *
+ */
+public class HoursTotals {
+  private Long projectCount;
+  private Long estimatedCount;
+  private BigDecimal totalEstimatedHours;
+  private BigDecimal averageEstimatedHours;
+  private Long actualCount;
+  private BigDecimal totalActualHours;
+  private BigDecimal averageActualHours;
+  // actual minus estimated hours, over the projects that have both
+  private BigDecimal totalOverrunHours;
+
+  public Long getProjectCount() {
+    return projectCount;
+  }
+
+  public void setProjectCount(Long projectCount) {
+    this.projectCount = projectCount;
+  }
+
+  public Long getEstimatedCount() {
+    return estimatedCount;
+  }
+
+  public void setEstimatedCount(Long estimatedCount) {
+    this.estimatedCount = estimatedCount;
+  }
+
+  public BigDecimal getTotalEstimatedHours() {
+    return totalEstimatedHours;
+  }
+
+  public void setTotalEstimatedHours(BigDecimal totalEstimatedHours) {
+    this.totalEstimatedHours = totalEstimatedHours;
+  }
+
+  public BigDecimal getAverageEstimatedHours() {
+    return averageEstimatedHours;
+  }
+
+  public void setAverageEstimatedHours(BigDecimal averageEstimatedHours) {
+    this.averageEstimatedHours = averageEstimatedHours;
+  }
+
+  public Long getActualCount() {
+    return actualCount;
+  }
+
+  public void setActualCount(Long actualCount) {
+    this.actualCount = actualCount;
+  }
+
+  public BigDecimal getTotalActualHours() {
+    return totalActualHours;
+  }
+
+  public void setTotalActualHours(BigDecimal totalActualHours) {
+    this.totalActualHours = totalActualHours;
+  }
+
+  public BigDecimal getAverageActualHours() {
+    return averageActualHours;
+  }
+
+  public void setAverageActualHours(BigDecimal averageActualHours) {
+    this.averageActualHours = averageActualHours;
+  }
+
+  public BigDecimal getTotalOverrunHours() {
+    return totalOverrunHours;
+  }
+
+  public void setTotalOverrunHours(BigDecimal totalOverrunHours) {
+    this.totalOverrunHours = totalOverrunHours;
+  }
+
+  @Override
+  public String toString() {
+    return "projects = " + projectCount
+        + ", estimated hours: total = " + totalEstimatedHours + ", average = " + averageEstimatedHours
+        + ", actual hours: total = " + totalActualHours + ", average = " + averageActualHours
+        + ", overrun = " + totalOverrunHours;
+  }
+}
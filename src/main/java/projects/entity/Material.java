@@ -15,6 +15,7 @@ public class Material {
   private String materialName;
   private Integer numRequired;
   private BigDecimal cost;
+  private Integer version;
 
   public Integer getMaterialId() {
     return materialId;
@@ -56,6 +57,15 @@ public class Material {
     this.cost = cost;
   }
 
+  // Advanced by every update of the row. Null on objects that were not read from the DB.
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
   @Override
   public String toString() {
     return "ID = " + materialId + ", materialName = " + materialName + ", numRequired = " + numRequired
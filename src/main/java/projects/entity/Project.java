@@ -18,6 +18,7 @@ public class Project {
   private BigDecimal actualHours;
   private Integer difficulty;
   private String notes;
+  private Integer version;
 
   private List<Material> materials = new LinkedList<>();
   private List<Step> steps = new LinkedList<>();
@@ -71,6 +72,15 @@ public class Project {
     this.notes = notes;
   }
 
+  // Advanced by every update of the row. Null on objects that were not read from the DB.
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
   public List<Material> getMaterials() {
     return materials;
   }
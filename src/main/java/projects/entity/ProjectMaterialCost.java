@@ -0,0 +1,81 @@
+/**
+ * 
+ */
+package projects.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * The cost of a project's materials (num_required * cost summed over its material rows) and where
+ * it ranks among all projects. Materials without a quantity or a cost add nothing.
+ * 
+ * @author Promineo
+ *
+ */
+public class ProjectMaterialCost {
+  private Integer projectId;
+  private String projectName;
+  private Long materialCount;
+  private BigDecimal materialCost;
+  // 1 for the most expensive project; equal costs share a rank
+  private Long costRank;
+  // share of the material cost of all projects held by this one and the ones ranked above it
+  private BigDecimal cumulativeCostPercent;
+
+  public Integer getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(Integer projectId) {
+    this.projectId = projectId;
+  }
+
+  public String getProjectName() {
+    return projectName;
+  }
+
+  public void setProjectName(String projectName) {
+    this.projectName = projectName;
+  }
+
+  public Long getMaterialCount() {
+    return materialCount;
+  }
+
+  public void setMaterialCount(Long materialCount) {
+    this.materialCount = materialCount;
+  }
+
+  public BigDecimal getMaterialCost() {
+    return materialCost;
+  }
+
+  public void setMaterialCost(BigDecimal materialCost) {
+    this.materialCost = materialCost;
+  }
+
+  public Long getCostRank() {
+    return costRank;
+  }
+
+  public void setCostRank(Long costRank) {
+    this.costRank = costRank;
+  }
+
+  public BigDecimal getCumulativeCostPercent() {
+    return cumulativeCostPercent;
+  }
+
+  public void setCumulativeCostPercent(BigDecimal cumulativeCostPercent) {
+    this.cumulativeCostPercent = cumulativeCostPercent;
+  }
+
+  @Override
+  public String toString() {
+    return "ID = " + projectId + ", name = " + projectName
+        + ", materials = " + materialCount
+        + ", cost = " + materialCost
+        + ", rank = " + costRank
+        + ", cumulative = " + cumulativeCostPercent + "%";
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * 
+ */
+package projects.entity;
+
+/**
+ * A lightweight projection of a project row holding only the columns needed for listings. It
+ * avoids reading the notes TEXT column and the child tables.
+ * 
+ * @author Promineo
+ *
+ */
+public class ProjectSummary {
+  private Integer projectId;
+  private String projectName;
+
+  public Integer getProjectId() {
+    return projectId;
+  }
+
+  public void setProjectId(Integer projectId) {
+    this.projectId = projectId;
+  }
+
+  public String getProjectName() {
+    return projectName;
+  }
+
+  public void setProjectName(String projectName) {
+    this.projectName = projectName;
+  }
+
+  @Override
+  public String toString() {
+    return "ID = " + projectId + ", name = " + projectName;
+  }
+}
@@ -12,6 +12,7 @@ public class Step {
   private Integer projectId;
   private String stepText;
   private Integer stepOrder;
+  private Integer version;
 
   public Integer getStepId() {
     return stepId;
@@ -45,6 +46,15 @@ public class Step {
     this.stepOrder = stepOrder;
   }
 
+  // Advanced by every update of the row. Null on objects that were not read from the DB.
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
   @Override
   public String toString() {
     return "ID = " + stepId + ", stepText = " + stepText;
@@ -0,0 +1,46 @@
+package projects.exception;
+
+/**
+ * Thrown when an update was based on a version of a row that another writer has changed or deleted
+ * since it was read. The transaction has been rolled back, so nothing was written. Read the row
+ * again, reapply the change and retry.
+ */
+@SuppressWarnings("serial")
+public class ConcurrentUpdateException extends DbException {
+
+	private final String table;
+	private final Integer id;
+	private final Integer expectedVersion;
+	// null when the row has been deleted
+	private final Integer currentVersion;
+
+
+	public ConcurrentUpdateException(String table, Integer id, Integer expectedVersion, Integer currentVersion) {
+		//@formatter:off
+		super(table + " " + id + " was expected at version " + expectedVersion + " but "
+				+ (currentVersion == null ? "has been deleted" : "is at version " + currentVersion)
+				+ ". It was changed by another writer since it was read.");
+		//@formatter:on
+		this.table = table;
+		this.id = id;
+		this.expectedVersion = expectedVersion;
+		this.currentVersion = currentVersion;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public Integer getExpectedVersion() {
+		return expectedVersion;
+	}
+
+	public Integer getCurrentVersion() {
+		return currentVersion;
+	}
+
+}
@@ -0,0 +1,140 @@
+package projects.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The BINARY export format. A file is laid out as:
+ *
+ * <pre>
+ * header:  "PRJX"  version(1 byte)  table(text)  columnCount(varint)
+ *          per column: name(text)  type(1 byte: 0 = int, 1 = decimal, 2 = text)  scale(1 byte)
+ * rows:    1(1 byte)  null bitmap(one bit per column, lowest bit first)  non-null values
+ * trailer: 0(1 byte)  rowCount(varint)
+ * </pre>
+ *
+ * Ints are zigzag varints. Decimals are the zigzag varint of the value scaled by the column's
+ * scale (12.50 at scale 2 is 1250). Text is a varint byte length followed by UTF-8. A project row
+ * with short text is typically 30 to 40 bytes, less than half its CSV size.
+ */
+class BinaryRowWriter extends RowWriter {
+
+	private static final byte[] MAGIC = "PRJX".getBytes(StandardCharsets.US_ASCII);
+	private static final byte VERSION = 1;
+	private static final byte ROW = 1;
+	private static final byte END = 0;
+
+	// Reused for every row
+	private final byte[] nullBitmap;
+	private final Object[] values;
+
+
+	BinaryRowWriter(Path file, String table, List<ExportColumn> columns) throws IOException {
+		super(file, columns);
+		nullBitmap = new byte[(columns.size() + 7) / 8];
+		values = new Object[columns.size()];
+
+		put(MAGIC);
+		put(VERSION);
+		putString(table);
+		putVarLong(columns.size());
+
+		for(ExportColumn column : columns) {
+			putString(column.getName());
+			put((byte)column.getType().ordinal());
+			put((byte)column.getScale());
+		}
+	}
+
+
+	@Override
+	protected void encodeRow(ResultSet rs) throws SQLException, IOException {
+		Arrays.fill(nullBitmap, (byte)0);
+
+		for(int pos = 0; pos < columns.size(); pos++) {
+			values[pos] = read(rs, pos + 1, columns.get(pos));
+
+			if(Objects.isNull(values[pos])) {
+				nullBitmap[pos / 8] |= 1 << (pos % 8);
+			}
+		}
+
+		put(ROW);
+		put(nullBitmap);
+
+		for(int pos = 0; pos < columns.size(); pos++) {
+			if(Objects.nonNull(values[pos])) {
+				write(values[pos], columns.get(pos));
+			}
+		}
+	}
+
+	@Override
+	protected void finish() throws IOException {
+		put(END);
+		putVarLong(getRowCount());
+	}
+
+	private Object read(ResultSet rs, int index, ExportColumn column) throws SQLException {
+		switch(column.getType()) {
+		case INT:
+			long value = rs.getLong(index);
+			return rs.wasNull() ? null : value;
+
+		case DECIMAL:
+			return rs.getBigDecimal(index);
+
+		default:
+			return rs.getString(index);
+		}
+	}
+
+	private void write(Object value, ExportColumn column) throws IOException {
+		switch(column.getType()) {
+		case INT:
+			putVarLong(zigzag((Long)value));
+			break;
+
+		case DECIMAL:
+			BigDecimal scaled = ((BigDecimal)value).setScale(column.getScale(), RoundingMode.HALF_UP);
+			putVarLong(zigzag(scaled.unscaledValue().longValueExact()));
+			break;
+
+		default:
+			putString((String)value);
+		}
+	}
+
+	private void putString(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		putVarLong(bytes.length);
+		put(bytes);
+	}
+
+	// Seven bits per byte, low bits first, with the high bit set on every byte but the last
+	private void putVarLong(long value) throws IOException {
+		long remaining = value;
+
+		while((remaining & ~0x7FL) != 0) {
+			put((byte)((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+
+		put((byte)remaining);
+	}
+
+	// Maps small negative numbers to small positive ones so they stay short as varints
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+}
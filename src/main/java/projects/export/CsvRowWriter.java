@@ -0,0 +1,102 @@
+package projects.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The CSV export format: RFC 4180, a header row of column names, CRLF line endings. NULL is an
+ * empty field; text is quoted only when it contains a comma, quote or line break.
+ */
+class CsvRowWriter extends RowWriter {
+
+	// Reused for every row
+	private final StringBuilder line = new StringBuilder();
+
+
+	CsvRowWriter(Path file, List<ExportColumn> columns) throws IOException {
+		super(file, columns);
+
+		for(int pos = 0; pos < columns.size(); pos++) {
+			appendSeparator(pos);
+			appendText(columns.get(pos).getName());
+		}
+
+		endLine();
+	}
+
+
+	@Override
+	protected void encodeRow(ResultSet rs) throws SQLException, IOException {
+		for(int pos = 0; pos < columns.size(); pos++) {
+			appendSeparator(pos);
+
+			switch(columns.get(pos).getType()) {
+			case INT:
+				long value = rs.getLong(pos + 1);
+
+				if(!rs.wasNull()) {
+					line.append(value);
+				}
+				break;
+
+			case DECIMAL:
+				BigDecimal decimal = rs.getBigDecimal(pos + 1);
+
+				if(Objects.nonNull(decimal)) {
+					line.append(decimal.toPlainString());
+				}
+				break;
+
+			default:
+				String text = rs.getString(pos + 1);
+
+				if(Objects.nonNull(text)) {
+					appendText(text);
+				}
+			}
+		}
+
+		endLine();
+	}
+
+	private void appendSeparator(int pos) {
+		if(pos > 0) {
+			line.append(',');
+		}
+	}
+
+	private void appendText(String text) {
+		boolean quote = text.isEmpty() || text.chars().anyMatch(ch -> ch == ',' || ch == '"' || ch == '\r' || ch == '\n');
+
+		if(!quote) {
+			line.append(text);
+			return;
+		}
+
+		line.append('"');
+
+		for(int pos = 0; pos < text.length(); pos++) {
+			char ch = text.charAt(pos);
+
+			if(ch == '"') {
+				line.append('"');
+			}
+
+			line.append(ch);
+		}
+
+		line.append('"');
+	}
+
+	private void endLine() throws IOException {
+		line.append("\r\n");
+		putText(line);
+		line.setLength(0);
+	}
+
+}
@@ -0,0 +1,36 @@
+package projects.export;
+
+/**
+ * A column of an exported table, with the type the writers encode it as.
+ */
+class ExportColumn {
+
+	enum Type {
+		INT, DECIMAL, TEXT
+	}
+
+	private final String name;
+	private final Type type;
+	// digits after the decimal point, for DECIMAL columns
+	private final int scale;
+
+
+	ExportColumn(String name, Type type, int scale) {
+		this.name = name;
+		this.type = type;
+		this.scale = scale;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	Type getType() {
+		return type;
+	}
+
+	int getScale() {
+		return scale;
+	}
+
+}
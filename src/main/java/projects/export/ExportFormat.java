@@ -0,0 +1,44 @@
+package projects.export;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * File formats {@link ProjectExporter} can write. Each exported table goes to its own file per
+ * partition.
+ */
+public enum ExportFormat {
+
+	// Compact binary rows: see BinaryRowWriter for the layout
+	BINARY("bin"),
+	// RFC 4180 CSV with a header row
+	CSV("csv"),
+	// One JSON object per row
+	JSON_LINES("jsonl");
+
+	private final String extension;
+
+
+	ExportFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	RowWriter open(Path file, String table, List<ExportColumn> columns) throws IOException {
+		switch(this) {
+		case BINARY:
+			return new BinaryRowWriter(file, table, columns);
+
+		case CSV:
+			return new CsvRowWriter(file, columns);
+
+		default:
+			return new JsonLinesRowWriter(file, columns);
+		}
+	}
+
+}
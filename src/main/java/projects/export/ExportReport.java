@@ -0,0 +1,142 @@
+package projects.export;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What an export wrote and how fast, overall and per partition.
+ */
+public class ExportReport {
+
+	private final ExportFormat format;
+	private final List<PartitionReport> partitions;
+	private final long elapsedNanos;
+
+
+	ExportReport(ExportFormat format, List<PartitionReport> partitions, long elapsedNanos) {
+		this.format = format;
+		this.partitions = Collections.unmodifiableList(partitions);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public ExportFormat getFormat() {
+		return format;
+	}
+
+	public List<PartitionReport> getPartitions() {
+		return partitions;
+	}
+
+	// rows of all tables together
+	public long getRowCount() {
+		return partitions.stream().mapToLong(PartitionReport::getRowCount).sum();
+	}
+
+	public long getByteCount() {
+		return partitions.stream().mapToLong(PartitionReport::getByteCount).sum();
+	}
+
+	public double getElapsedMillis() {
+		return elapsedNanos / 1_000_000.0;
+	}
+
+	public double getRowsPerSecond() {
+		return rate(getRowCount(), elapsedNanos);
+	}
+
+	public double getMegabytesPerSecond() {
+		return rate(getByteCount(), elapsedNanos) / (1024 * 1024);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+
+		//@formatter:off
+		result.append(format).append(": partitions = ").append(partitions.size())
+				.append(", rows = ").append(getRowCount())
+				.append(", bytes = ").append(getByteCount())
+				.append(", elapsedMillis = ").append(String.format("%.1f", getElapsedMillis()))
+				.append(", rowsPerSecond = ").append(String.format("%.0f", getRowsPerSecond()))
+				.append(", mbPerSecond = ").append(String.format("%.2f", getMegabytesPerSecond()));
+		//@formatter:on
+
+		partitions.forEach(partition -> result.append("\n   ").append(partition));
+
+		return result.toString();
+	}
+
+	private static double rate(long amount, long nanos) {
+		return nanos == 0 ? 0.0 : amount * 1_000_000_000.0 / nanos;
+	}
+
+
+	/**
+	 * One partition: a project_id range exported on its own connection.
+	 */
+	public static class PartitionReport {
+		private final int partition;
+		private final int firstProjectId;
+		private final int lastProjectId;
+		private final Map<String, Long> rowsByTable;
+		private final long byteCount;
+		private final long elapsedNanos;
+
+		//@formatter:off
+		PartitionReport(int partition, int firstProjectId, int lastProjectId, Map<String, Long> rowsByTable,
+				long byteCount, long elapsedNanos) {
+		//@formatter:on
+			this.partition = partition;
+			this.firstProjectId = firstProjectId;
+			this.lastProjectId = lastProjectId;
+			this.rowsByTable = Collections.unmodifiableMap(rowsByTable);
+			this.byteCount = byteCount;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public int getPartition() {
+			return partition;
+		}
+
+		public int getFirstProjectId() {
+			return firstProjectId;
+		}
+
+		public int getLastProjectId() {
+			return lastProjectId;
+		}
+
+		public Map<String, Long> getRowsByTable() {
+			return rowsByTable;
+		}
+
+		public long getRowCount() {
+			return rowsByTable.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		public long getByteCount() {
+			return byteCount;
+		}
+
+		public double getElapsedMillis() {
+			return elapsedNanos / 1_000_000.0;
+		}
+
+		public double getRowsPerSecond() {
+			return rate(getRowCount(), elapsedNanos);
+		}
+
+		@Override
+		public String toString() {
+			//@formatter:off
+			return "partition " + partition + " (project_id " + firstProjectId + " to " + lastProjectId + ")"
+					+ ": rows = " + rowsByTable
+					+ ", bytes = " + byteCount
+					+ ", elapsedMillis = " + String.format("%.1f", getElapsedMillis())
+					+ ", rowsPerSecond = " + String.format("%.0f", getRowsPerSecond());
+			//@formatter:on
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package projects.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The JSON_LINES export format: one JSON object per row, keyed by column name, one row per line.
+ * Decimals are written as JSON numbers and NULL as null.
+ */
+class JsonLinesRowWriter extends RowWriter {
+
+	// Reused for every row
+	private final StringBuilder line = new StringBuilder();
+
+
+	JsonLinesRowWriter(Path file, List<ExportColumn> columns) throws IOException {
+		super(file, columns);
+	}
+
+
+	@Override
+	protected void encodeRow(ResultSet rs) throws SQLException, IOException {
+		line.append('{');
+
+		for(int pos = 0; pos < columns.size(); pos++) {
+			ExportColumn column = columns.get(pos);
+
+			if(pos > 0) {
+				line.append(',');
+			}
+
+			appendString(column.getName());
+			line.append(':');
+
+			switch(column.getType()) {
+			case INT:
+				long value = rs.getLong(pos + 1);
+				line.append(rs.wasNull() ? "null" : Long.toString(value));
+				break;
+
+			case DECIMAL:
+				BigDecimal decimal = rs.getBigDecimal(pos + 1);
+				line.append(Objects.isNull(decimal) ? "null" : decimal.toPlainString());
+				break;
+
+			default:
+				String text = rs.getString(pos + 1);
+
+				if(Objects.isNull(text)) {
+					line.append("null");
+				}
+				else {
+					appendString(text);
+				}
+			}
+		}
+
+		line.append("}\n");
+		putText(line);
+		line.setLength(0);
+	}
+
+	private void appendString(String text) {
+		line.append('"');
+
+		for(int pos = 0; pos < text.length(); pos++) {
+			char ch = text.charAt(pos);
+
+			switch(ch) {
+			case '"':
+				line.append("\\\"");
+				break;
+
+			case '\\':
+				line.append("\\\\");
+				break;
+
+			case '\n':
+				line.append("\\n");
+				break;
+
+			case '\r':
+				line.append("\\r");
+				break;
+
+			case '\t':
+				line.append("\\t");
+				break;
+
+			default:
+				if(ch < 0x20) {
+					line.append(String.format("\\u%04x", (int)ch));
+				}
+				else {
+					line.append(ch);
+				}
+			}
+		}
+
+		line.append('"');
+	}
+
+}
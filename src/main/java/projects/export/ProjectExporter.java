@@ -0,0 +1,269 @@
+package projects.export;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import projects.dao.DbConnection;
+import projects.dao.ProjectDao;
+import projects.exception.DbException;
+import projects.export.ExportReport.PartitionReport;
+import provided.util.ConnectionProvider;
+
+/**
+ * Dumps every project with its materials, steps and categories for analytics.
+ *
+ * The project_id range is split into partitions that are exported in parallel, each on its own
+ * connection. A partition reads its project, material, step and category rows in four streaming
+ * queries inside one consistent-snapshot transaction, so a project and its child rows always
+ * match, and writes each table straight to its own file (for example material-003.csv). Rows are
+ * never held in memory, so each partition needs a result set row and a 64 KB write buffer
+ * regardless of its size.
+ *
+ * A failed partition stops the export; files already written are left in place.
+ */
+public class ProjectExporter {
+
+	private static final Logger LOG = Logger.getLogger(ProjectExporter.class.getName());
+
+	// More partitions than threads so one dense id range does not leave the other threads idle
+	private static final int PARTITIONS_PER_THREAD = 4;
+
+	//@formatter:off
+	private static final List<ExportTable> TABLES = List.of(
+			new ExportTable(ProjectDao.PROJECT_TABLE, ""
+					+ "SELECT project_id, project_name, estimated_hours, actual_hours, difficulty, notes "
+					+ "FROM " + ProjectDao.PROJECT_TABLE + " "
+					+ "WHERE project_id BETWEEN ? AND ? ORDER BY project_id"),
+			new ExportTable(ProjectDao.MATERIAL_TABLE, ""
+					+ "SELECT material_id, project_id, material_name, num_required, cost "
+					+ "FROM " + ProjectDao.MATERIAL_TABLE + " "
+					+ "WHERE project_id BETWEEN ? AND ? ORDER BY project_id, material_id"),
+			new ExportTable(ProjectDao.STEP_TABLE, ""
+					+ "SELECT step_id, project_id, step_text, step_order "
+					+ "FROM " + ProjectDao.STEP_TABLE + " "
+					+ "WHERE project_id BETWEEN ? AND ? ORDER BY project_id, step_order"),
+			new ExportTable(ProjectDao.CATEGORY_TABLE, ""
+					+ "SELECT pc.project_id, c.category_id, c.category_name "
+					+ "FROM " + ProjectDao.PROJECT_CATEGORY_TABLE + " pc "
+					+ "JOIN " + ProjectDao.CATEGORY_TABLE + " c USING (category_id) "
+					+ "WHERE pc.project_id BETWEEN ? AND ? ORDER BY pc.project_id, c.category_id"));
+	//@formatter:on
+
+	private final ConnectionProvider connectionProvider;
+
+
+	public ProjectExporter() {
+		this(DbConnection.getLazyConnectionProvider());
+	}
+
+	public ProjectExporter(ConnectionProvider connectionProvider) {
+		this.connectionProvider = connectionProvider;
+	}
+
+
+	/**
+	 * Exports on parallelism connections. The connection pool must allow at least that many.
+	 */
+	public ExportReport export(Path directory, ExportFormat format, int parallelism) {
+		return export(directory, format, parallelism * PARTITIONS_PER_THREAD, parallelism);
+	}
+
+	public ExportReport export(Path directory, ExportFormat format, int partitionCount, int parallelism) {
+		long start = System.nanoTime();
+
+		try {
+			Files.createDirectories(directory);
+		}
+		catch(IOException e) {
+			throw new DbException("Unable to create " + directory, e);
+		}
+
+		List<int[]> ranges = partition(partitionCount);
+		List<PartitionReport> partitions = new ArrayList<>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ExportThreadFactory());
+
+		try {
+			List<Future<PartitionReport>> futures = new ArrayList<>();
+
+			for(int pos = 0; pos < ranges.size(); pos++) {
+				int partition = pos;
+				int[] range = ranges.get(pos);
+
+				futures.add(executor.submit(() -> exportPartition(directory, format, partition, range[0], range[1])));
+			}
+
+			for(Future<PartitionReport> future : futures) {
+				partitions.add(future.get());
+			}
+		}
+		catch(ExecutionException e) {
+			throw e.getCause() instanceof DbException ? (DbException)e.getCause() : new DbException(e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Export interrupted", e);
+		}
+		finally {
+			// stops the remaining partitions if one failed
+			executor.shutdownNow();
+		}
+
+		ExportReport report = new ExportReport(format, partitions, System.nanoTime() - start);
+		LOG.info("Exported projects to " + directory + ": " + report);
+
+		return report;
+	}
+
+	/*
+	 * Splits MIN(project_id)..MAX(project_id) into equal ranges. Ids are assigned by
+	 * AUTO_INCREMENT, so equal ranges hold roughly equal numbers of projects.
+	 */
+	private List<int[]> partition(int partitionCount) {
+		String sql = "SELECT MIN(project_id), MAX(project_id) FROM " + ProjectDao.PROJECT_TABLE;
+		List<int[]> ranges = new ArrayList<>();
+
+		try(Connection conn = connectionProvider.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+			try(ResultSet rs = stmt.executeQuery()) {
+				rs.next();
+
+				int min = rs.getInt(1);
+
+				if(rs.wasNull()) {
+					return ranges;
+				}
+
+				long span = (long)rs.getInt(2) - min + 1;
+				long width = (span + partitionCount - 1) / partitionCount;
+
+				for(long first = min; first < min + span; first += width) {
+					ranges.add(new int[] {(int)first, (int)Math.min(first + width - 1, min + span - 1)});
+				}
+			}
+		}
+		catch(SQLException e) {
+			throw new DbException(e);
+		}
+
+		return ranges;
+	}
+
+	private PartitionReport exportPartition(Path directory, ExportFormat format, int partition, int firstId, int lastId) {
+		long start = System.nanoTime();
+		Map<String, Long> rows = new LinkedHashMap<>();
+		long bytes = 0;
+
+		try(Connection conn = connectionProvider.getConnection()) {
+			conn.setAutoCommit(false);
+
+			// every table is read from the same snapshot
+			try(Statement stmt = conn.createStatement()) {
+				stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+			}
+
+			for(ExportTable table : TABLES) {
+				String fileName = String.format("%s-%03d.%s", table.name, partition, format.getExtension());
+
+				try(PreparedStatement stmt = conn.prepareStatement(table.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+					// streams the rows instead of buffering the result, by cursor or row by row depending on the
+					// useCursorFetch setting
+					stmt.setFetchSize(DbConnection.getStreamFetchSize());
+					stmt.setInt(1, firstId);
+					stmt.setInt(2, lastId);
+
+					try(ResultSet rs = stmt.executeQuery()) {
+						RowWriter writer = format.open(directory.resolve(fileName), table.name, columns(rs));
+
+						try(writer) {
+							while(rs.next()) {
+								writer.writeRow(rs);
+							}
+						}
+
+						rows.put(table.name, writer.getRowCount());
+						bytes += writer.getBytesWritten();
+					}
+				}
+			}
+
+			conn.commit();
+		}
+		catch(SQLException | IOException e) {
+			throw new DbException("Export of partition " + partition + " failed", e);
+		}
+
+		PartitionReport report = new PartitionReport(partition, firstId, lastId, rows, bytes, System.nanoTime() - start);
+		LOG.fine("Exported " + report);
+
+		return report;
+	}
+
+	private List<ExportColumn> columns(ResultSet rs) throws SQLException {
+		ResultSetMetaData meta = rs.getMetaData();
+		List<ExportColumn> columns = new ArrayList<>();
+
+		for(int col = 1; col <= meta.getColumnCount(); col++) {
+			switch(meta.getColumnType(col)) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				columns.add(new ExportColumn(meta.getColumnLabel(col), ExportColumn.Type.INT, 0));
+				break;
+
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				columns.add(new ExportColumn(meta.getColumnLabel(col), ExportColumn.Type.DECIMAL, meta.getScale(col)));
+				break;
+
+			default:
+				columns.add(new ExportColumn(meta.getColumnLabel(col), ExportColumn.Type.TEXT, 0));
+			}
+		}
+
+		return columns;
+	}
+
+
+	private static class ExportTable {
+		private final String name;
+		private final String sql;
+
+		ExportTable(String name, String sql) {
+			this.name = name;
+			this.sql = sql;
+		}
+	}
+
+
+	private static class ExportThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "project-export-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package projects.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes the rows of one result set to one file through a fixed-size direct buffer and a
+ * FileChannel, so memory use does not grow with the number of rows. Subclasses encode rows; this
+ * class owns the buffering.
+ */
+abstract class RowWriter implements AutoCloseable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	protected final List<ExportColumn> columns;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private long bytesWritten;
+	private long rowCount;
+
+
+	RowWriter(Path file, List<ExportColumn> columns) throws IOException {
+		this.columns = columns;
+		//@formatter:off
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		//@formatter:on
+	}
+
+
+	// Writes the row the result set is positioned on
+	final void writeRow(ResultSet rs) throws SQLException, IOException {
+		encodeRow(rs);
+		rowCount++;
+	}
+
+	protected abstract void encodeRow(ResultSet rs) throws SQLException, IOException;
+
+	// Called once after the last row, before the file is closed
+	protected void finish() throws IOException {
+	}
+
+	long getRowCount() {
+		return rowCount;
+	}
+
+	long getBytesWritten() {
+		return bytesWritten + buffer.position();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	protected void put(byte value) throws IOException {
+		if(!buffer.hasRemaining()) {
+			flush();
+		}
+
+		buffer.put(value);
+	}
+
+	protected void put(byte[] bytes) throws IOException {
+		int offset = 0;
+
+		while(offset < bytes.length) {
+			if(!buffer.hasRemaining()) {
+				flush();
+			}
+
+			int length = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	// Encodes straight into the buffer, so no byte array is made for the text
+	protected void putText(CharSequence text) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+
+		encoder.reset();
+
+		while(true) {
+			CoderResult result = encoder.encode(chars, buffer, true);
+
+			if(result.isOverflow()) {
+				flush();
+			}
+			else if(result.isUnderflow()) {
+				break;
+			}
+			else {
+				result.throwException();
+			}
+		}
+
+		while(encoder.flush(buffer).isOverflow()) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+
+		while(buffer.hasRemaining()) {
+			bytesWritten += channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+}
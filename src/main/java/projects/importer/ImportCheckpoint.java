@@ -0,0 +1,117 @@
+package projects.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import projects.exception.DbException;
+
+/**
+ * How far an import got: the last line of the last committed chunk and the running totals. Kept
+ * in a properties file next to the import file and replaced atomically after every commit, so a
+ * crash leaves either the old checkpoint or the new one.
+ */
+class ImportCheckpoint {
+
+	private final Path checkpointFile;
+	private final String importFile;
+	private long line;
+	private long importedCount;
+	private long rejectedCount;
+
+
+	private ImportCheckpoint(Path checkpointFile, String importFile) {
+		this.checkpointFile = checkpointFile;
+		this.importFile = importFile;
+	}
+
+
+	/**
+	 * Reads the checkpoint for the import file, or starts a new one at line 0 if there is none.
+	 */
+	static ImportCheckpoint load(Path checkpointFile, Path importFile) {
+		ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile, importFile.toAbsolutePath().toString());
+
+		if(!Files.exists(checkpointFile)) {
+			return checkpoint;
+		}
+
+		Properties properties = new Properties();
+
+		try(Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		catch(IOException e) {
+			throw new DbException("Unable to read checkpoint " + checkpointFile, e);
+		}
+
+		if(!checkpoint.importFile.equals(properties.getProperty("file"))) {
+			//@formatter:off
+			throw new DbException("Checkpoint " + checkpointFile + " belongs to " + properties.getProperty("file")
+					+ ", not " + checkpoint.importFile + ". Delete it to start a new import.");
+			//@formatter:on
+		}
+
+		try {
+			checkpoint.line = Long.parseLong(properties.getProperty("line"));
+			checkpoint.importedCount = Long.parseLong(properties.getProperty("imported"));
+			checkpoint.rejectedCount = Long.parseLong(properties.getProperty("rejected"));
+		}
+		catch(NumberFormatException e) {
+			throw new DbException("Checkpoint " + checkpointFile + " is damaged. Delete it to start a new import.", e);
+		}
+
+		return checkpoint;
+	}
+
+	boolean isNew() {
+		return line == 0;
+	}
+
+	// Lines up to and including this one have been imported or rejected
+	long getLine() {
+		return line;
+	}
+
+	long getImportedCount() {
+		return importedCount;
+	}
+
+	long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	void advance(long line, long imported, long rejected) {
+		this.line = line;
+		this.importedCount += imported;
+		this.rejectedCount += rejected;
+	}
+
+	void save() {
+		Properties properties = new Properties();
+
+		properties.setProperty("file", importFile);
+		properties.setProperty("line", Long.toString(line));
+		properties.setProperty("imported", Long.toString(importedCount));
+		properties.setProperty("rejected", Long.toString(rejectedCount));
+
+		Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+
+		try {
+			try(Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				properties.store(writer, "Project import checkpoint");
+			}
+
+			Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e) {
+			throw new DbException("Unable to write checkpoint " + checkpointFile, e);
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package projects.importer;
+
+import java.util.List;
+
+/**
+ * Consecutive lines of the import file, cut at a project line so no project is split between two
+ * chunks. The sequence number lets the writer commit chunks in file order however the parsers
+ * finish them.
+ */
+class ImportChunk {
+
+	// Put on a queue to tell the stage reading it that nothing follows
+	static final ImportChunk END = new ImportChunk(-1, 0, List.of());
+
+	private final long sequence;
+	private final long firstLine;
+	private final List<String> lines;
+
+
+	ImportChunk(long sequence, long firstLine, List<String> lines) {
+		this.sequence = sequence;
+		this.firstLine = firstLine;
+		this.lines = lines;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	// 1-based line number of the first line
+	long getFirstLine() {
+		return firstLine;
+	}
+
+	long getLastLine() {
+		return firstLine + lines.size() - 1;
+	}
+
+	List<String> getLines() {
+		return lines;
+	}
+
+}
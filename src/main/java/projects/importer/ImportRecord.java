@@ -0,0 +1,61 @@
+package projects.importer;
+
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Project;
+
+/**
+ * One project line of the import file with the child lines that follow it, either parsed into a
+ * valid Project or rejected with the reason.
+ */
+class ImportRecord {
+
+	private final long lineNumber;
+	private final List<String> lines;
+	private final Project project;
+	private String problem;
+
+
+	private ImportRecord(long lineNumber, List<String> lines, Project project, String problem) {
+		this.lineNumber = lineNumber;
+		this.lines = lines;
+		this.project = project;
+		this.problem = problem;
+	}
+
+	static ImportRecord accepted(long lineNumber, List<String> lines, Project project) {
+		return new ImportRecord(lineNumber, lines, project, null);
+	}
+
+	static ImportRecord rejected(long lineNumber, List<String> lines, String problem) {
+		return new ImportRecord(lineNumber, lines, null, problem);
+	}
+
+	long getLineNumber() {
+		return lineNumber;
+	}
+
+	// The lines as they appear in the file, so a rejected record can be fixed and imported again
+	List<String> getLines() {
+		return lines;
+	}
+
+	Project getProject() {
+		return project;
+	}
+
+	boolean isRejected() {
+		return Objects.nonNull(problem);
+	}
+
+	String getProblem() {
+		return problem;
+	}
+
+	// The database refused a record that passed validation
+	void reject(String problem) {
+		this.problem = problem;
+	}
+
+}
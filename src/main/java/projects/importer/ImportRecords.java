@@ -0,0 +1,311 @@
+package projects.importer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.service.ProjectValidator;
+
+/**
+ * Reads and writes the tab-separated import format described in {@link ProjectImporter}, and turns
+ * the lines of a chunk into records. Parsing only checks that the fields can be read; the rules a
+ * project has to follow are applied afterwards by ProjectValidator.
+ */
+final class ImportRecords {
+
+	static final String PROJECT = "project";
+	static final String MATERIAL = "material";
+	static final String STEP = "step";
+	static final String CATEGORY = "category";
+
+	private static final char SEPARATOR = '\t';
+
+
+	private ImportRecords() {
+	}
+
+
+	static boolean startsProject(String line) {
+		return line.startsWith(PROJECT) && line.length() > PROJECT.length() && line.charAt(PROJECT.length()) == SEPARATOR;
+	}
+
+	static boolean isIgnored(String line) {
+		return line.isBlank() || line.startsWith("#");
+	}
+
+	/**
+	 * Splits a chunk into one record per project line and the child lines after it, then parses and
+	 * validates each record. Child lines before the first project line of the file become a rejected
+	 * record of their own.
+	 */
+	static List<ImportRecord> parseChunk(ImportChunk chunk) {
+		List<ImportRecord> records = new ArrayList<>();
+		List<String> lines = null;
+		long recordLine = 0;
+
+		for(int pos = 0; pos < chunk.getLines().size(); pos++) {
+			String line = chunk.getLines().get(pos);
+
+			// ignored lines stay in their record so line numbers can be counted from its first line
+			if(Objects.isNull(lines) && isIgnored(line)) {
+				continue;
+			}
+
+			if(Objects.isNull(lines) || startsProject(line)) {
+				if(Objects.nonNull(lines)) {
+					records.add(parseRecord(recordLine, lines));
+				}
+
+				lines = new ArrayList<>();
+				recordLine = chunk.getFirstLine() + pos;
+			}
+
+			lines.add(line);
+		}
+
+		if(Objects.nonNull(lines)) {
+			records.add(parseRecord(recordLine, lines));
+		}
+
+		return records;
+	}
+
+	private static ImportRecord parseRecord(long lineNumber, List<String> lines) {
+		Project project;
+
+		try {
+			project = parseProject(lineNumber, lines);
+		}
+		catch(IllegalArgumentException e) {
+			// the rejected file already shows the record's own line number
+			String message = e.getMessage().replaceFirst("^line " + lineNumber + ": ", "");
+			return ImportRecord.rejected(lineNumber, lines, message);
+		}
+
+		List<String> problems = ProjectValidator.validate(project);
+
+		if(!problems.isEmpty()) {
+			return ImportRecord.rejected(lineNumber, lines, String.join("; ", problems));
+		}
+
+		return ImportRecord.accepted(lineNumber, lines, project);
+	}
+
+	private static Project parseProject(long lineNumber, List<String> lines) {
+		String[] fields = fields(lineNumber, lines.get(0));
+
+		if(!fields[0].equals(PROJECT)) {
+			throw new IllegalArgumentException("line " + lineNumber + ": " + fields[0] + " line before the first project line");
+		}
+
+		checkFieldCount(lineNumber, fields, 6);
+
+		Project project = new Project();
+
+		project.setProjectName(text(fields[1]));
+		project.setEstimatedHours(decimal(lineNumber, "estimated hours", fields[2]));
+		project.setActualHours(decimal(lineNumber, "actual hours", fields[3]));
+		project.setDifficulty(integer(lineNumber, "difficulty", fields[4]));
+		project.setNotes(text(fields[5]));
+
+		for(int pos = 1; pos < lines.size(); pos++) {
+			long childLine = lineNumber + pos;
+
+			if(isIgnored(lines.get(pos))) {
+				continue;
+			}
+
+			fields = fields(childLine, lines.get(pos));
+
+			switch(fields[0]) {
+			case MATERIAL:
+				checkFieldCount(childLine, fields, 4);
+
+				Material material = new Material();
+
+				material.setMaterialName(text(fields[1]));
+				material.setNumRequired(integer(childLine, "number required", fields[2]));
+				material.setCost(decimal(childLine, "cost", fields[3]));
+				project.getMaterials().add(material);
+				break;
+
+			case STEP:
+				checkFieldCount(childLine, fields, 2);
+
+				Step step = new Step();
+
+				step.setStepText(text(fields[1]));
+				project.getSteps().add(step);
+				break;
+
+			case CATEGORY:
+				checkFieldCount(childLine, fields, 2);
+
+				Category category = new Category();
+
+				category.setCategoryId(integer(childLine, "category id", fields[1]));
+				project.getCategories().add(category);
+				break;
+
+			default:
+				throw new IllegalArgumentException("line " + childLine + ": unknown line type " + fields[0]);
+			}
+		}
+
+		return project;
+	}
+
+	/**
+	 * Writes a project and its children in the import format, one line per row, each ending in a
+	 * newline. Ids and step orders are not written; steps are imported in list order.
+	 */
+	static String format(Project project) {
+		StringBuilder result = new StringBuilder();
+
+		//@formatter:off
+		line(result, PROJECT, project.getProjectName(), project.getEstimatedHours(), project.getActualHours(),
+				project.getDifficulty(), project.getNotes());
+		//@formatter:on
+
+		project.getMaterials().forEach(material -> line(result, MATERIAL, material.getMaterialName(), material.getNumRequired(), material.getCost()));
+		project.getSteps().forEach(step -> line(result, STEP, step.getStepText()));
+		project.getCategories().forEach(category -> line(result, CATEGORY, category.getCategoryId()));
+
+		return result.toString();
+	}
+
+	private static void line(StringBuilder result, String type, Object... values) {
+		result.append(type);
+
+		for(Object value : values) {
+			result.append(SEPARATOR);
+
+			if(value instanceof BigDecimal) {
+				result.append(((BigDecimal)value).toPlainString());
+			}
+			else if(Objects.nonNull(value)) {
+				escape(result, value.toString());
+			}
+		}
+
+		result.append('\n');
+	}
+
+	// A tab, newline, carriage return or backslash inside a value is written as \t, \n, \r or \\
+	private static void escape(StringBuilder result, String value) {
+		for(int pos = 0; pos < value.length(); pos++) {
+			char ch = value.charAt(pos);
+
+			switch(ch) {
+			case '\t':
+				result.append("\\t");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			case '\\':
+				result.append("\\\\");
+				break;
+			default:
+				result.append(ch);
+			}
+		}
+	}
+
+	private static String[] fields(long lineNumber, String line) {
+		String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+
+		for(int pos = 1; pos < fields.length; pos++) {
+			fields[pos] = unescape(lineNumber, fields[pos]);
+		}
+
+		return fields;
+	}
+
+	private static String unescape(long lineNumber, String field) {
+		if(field.indexOf('\\') < 0) {
+			return field;
+		}
+
+		StringBuilder result = new StringBuilder(field.length());
+
+		for(int pos = 0; pos < field.length(); pos++) {
+			char ch = field.charAt(pos);
+
+			if(ch != '\\') {
+				result.append(ch);
+				continue;
+			}
+
+			char escaped = ++pos < field.length() ? field.charAt(pos) : ' ';
+
+			switch(escaped) {
+			case 't':
+				result.append('\t');
+				break;
+			case 'n':
+				result.append('\n');
+				break;
+			case 'r':
+				result.append('\r');
+				break;
+			case '\\':
+				result.append('\\');
+				break;
+			default:
+				throw new IllegalArgumentException("line " + lineNumber + ": invalid escape sequence in " + field);
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static void checkFieldCount(long lineNumber, String[] fields, int expected) {
+		if(fields.length != expected) {
+			//@formatter:off
+			throw new IllegalArgumentException("line " + lineNumber + ": a " + fields[0] + " line has "
+					+ (expected - 1) + " fields but this one has " + (fields.length - 1));
+			//@formatter:on
+		}
+	}
+
+	// An empty field is NULL
+	private static String text(String field) {
+		return field.isEmpty() ? null : field;
+	}
+
+	private static Integer integer(long lineNumber, String name, String field) {
+		if(field.isEmpty()) {
+			return null;
+		}
+
+		try {
+			return Integer.valueOf(field.trim());
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("line " + lineNumber + ": " + name + " is not a whole number: " + field);
+		}
+	}
+
+	private static BigDecimal decimal(long lineNumber, String name, String field) {
+		if(field.isEmpty()) {
+			return null;
+		}
+
+		try {
+			return new BigDecimal(field.trim());
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException("line " + lineNumber + ": " + name + " is not a number: " + field);
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package projects.importer;
+
+import java.nio.file.Path;
+
+/**
+ * What one run of an import wrote, rejected and how fast. Counts cover this run only; a resumed
+ * import also carries the totals from its checkpoint.
+ */
+public class ImportReport {
+
+	private final Path file;
+	private final long resumedAfterLine;
+	private final long lastLine;
+	private final long projectCount;
+	private final long materialCount;
+	private final long stepCount;
+	private final long categoryCount;
+	private final long rejectedCount;
+	private final long batchCount;
+	private final long retriedBatchCount;
+	private final long totalImportedCount;
+	private final long totalRejectedCount;
+	private final long elapsedNanos;
+
+
+	//@formatter:off
+	ImportReport(Path file, long resumedAfterLine, long lastLine, long projectCount, long materialCount,
+			long stepCount, long categoryCount, long rejectedCount, long batchCount, long retriedBatchCount,
+			long totalImportedCount, long totalRejectedCount, long elapsedNanos) {
+	//@formatter:on
+		this.file = file;
+		this.resumedAfterLine = resumedAfterLine;
+		this.lastLine = lastLine;
+		this.projectCount = projectCount;
+		this.materialCount = materialCount;
+		this.stepCount = stepCount;
+		this.categoryCount = categoryCount;
+		this.rejectedCount = rejectedCount;
+		this.batchCount = batchCount;
+		this.retriedBatchCount = retriedBatchCount;
+		this.totalImportedCount = totalImportedCount;
+		this.totalRejectedCount = totalRejectedCount;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	// 0 unless the run continued from a checkpoint
+	public long getResumedAfterLine() {
+		return resumedAfterLine;
+	}
+
+	// last line covered by the checkpoint when the run finished
+	public long getLastLine() {
+		return lastLine;
+	}
+
+	public long getProjectCount() {
+		return projectCount;
+	}
+
+	public long getMaterialCount() {
+		return materialCount;
+	}
+
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	public long getCategoryCount() {
+		return categoryCount;
+	}
+
+	// project, material, step and project_category rows together
+	public long getRowCount() {
+		return projectCount + materialCount + stepCount + categoryCount;
+	}
+
+	// projects written to the rejected file
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	// batches the database refused as a whole and that were written again one project at a time
+	public long getRetriedBatchCount() {
+		return retriedBatchCount;
+	}
+
+	// projects imported by every run of this file, including this one
+	public long getTotalImportedCount() {
+		return totalImportedCount;
+	}
+
+	public long getTotalRejectedCount() {
+		return totalRejectedCount;
+	}
+
+	public double getElapsedMillis() {
+		return elapsedNanos / 1_000_000.0;
+	}
+
+	public double getProjectsPerSecond() {
+		return rate(projectCount, elapsedNanos);
+	}
+
+	public double getRowsPerSecond() {
+		return rate(getRowCount(), elapsedNanos);
+	}
+
+	@Override
+	public String toString() {
+		//@formatter:off
+		return file
+				+ (lastLine == resumedAfterLine ? ": nothing after line " + lastLine : ": lines " + (resumedAfterLine + 1) + " to " + lastLine)
+				+ ", projects = " + projectCount
+				+ ", materials = " + materialCount
+				+ ", steps = " + stepCount
+				+ ", categories = " + categoryCount
+				+ ", rejected = " + rejectedCount
+				+ ", batches = " + batchCount
+				+ ", retriedBatches = " + retriedBatchCount
+				+ ", totalImported = " + totalImportedCount
+				+ ", totalRejected = " + totalRejectedCount
+				+ ", elapsedMillis = " + String.format("%.1f", getElapsedMillis())
+				+ ", projectsPerSecond = " + String.format("%.0f", getProjectsPerSecond())
+				+ ", rowsPerSecond = " + String.format("%.0f", getRowsPerSecond());
+		//@formatter:on
+	}
+
+	static double rate(long amount, long nanos) {
+		return nanos == 0 ? 0.0 : amount * 1_000_000_000.0 / nanos;
+	}
+
+}
@@ -0,0 +1,484 @@
+package projects.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import projects.dao.DbConnection;
+import projects.dao.ProjectDao;
+import projects.entity.Project;
+import projects.exception.DbException;
+import provided.util.ConnectionProvider;
+
+/**
+ * Loads projects with their materials, steps and categories from a tab-separated file, for
+ * onboarding data sets too large to enter through the menu. Each line starts with its type:
+ *
+ * <pre>
+ * project   name  estimated_hours  actual_hours  difficulty  notes
+ * material  material_name  num_required  cost
+ * step      step_text
+ * category  category_id
+ * </pre>
+ *
+ * Material, step and category lines belong to the project line above them. An empty field is NULL,
+ * and tabs, newlines, carriage returns and backslashes in text are written as \t, \n, \r and \\.
+ * Blank lines and lines starting with # are ignored. {@link #format(Project)} writes a project in
+ * this format.
+ *
+ * The import runs as a pipeline. A reader thread cuts the file into chunks of whole projects, the
+ * parser threads parse each chunk and check every project against
+ * {@link projects.service.ProjectValidator}, and the calling thread writes the valid projects of each chunk in one transaction with
+ * ProjectDao.insertProjectAggregates. The stages are joined by bounded queues, so a slow database
+ * holds back the parsers and the parsers hold back the reader, and memory stays at a few chunks
+ * whatever the size of the file.
+ *
+ * Projects that fail parsing or validation, or that the database refuses, are copied to
+ * {@code <file>.rejected} under a comment giving the line number and the reason; the file can be
+ * fixed and imported on its own. After each chunk commits, {@code <file>.checkpoint} records the last
+ * line done, and importing the same file again continues after it. A chunk that committed just before
+ * a crash, ahead of its checkpoint, is imported a second time on resume.
+ */
+public class ProjectImporter {
+
+	private static final Logger LOG = Logger.getLogger(ProjectImporter.class.getName());
+
+	// Projects written per transaction
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	// Chunks each queue holds per parser thread before the stage feeding it has to wait
+	private static final int QUEUED_CHUNKS_PER_PARSER = 2;
+	private static final long POLL_MILLIS = 100;
+	private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final ProjectDao projectDao;
+	private final Consumer<List<Project>> committedListener;
+
+
+	public ProjectImporter() {
+		this(projects -> {
+		});
+	}
+
+	/**
+	 * @param committedListener Called on the importing thread with the projects of each chunk once
+	 *        they are committed, with their generated ids set.
+	 */
+	public ProjectImporter(Consumer<List<Project>> committedListener) {
+		this(DbConnection.getLazyConnectionProvider(), committedListener);
+	}
+
+	public ProjectImporter(ConnectionProvider connectionProvider, Consumer<List<Project>> committedListener) {
+		this.projectDao = new ProjectDao(connectionProvider);
+		this.committedListener = committedListener;
+	}
+
+
+	/**
+	 * Writes a project and its children in the import format, one line per row, each ending in a
+	 * newline.
+	 */
+	public static String format(Project project) {
+		return ImportRecords.format(project);
+	}
+
+	public ImportReport importProjects(Path file, int parallelism) {
+		return importProjects(file, parallelism, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Imports the file, or the rest of it if an earlier run left a checkpoint.
+	 *
+	 * @param parallelism Number of parser threads. Writes always use one connection.
+	 * @param batchSize Projects per chunk and per transaction.
+	 */
+	public ImportReport importProjects(Path file, int parallelism, int batchSize) {
+		if(parallelism < 1 || batchSize < 1) {
+			throw new DbException("Parallelism and batch size must be at least 1 but were " + parallelism + " and " + batchSize);
+		}
+
+		long start = System.nanoTime();
+
+		Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+		Path rejectedFile = file.resolveSibling(file.getFileName() + ".rejected");
+
+		ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile, file);
+		long resumedAfterLine = checkpoint.getLine();
+
+		if(!checkpoint.isNew()) {
+			LOG.info("Resuming import of " + file + " after line " + resumedAfterLine);
+		}
+
+		int queueSize = parallelism * QUEUED_CHUNKS_PER_PARSER;
+		BlockingQueue<ImportChunk> chunks = new ArrayBlockingQueue<>(queueSize);
+		BlockingQueue<ParsedChunk> parsed = new ArrayBlockingQueue<>(queueSize);
+
+		// a resumed import adds to the rejected rows of the runs before it
+		OpenOption mode = checkpoint.isNew() ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism + 1, new ImportThreadFactory());
+
+		//@formatter:off
+		try(Writer rejected = Files.newBufferedWriter(rejectedFile, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+		//@formatter:on
+			List<Future<?>> stages = new ArrayList<>();
+
+			stages.add(executor.submit(() -> read(file, resumedAfterLine, batchSize, chunks, parallelism)));
+
+			for(int count = 0; count < parallelism; count++) {
+				stages.add(executor.submit(() -> parse(chunks, parsed)));
+			}
+
+			Progress progress = new Progress(file, start);
+			write(parsed, parallelism, stages, checkpoint, rejected, progress);
+
+			//@formatter:off
+			ImportReport report = new ImportReport(file, resumedAfterLine, checkpoint.getLine(), progress.projects,
+					progress.materials, progress.steps, progress.categories, progress.rejected, progress.batches,
+					progress.retriedBatches, checkpoint.getImportedCount(), checkpoint.getRejectedCount(),
+					System.nanoTime() - start);
+			//@formatter:on
+
+			LOG.info("Imported projects from " + report);
+
+			return report;
+		}
+		catch(IOException e) {
+			throw new DbException("Unable to write rejected projects to " + rejectedFile, e);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DbException("Import interrupted", e);
+		}
+		finally {
+			// stops the reader and parsers if the writer failed
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Reader stage. Cuts the file into chunks of batchSize projects, skipping the lines a checkpoint
+	 * covers, then sends one END per parser.
+	 */
+	private Void read(Path file, long skipLines, int batchSize, BlockingQueue<ImportChunk> chunks, int parserCount) throws IOException, InterruptedException {
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			List<String> lines = new ArrayList<>();
+			long firstLine = skipLines + 1;
+			long lineNumber = 0;
+			long sequence = 0;
+			int projects = 0;
+			String line;
+
+			while(Objects.nonNull(line = reader.readLine())) {
+				if(++lineNumber <= skipLines) {
+					continue;
+				}
+
+				// a chunk ends just before the project line that would make it too big
+				if(ImportRecords.startsProject(line) && ++projects > batchSize) {
+					chunks.put(new ImportChunk(sequence++, firstLine, lines));
+
+					lines = new ArrayList<>();
+					firstLine = lineNumber;
+					projects = 1;
+				}
+
+				lines.add(line);
+			}
+
+			if(lineNumber < skipLines) {
+				throw new DbException(file + " has " + lineNumber + " lines but its checkpoint is at line " + skipLines);
+			}
+
+			if(!lines.isEmpty()) {
+				chunks.put(new ImportChunk(sequence, firstLine, lines));
+			}
+		}
+
+		for(int count = 0; count < parserCount; count++) {
+			chunks.put(ImportChunk.END);
+		}
+
+		return null;
+	}
+
+	// Parser stage. Parsing and validation share a thread; validating is too cheap to be worth a
+	// queue hop of its own.
+	private Void parse(BlockingQueue<ImportChunk> chunks, BlockingQueue<ParsedChunk> parsed) throws InterruptedException {
+		while(true) {
+			ImportChunk chunk = chunks.take();
+
+			if(chunk == ImportChunk.END) {
+				parsed.put(ParsedChunk.END);
+				return null;
+			}
+
+			parsed.put(new ParsedChunk(chunk, ImportRecords.parseChunk(chunk)));
+		}
+	}
+
+	/*
+	 * Writer stage, on the calling thread. Parsers finish chunks out of order, so chunks wait here
+	 * until every chunk before them is written; the checkpoint can then only move forward over lines
+	 * that are done.
+	 */
+	//@formatter:off
+	private void write(BlockingQueue<ParsedChunk> parsed, int parserCount, List<Future<?>> stages,
+			ImportCheckpoint checkpoint, Writer rejected, Progress progress) throws IOException, InterruptedException {
+	//@formatter:on
+		Map<Long, ParsedChunk> waiting = new HashMap<>();
+		long nextSequence = 0;
+		int finishedParsers = 0;
+
+		while(finishedParsers < parserCount) {
+			ParsedChunk chunk = parsed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+			if(Objects.isNull(chunk)) {
+				// a failed reader or parser never sends END
+				checkStages(stages);
+				continue;
+			}
+
+			if(chunk == ParsedChunk.END) {
+				finishedParsers++;
+				continue;
+			}
+
+			waiting.put(chunk.chunk.getSequence(), chunk);
+
+			for(ParsedChunk next; Objects.nonNull(next = waiting.remove(nextSequence)); nextSequence++) {
+				writeChunk(next, checkpoint, rejected, progress);
+				progress.logIfDue();
+			}
+		}
+
+		checkStages(stages);
+
+		if(!waiting.isEmpty()) {
+			throw new DbException("Import stopped before chunk " + nextSequence + " was parsed");
+		}
+	}
+
+	private void writeChunk(ParsedChunk chunk, ImportCheckpoint checkpoint, Writer rejected, Progress progress) throws IOException {
+		List<ImportRecord> accepted = new ArrayList<>();
+		List<Project> projects = new ArrayList<>();
+
+		for(ImportRecord record : chunk.records) {
+			if(!record.isRejected()) {
+				accepted.add(record);
+				projects.add(record.getProject());
+			}
+		}
+
+		List<Project> committed;
+
+		try {
+			committed = projectDao.insertProjectAggregates(projects);
+		}
+		catch(DbException e) {
+			if(!isDataError(e)) {
+				throw e;
+			}
+
+			//@formatter:off
+			LOG.warning("The batch ending at line " + chunk.chunk.getLastLine() + " was refused (" + rootMessage(e)
+					+ "); writing its projects one at a time");
+			//@formatter:on
+
+			progress.retriedBatches++;
+			committed = insertOneByOne(accepted);
+		}
+
+		long rejectedCount = 0;
+
+		for(ImportRecord record : chunk.records) {
+			if(record.isRejected()) {
+				rejected.write("# line " + record.getLineNumber() + ": " + record.getProblem() + "\n");
+
+				for(String line : record.getLines()) {
+					rejected.write(line);
+					rejected.write('\n');
+				}
+
+				rejectedCount++;
+			}
+		}
+
+		// the rejected rows must be on disk before the checkpoint moves past them
+		rejected.flush();
+
+		checkpoint.advance(chunk.chunk.getLastLine(), committed.size(), rejectedCount);
+		checkpoint.save();
+
+		progress.batches++;
+		progress.rejected += rejectedCount;
+
+		for(Project project : committed) {
+			progress.projects++;
+			progress.materials += project.getMaterials().size();
+			progress.steps += project.getSteps().size();
+			progress.categories += project.getCategories().size();
+		}
+
+		committedListener.accept(committed);
+	}
+
+	/*
+	 * Used when the database refuses a batch over the data in it, for example a category id that
+	 * does not exist. Each project is its own transaction so only the bad ones are rejected.
+	 */
+	private List<Project> insertOneByOne(List<ImportRecord> records) {
+		List<Project> committed = new ArrayList<>();
+
+		for(ImportRecord record : records) {
+			// the failed batch put back the ids it set, so the project is inserted afresh
+			Project project = record.getProject();
+
+			try {
+				committed.add(projectDao.saveProjectAggregate(project));
+			}
+			catch(DbException e) {
+				if(!isDataError(e)) {
+					throw e;
+				}
+
+				record.reject("refused by the database: " + rootMessage(e));
+			}
+		}
+
+		return committed;
+	}
+
+	/*
+	 * SQLState class 22 (data exception) and 23 (integrity constraint violation) mean the rows were at
+	 * fault. Anything else, such as a lost connection, stops the import.
+	 */
+	private static boolean isDataError(Throwable e) {
+		for(Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+			if(cause instanceof SQLException) {
+				String state = ((SQLException)cause).getSQLState();
+
+				if(Objects.nonNull(state) && (state.startsWith("22") || state.startsWith("23"))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static String rootMessage(Throwable e) {
+		Throwable root = e;
+
+		while(Objects.nonNull(root.getCause())) {
+			root = root.getCause();
+		}
+
+		return root.getMessage();
+	}
+
+	private static void checkStages(List<Future<?>> stages) throws InterruptedException {
+		for(Future<?> stage : stages) {
+			if(!stage.isDone()) {
+				continue;
+			}
+
+			try {
+				stage.get();
+			}
+			catch(ExecutionException e) {
+				throw e.getCause() instanceof DbException ? (DbException)e.getCause() : new DbException("Import failed", e.getCause());
+			}
+		}
+	}
+
+
+	// The records of a chunk on their way from a parser to the writer
+	private static class ParsedChunk {
+		private static final ParsedChunk END = new ParsedChunk(ImportChunk.END, List.of());
+
+		private final ImportChunk chunk;
+		private final List<ImportRecord> records;
+
+		ParsedChunk(ImportChunk chunk, List<ImportRecord> records) {
+			this.chunk = chunk;
+			this.records = records;
+		}
+	}
+
+
+	// Counts for this run, updated by the writer only
+	private static class Progress {
+		private final Path file;
+		private final long start;
+		private long lastLogged;
+
+		private long projects;
+		private long materials;
+		private long steps;
+		private long categories;
+		private long rejected;
+		private long batches;
+		private long retriedBatches;
+
+		Progress(Path file, long start) {
+			this.file = file;
+			this.start = start;
+			this.lastLogged = start;
+		}
+
+		void logIfDue() {
+			long now = System.nanoTime();
+
+			if(now - lastLogged < PROGRESS_INTERVAL_NANOS) {
+				return;
+			}
+
+			lastLogged = now;
+
+			long rows = projects + materials + steps + categories;
+
+			//@formatter:off
+			LOG.info("Importing " + file + ": projects = " + projects
+					+ ", rejected = " + rejected
+					+ ", rows = " + rows
+					+ ", rowsPerSecond = " + String.format("%.0f", ImportReport.rate(rows, now - start)));
+			//@formatter:on
+		}
+	}
+
+
+	private static class ImportThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "project-import-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+package projects.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records per-operation latency, row counts and error counts for the DAO layer.
+ *
+ * A DAO method wraps its body in {@link #measure(String, Supplier)}, which makes that operation
+ * current on the thread. The connection pool, its statements and DaoBase then report the time
+ * they spend acquiring connections, preparing and executing statements, mapping rows and
+ * committing or rolling back with {@link #startTimer()} / {@link #stopTimer(Phase, long)}, and
+ * those times are added to the current operation. A DAO operation called from inside another one
+ * is counted as part of the outer operation.
+ *
+ * Metrics are off unless enabled with {@link #setEnabled(boolean)} or the projects.metrics.enabled
+ * system property. While off, every hook is a single volatile read.
+ */
+public class DaoMetrics {
+
+	private static final Logger LOG = Logger.getLogger(DaoMetrics.class.getName());
+
+	private static volatile boolean enabled = Boolean.getBoolean("projects.metrics.enabled");
+
+	private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<>();
+	private static final ThreadLocal<OperationMetrics> CURRENT = new ThreadLocal<>();
+	private static final List<MetricsExporter> EXPORTERS = new CopyOnWriteArrayList<>();
+
+	private static ScheduledExecutorService exportScheduler;
+	private static ScheduledFuture<?> exportTask;
+
+
+	private DaoMetrics() {
+	}
+
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		DaoMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Runs a DAO operation and records its total time, and whether it failed, under the given name.
+	 */
+	public static <T> T measure(String operation, Supplier<T> body) {
+		if(!enabled || Objects.nonNull(CURRENT.get())) {
+			return body.get();
+		}
+
+		OperationMetrics metrics = forOperation(operation);
+		long start = System.nanoTime();
+
+		CURRENT.set(metrics);
+
+		try {
+			return body.get();
+		}
+		catch(RuntimeException | Error e) {
+			metrics.recordError();
+			throw e;
+		}
+		finally {
+			CURRENT.remove();
+			metrics.record(Phase.TOTAL, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns a start time for {@link #stopTimer}, or 0 if nothing is being measured on this thread.
+	 */
+	public static long startTimer() {
+		if(!enabled || Objects.isNull(CURRENT.get())) {
+			return 0;
+		}
+
+		return System.nanoTime();
+	}
+
+	public static void stopTimer(Phase phase, long start) {
+		if(start == 0) {
+			return;
+		}
+
+		OperationMetrics metrics = CURRENT.get();
+
+		if(Objects.nonNull(metrics)) {
+			metrics.record(phase, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Adds rows read or written to the current operation.
+	 */
+	public static void addRows(long rows) {
+		if(!enabled) {
+			return;
+		}
+
+		OperationMetrics metrics = CURRENT.get();
+
+		if(Objects.nonNull(metrics)) {
+			metrics.addRows(rows);
+		}
+	}
+
+	// name of the operation being measured on this thread, or null
+	static String currentOperation() {
+		OperationMetrics metrics = CURRENT.get();
+		return Objects.isNull(metrics) ? null : metrics.getOperation();
+	}
+
+	public static List<OperationSnapshot> snapshot() {
+		List<OperationSnapshot> snapshots = new ArrayList<>();
+
+		OPERATIONS.values().forEach(metrics -> snapshots.add(metrics.snapshot()));
+		snapshots.sort((left, right) -> left.getOperation().compareTo(right.getOperation()));
+
+		return snapshots;
+	}
+
+	public static void reset() {
+		OPERATIONS.values().forEach(OperationMetrics::reset);
+	}
+
+	public static void addExporter(MetricsExporter exporter) {
+		EXPORTERS.add(exporter);
+	}
+
+	public static void removeExporter(MetricsExporter exporter) {
+		EXPORTERS.remove(exporter);
+	}
+
+	public static void exportNow() {
+		List<OperationSnapshot> snapshots = snapshot();
+
+		for(MetricsExporter exporter : EXPORTERS) {
+			try {
+				exporter.export(snapshots);
+			}
+			catch(RuntimeException e) {
+				LOG.log(Level.WARNING, "Metrics exporter " + exporter + " failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Calls every registered exporter on a background thread at the given interval, replacing any
+	 * schedule started earlier.
+	 */
+	public static synchronized void startExporting(Duration interval) {
+		stopExporting();
+
+		if(Objects.isNull(exportScheduler)) {
+			exportScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "dao-metrics-exporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		long millis = interval.toMillis();
+		exportTask = exportScheduler.scheduleAtFixedRate(DaoMetrics::exportNow, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized void stopExporting() {
+		if(Objects.nonNull(exportTask)) {
+			exportTask.cancel(false);
+			exportTask = null;
+		}
+	}
+
+	private static OperationMetrics forOperation(String operation) {
+		OperationMetrics metrics = OPERATIONS.get(operation);
+
+		if(Objects.nonNull(metrics)) {
+			return metrics;
+		}
+
+		return OPERATIONS.computeIfAbsent(operation, name -> {
+			OperationMetrics created = new OperationMetrics(name);
+			registerMBean(created);
+			return created;
+		});
+	}
+
+	private static void registerMBean(OperationMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("projects.dao:type=Operation,name=" + ObjectName.quote(metrics.getOperation()));
+
+			if(!server.isRegistered(name)) {
+				server.registerMBean(metrics, name);
+			}
+		}
+		catch(Exception e) {
+			LOG.log(Level.FINE, "Unable to register JMX bean for " + metrics.getOperation(), e);
+		}
+	}
+
+}
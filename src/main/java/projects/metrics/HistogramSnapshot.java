@@ -0,0 +1,61 @@
+package projects.metrics;
+
+/**
+ * Point-in-time summary of a {@link LatencyHistogram}. Times are reported in milliseconds.
+ */
+public class HistogramSnapshot {
+
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long p50Nanos;
+	private final long p95Nanos;
+	private final long p99Nanos;
+
+
+	HistogramSnapshot(long count, long totalNanos, long maxNanos, long p50Nanos, long p95Nanos, long p99Nanos) {
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p95Nanos = p95Nanos;
+		this.p99Nanos = p99Nanos;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMillis() {
+		return count == 0 ? 0.0 : toMillis(totalNanos) / count;
+	}
+
+	public double getP50Millis() {
+		return toMillis(p50Nanos);
+	}
+
+	public double getP95Millis() {
+		return toMillis(p95Nanos);
+	}
+
+	public double getP99Millis() {
+		return toMillis(p99Nanos);
+	}
+
+	public double getMaxMillis() {
+		return toMillis(maxNanos);
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	@Override
+	public String toString() {
+		//@formatter:off
+		return String.format("count = %d, mean = %.3fms, p50 = %.3fms, p95 = %.3fms, p99 = %.3fms, max = %.3fms",
+				count, getMeanMillis(), getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+		//@formatter:on
+	}
+
+}
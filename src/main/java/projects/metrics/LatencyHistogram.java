@@ -0,0 +1,106 @@
+package projects.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets: each power of two is split into four
+ * sub-buckets, so a reported percentile is at most 25% above the true value. Recording is a
+ * couple of bit operations and one atomic increment, cheap enough for every statement execution.
+ */
+public class LatencyHistogram {
+
+	// sub-buckets per power of two, as a number of bits
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// 2^40 ns is about 18 minutes; anything longer lands in the last bucket
+	private static final int MAX_EXPONENT = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+
+		buckets.incrementAndGet(bucketIndex(value));
+		count.increment();
+		totalNanos.add(value);
+		maxNanos.accumulateAndGet(value, Math::max);
+	}
+
+	public HistogramSnapshot snapshot() {
+		long[] counts = new long[buckets.length()];
+		long total = 0;
+
+		for(int pos = 0; pos < counts.length; pos++) {
+			counts[pos] = buckets.get(pos);
+			total += counts[pos];
+		}
+
+		long max = maxNanos.get();
+
+		// a bucket's upper bound can be above the largest value actually recorded in it
+		//@formatter:off
+		return new HistogramSnapshot(total, totalNanos.sum(), max,
+				Math.min(percentile(counts, total, 0.50), max),
+				Math.min(percentile(counts, total, 0.95), max),
+				Math.min(percentile(counts, total, 0.99), max));
+		//@formatter:on
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	private static int bucketIndex(long nanos) {
+		if(nanos < SUB_BUCKETS) {
+			return (int)nanos;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+
+		if(exponent > MAX_EXPONENT) {
+			return (MAX_EXPONENT + 1) * SUB_BUCKETS - 1;
+		}
+
+		int subBucket = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	// the largest value that falls into the bucket
+	private static long bucketUpperBound(int index) {
+		if(index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+	}
+
+	private static long percentile(long[] counts, long total, double fraction) {
+		if(total == 0) {
+			return 0;
+		}
+
+		long rank = (long)Math.ceil(total * fraction);
+		long seen = 0;
+
+		for(int pos = 0; pos < counts.length; pos++) {
+			seen += counts[pos];
+
+			if(seen >= rank) {
+				return bucketUpperBound(pos);
+			}
+		}
+
+		return bucketUpperBound(counts.length - 1);
+	}
+
+}
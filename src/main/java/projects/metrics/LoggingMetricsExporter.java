@@ -0,0 +1,21 @@
+package projects.metrics;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Writes each operation's metrics, followed by the transaction retry counts of
+ * {@link RetryMetrics}, to java.util.logging at INFO level.
+ */
+public class LoggingMetricsExporter implements MetricsExporter {
+
+	private static final Logger LOG = Logger.getLogger(LoggingMetricsExporter.class.getName());
+
+
+	@Override
+	public void export(List<OperationSnapshot> snapshots) {
+		snapshots.forEach(snapshot -> LOG.info(snapshot.toString()));
+		LOG.info(RetryMetrics.summary());
+	}
+
+}
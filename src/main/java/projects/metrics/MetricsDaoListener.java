@@ -0,0 +1,76 @@
+package projects.metrics;
+
+import provided.util.DaoBase;
+import provided.util.DaoListener;
+
+/**
+ * Passes the timings and transaction retries that DaoBase reports on to {@link DaoMetrics} and
+ * {@link RetryMetrics}. The DAOs give {@link #INSTANCE} to DaoBase when they are created.
+ */
+public class MetricsDaoListener implements DaoListener {
+
+	public static final MetricsDaoListener INSTANCE = new MetricsDaoListener();
+
+
+	private MetricsDaoListener() {
+	}
+
+
+	@Override
+	public long startTimer() {
+		return DaoMetrics.startTimer();
+	}
+
+	@Override
+	public void stopTimer(Step step, long start) {
+		DaoMetrics.stopTimer(toPhase(step), start);
+	}
+
+	@Override
+	public void rowsMapped(long rows) {
+		DaoMetrics.addRows(rows);
+	}
+
+	@Override
+	public void retrying(int errorCode) {
+		if(errorCode == DaoBase.ER_LOCK_DEADLOCK) {
+			RetryMetrics.recordDeadlockRetry();
+		}
+		else {
+			RetryMetrics.recordLockWaitTimeoutRetry();
+		}
+	}
+
+	@Override
+	public void recovered() {
+		RetryMetrics.recordRecovered();
+	}
+
+	@Override
+	public void retriesExhausted(int errorCode) {
+		RetryMetrics.recordExhausted();
+	}
+
+	@Override
+	public void backedOff(long nanos) {
+		RetryMetrics.recordBackoff(nanos);
+	}
+
+	private static Phase toPhase(Step step) {
+		switch(step) {
+		case ACQUIRE:
+			return Phase.ACQUIRE;
+		case MAP:
+			return Phase.MAP;
+		case COMMIT:
+			return Phase.COMMIT;
+		case ROLLBACK:
+			return Phase.ROLLBACK;
+		case BACKOFF:
+			return Phase.BACKOFF;
+		default:
+			throw new IllegalArgumentException("Unknown step " + step);
+		}
+	}
+
+}
@@ -0,0 +1,14 @@
+package projects.metrics;
+
+import java.util.List;
+
+/**
+ * Receives DAO metric snapshots, either on demand from {@link DaoMetrics#exportNow()} or
+ * periodically once {@link DaoMetrics#startExporting} has been called. Implementations push the
+ * numbers to a log, a file or a monitoring system.
+ */
+public interface MetricsExporter {
+
+	void export(List<OperationSnapshot> snapshots);
+
+}
@@ -0,0 +1,120 @@
+package projects.metrics;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms per {@link Phase}, plus row and error counts, for one DAO operation.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+	private final String operation;
+	// replaced wholesale by reset() so concurrent recorders never see a half-cleared state
+	private final AtomicReference<Counters> counters = new AtomicReference<>(new Counters());
+
+
+	OperationMetrics(String operation) {
+		this.operation = operation;
+	}
+
+
+	void record(Phase phase, long nanos) {
+		counters.get().histograms.get(phase).record(nanos);
+	}
+
+	void addRows(long rows) {
+		counters.get().rows.add(rows);
+	}
+
+	void recordError() {
+		counters.get().errors.increment();
+	}
+
+	public OperationSnapshot snapshot() {
+		Counters current = counters.get();
+		EnumMap<Phase, HistogramSnapshot> phases = new EnumMap<>(Phase.class);
+
+		current.histograms.forEach((phase, histogram) -> phases.put(phase, histogram.snapshot()));
+
+		return new OperationSnapshot(operation, current.errors.sum(), current.rows.sum(), phases);
+	}
+
+	@Override
+	public String getOperation() {
+		return operation;
+	}
+
+	@Override
+	public long getCount() {
+		return counters.get().histograms.get(Phase.TOTAL).getCount();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return counters.get().errors.sum();
+	}
+
+	@Override
+	public long getRowCount() {
+		return counters.get().rows.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return total().getMeanMillis();
+	}
+
+	@Override
+	public double getP50Millis() {
+		return total().getP50Millis();
+	}
+
+	@Override
+	public double getP99Millis() {
+		return total().getP99Millis();
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return total().getMaxMillis();
+	}
+
+	@Override
+	public Map<String, Double> getPhaseP99Millis() {
+		Map<String, Double> result = new LinkedHashMap<>();
+
+		snapshot().getPhases().forEach((phase, histogram) -> {
+			if(histogram.getCount() > 0) {
+				result.put(phase.name(), histogram.getP99Millis());
+			}
+		});
+
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		counters.set(new Counters());
+	}
+
+	private HistogramSnapshot total() {
+		return counters.get().histograms.get(Phase.TOTAL).snapshot();
+	}
+
+
+	private static class Counters {
+		private final EnumMap<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+
+		Counters() {
+			for(Phase phase : Phase.values()) {
+				histograms.put(phase, new LatencyHistogram());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package projects.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of one DAO operation. Registered as projects.dao:type=Operation,name=&lt;operation&gt;.
+ */
+public interface OperationMetricsMXBean {
+
+	String getOperation();
+
+	long getCount();
+
+	long getErrorCount();
+
+	long getRowCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	// p99 in milliseconds for each phase that has been recorded
+	Map<String, Double> getPhaseP99Millis();
+
+	void reset();
+
+}
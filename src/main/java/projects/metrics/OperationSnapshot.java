@@ -0,0 +1,64 @@
+package projects.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the metrics for one DAO operation, handed to {@link MetricsExporter}s.
+ */
+public class OperationSnapshot {
+
+	private final String operation;
+	private final long errorCount;
+	private final long rowCount;
+	private final Map<Phase, HistogramSnapshot> phases;
+
+
+	OperationSnapshot(String operation, long errorCount, long rowCount, EnumMap<Phase, HistogramSnapshot> phases) {
+		this.operation = operation;
+		this.errorCount = errorCount;
+		this.rowCount = rowCount;
+		this.phases = Collections.unmodifiableMap(phases);
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCount() {
+		return getPhase(Phase.TOTAL).getCount();
+	}
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public HistogramSnapshot getPhase(Phase phase) {
+		return phases.get(phase);
+	}
+
+	public Map<Phase, HistogramSnapshot> getPhases() {
+		return phases;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+
+		result.append(operation).append(": errors = ").append(errorCount).append(", rows = ").append(rowCount);
+
+		phases.forEach((phase, histogram) -> {
+			if(histogram.getCount() > 0) {
+				result.append("\n   ").append(phase).append(": ").append(histogram);
+			}
+		});
+
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,18 @@
+package projects.metrics;
+
+/**
+ * The parts of a DAO operation that are timed separately. TOTAL is the whole operation from the
+ * caller's point of view; the other phases are summed over every occurrence inside it. BACKOFF is
+ * the time spent waiting before a transaction is run again after a deadlock or lock wait timeout,
+ * so its count is the operation's number of retries.
+ */
+public enum Phase {
+	TOTAL,
+	ACQUIRE,
+	PREPARE,
+	EXECUTE,
+	MAP,
+	COMMIT,
+	ROLLBACK,
+	BACKOFF
+}
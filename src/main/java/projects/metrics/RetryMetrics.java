@@ -0,0 +1,88 @@
+package projects.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the transactions that DaoBase ran again after MySQL rolled them back for a deadlock or a
+ * lock wait timeout. Unlike {@link DaoMetrics} these counters are always on: a retry already costs
+ * a rollback and a sleep, so counting it adds nothing noticeable. While DaoMetrics is enabled the
+ * time each operation spends waiting between attempts is also recorded as {@link Phase#BACKOFF}.
+ *
+ * A rising deadlock count points at transactions that lock the same rows in different orders; a
+ * rising exhausted count means retrying is no longer enough and callers are seeing the errors.
+ */
+public class RetryMetrics {
+
+	private static final LongAdder DEADLOCK_RETRIES = new LongAdder();
+	private static final LongAdder LOCK_WAIT_TIMEOUT_RETRIES = new LongAdder();
+	private static final LongAdder RECOVERED = new LongAdder();
+	private static final LongAdder EXHAUSTED = new LongAdder();
+	private static final LongAdder BACKOFF_NANOS = new LongAdder();
+
+
+	private RetryMetrics() {
+	}
+
+
+	public static void recordDeadlockRetry() {
+		DEADLOCK_RETRIES.increment();
+	}
+
+	public static void recordLockWaitTimeoutRetry() {
+		LOCK_WAIT_TIMEOUT_RETRIES.increment();
+	}
+
+	// A transaction that succeeded after at least one retry
+	public static void recordRecovered() {
+		RECOVERED.increment();
+	}
+
+	// A transaction that still failed on its last attempt
+	public static void recordExhausted() {
+		EXHAUSTED.increment();
+	}
+
+	public static void recordBackoff(long nanos) {
+		BACKOFF_NANOS.add(nanos);
+	}
+
+	public static long getDeadlockRetryCount() {
+		return DEADLOCK_RETRIES.sum();
+	}
+
+	public static long getLockWaitTimeoutRetryCount() {
+		return LOCK_WAIT_TIMEOUT_RETRIES.sum();
+	}
+
+	public static long getRecoveredCount() {
+		return RECOVERED.sum();
+	}
+
+	public static long getExhaustedCount() {
+		return EXHAUSTED.sum();
+	}
+
+	public static long getBackoffMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(BACKOFF_NANOS.sum());
+	}
+
+	public static void reset() {
+		DEADLOCK_RETRIES.reset();
+		LOCK_WAIT_TIMEOUT_RETRIES.reset();
+		RECOVERED.reset();
+		EXHAUSTED.reset();
+		BACKOFF_NANOS.reset();
+	}
+
+	public static String summary() {
+		//@formatter:off
+		return "Transaction retries: deadlocks = " + getDeadlockRetryCount()
+				+ ", lock wait timeouts = " + getLockWaitTimeoutRetryCount()
+				+ ", recovered = " + getRecoveredCount()
+				+ ", exhausted = " + getExhaustedCount()
+				+ ", backoff = " + getBackoffMillis() + "ms";
+		//@formatter:on
+	}
+
+}
@@ -0,0 +1,85 @@
+package projects.metrics;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One statement execution that took longer than the {@link SlowQueryLog} threshold.
+ */
+public class SlowQuery {
+
+	private final Instant executedAt;
+	private final String operation;
+	private final String sql;
+	private final List<String> parameters;
+	private final long durationNanos;
+	private final long rowCount;
+	private final List<String> plan;
+
+
+	//@formatter:off
+	SlowQuery(Instant executedAt, String operation, String sql, List<String> parameters,
+			long durationNanos, long rowCount, List<String> plan) {
+	//@formatter:on
+		this.executedAt = executedAt;
+		this.operation = operation;
+		this.sql = sql;
+		this.parameters = List.copyOf(parameters);
+		this.durationNanos = durationNanos;
+		this.rowCount = rowCount;
+		this.plan = Objects.isNull(plan) ? null : List.copyOf(plan);
+	}
+
+	public Instant getExecutedAt() {
+		return executedAt;
+	}
+
+	// the DAO operation running the statement, or null when metrics are disabled
+	public String getOperation() {
+		return operation;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	// bound parameters in position order, with string and binary values redacted
+	public List<String> getParameters() {
+		return parameters;
+	}
+
+	public double getDurationMillis() {
+		return durationNanos / 1_000_000.0;
+	}
+
+	// rows written by an update, or rows read from the result before the statement was closed
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	// EXPLAIN output, one line per plan row, or null when plan capture is off or not possible
+	public List<String> getPlan() {
+		return plan;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+
+		//@formatter:off
+		result.append(executedAt)
+				.append(Objects.isNull(operation) ? "" : " " + operation)
+				.append(": ").append(String.format("%.3f", getDurationMillis())).append(" ms, ")
+				.append(rowCount).append(" rows, params = ").append(parameters)
+				.append("\n   ").append(sql.trim());
+		//@formatter:on
+
+		if(Objects.nonNull(plan)) {
+			plan.forEach(line -> result.append("\n   ").append(line));
+		}
+
+		return result.toString();
+	}
+
+}
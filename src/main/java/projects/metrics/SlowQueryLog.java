@@ -0,0 +1,277 @@
+package projects.metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Logs statements that run longer than a threshold and keeps the most recent of them in a ring
+ * buffer that can be read with {@link #recent()} or {@link #dump()}.
+ *
+ * The connection pool's statements report every execution here, so any DAO that gets its
+ * connections from {@link projects.dao.ConnectionPool} is covered. An entry has the SQL, the bound
+ * parameters with string and binary values redacted, the execution time and the number of rows
+ * written or read. With plan capture on, the statement is also run through EXPLAIN with the same
+ * parameters. That happens on a background thread and on a connection of its own, so it neither
+ * adds to the caller's time nor runs inside the caller's transaction, with its locks and snapshot.
+ * The entry is logged once its plan is in.
+ *
+ * The log is off unless a threshold is set with {@link #setThresholdMillis(long)} or the
+ * projects.slowquery.thresholdMillis system property. projects.slowquery.explain and
+ * projects.slowquery.capacity set the other two options.
+ */
+public class SlowQueryLog {
+
+	private static final Logger LOG = Logger.getLogger(SlowQueryLog.class.getName());
+
+	// negative means the log is off
+	private static volatile long thresholdNanos = toNanos(Long.getLong("projects.slowquery.thresholdMillis", -1));
+	private static volatile boolean captureExplain = Boolean.getBoolean("projects.slowquery.explain");
+
+	// Slow executions waiting for their plan; once it is full the plan of a new one is skipped
+	private static final int EXPLAIN_QUEUE_SIZE = 100;
+	private static final ThreadPoolExecutor EXPLAINER = newExplainer();
+
+	private static SlowQuery[] buffer = new SlowQuery[Integer.getInteger("projects.slowquery.capacity", 100)];
+	// index the next entry is written to; the buffer is full once it has wrapped
+	private static int next;
+	private static boolean wrapped;
+
+
+	private SlowQueryLog() {
+	}
+
+
+	public static boolean isEnabled() {
+		return thresholdNanos >= 0;
+	}
+
+	/**
+	 * Sets how long a statement may run before it is logged. A negative value turns the log off and
+	 * zero logs every statement.
+	 */
+	public static void setThresholdMillis(long thresholdMillis) {
+		thresholdNanos = toNanos(thresholdMillis);
+	}
+
+	public static long getThresholdMillis() {
+		return thresholdNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	public static boolean isCaptureExplain() {
+		return captureExplain;
+	}
+
+	public static void setCaptureExplain(boolean captureExplain) {
+		SlowQueryLog.captureExplain = captureExplain;
+	}
+
+	/**
+	 * Sets how many entries are kept. Entries already in the buffer are discarded.
+	 */
+	public static synchronized void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Slow query log capacity must be at least 1");
+		}
+
+		buffer = new SlowQuery[capacity];
+		next = 0;
+		wrapped = false;
+	}
+
+	public static boolean isSlow(long durationNanos) {
+		long threshold = thresholdNanos;
+		return threshold >= 0 && durationNanos >= threshold;
+	}
+
+	/**
+	 * Records a slow execution. parameters maps parameter positions to the values bound for the
+	 * execution. explainConnection is only called when plans are captured, on a background thread;
+	 * it returns a connection the plan may be read on, or null if none is free, and the connection
+	 * is closed afterwards.
+	 */
+	//@formatter:off
+	public static void record(String sql, Map<Integer, Object> parameters, long durationNanos, long rowCount,
+			Supplier<Connection> explainConnection) {
+	//@formatter:on
+		Instant at = Instant.now();
+		String operation = DaoMetrics.currentOperation();
+
+		if(!captureExplain) {
+			add(new SlowQuery(at, operation, sql, redact(parameters), durationNanos, rowCount, null));
+			return;
+		}
+
+		try {
+			EXPLAINER.execute(() -> {
+				List<String> plan = explain(explainConnection, sql, parameters);
+				add(new SlowQuery(at, operation, sql, redact(parameters), durationNanos, rowCount, plan));
+			});
+		}
+		catch(RejectedExecutionException e) {
+			List<String> plan = List.of("EXPLAIN skipped: too many slow queries waiting for a plan");
+			add(new SlowQuery(at, operation, sql, redact(parameters), durationNanos, rowCount, plan));
+		}
+	}
+
+	/**
+	 * Returns the buffered entries, oldest first.
+	 */
+	public static synchronized List<SlowQuery> recent() {
+		List<SlowQuery> entries = new ArrayList<>();
+
+		if(wrapped) {
+			for(int pos = next; pos < buffer.length; pos++) {
+				entries.add(buffer[pos]);
+			}
+		}
+
+		for(int pos = 0; pos < next; pos++) {
+			entries.add(buffer[pos]);
+		}
+
+		return entries;
+	}
+
+	public static String dump() {
+		StringBuilder result = new StringBuilder();
+		recent().forEach(entry -> result.append(entry).append(System.lineSeparator()));
+		return result.toString();
+	}
+
+	private static void add(SlowQuery entry) {
+		LOG.warning("Slow query " + entry);
+
+		synchronized(SlowQueryLog.class) {
+			buffer[next] = entry;
+			next = (next + 1) % buffer.length;
+			wrapped |= next == 0;
+		}
+	}
+
+	private static List<String> redact(Map<Integer, Object> parameters) {
+		List<String> redacted = new ArrayList<>();
+		parameters.forEach((pos, value) -> redacted.add(pos + "=" + redact(value)));
+		return redacted;
+	}
+
+	public static synchronized void clear() {
+		buffer = new SlowQuery[buffer.length];
+		next = 0;
+		wrapped = false;
+	}
+
+	/*
+	 * Numbers, booleans and nulls (ids, flags, quantities) are shown because they are what makes a
+	 * plan differ. Text and binary values are reduced to their length.
+	 */
+	private static String redact(Object value) {
+		if(Objects.isNull(value)) {
+			return "NULL";
+		}
+
+		if(value instanceof Number || value instanceof Boolean) {
+			return value.toString();
+		}
+
+		if(value instanceof CharSequence) {
+			return "<text, " + ((CharSequence)value).length() + " chars>";
+		}
+
+		if(value instanceof byte[]) {
+			return "<binary, " + ((byte[])value).length + " bytes>";
+		}
+
+		return "<" + value.getClass().getSimpleName() + ">";
+	}
+
+	/*
+	 * Only single SELECT, INSERT, UPDATE, DELETE and REPLACE statements can be explained. The
+	 * multi-statement batches ProjectDao sends with allowMultiQueries are skipped.
+	 */
+	private static List<String> explain(Supplier<Connection> explainConnection, String sql, Map<Integer, Object> parameters) {
+		String statement = sql.trim();
+
+		if(statement.endsWith(";")) {
+			statement = statement.substring(0, statement.length() - 1);
+		}
+
+		String verb = statement.split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+
+		if(statement.contains(";") || !List.of("SELECT", "INSERT", "UPDATE", "DELETE", "REPLACE").contains(verb)) {
+			return null;
+		}
+
+		List<String> plan = new ArrayList<>();
+		Connection connection;
+
+		try {
+			connection = explainConnection.get();
+		}
+		catch(RuntimeException e) {
+			return List.of("EXPLAIN skipped: " + e.getMessage());
+		}
+
+		if(Objects.isNull(connection)) {
+			return List.of("EXPLAIN skipped: no connection was free");
+		}
+
+		try(Connection conn = connection; PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + statement)) {
+			for(Map.Entry<Integer, Object> parameter : parameters.entrySet()) {
+				stmt.setObject(parameter.getKey(), parameter.getValue());
+			}
+
+			try(ResultSet rs = stmt.executeQuery()) {
+				ResultSetMetaData meta = rs.getMetaData();
+
+				while(rs.next()) {
+					StringBuilder line = new StringBuilder();
+
+					for(int col = 1; col <= meta.getColumnCount(); col++) {
+						Object value = rs.getObject(col);
+
+						if(Objects.nonNull(value)) {
+							line.append(line.length() == 0 ? "" : ", ").append(meta.getColumnLabel(col)).append(" = ").append(value);
+						}
+					}
+
+					plan.add(line.toString());
+				}
+			}
+		}
+		catch(SQLException | RuntimeException e) {
+			plan.add("EXPLAIN failed: " + e);
+		}
+
+		return plan;
+	}
+
+	private static ThreadPoolExecutor newExplainer() {
+		//@formatter:off
+		return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(EXPLAIN_QUEUE_SIZE), runnable -> {
+			Thread thread = new Thread(runnable, "slow-query-explain");
+			thread.setDaemon(true);
+			return thread;
+		});
+		//@formatter:on
+	}
+
+	private static long toNanos(long millis) {
+		return millis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+}
@@ -0,0 +1,141 @@
+package projects.service;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import projects.dao.ReadSession;
+import projects.entity.Project;
+import projects.entity.ProjectSummary;
+import projects.exception.DbException;
+
+/**
+ * Non-blocking counterpart of {@link ProjectService}. Each call runs the blocking service method
+ * on a background thread and returns a CompletableFuture that completes with its result or fails
+ * with the exception it threw.
+ *
+ * On a JVM with virtual threads (Java 21+) every call gets its own virtual thread, so thousands of
+ * callers can wait on the database without tying up platform threads. On older JVMs a fixed pool
+ * of platform threads is used instead. In both cases no more than maxConcurrentDbCalls calls run
+ * against the database at once; the rest wait without holding a connection.
+ */
+public class AsyncProjectService implements AutoCloseable {
+
+	private final ProjectService projectService;
+	private final ExecutorService executor;
+	private final Semaphore dbPermits;
+	private final boolean virtualThreads;
+
+
+	public AsyncProjectService(ProjectService projectService, int maxConcurrentDbCalls) {
+		if(maxConcurrentDbCalls < 1) {
+			throw new DbException("maxConcurrentDbCalls must be at least 1 but was " + maxConcurrentDbCalls);
+		}
+
+		ExecutorService virtual = newVirtualThreadExecutor();
+
+		this.projectService = projectService;
+		this.virtualThreads = virtual != null;
+		this.executor = virtualThreads ? virtual : Executors.newFixedThreadPool(maxConcurrentDbCalls, runnable -> {
+			Thread thread = new Thread(runnable, "async-project-service");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.dbPermits = new Semaphore(maxConcurrentDbCalls);
+	}
+
+
+	public CompletableFuture<Project> addProject(Project project) {
+		return submit(() -> projectService.addProject(project));
+	}
+
+	public CompletableFuture<Project> fetchProjectById(Integer projectId) {
+		return submit(() -> projectService.fetchProjectById(projectId));
+	}
+
+	public CompletableFuture<List<Project>> fetchProjectsByIds(Collection<Integer> projectIds) {
+		return submit(() -> projectService.fetchProjectsByIds(projectIds));
+	}
+
+	public CompletableFuture<List<ProjectSummary>> fetchProjectSummaryPage(Integer afterProjectId, int pageSize) {
+		return submit(() -> projectService.fetchProjectSummaryPage(afterProjectId, pageSize));
+	}
+
+	public CompletableFuture<Void> modifyProjectDetails(Project project) {
+		return submit(() -> {
+			projectService.modifyProjectDetails(project);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> modifyChangedDetails(Project original, Project modified) {
+		return submit(() -> {
+			projectService.modifyChangedDetails(original, modified);
+			return null;
+		});
+	}
+
+	public CompletableFuture<Void> deleteProject(Integer projectId) {
+		return submit(() -> {
+			projectService.deleteProject(projectId);
+			return null;
+		});
+	}
+
+	public boolean isUsingVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Stops accepting new calls. Calls already submitted still run to completion.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/*
+	 * The call runs in the caller's ReadSession, so a read submitted after a write the caller made
+	 * through this service sees that write even when it runs on another thread.
+	 */
+	private <T> CompletableFuture<T> submit(Supplier<T> call) {
+		ReadSession session = ReadSession.current();
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				dbPermits.acquire();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DbException("Interrupted while waiting to call the database", e);
+			}
+
+			try {
+				return ReadSession.callIn(session, call);
+			}
+			finally {
+				dbPermits.release();
+			}
+		}, executor);
+	}
+
+	/*
+	 * The project targets Java 17, so the Java 21 factory is looked up reflectively. Returns null
+	 * when the running JVM does not have virtual threads.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		}
+		catch(ReflectiveOperationException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+}
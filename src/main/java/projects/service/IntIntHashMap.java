@@ -0,0 +1,138 @@
+package projects.service;
+
+import java.util.Arrays;
+
+/**
+ * An int to int map using open addressing with linear probing, so neither keys nor values are
+ * boxed and an entry costs two array slots. Not thread safe.
+ */
+class IntIntHashMap {
+
+	// Key value of an empty slot. Project ids are positive, so 0 never collides with a real key.
+	private static final int EMPTY = 0;
+
+	static final int NO_VALUE = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+
+	IntIntHashMap(int expectedSize) {
+		// Kept at most half full so probe sequences stay short
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+		allocate(capacity);
+	}
+
+
+	int get(int key) {
+		for(int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			if(keys[slot] == key) {
+				return values[slot];
+			}
+
+			if(keys[slot] == EMPTY) {
+				return NO_VALUE;
+			}
+		}
+	}
+
+	void put(int key, int value) {
+		if(key == EMPTY) {
+			throw new IllegalArgumentException("Key " + EMPTY + " is reserved");
+		}
+
+		if((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+
+		int slot = hash(key) & mask;
+
+		while(keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+
+		if(keys[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+		}
+
+		values[slot] = value;
+	}
+
+	/*
+	 * Removes the key and shifts back later entries of the same probe run so lookups never need
+	 * tombstones.
+	 */
+	int remove(int key) {
+		int slot = hash(key) & mask;
+
+		while(keys[slot] != key) {
+			if(keys[slot] == EMPTY) {
+				return NO_VALUE;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		int removed = values[slot];
+		int gap = slot;
+
+		for(int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+			int home = hash(keys[next]) & mask;
+
+			// move the entry into the gap unless its home slot lies cyclically in (gap, next]
+			if(((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+		}
+
+		keys[gap] = EMPTY;
+		size--;
+
+		return removed;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	long sizeInBytes() {
+		return 2L * keys.length * Integer.BYTES;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+
+		allocate(capacity);
+		size = 0;
+
+		for(int pos = 0; pos < oldKeys.length; pos++) {
+			if(oldKeys[pos] != EMPTY) {
+				put(oldKeys[pos], oldValues[pos]);
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	// Sequential ids would otherwise fill one contiguous run of slots
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
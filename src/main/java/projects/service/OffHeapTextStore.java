@@ -0,0 +1,112 @@
+package projects.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Append-only UTF-8 text storage in direct byte buffers, outside the Java heap. A stored string is
+ * addressed by a long reference (chunk, position and length packed together) so the caller keeps
+ * one primitive per value instead of a String object.
+ *
+ * Replacing or removing a value only marks its bytes dead; {@link #needsCompaction()} tells the
+ * owner when enough is dead that copying the live values to a new store is worth it. Reads use
+ * absolute buffer access and are safe to run concurrently with each other but not with writes.
+ */
+class OffHeapTextStore {
+
+	static final long NULL_REF = -1;
+
+	private static final int FIRST_CHUNK_SIZE = 64 * 1024;
+	// Positions and lengths are packed into 24 bits each and chunk numbers into the top 16
+	private static final int MAX_CHUNK_SIZE = 1 << 24;
+	private static final int MAX_CHUNKS = (1 << 16) - 1;
+	private static final long FIELD_MASK = (1L << 24) - 1;
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private ByteBuffer current;
+	private long allocatedBytes;
+	private long usedBytes;
+	private long liveBytes;
+
+
+	long add(String text) {
+		if(Objects.isNull(text)) {
+			return NULL_REF;
+		}
+
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		if(bytes.length >= MAX_CHUNK_SIZE) {
+			throw new IllegalArgumentException("Text of " + bytes.length + " bytes is too long to store");
+		}
+
+		if(Objects.isNull(current) || current.remaining() < bytes.length) {
+			newChunk(bytes.length);
+		}
+
+		long position = current.position();
+		current.put(bytes);
+
+		usedBytes += bytes.length;
+		liveBytes += bytes.length;
+
+		return ((long)(chunks.size() - 1) << 48) | (position << 24) | bytes.length;
+	}
+
+	String get(long ref) {
+		if(ref == NULL_REF) {
+			return null;
+		}
+
+		ByteBuffer chunk = chunks.get((int)(ref >>> 48));
+		byte[] bytes = new byte[length(ref)];
+
+		chunk.get((int)((ref >>> 24) & FIELD_MASK), bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Marks the value's bytes as no longer referenced
+	void release(long ref) {
+		if(ref != NULL_REF) {
+			liveBytes -= length(ref);
+		}
+	}
+
+	boolean needsCompaction() {
+		return usedBytes > FIRST_CHUNK_SIZE && liveBytes < usedBytes / 2;
+	}
+
+	long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	long getLiveBytes() {
+		return liveBytes;
+	}
+
+	private static int length(long ref) {
+		return (int)(ref & FIELD_MASK);
+	}
+
+	// Chunks double in size up to 16 MB so a small index does not reserve 16 MB up front
+	private void newChunk(int minimumSize) {
+		if(chunks.size() == MAX_CHUNKS) {
+			throw new IllegalStateException("Off-heap text store is full");
+		}
+
+		int size = Objects.isNull(current) ? FIRST_CHUNK_SIZE : Math.min(current.capacity() * 2, MAX_CHUNK_SIZE);
+
+		while(size < minimumSize) {
+			size *= 2;
+		}
+
+		current = ByteBuffer.allocateDirect(Math.min(size, MAX_CHUNK_SIZE));
+		chunks.add(current);
+		allocatedBytes += current.capacity();
+	}
+
+}
@@ -0,0 +1,312 @@
+package projects.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/**
+ * A bounded, least-recently-used cache of project aggregates (a project with its materials, steps
+ * and categories) keyed by project_id. Entries also expire after a time-to-live so rows changed
+ * outside this service are eventually re-read.
+ *
+ * Callers get a copy of the cached project so changing the returned object cannot change the
+ * cache. To avoid caching a value that was read before a concurrent write, a loader takes a
+ * {@link #generation()} before reading the DB and passes it to {@link #putIfCurrent}; any
+ * invalidation in between makes the put a no-op.
+ *
+ * When reads may come from a replica, a read can also miss a write made up to the read staleness
+ * before it started. A project is not cached until that long after its last invalidation, so a
+ * replica that has not caught up yet cannot put back a project that was just changed. Other
+ * projects are cached as usual. The invalidation times are kept only for as long as they matter.
+ */
+public class ProjectCache {
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final long readStalenessNanos;
+
+	// Access-ordered so the eldest entry is the least recently used one
+	private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong generation = new AtomicLong();
+	// project_id -> System.nanoTime() of its last invalidation, oldest first. Times older than the
+	// read staleness are dropped. Guarded by entries.
+	private final LinkedHashMap<Integer, Long> recentInvalidations = new LinkedHashMap<>();
+	// System.nanoTime() of the last invalidateAll, guarded by entries
+	private long allInvalidatedAt;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expirationCount = new LongAdder();
+
+
+	public ProjectCache(int maxSize, Duration timeToLive) {
+		this(maxSize, timeToLive, Duration.ZERO);
+	}
+
+	/**
+	 * @param readStaleness how far behind the primary the reads that fill the cache can be
+	 */
+	public ProjectCache(int maxSize, Duration timeToLive, Duration readStaleness) {
+		this.maxSize = maxSize;
+		this.ttlNanos = timeToLive.toNanos();
+		this.readStalenessNanos = readStaleness.toNanos();
+		this.allInvalidatedAt = System.nanoTime() - readStalenessNanos;
+	}
+
+
+	/**
+	 * Returns a copy of the cached project, or null if it is not cached or has expired.
+	 */
+	public Project get(Integer projectId) {
+		Project project = null;
+
+		synchronized(entries) {
+			Entry entry = entries.get(projectId);
+
+			if(Objects.nonNull(entry)) {
+				if(System.nanoTime() - entry.loadedAt > ttlNanos) {
+					entries.remove(projectId);
+					expirationCount.increment();
+				}
+				else {
+					project = entry.project;
+				}
+			}
+		}
+
+		if(Objects.isNull(project)) {
+			missCount.increment();
+			return null;
+		}
+
+		hitCount.increment();
+		return copyOf(project);
+	}
+
+	public long generation() {
+		return generation.get();
+	}
+
+	/**
+	 * Caches a copy of the project unless something was invalidated after loadGeneration was taken,
+	 * or the project itself was invalidated within the read staleness before now.
+	 */
+	public void putIfCurrent(Project project, long loadGeneration) {
+		Project copy = copyOf(project);
+
+		synchronized(entries) {
+			if(generation.get() != loadGeneration || invalidatedRecently(copy.getProjectId(), System.nanoTime())) {
+				return;
+			}
+
+			entries.put(copy.getProjectId(), new Entry(copy, System.nanoTime()));
+
+			Iterator<Entry> eldest = entries.values().iterator();
+
+			while(entries.size() > maxSize) {
+				eldest.next();
+				eldest.remove();
+				evictionCount.increment();
+			}
+		}
+	}
+
+	public void invalidate(Integer projectId) {
+		synchronized(entries) {
+			generation.incrementAndGet();
+			entries.remove(projectId);
+			recordInvalidation(projectId, System.nanoTime());
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized(entries) {
+			generation.incrementAndGet();
+			allInvalidatedAt = System.nanoTime();
+			// every project is now covered by allInvalidatedAt
+			recentInvalidations.clear();
+			entries.clear();
+		}
+	}
+
+	public CacheStats getStats() {
+		int size;
+
+		synchronized(entries) {
+			size = entries.size();
+		}
+
+		//@formatter:off
+		return new CacheStats(size, maxSize, hitCount.sum(), missCount.sum(),
+				evictionCount.sum(), expirationCount.sum());
+		//@formatter:on
+	}
+
+	// Called with the entries lock held
+	private boolean invalidatedRecently(Integer projectId, long now) {
+		if(now - allInvalidatedAt < readStalenessNanos) {
+			return true;
+		}
+
+		Long invalidatedAt = recentInvalidations.get(projectId);
+
+		return Objects.nonNull(invalidatedAt) && now - invalidatedAt < readStalenessNanos;
+	}
+
+	// Called with the entries lock held
+	private void recordInvalidation(Integer projectId, long now) {
+		if(readStalenessNanos == 0) {
+			return;
+		}
+
+		// removed first so the project moves to the end and the map stays in time order
+		recentInvalidations.remove(projectId);
+		recentInvalidations.put(projectId, now);
+
+		Iterator<Long> oldest = recentInvalidations.values().iterator();
+
+		while(oldest.hasNext() && now - oldest.next() >= readStalenessNanos) {
+			oldest.remove();
+		}
+	}
+
+	/*
+	 * The materials, steps and categories are copied too; saving a project writes ids, orders and
+	 * versions back into its children.
+	 */
+	private Project copyOf(Project project) {
+		Project copy = new Project();
+
+		copy.setProjectId(project.getProjectId());
+		copy.setProjectName(project.getProjectName());
+		copy.setEstimatedHours(project.getEstimatedHours());
+		copy.setActualHours(project.getActualHours());
+		copy.setDifficulty(project.getDifficulty());
+		copy.setNotes(project.getNotes());
+		copy.setVersion(project.getVersion());
+		project.getMaterials().forEach(material -> copy.getMaterials().add(copyOf(material)));
+		project.getSteps().forEach(step -> copy.getSteps().add(copyOf(step)));
+		project.getCategories().forEach(category -> copy.getCategories().add(copyOf(category)));
+
+		return copy;
+	}
+
+	private Material copyOf(Material material) {
+		Material copy = new Material();
+
+		copy.setMaterialId(material.getMaterialId());
+		copy.setProjectId(material.getProjectId());
+		copy.setMaterialName(material.getMaterialName());
+		copy.setNumRequired(material.getNumRequired());
+		copy.setCost(material.getCost());
+		copy.setVersion(material.getVersion());
+
+		return copy;
+	}
+
+	private Step copyOf(Step step) {
+		Step copy = new Step();
+
+		copy.setStepId(step.getStepId());
+		copy.setProjectId(step.getProjectId());
+		copy.setStepText(step.getStepText());
+		copy.setStepOrder(step.getStepOrder());
+		copy.setVersion(step.getVersion());
+
+		return copy;
+	}
+
+	private Category copyOf(Category category) {
+		Category copy = new Category();
+
+		copy.setCategoryId(category.getCategoryId());
+		copy.setCategoryName(category.getCategoryName());
+
+		return copy;
+	}
+
+
+	private static class Entry {
+		private final Project project;
+		private final long loadedAt;
+
+		Entry(Project project, long loadedAt) {
+			this.project = project;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+
+	/**
+	 * Point-in-time snapshot of the cache counters.
+	 */
+	public static class CacheStats {
+		private final int size;
+		private final int maxSize;
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+		private final long expirationCount;
+
+		CacheStats(int size, int maxSize, long hitCount, long missCount, long evictionCount, long expirationCount) {
+			this.size = size;
+			this.maxSize = maxSize;
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.evictionCount = evictionCount;
+			this.expirationCount = expirationCount;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		public long getMissCount() {
+			return missCount;
+		}
+
+		public long getEvictionCount() {
+			return evictionCount;
+		}
+
+		public long getExpirationCount() {
+			return expirationCount;
+		}
+
+		public double getHitRatio() {
+			long requests = hitCount + missCount;
+			return requests == 0 ? 0.0 : (double)hitCount / requests;
+		}
+
+		@Override
+		public String toString() {
+			//@formatter:off
+			return "size = " + size + "/" + maxSize
+					+ ", hits = " + hitCount
+					+ ", misses = " + missCount
+					+ ", evictions = " + evictionCount
+					+ ", expirations = " + expirationCount
+					+ ", hitRatio = " + String.format("%.3f", getHitRatio());
+			//@formatter:on
+		}
+	}
+
+}
@@ -0,0 +1,429 @@
+package projects.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import projects.entity.Project;
+import projects.entity.ProjectSummary;
+
+/**
+ * An in-memory copy of the project table (the project rows only, not their materials, steps or
+ * categories) for read-heavy listings and dashboards.
+ *
+ * Rows are stored column by column in primitive arrays instead of as Project objects: hours as
+ * int hundredths rather than BigDecimal, difficulty and version as ints, and names and notes as
+ * UTF-8 in an {@link OffHeapTextStore}. An open-addressing int map finds a project's row, so a
+ * lookup allocates nothing and {@link #forEachRow(RowVisitor)} visits every row without boxing.
+ * Project and ProjectSummary objects are only built for the rows a caller asks for. A Project
+ * carries its version, so one read from the index is still updated with a version check.
+ *
+ * The index is not a cache: it holds every project and is kept up to date by the writer (see
+ * ProjectService). Reads run concurrently; writes take an exclusive lock.
+ */
+public class ProjectIndex {
+
+	// Stored in place of a NULL estimated_hours, actual_hours, difficulty or version
+	public static final int NULL_VALUE = Integer.MIN_VALUE;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// project_id -> row number
+	private final IntIntHashMap rows;
+
+	// One entry per row. Rows stay dense: removing a row moves the last row into its place.
+	private int[] projectIds;
+	private int[] estimatedHours;
+	private int[] actualHours;
+	private int[] difficulties;
+	private int[] versions;
+	private long[] nameRefs;
+	private long[] notesRefs;
+	private int rowCount;
+
+	private OffHeapTextStore text = new OffHeapTextStore();
+
+	// Project ids in ascending order for listings. Null until the first listing after a change.
+	private volatile int[] sortedIds;
+
+
+	public ProjectIndex() {
+		this(1024);
+	}
+
+	public ProjectIndex(int expectedSize) {
+		int capacity = Math.max(expectedSize, 16);
+
+		rows = new IntIntHashMap(capacity);
+		projectIds = new int[capacity];
+		estimatedHours = new int[capacity];
+		actualHours = new int[capacity];
+		difficulties = new int[capacity];
+		versions = new int[capacity];
+		nameRefs = new long[capacity];
+		notesRefs = new long[capacity];
+	}
+
+
+	/**
+	 * Adds every project in the stream. Used to fill a new index, normally from
+	 * ProjectDao.streamAllProjects().
+	 */
+	public void load(Stream<Project> projects) {
+		projects.forEach(this::put);
+	}
+
+	/**
+	 * Adds the project row or replaces the one with the same id. Child rows are ignored.
+	 */
+	public void put(Project project) {
+		int projectId = project.getProjectId();
+
+		lock.writeLock().lock();
+
+		try {
+			int row = rows.get(projectId);
+
+			if(row == IntIntHashMap.NO_VALUE) {
+				row = rowCount++;
+				ensureCapacity(rowCount);
+				rows.put(projectId, row);
+				projectIds[row] = projectId;
+				sortedIds = null;
+			}
+			else {
+				text.release(nameRefs[row]);
+				text.release(notesRefs[row]);
+			}
+
+			estimatedHours[row] = toHundredths(project.getEstimatedHours());
+			actualHours[row] = toHundredths(project.getActualHours());
+			difficulties[row] = Objects.isNull(project.getDifficulty()) ? NULL_VALUE : project.getDifficulty();
+			versions[row] = Objects.isNull(project.getVersion()) ? NULL_VALUE : project.getVersion();
+			nameRefs[row] = text.add(project.getProjectName());
+			notesRefs[row] = text.add(project.getNotes());
+
+			compactIfNeeded();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean remove(int projectId) {
+		lock.writeLock().lock();
+
+		try {
+			int row = rows.remove(projectId);
+
+			if(row == IntIntHashMap.NO_VALUE) {
+				return false;
+			}
+
+			text.release(nameRefs[row]);
+			text.release(notesRefs[row]);
+
+			int last = --rowCount;
+
+			if(row != last) {
+				projectIds[row] = projectIds[last];
+				estimatedHours[row] = estimatedHours[last];
+				actualHours[row] = actualHours[last];
+				difficulties[row] = difficulties[last];
+				versions[row] = versions[last];
+				nameRefs[row] = nameRefs[last];
+				notesRefs[row] = notesRefs[last];
+				rows.put(projectIds[row], row);
+			}
+
+			sortedIds = null;
+			compactIfNeeded();
+
+			return true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+
+		try {
+			rows.clear();
+			rowCount = 0;
+			text = new OffHeapTextStore();
+			sortedIds = null;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+
+		try {
+			return rowCount;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean contains(int projectId) {
+		lock.readLock().lock();
+
+		try {
+			return rows.get(projectId) != IntIntHashMap.NO_VALUE;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the project row as a Project with no materials, steps or categories.
+	 */
+	public Optional<Project> fetchProject(int projectId) {
+		lock.readLock().lock();
+
+		try {
+			int row = rows.get(projectId);
+			return row == IntIntHashMap.NO_VALUE ? Optional.empty() : Optional.of(toProject(row));
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * All projects in project_id order, without child rows, as ProjectDao.fetchAllProjects returns
+	 * them.
+	 */
+	public List<Project> fetchAllProjects() {
+		lock.readLock().lock();
+
+		try {
+			List<Project> projects = new ArrayList<>(rowCount);
+
+			for(int projectId : sortedIds()) {
+				projects.add(toProject(rows.get(projectId)));
+			}
+
+			return projects;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns up to pageSize summaries with ids above afterProjectId (null for the first page), in
+	 * project_id order, as ProjectDao.fetchProjectSummaries returns them.
+	 */
+	public List<ProjectSummary> fetchProjectSummaries(Integer afterProjectId, int pageSize) {
+		lock.readLock().lock();
+
+		try {
+			int[] ids = sortedIds();
+			int start = 0;
+
+			if(Objects.nonNull(afterProjectId)) {
+				int found = Arrays.binarySearch(ids, afterProjectId);
+				start = found >= 0 ? found + 1 : -found - 1;
+			}
+
+			List<ProjectSummary> summaries = new ArrayList<>();
+
+			for(int pos = start; pos < ids.length && summaries.size() < pageSize; pos++) {
+				ProjectSummary summary = new ProjectSummary();
+
+				summary.setProjectId(ids[pos]);
+				summary.setProjectName(text.get(nameRefs[rows.get(ids[pos])]));
+				summaries.add(summary);
+			}
+
+			return summaries;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Calls the visitor with the numeric columns of every row, in no particular order. Nothing is
+	 * allocated per row. The index is locked against writes while the visitor runs.
+	 */
+	public void forEachRow(RowVisitor visitor) {
+		lock.readLock().lock();
+
+		try {
+			for(int row = 0; row < rowCount; row++) {
+				visitor.visit(projectIds[row], estimatedHours[row], actualHours[row], difficulties[row]);
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public FootprintReport getFootprint() {
+		lock.readLock().lock();
+
+		try {
+			long columnBytes = (long)projectIds.length * (4 * Integer.BYTES + 2 * Long.BYTES);
+			long sortedBytes = Objects.isNull(sortedIds) ? 0 : (long)sortedIds.length * Integer.BYTES;
+
+			//@formatter:off
+			return new FootprintReport(rowCount, columnBytes + rows.sizeInBytes() + sortedBytes,
+					text.getAllocatedBytes(), text.getLiveBytes());
+			//@formatter:on
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Callers hold the read lock. Building the sorted copy is a benign race: every builder produces
+	// the same array from the same rows.
+	private int[] sortedIds() {
+		int[] ids = sortedIds;
+
+		if(Objects.isNull(ids)) {
+			ids = Arrays.copyOf(projectIds, rowCount);
+			Arrays.sort(ids);
+			sortedIds = ids;
+		}
+
+		return ids;
+	}
+
+	private Project toProject(int row) {
+		Project project = new Project();
+
+		project.setProjectId(projectIds[row]);
+		project.setProjectName(text.get(nameRefs[row]));
+		project.setEstimatedHours(fromHundredths(estimatedHours[row]));
+		project.setActualHours(fromHundredths(actualHours[row]));
+		project.setDifficulty(difficulties[row] == NULL_VALUE ? null : difficulties[row]);
+		project.setNotes(text.get(notesRefs[row]));
+		project.setVersion(versions[row] == NULL_VALUE ? null : versions[row]);
+
+		return project;
+	}
+
+	private void ensureCapacity(int required) {
+		if(required <= projectIds.length) {
+			return;
+		}
+
+		int capacity = Math.max(required, projectIds.length + (projectIds.length >> 1));
+
+		projectIds = Arrays.copyOf(projectIds, capacity);
+		estimatedHours = Arrays.copyOf(estimatedHours, capacity);
+		actualHours = Arrays.copyOf(actualHours, capacity);
+		difficulties = Arrays.copyOf(difficulties, capacity);
+		versions = Arrays.copyOf(versions, capacity);
+		nameRefs = Arrays.copyOf(nameRefs, capacity);
+		notesRefs = Arrays.copyOf(notesRefs, capacity);
+	}
+
+	// Copies the live names and notes into a fresh store once more than half the bytes are dead
+	private void compactIfNeeded() {
+		if(!text.needsCompaction()) {
+			return;
+		}
+
+		OffHeapTextStore compacted = new OffHeapTextStore();
+
+		for(int row = 0; row < rowCount; row++) {
+			nameRefs[row] = compacted.add(text.get(nameRefs[row]));
+			notesRefs[row] = compacted.add(text.get(notesRefs[row]));
+		}
+
+		text = compacted;
+	}
+
+	// The hours columns are DECIMAL(7,2), so hundredths always fit in an int
+	private static int toHundredths(BigDecimal hours) {
+		return Objects.isNull(hours) ? NULL_VALUE : hours.setScale(2, RoundingMode.HALF_UP).unscaledValue().intValueExact();
+	}
+
+	private static BigDecimal fromHundredths(int hundredths) {
+		return hundredths == NULL_VALUE ? null : BigDecimal.valueOf(hundredths, 2);
+	}
+
+
+	/**
+	 * Receives one project row from {@link ProjectIndex#forEachRow(RowVisitor)}. Hours are in
+	 * hundredths of an hour. A NULL column is passed as {@link ProjectIndex#NULL_VALUE}.
+	 */
+	@FunctionalInterface
+	public interface RowVisitor {
+		void visit(int projectId, int estimatedHundredths, int actualHundredths, int difficulty);
+	}
+
+
+	/**
+	 * Memory used by the index, on and off the Java heap, with the per-project cost projected to a
+	 * million projects. Heap figures count the arrays only, not object headers.
+	 */
+	public static class FootprintReport {
+		private final int projectCount;
+		private final long heapBytes;
+		private final long offHeapAllocatedBytes;
+		private final long offHeapLiveBytes;
+
+		FootprintReport(int projectCount, long heapBytes, long offHeapAllocatedBytes, long offHeapLiveBytes) {
+			this.projectCount = projectCount;
+			this.heapBytes = heapBytes;
+			this.offHeapAllocatedBytes = offHeapAllocatedBytes;
+			this.offHeapLiveBytes = offHeapLiveBytes;
+		}
+
+		public int getProjectCount() {
+			return projectCount;
+		}
+
+		public long getHeapBytes() {
+			return heapBytes;
+		}
+
+		public long getOffHeapAllocatedBytes() {
+			return offHeapAllocatedBytes;
+		}
+
+		public long getOffHeapLiveBytes() {
+			return offHeapLiveBytes;
+		}
+
+		// heap bytes plus live text bytes per project; spare array capacity is included
+		public double getBytesPerProject() {
+			return projectCount == 0 ? 0.0 : (double)(heapBytes + offHeapLiveBytes) / projectCount;
+		}
+
+		public double getMegabytesPerMillionProjects() {
+			return getBytesPerProject() * 1_000_000 / (1024 * 1024);
+		}
+
+		@Override
+		public String toString() {
+			//@formatter:off
+			return "projects = " + projectCount
+					+ ", heap = " + heapBytes
+					+ ", offHeapAllocated = " + offHeapAllocatedBytes
+					+ ", offHeapLive = " + offHeapLiveBytes
+					+ ", bytesPerProject = " + String.format("%.1f", getBytesPerProject())
+					+ ", mbPerMillionProjects = " + String.format("%.1f", getMegabytesPerMillionProjects());
+			//@formatter:on
+		}
+	}
+
+}
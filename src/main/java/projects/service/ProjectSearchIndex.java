@@ -0,0 +1,724 @@
+package projects.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/**
+ * An in-memory inverted index over the text of every project (project_name, notes, material_name
+ * and step_text) with each project's difficulty and category ids alongside, for ranked and
+ * faceted search.
+ *
+ * Each project is a document with a dense document number. A term maps to its postings: the
+ * numbers of the documents that contain it, in ascending order, each with a frequency weighted by
+ * field so that a word in the project name counts three times and one in a material name twice. A
+ * search matches the documents containing every word. It walks the shortest postings list and
+ * skips ahead in the others with a galloping binary search, so the cost follows the rarest word
+ * rather than the size of the index. Matches are ranked with BM25 and counted per difficulty and
+ * category in int arrays as they are found.
+ *
+ * Replacing a project appends a new document and marks the old one deleted, so postings only grow
+ * at the end and stay sorted. Once more than half the documents are deleted the index is compacted.
+ * Like ProjectIndex this is not a cache: it holds every project and is kept up to date by the
+ * writer (see ProjectService). Searches run concurrently; writes take an exclusive lock.
+ */
+public class ProjectSearchIndex {
+
+	private static final int NAME_WEIGHT = 3;
+	private static final int MATERIAL_WEIGHT = 2;
+	private static final int TEXT_WEIGHT = 1;
+
+	// Weighted frequencies are kept in a byte per posting
+	private static final int MAX_FREQUENCY = 255;
+	private static final int MIN_TERM_LENGTH = 2;
+	// Longer words are cut to this length when indexed and searched
+	private static final int MAX_TERM_LENGTH = 32;
+
+	// BM25 term frequency saturation and length normalization, the usual defaults
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+
+	// Words in most projects cost the most postings and do the least to narrow a search
+	//@formatter:off
+	private static final Set<String> STOP_WORDS = Set.of("an", "and", "are", "as", "at", "be", "by", "for",
+			"from", "in", "into", "is", "it", "of", "on", "or", "the", "to", "with");
+	//@formatter:on
+
+	// Filter values for a search without a filter, and for one on a value no project has
+	private static final int ANY = -1;
+	private static final int NONE = -2;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<String, Postings> postings = new HashMap<>();
+	// project_id -> document number, for live documents only
+	private final IntIntHashMap documents;
+
+	// One entry per document number, including deleted documents until the next compaction
+	private int[] projectIds;
+	private int[] difficultyOrdinals;
+	// The category ordinals of document d are categoryOrdinals[categoryStarts[d]] up to
+	// categoryOrdinals[categoryStarts[d + 1]], all in one array so a search reads them without
+	// following a reference per document
+	private int[] categoryStarts;
+	private int[] categoryOrdinals;
+	// sum of the weighted term frequencies
+	private int[] lengths;
+	private long[] nameRefs;
+	private final BitSet deleted = new BitSet();
+	private int documentCount;
+	private int liveCount;
+	private long liveLength;
+
+	// Dense numbers for the distinct difficulties and category ids, so facets count into int arrays
+	private Ordinals difficulties = new Ordinals();
+	private Ordinals categories = new Ordinals();
+
+	// Project names for the hits
+	private OffHeapTextStore names = new OffHeapTextStore();
+
+
+	public ProjectSearchIndex() {
+		this(1024);
+	}
+
+	public ProjectSearchIndex(int expectedSize) {
+		int capacity = Math.max(expectedSize, 16);
+
+		documents = new IntIntHashMap(capacity);
+		projectIds = new int[capacity];
+		difficultyOrdinals = new int[capacity];
+		categoryStarts = new int[capacity + 1];
+		categoryOrdinals = new int[capacity];
+		lengths = new int[capacity];
+		nameRefs = new long[capacity];
+	}
+
+
+	/**
+	 * Indexes the project with its materials, steps and categories, replacing the project with the
+	 * same id. Categories are indexed by id only.
+	 */
+	public void put(Project project) {
+		int projectId = project.getProjectId();
+
+		// tokenized before locking; term -> weighted frequency
+		Map<String, int[]> terms = new HashMap<>();
+
+		addTerms(terms, project.getProjectName(), NAME_WEIGHT);
+		addTerms(terms, project.getNotes(), TEXT_WEIGHT);
+
+		for(Material material : project.getMaterials()) {
+			addTerms(terms, material.getMaterialName(), MATERIAL_WEIGHT);
+		}
+
+		for(Step step : project.getSteps()) {
+			addTerms(terms, step.getStepText(), TEXT_WEIGHT);
+		}
+
+		int length = 0;
+
+		for(int[] frequency : terms.values()) {
+			length += frequency[0];
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			int existing = documents.get(projectId);
+
+			if(existing != IntIntHashMap.NO_VALUE) {
+				delete(existing);
+			}
+
+			int document = documentCount++;
+			ensureCapacity(documentCount);
+			documents.put(projectId, document);
+
+			projectIds[document] = projectId;
+			difficultyOrdinals[document] = difficulties.ordinalOf(project.getDifficulty());
+			addCategories(document, project.getCategories());
+			lengths[document] = length;
+			nameRefs[document] = names.add(project.getProjectName());
+
+			liveCount++;
+			liveLength += length;
+
+			for(Map.Entry<String, int[]> term : terms.entrySet()) {
+				postings.computeIfAbsent(term.getKey(), key -> new Postings()).add(document, Math.min(term.getValue()[0], MAX_FREQUENCY));
+			}
+
+			compactIfNeeded();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean remove(int projectId) {
+		lock.writeLock().lock();
+
+		try {
+			int document = documents.remove(projectId);
+
+			if(document == IntIntHashMap.NO_VALUE) {
+				return false;
+			}
+
+			delete(document);
+			compactIfNeeded();
+
+			return true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+
+		try {
+			postings.clear();
+			documents.clear();
+			deleted.clear();
+			documentCount = 0;
+			categoryStarts[0] = 0;
+			liveCount = 0;
+			liveLength = 0;
+			difficulties = new Ordinals();
+			categories = new Ordinals();
+			names = new OffHeapTextStore();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+
+		try {
+			return liveCount;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// distinct indexed words
+	public int getTermCount() {
+		lock.readLock().lock();
+
+		try {
+			return postings.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the requested page of the projects that contain every word of the query and pass its
+	 * filters, best match first, with ties in project_id order.
+	 */
+	public SearchResults search(SearchQuery query) {
+		long started = System.nanoTime();
+
+		if(query.getOffset() + query.getLimit() > SearchQuery.MAX_RESULT_WINDOW) {
+			throw new IllegalArgumentException("offset + limit must not be more than " + SearchQuery.MAX_RESULT_WINDOW);
+		}
+
+		List<String> words = new ArrayList<>(queryTerms(query.getText()));
+
+		lock.readLock().lock();
+
+		try {
+			Collector collector = new Collector(query);
+
+			if(words.isEmpty()) {
+				for(int document = deleted.nextClearBit(0); document < documentCount; document = deleted.nextClearBit(document + 1)) {
+					collector.collect(document, 0.0);
+				}
+			}
+			else {
+				collectMatches(words, collector);
+			}
+
+			return collector.toResults(query, started);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Callers hold the read lock
+	private void collectMatches(List<String> words, Collector collector) {
+		Postings[] lists = new Postings[words.size()];
+
+		for(int pos = 0; pos < lists.length; pos++) {
+			lists[pos] = postings.get(words.get(pos));
+
+			if(Objects.isNull(lists[pos])) {
+				// a word no project contains
+				return;
+			}
+		}
+
+		Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+		double[] idf = new double[lists.length];
+
+		for(int pos = 0; pos < lists.length; pos++) {
+			// postings of deleted documents are still counted until compaction
+			int documentFrequency = Math.min(lists[pos].size, liveCount);
+			idf[pos] = Math.log(1 + (liveCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+		}
+
+		double averageLength = liveCount == 0 ? 1.0 : (double)liveLength / liveCount;
+		int[] positions = new int[lists.length];
+		Postings lead = lists[0];
+
+		candidates:
+		for(int leadPos = 0; leadPos < lead.size; leadPos++) {
+			int document = lead.documents[leadPos];
+
+			if(deleted.get(document)) {
+				continue;
+			}
+
+			double norm = K1 * (1 - B + B * lengths[document] / averageLength);
+			double score = idf[0] * termScore(lead.frequencies[leadPos], norm);
+
+			for(int pos = 1; pos < lists.length; pos++) {
+				Postings list = lists[pos];
+				int found = list.seek(positions[pos], document);
+
+				positions[pos] = found;
+
+				if(found == list.size) {
+					// every later candidate is past the end of this list too
+					break candidates;
+				}
+
+				if(list.documents[found] != document) {
+					continue candidates;
+				}
+
+				score += idf[pos] * termScore(list.frequencies[found], norm);
+			}
+
+			collector.collect(document, score);
+		}
+	}
+
+	private static double termScore(byte frequency, double norm) {
+		int tf = frequency & 0xFF;
+		return tf * (K1 + 1) / (tf + norm);
+	}
+
+	// Callers hold the write lock
+	private void delete(int document) {
+		deleted.set(document);
+		names.release(nameRefs[document]);
+		nameRefs[document] = OffHeapTextStore.NULL_REF;
+		liveCount--;
+		liveLength -= lengths[document];
+	}
+
+	// Callers hold the write lock; the document is the last one
+	private void addCategories(int document, List<Category> projectCategories) {
+		int[] ordinals = projectCategories.stream().map(Category::getCategoryId).filter(Objects::nonNull).distinct().mapToInt(categories::ordinalOf).toArray();
+		int start = categoryStarts[document];
+
+		if(start + ordinals.length > categoryOrdinals.length) {
+			categoryOrdinals = Arrays.copyOf(categoryOrdinals, Math.max(start + ordinals.length, categoryOrdinals.length + (categoryOrdinals.length >> 1)));
+		}
+
+		System.arraycopy(ordinals, 0, categoryOrdinals, start, ordinals.length);
+		categoryStarts[document + 1] = start + ordinals.length;
+	}
+
+	private void ensureCapacity(int required) {
+		if(required <= projectIds.length) {
+			return;
+		}
+
+		int capacity = Math.max(required, projectIds.length + (projectIds.length >> 1));
+
+		projectIds = Arrays.copyOf(projectIds, capacity);
+		difficultyOrdinals = Arrays.copyOf(difficultyOrdinals, capacity);
+		categoryStarts = Arrays.copyOf(categoryStarts, capacity + 1);
+		lengths = Arrays.copyOf(lengths, capacity);
+		nameRefs = Arrays.copyOf(nameRefs, capacity);
+	}
+
+	/*
+	 * Renumbers the live documents from 0 once more than half are deleted, dropping the deleted
+	 * ones from every postings list. Order is kept, so the postings stay sorted.
+	 */
+	private void compactIfNeeded() {
+		if(documentCount - liveCount <= liveCount) {
+			return;
+		}
+
+		int[] renumbered = new int[documentCount];
+		OffHeapTextStore compactedNames = new OffHeapTextStore();
+		int next = 0;
+		int nextCategory = 0;
+
+		for(int document = 0; document < documentCount; document++) {
+			if(deleted.get(document)) {
+				renumbered[document] = -1;
+				continue;
+			}
+
+			int target = next++;
+
+			renumbered[document] = target;
+			projectIds[target] = projectIds[document];
+			difficultyOrdinals[target] = difficultyOrdinals[document];
+			lengths[target] = lengths[document];
+
+			// categoryStarts[target] already holds where the previous document's categories ended
+			for(int pos = categoryStarts[document]; pos < categoryStarts[document + 1]; pos++) {
+				categoryOrdinals[nextCategory++] = categoryOrdinals[pos];
+			}
+
+			categoryStarts[target + 1] = nextCategory;
+			nameRefs[target] = compactedNames.add(names.get(nameRefs[document]));
+			documents.put(projectIds[target], target);
+		}
+
+		for(Iterator<Postings> lists = postings.values().iterator(); lists.hasNext();) {
+			Postings list = lists.next();
+
+			list.renumber(renumbered);
+
+			if(list.size == 0) {
+				lists.remove();
+			}
+		}
+
+		names = compactedNames;
+		deleted.clear();
+		documentCount = next;
+	}
+
+	private static void addTerms(Map<String, int[]> terms, String text, int weight) {
+		forEachTerm(text, term -> terms.computeIfAbsent(term, key -> new int[1])[0] += weight);
+	}
+
+	// The distinct terms of a query, in the order written
+	static Set<String> queryTerms(String text) {
+		Set<String> terms = new LinkedHashSet<>();
+		forEachTerm(text, terms::add);
+		return terms;
+	}
+
+	/*
+	 * Terms are runs of letters and digits, lower-cased. Stop words and single characters are
+	 * skipped and long words are cut to MAX_TERM_LENGTH, the same way for indexing and searching.
+	 */
+	static void forEachTerm(String text, Consumer<String> action) {
+		if(Objects.isNull(text)) {
+			return;
+		}
+
+		int start = -1;
+
+		for(int pos = 0; pos <= text.length(); pos++) {
+			boolean inWord = pos < text.length() && Character.isLetterOrDigit(text.charAt(pos));
+
+			if(inWord && start < 0) {
+				start = pos;
+			}
+			else if(!inWord && start >= 0) {
+				String term = text.substring(start, Math.min(pos, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT);
+
+				if(term.length() >= MIN_TERM_LENGTH && !STOP_WORDS.contains(term)) {
+					action.accept(term);
+				}
+
+				start = -1;
+			}
+		}
+	}
+
+
+	/*
+	 * The documents containing one term in ascending order, with the weighted frequency of the term
+	 * in each.
+	 */
+	private static class Postings {
+		private int[] documents = new int[2];
+		private byte[] frequencies = new byte[2];
+		private int size;
+
+		// Documents are always added in increasing order
+		void add(int document, int frequency) {
+			if(size == documents.length) {
+				int capacity = size + Math.max(size >> 1, 2);
+
+				documents = Arrays.copyOf(documents, capacity);
+				frequencies = Arrays.copyOf(frequencies, capacity);
+			}
+
+			documents[size] = document;
+			frequencies[size] = (byte)frequency;
+			size++;
+		}
+
+		/*
+		 * The first position at or after from holding a document >= the one given, or size if there
+		 * is none. Gallops forward in doubling steps and then binary searches the last step, so
+		 * skipping far ahead in a long list costs a logarithm of the distance.
+		 */
+		int seek(int from, int document) {
+			if(from >= size || documents[from] >= document) {
+				return from;
+			}
+
+			// the common case in a dense list
+			if(from + 1 == size || documents[from + 1] >= document) {
+				return from + 1;
+			}
+
+			int low = from + 1;
+			int step = 1;
+			int high = low + 1;
+
+			while(high < size && documents[high] < document) {
+				low = high;
+				step <<= 1;
+				high = low + step;
+			}
+
+			int found = Arrays.binarySearch(documents, low + 1, Math.min(high, size), document);
+			return found >= 0 ? found : -found - 1;
+		}
+
+		void renumber(int[] renumbered) {
+			int kept = 0;
+
+			for(int pos = 0; pos < size; pos++) {
+				int document = renumbered[documents[pos]];
+
+				if(document >= 0) {
+					documents[kept] = document;
+					frequencies[kept] = frequencies[pos];
+					kept++;
+				}
+			}
+
+			size = kept;
+
+			if(size < documents.length >> 2) {
+				documents = Arrays.copyOf(documents, Math.max(size, 2));
+				frequencies = Arrays.copyOf(frequencies, Math.max(size, 2));
+			}
+		}
+	}
+
+
+	// Numbers the distinct values of a column from 0. Null is a value like any other.
+	private static class Ordinals {
+		private final Map<Integer, Integer> ordinals = new HashMap<>();
+		private final List<Integer> values = new ArrayList<>();
+
+		int ordinalOf(Integer value) {
+			return ordinals.computeIfAbsent(value, key -> {
+				values.add(key);
+				return values.size() - 1;
+			});
+		}
+
+		// ANY without a filter, NONE when no document has ever had the value
+		int filter(Integer value) {
+			return Objects.isNull(value) ? ANY : ordinals.getOrDefault(value, NONE);
+		}
+
+		Integer valueAt(int ordinal) {
+			return values.get(ordinal);
+		}
+
+		int size() {
+			return values.size();
+		}
+	}
+
+
+	/*
+	 * Counts the facets of every match and keeps the best offset + limit hits in a heap whose root
+	 * is the worst of them. Used under the read lock for one search.
+	 */
+	private class Collector {
+		private final int difficultyFilter;
+		private final int categoryFilter;
+		private final int[] difficultyCounts = new int[difficulties.size()];
+		private final int[] categoryCounts = new int[categories.size()];
+		private final int[] heapDocuments;
+		private final double[] heapScores;
+		private int heapSize;
+		private long totalHits;
+
+		Collector(SearchQuery query) {
+			difficultyFilter = difficulties.filter(query.getDifficulty());
+			categoryFilter = categories.filter(query.getCategoryId());
+			heapDocuments = new int[query.getOffset() + query.getLimit()];
+			heapScores = new double[heapDocuments.length];
+		}
+
+		void collect(int document, double score) {
+			boolean difficultyMatches = difficultyFilter == ANY || difficultyOrdinals[document] == difficultyFilter;
+			int start = categoryStarts[document];
+			int end = categoryStarts[document + 1];
+			boolean categoryMatches = categoryFilter == ANY || contains(start, end, categoryFilter);
+
+			if(categoryMatches) {
+				difficultyCounts[difficultyOrdinals[document]]++;
+			}
+
+			if(difficultyMatches) {
+				for(int pos = start; pos < end; pos++) {
+					categoryCounts[categoryOrdinals[pos]]++;
+				}
+			}
+
+			if(difficultyMatches && categoryMatches) {
+				totalHits++;
+				offer(document, score);
+			}
+		}
+
+		SearchResults toResults(SearchQuery query, long started) {
+			Integer[] ranked = new Integer[heapSize];
+
+			for(int pos = 0; pos < heapSize; pos++) {
+				ranked[pos] = pos;
+			}
+
+			Arrays.sort(ranked, (left, right) -> ranksBelow(left, right) ? 1 : ranksBelow(right, left) ? -1 : 0);
+
+			List<SearchResults.Hit> hits = new ArrayList<>();
+
+			for(int pos = query.getOffset(); pos < heapSize; pos++) {
+				int document = heapDocuments[ranked[pos]];
+				hits.add(new SearchResults.Hit(projectIds[document], names.get(nameRefs[document]), heapScores[ranked[pos]]));
+			}
+
+			Map<Integer, Integer> difficultyFacets = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+			Map<Integer, Integer> categoryFacets = new TreeMap<>();
+
+			for(int ordinal = 0; ordinal < difficultyCounts.length; ordinal++) {
+				if(difficultyCounts[ordinal] > 0) {
+					difficultyFacets.put(difficulties.valueAt(ordinal), difficultyCounts[ordinal]);
+				}
+			}
+
+			for(int ordinal = 0; ordinal < categoryCounts.length; ordinal++) {
+				if(categoryCounts[ordinal] > 0) {
+					categoryFacets.put(categories.valueAt(ordinal), categoryCounts[ordinal]);
+				}
+			}
+
+			return new SearchResults(totalHits, hits, difficultyFacets, categoryFacets, System.nanoTime() - started);
+		}
+
+		private void offer(int document, double score) {
+			if(heapSize < heapDocuments.length) {
+				heapDocuments[heapSize] = document;
+				heapScores[heapSize] = score;
+				siftUp(heapSize++);
+			}
+			else if(isBelow(heapDocuments[0], heapScores[0], document, score)) {
+				heapDocuments[0] = document;
+				heapScores[0] = score;
+				siftDown(0);
+			}
+		}
+
+		private void siftUp(int pos) {
+			while(pos > 0) {
+				int parent = (pos - 1) >> 1;
+
+				if(!ranksBelow(pos, parent)) {
+					return;
+				}
+
+				swap(pos, parent);
+				pos = parent;
+			}
+		}
+
+		private void siftDown(int pos) {
+			while(true) {
+				int worst = pos;
+				int left = 2 * pos + 1;
+				int right = left + 1;
+
+				if(left < heapSize && ranksBelow(left, worst)) {
+					worst = left;
+				}
+
+				if(right < heapSize && ranksBelow(right, worst)) {
+					worst = right;
+				}
+
+				if(worst == pos) {
+					return;
+				}
+
+				swap(pos, worst);
+				pos = worst;
+			}
+		}
+
+		private boolean ranksBelow(int heapPos, int otherHeapPos) {
+			return isBelow(heapDocuments[heapPos], heapScores[heapPos], heapDocuments[otherHeapPos], heapScores[otherHeapPos]);
+		}
+
+		// A lower score ranks below; equal scores rank by project_id
+		private boolean isBelow(int document, double score, int otherDocument, double otherScore) {
+			return score < otherScore || (score == otherScore && projectIds[document] > projectIds[otherDocument]);
+		}
+
+		private void swap(int pos, int otherPos) {
+			int document = heapDocuments[pos];
+			double score = heapScores[pos];
+
+			heapDocuments[pos] = heapDocuments[otherPos];
+			heapScores[pos] = heapScores[otherPos];
+			heapDocuments[otherPos] = document;
+			heapScores[otherPos] = score;
+		}
+
+		private boolean contains(int start, int end, int ordinal) {
+			for(int pos = start; pos < end; pos++) {
+				if(categoryOrdinals[pos] == ordinal) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+}
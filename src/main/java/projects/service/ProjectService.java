@@ -1,54 +1,742 @@
 package projects.service;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import projects.cdc.RowChange;
+import projects.dao.DbConnection;
 import projects.dao.ProjectDao;
+import projects.dao.ProjectDao.ChildSaveMode;
+import projects.dao.ReadSession;
+import projects.dao.ReportDao;
+import projects.entity.CategoryProjectCount;
+import projects.entity.DifficultyAccuracy;
+import projects.entity.HoursTotals;
 import projects.entity.Project;
+import projects.entity.ProjectMaterialCost;
+import projects.entity.ProjectSummary;
+import projects.entity.Step;
+import projects.exception.ConcurrentUpdateException;
 import projects.exception.DbException;
+import projects.export.ExportFormat;
+import projects.export.ExportReport;
+import projects.export.ProjectExporter;
+import projects.importer.ImportReport;
+import projects.importer.ProjectImporter;
+import projects.service.ProjectCache.CacheStats;
 
 public class ProjectService {
 	
 	private ProjectDao projectDao = new ProjectDao();
+	private ReportDao reportDao = new ReportDao();
+	// Project aggregates are read far more often than written, so reads check here first. Reads may
+	// come from a replica, so the cache is told how far behind the primary they can be.
+	private ProjectCache projectCache = new ProjectCache(1000, Duration.ofMinutes(5), DbConnection.getMaxReadStaleness());
+	// In-memory copy of the project table for listings. Null until enableProjectIndex() is called.
+	private volatile ProjectIndex projectIndex;
+	// Guards indexWrites, which counts index updates so enableProjectIndex can tell whether a write
+	// finished while it was loading
+	private final Object indexLock = new Object();
+	private long indexWrites;
+	// Set by enableSummaryTables. Writes through this service then refresh the summary rows they affect.
+	private volatile boolean summaryTablesEnabled;
+	// Inverted index over project text for searchProjects. Null until enableSearchIndex() is called.
+	private volatile ProjectSearchIndex searchIndex;
+	// Ids of projects written while enableSearchIndex is loading, and whether the load has to start
+	// over. Guarded by indexLock; searchLoadWrites is null when no load is running.
+	private Set<Integer> searchLoadWrites;
+	private boolean searchLoadStale;
+	// Projects read per round trip when loading the search index
+	private static final int SEARCH_LOAD_PAGE_SIZE = 500;
 	
 	
 	public Project addProject(Project project) {
 		
-		return projectDao.insertProject(project);
+		Project dbProject = projectDao.insertProject(project);
+		// nothing can be cached for a new id, but a previously deleted id may still be reused
+		projectCache.invalidate(dbProject.getProjectId());
+		updateIndex(index -> index.put(dbProject));
+		updateSearchIndex(List.of(dbProject.getProjectId()), index -> index.put(dbProject));
+		return dbProject;
 		
 	}
 
 
+	/**
+	 * Bulk loads projects with batched inserts. Only the project rows are written.
+	 */
+	public List<Project> addProjects(List<Project> projects) {
+		try {
+			List<Project> dbProjects = projectDao.insertProjects(projects);
+			updateIndex(index -> dbProjects.forEach(index::put));
+			updateSearchIndex(projectIds(dbProjects), index -> dbProjects.forEach(index::put));
+			return dbProjects;
+		}
+		catch(RuntimeException e) {
+			// which chunks were committed is not known, so the indexes can no longer be trusted
+			updateIndex(index -> projectIndex = null);
+			dropSearchIndex();
+			throw e;
+		}
+		finally {
+			// a failed load may have committed earlier chunks
+			projectCache.invalidateAll();
+		}
+	}
+
+
+	/**
+	 * Inserts or updates a project together with its materials, steps and categories.
+	 */
+	public Project saveProjectAggregate(Project project, ChildSaveMode mode) {
+		try {
+			Project saved = projectDao.saveProjectAggregate(project, mode);
+			updateIndex(index -> index.put(saved));
+			updateSearchIndex(List.of(saved.getProjectId()), index -> index.put(saved));
+			return saved;
+		}
+		catch(RuntimeException e) {
+			reindex(project.getProjectId());
+			reindexSearch(project.getProjectId());
+			throw e;
+		}
+		finally {
+			if(Objects.nonNull(project.getProjectId())) {
+				projectCache.invalidate(project.getProjectId());
+				refreshSummaries(List.of(project.getProjectId()));
+			}
+		}
+	}
+
+
+	public Step addStep(Integer projectId, String stepText) {
+		try {
+			return projectDao.addStep(projectId, stepText);
+		}
+		finally {
+			// the project row is locked for the append, which bumps its version
+			projectCache.invalidate(projectId);
+			reindex(projectId);
+			reindexSearch(projectId);
+		}
+	}
+
+
+	public void moveStep(Integer projectId, Integer stepId, Integer beforeStepId) {
+		try {
+			if(!projectDao.moveStep(projectId, stepId, beforeStepId)) {
+				throw new DbException("Project " + projectId + " has no step with ID = " + stepId);
+			}
+		}
+		finally {
+			projectCache.invalidate(projectId);
+			reindex(projectId);
+			reindexSearch(projectId);
+		}
+	}
+
+
+	public void deleteStep(Integer projectId, Integer stepId) {
+		try {
+			if(!projectDao.deleteStep(projectId, stepId)) {
+				throw new DbException("Project " + projectId + " has no step with ID = " + stepId);
+			}
+		}
+		finally {
+			projectCache.invalidate(projectId);
+			reindex(projectId);
+			reindexSearch(projectId);
+		}
+	}
+
+
 	public List<Project> fetchAllProjects() {
+		ProjectIndex index = projectIndex;
+		
+		return Objects.nonNull(index) ? index.fetchAllProjects() : projectDao.fetchAllProjects();
+	}
+
+
+	/**
+	 * Returns the page of project summaries that follows afterProjectId (null for the first page).
+	 */
+	public List<ProjectSummary> fetchProjectSummaryPage(Integer afterProjectId, int pageSize) {
+		ProjectIndex index = projectIndex;
+		
+		if(Objects.nonNull(index)) {
+			return index.fetchProjectSummaries(afterProjectId, pageSize);
+		}
 		
-		return projectDao.fetchAllProjects();
+		return projectDao.fetchProjectSummaries(afterProjectId, pageSize);
+	}
+
+
+	/**
+	 * Streams all projects (without their child rows). The caller must close the stream.
+	 */
+	public Stream<Project> streamAllProjects() {
+		return projectDao.streamAllProjects();
 	}
 
 
 	public Project fetchProjectById(Integer projectId) {
-		return projectDao.fetchProjectById(projectId).orElseThrow(
+		Project cached = projectCache.get(projectId);
+		
+		if(Objects.nonNull(cached)) {
+			return cached;
+		}
+		
+		// taken before the read so a write that lands during the read keeps it out of the cache
+		long generation = projectCache.generation();
+		
+		Project project = projectDao.fetchProjectById(projectId).orElseThrow(
 				() -> new NoSuchElementException(
 						"Project with project ID = " + projectId 
 						+ " does not exist"));
 		
+		projectCache.putIfCurrent(project, generation);
+		
+		return project;
+		
+	}
+
+
+	/**
+	 * Returns the projects that exist for the given ids in project_id order. Cached projects are
+	 * served from the cache and the rest are loaded from the DB in bulk.
+	 */
+	public List<Project> fetchProjectsByIds(Collection<Integer> projectIds) {
+		Map<Integer, Project> projects = new TreeMap<>();
+		List<Integer> misses = new ArrayList<>();
+		
+		for(Integer projectId : projectIds) {
+			if(Objects.isNull(projectId) || projects.containsKey(projectId)) {
+				continue;
+			}
+			
+			Project cached = projectCache.get(projectId);
+			
+			if(Objects.nonNull(cached)) {
+				projects.put(projectId, cached);
+			}
+			else {
+				misses.add(projectId);
+			}
+		}
+		
+		if(!misses.isEmpty()) {
+			long generation = projectCache.generation();
+			
+			for(Project project : projectDao.fetchProjectsByIds(misses)) {
+				projectCache.putIfCurrent(project, generation);
+				projects.put(project.getProjectId(), project);
+			}
+		}
+		
+		return new ArrayList<>(projects.values());
 	}
 
 
+	/**
+	 * Overwrites the five detail columns. A project read through this service carries its version,
+	 * and the update then fails with a {@link ConcurrentUpdateException} if the project was changed
+	 * by someone else after it was read.
+	 */
 	public void modifyProjectDetails(Project project) {
-		if(!projectDao.modifyProjectDetails(project)) {
+		modifyDetails(project, true, () -> projectDao.modifyProjectDetails(project));
+	}
+
+
+	/**
+	 * Writes only the detail columns that differ between the project as it was read and as it should
+	 * be. See {@link ProjectDao#modifyChangedDetails(Project, Project)} for how concurrent writers are
+	 * handled.
+	 */
+	public void modifyChangedDetails(Project original, Project modified) {
+		// without a version check another writer's columns survive, so the row may not equal modified
+		modifyDetails(modified, Objects.nonNull(original.getVersion()), () -> projectDao.modifyChangedDetails(original, modified));
+	}
+
+
+	private void modifyDetails(Project project, boolean rowKnown, Supplier<Boolean> write) {
+		boolean modified;
+		
+		try {
+			modified = write.get();
+		}
+		catch(RuntimeException e) {
+			reindex(project.getProjectId());
+			throw e;
+		}
+		finally {
+			// invalidate even on failure since the outcome of a failed commit is not always known
+			projectCache.invalidate(project.getProjectId());
+			// the search document includes the child rows, which only the DB has
+			reindexSearch(project.getProjectId());
+		}
+		
+		if(!modified) {
+			updateIndex(index -> index.remove(project.getProjectId()));
 			throw new DbException("\n Project with ID = " + project.getProjectId() + " dose not exist.");
-			
+		}
+		
+		if(rowKnown) {
+			updateIndex(index -> index.put(project));
+		}
+		else {
+			reindex(project.getProjectId());
 		}
 		
 	}
 
 
 	public void deleteProject(Integer projectId) {
-		if(!projectDao.deleteProject(projectId)) {
+		boolean deleted;
+		
+		try {
+			deleted = projectDao.deleteProject(projectId);
+		}
+		catch(RuntimeException e) {
+			reindex(projectId);
+			reindexSearch(projectId);
+			throw e;
+		}
+		finally {
+			projectCache.invalidate(projectId);
+		}
+		
+		updateIndex(index -> index.remove(projectId));
+		updateSearchIndex(List.of(projectId), index -> index.remove(projectId));
+		
+		if(!deleted) {
 			throw new DbException(" Project with ID = " + projectId + " does not exist");
 		}
 		
 	}
+
+
+	/**
+	 * Writes every project with its materials, steps and categories to files in the directory, reading
+	 * parallelism partitions at a time.
+	 */
+	public ExportReport exportProjects(Path directory, ExportFormat format, int parallelism) {
+		return new ProjectExporter().export(directory, format, parallelism);
+	}
+
+
+	/**
+	 * Loads projects with their materials, steps and categories from an import file, parsing on
+	 * parallelism threads. See {@link ProjectImporter} for the file format, the rejected-rows file and
+	 * resuming. Each batch is added to the project index as it commits.
+	 */
+	public ImportReport importProjects(Path file, int parallelism) {
+		return new ProjectImporter(this::projectsImported).importProjects(file, parallelism);
+	}
+
+
+	private void projectsImported(List<Project> projects) {
+		// a new id may be one that was deleted while still cached
+		projects.forEach(project -> projectCache.invalidate(project.getProjectId()));
+		updateIndex(index -> projects.forEach(index::put));
+		updateSearchIndex(projectIds(projects), index -> projects.forEach(index::put));
+		refreshSummaries(projectIds(projects));
+	}
+
+
+	/**
+	 * Project count with total and average estimated and actual hours, computed by the database.
+	 */
+	public HoursTotals fetchHoursTotals() {
+		return reportDao.fetchHoursTotals();
+	}
+
+
+	/**
+	 * How actual hours compare with the estimates for each difficulty.
+	 */
+	public List<DifficultyAccuracy> fetchAccuracyByDifficulty() {
+		return reportDao.fetchAccuracyByDifficulty();
+	}
+
+
+	public List<CategoryProjectCount> fetchCategoryCounts() {
+		return reportDao.fetchCategoryCounts();
+	}
+
+
+	/**
+	 * Every project with the cost of its materials, most expensive first. Close the stream when done
+	 * with it; it holds a connection until then. Read from the summary table when summaries are
+	 * enabled.
+	 */
+	public Stream<ProjectMaterialCost> streamMaterialCosts() {
+		return reportDao.streamMaterialCosts(summaryTablesEnabled);
+	}
+
+
+	public List<ProjectMaterialCost> fetchMostExpensiveProjects(int limit) {
+		return reportDao.fetchMostExpensiveProjects(limit, summaryTablesEnabled);
+	}
+
+
+	/**
+	 * Rebuilds the material cost summary table and serves the material cost reports from it from
+	 * then on. Writes made through this service keep it current; writes made by anything else are
+	 * only seen when they reach {@link #applyRowChanges(List)} or the summary is enabled again.
+	 */
+	public void enableSummaryTables() {
+		// set first so a write made during the rebuild refreshes its row too
+		summaryTablesEnabled = true;
+		
+		try {
+			reportDao.rebuildMaterialCosts();
+		}
+		catch(RuntimeException e) {
+			summaryTablesEnabled = false;
+			throw e;
+		}
+	}
+
+
+	public void disableSummaryTables() {
+		summaryTablesEnabled = false;
+	}
+
+
+	public CacheStats getCacheStats() {
+		return projectCache.getStats();
+	}
+
+
+	/**
+	 * Applies row changes made outside this service, in commit order, to the project cache, the
+	 * project index and the search index. Pass it to a {@link projects.cdc.CacheRefresher} as its
+	 * handler.
+	 */
+	public void applyRowChanges(List<RowChange> changes) {
+		// a project changed several times in the batch only needs its row read once
+		Set<Integer> changedProjects = new LinkedHashSet<>();
+		Set<Integer> changedProjectRows = new LinkedHashSet<>();
+		Set<Integer> changedMaterials = new LinkedHashSet<>();
+		boolean categoryChanged = false;
+		
+		for(RowChange change : changes) {
+			if(change.getTable().equalsIgnoreCase(ProjectDao.CATEGORY_TABLE)) {
+				categoryChanged = true;
+			}
+			else if(Objects.nonNull(change.getProjectId())) {
+				projectCache.invalidate(change.getProjectId());
+				changedProjects.add(change.getProjectId());
+				
+				if(change.getTable().equalsIgnoreCase(ProjectDao.PROJECT_TABLE)) {
+					changedProjectRows.add(change.getProjectId());
+				}
+				else if(change.getTable().equalsIgnoreCase(ProjectDao.MATERIAL_TABLE)) {
+					changedMaterials.add(change.getProjectId());
+				}
+			}
+		}
+		
+		// a category is part of every cached project that uses it
+		if(categoryChanged) {
+			projectCache.invalidateAll();
+		}
+		
+		changedProjectRows.forEach(this::reindex);
+		// search documents are indexed by category id, so a renamed category changes none of them
+		reindexSearch(changedProjects);
+		refreshSummaries(changedMaterials);
+	}
+
+
+	/**
+	 * Ranked search over project names, notes, material names and step text, with difficulty and
+	 * category facets. Needs {@link #enableSearchIndex()}.
+	 */
+	public SearchResults searchProjects(SearchQuery query) {
+		ProjectSearchIndex index = searchIndex;
+		
+		if(Objects.isNull(index)) {
+			throw new IllegalStateException("The search index is not enabled");
+		}
+		
+		return index.search(query);
+	}
+
+
+	/**
+	 * Reads every project with its materials, steps and categories into a {@link ProjectSearchIndex}
+	 * for {@link #searchProjects(SearchQuery)}. Writes made through this service keep it up to date,
+	 * as do changes passed to {@link #applyRowChanges(List)}.
+	 * 
+	 * The load pages through the projects by id, so it does not hold a connection or a lock while
+	 * it runs. Projects written in the meantime are read again before the index is installed.
+	 */
+	public synchronized void enableSearchIndex() {
+		try {
+			for(int attempt = 0; attempt < 3; attempt++) {
+				synchronized(indexLock) {
+					searchLoadWrites = new HashSet<>();
+					searchLoadStale = false;
+				}
+				
+				ProjectSearchIndex index = new ProjectSearchIndex();
+				Integer lastProjectId = null;
+				List<ProjectSummary> page;
+				
+				do {
+					page = projectDao.fetchProjectSummaries(lastProjectId, SEARCH_LOAD_PAGE_SIZE);
+					
+					if(!page.isEmpty()) {
+						List<Integer> ids = page.stream().map(ProjectSummary::getProjectId).collect(Collectors.toList());
+						
+						// indexes are kept, so they are built from the primary rather than a replica that may lag
+						ReadSession.readFromPrimary(() -> projectDao.fetchProjectsByIds(ids)).forEach(index::put);
+						lastProjectId = ids.get(ids.size() - 1);
+					}
+				} while(page.size() == SEARCH_LOAD_PAGE_SIZE);
+				
+				// catch up with the projects written during the load until a check finds none
+				while(true) {
+					Set<Integer> written;
+					
+					synchronized(indexLock) {
+						if(searchLoadStale) {
+							break;
+						}
+						
+						if(searchLoadWrites.isEmpty()) {
+							searchIndex = index;
+							return;
+						}
+						
+						written = searchLoadWrites;
+						searchLoadWrites = new HashSet<>();
+					}
+					
+					putAll(index, written, ReadSession.readFromPrimary(() -> projectDao.fetchProjectsByIds(written)));
+				}
+			}
+		}
+		finally {
+			synchronized(indexLock) {
+				searchLoadWrites = null;
+			}
+		}
+		
+		throw new DbException("Unable to load the search index while projects are being written");
+	}
+
+
+	public void disableSearchIndex() {
+		dropSearchIndex();
+	}
+
+
+	public Optional<ProjectSearchIndex> getSearchIndex() {
+		return Optional.ofNullable(searchIndex);
+	}
+
+
+	/**
+	 * Loads every project row into an in-memory {@link ProjectIndex} and serves fetchAllProjects and
+	 * fetchProjectSummaryPage from it from then on. Writes made through this service keep the index
+	 * up to date; rows changed by anything else are not seen until the index is enabled again.
+	 */
+	public void enableProjectIndex() {
+		// retried if a write finishes during the load, since the load may have read the old row
+		for(int attempt = 0; attempt < 3; attempt++) {
+			long writes;
+			
+			synchronized(indexLock) {
+				writes = indexWrites;
+			}
+			
+			ProjectIndex index = new ProjectIndex();
+			
+			try(Stream<Project> projects = projectDao.streamAllProjects()) {
+				index.load(projects);
+			}
+			
+			synchronized(indexLock) {
+				if(indexWrites == writes) {
+					projectIndex = index;
+					return;
+				}
+			}
+		}
+		
+		throw new DbException("Unable to load the project index while projects are being written");
+	}
+
+
+	public void disableProjectIndex() {
+		synchronized(indexLock) {
+			projectIndex = null;
+		}
+	}
+
+
+	/**
+	 * Returns the project index for callers that read it directly, such as dashboards using
+	 * {@link ProjectIndex#forEachRow}.
+	 */
+	public Optional<ProjectIndex> getProjectIndex() {
+		return Optional.ofNullable(projectIndex);
+	}
+
+
+	/*
+	 * Applies a committed write to the index. Writes are counted under the same lock that
+	 * enableProjectIndex installs a new index with, so a write either reaches the new index or makes
+	 * the load start over.
+	 */
+	private void updateIndex(Consumer<ProjectIndex> update) {
+		synchronized(indexLock) {
+			indexWrites++;
+			
+			if(Objects.nonNull(projectIndex)) {
+				update.accept(projectIndex);
+			}
+		}
+	}
+
+
+	/*
+	 * Applies a committed write of the given projects to the search index. While enableSearchIndex
+	 * is loading, the ids are recorded instead so the load reads those projects again.
+	 */
+	private void updateSearchIndex(Collection<Integer> projectIds, Consumer<ProjectSearchIndex> update) {
+		synchronized(indexLock) {
+			if(Objects.nonNull(searchLoadWrites)) {
+				searchLoadWrites.addAll(projectIds);
+			}
+			
+			if(Objects.nonNull(searchIndex)) {
+				update.accept(searchIndex);
+			}
+		}
+	}
+
+
+	private void dropSearchIndex() {
+		synchronized(indexLock) {
+			searchIndex = null;
+			searchLoadStale = true;
+		}
+	}
+
+
+	/*
+	 * Reads the projects again with their child rows and replaces their search documents, for
+	 * writes that only changed part of a project. As with reindex, a failed read drops the index.
+	 */
+	private void reindexSearch(Integer projectId) {
+		if(Objects.nonNull(projectId)) {
+			reindexSearch(List.of(projectId));
+		}
+	}
+
+
+	private void reindexSearch(Collection<Integer> projectIds) {
+		if(projectIds.isEmpty()) {
+			return;
+		}
+		
+		if(Objects.isNull(searchIndex)) {
+			// nothing to update, but a load that is running still has to read these projects again
+			updateSearchIndex(projectIds, index -> {});
+			return;
+		}
+		
+		try {
+			List<Project> projects = ReadSession.readFromPrimary(() -> projectDao.fetchProjectsByIds(projectIds));
+			updateSearchIndex(projectIds, index -> putAll(index, projectIds, projects));
+		}
+		catch(RuntimeException e) {
+			dropSearchIndex();
+		}
+	}
+
+
+	// Indexes the projects that were read and removes the ids that no longer exist
+	private static void putAll(ProjectSearchIndex index, Collection<Integer> projectIds, List<Project> projects) {
+		Set<Integer> missing = new HashSet<>(projectIds);
+		
+		for(Project project : projects) {
+			index.put(project);
+			missing.remove(project.getProjectId());
+		}
+		
+		missing.forEach(index::remove);
+	}
+
+
+	private static List<Integer> projectIds(List<Project> projects) {
+		return projects.stream().map(Project::getProjectId).collect(Collectors.toList());
+	}
+
+
+	/*
+	 * If a refresh fails the summary is switched off rather than left reporting a cost that may be
+	 * wrong; the reports fall back to the material table until enableSummaryTables is called again.
+	 */
+	private void refreshSummaries(Collection<Integer> projectIds) {
+		if(!summaryTablesEnabled || projectIds.isEmpty()) {
+			return;
+		}
+		
+		try {
+			reportDao.refreshMaterialCosts(projectIds);
+		}
+		catch(RuntimeException e) {
+			summaryTablesEnabled = false;
+		}
+	}
+	
+	
+	/*
+	 * Re-reads a project row whose committed state is not known here: after a write that failed
+	 * part way through, a step change that bumped the row's version, or a change made by another
+	 * service. If even that fails the index is
+	 * dropped rather than left serving a row that may be wrong.
+	 */
+	private void reindex(Integer projectId) {
+		if(Objects.isNull(projectIndex) || Objects.isNull(projectId)) {
+			return;
+		}
+		
+		try {
+			Optional<Project> project = ReadSession.readFromPrimary(() -> projectDao.fetchProjectById(projectId));
+			
+			updateIndex(index -> {
+				if(project.isPresent()) {
+					index.put(project.get());
+				}
+				else {
+					index.remove(projectId);
+				}
+			});
+		}
+		catch(RuntimeException e) {
+			updateIndex(index -> projectIndex = null);
+		}
+	}
 	
 	
 	
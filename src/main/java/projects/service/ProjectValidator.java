@@ -0,0 +1,130 @@
+package projects.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+/**
+ * The rules a project has to follow before it is written, shared by the menu in ProjectsApp and
+ * the bulk importer. Lengths and ranges follow the column types in projects-schema.sql.
+ */
+public class ProjectValidator {
+
+	public static final int MIN_DIFFICULTY = 1;
+	public static final int MAX_DIFFICULTY = 5;
+
+	// VARCHAR(128)
+	public static final int MAX_NAME_LENGTH = 128;
+	// DECIMAL(7,2)
+	private static final BigDecimal MAX_DECIMAL = new BigDecimal("99999.99");
+	private static final int DECIMAL_SCALE = 2;
+
+
+	private ProjectValidator() {
+	}
+
+
+	/**
+	 * Reads a difficulty typed by a user: digits only, from 1 to 5.
+	 *
+	 * @return The difficulty, or null if the input is not a valid one.
+	 */
+	public static Integer parseDifficulty(String input) {
+		if(Objects.isNull(input) || input.isEmpty()) {
+			return null;
+		}
+
+		for(int i = 0; i < input.length(); i++) {
+			if(!Character.isDigit(input.charAt(i))) {
+				return null;
+			}
+		}
+
+		try {
+			Integer difficulty = Integer.valueOf(input);
+			return isValidDifficulty(difficulty) ? difficulty : null;
+		}
+		catch(NumberFormatException e) {
+			// more digits than an int holds
+			return null;
+		}
+	}
+
+	public static boolean isValidDifficulty(Integer difficulty) {
+		return Objects.nonNull(difficulty) && difficulty >= MIN_DIFFICULTY && difficulty <= MAX_DIFFICULTY;
+	}
+
+	/**
+	 * Checks a new project and its children.
+	 *
+	 * @return One message per problem found, or an empty list if the project can be written.
+	 */
+	public static List<String> validate(Project project) {
+		List<String> problems = new ArrayList<>();
+
+		checkName(problems, "project name", project.getProjectName());
+		checkDecimal(problems, "estimated hours", project.getEstimatedHours());
+		checkDecimal(problems, "actual hours", project.getActualHours());
+
+		// the menu keeps asking until it gets one, so a project always has a difficulty
+		if(!isValidDifficulty(project.getDifficulty())) {
+			//@formatter:off
+			problems.add("difficulty must be from " + MIN_DIFFICULTY + " to " + MAX_DIFFICULTY
+					+ " but was " + project.getDifficulty());
+			//@formatter:on
+		}
+
+		for(Material material : project.getMaterials()) {
+			checkName(problems, "material name", material.getMaterialName());
+			checkDecimal(problems, "material cost", material.getCost());
+
+			if(Objects.nonNull(material.getNumRequired()) && material.getNumRequired() < 0) {
+				problems.add("number required must not be negative but was " + material.getNumRequired());
+			}
+		}
+
+		for(Step step : project.getSteps()) {
+			if(Objects.isNull(step.getStepText()) || step.getStepText().isBlank()) {
+				problems.add("step text is required");
+			}
+		}
+
+		for(Category category : project.getCategories()) {
+			if(Objects.isNull(category.getCategoryId()) || category.getCategoryId() < 1) {
+				problems.add("category id must be positive but was " + category.getCategoryId());
+			}
+		}
+
+		return problems;
+	}
+
+	private static void checkName(List<String> problems, String field, String value) {
+		if(Objects.isNull(value) || value.isBlank()) {
+			problems.add(field + " is required");
+		}
+		else if(value.length() > MAX_NAME_LENGTH) {
+			problems.add(field + " is longer than " + MAX_NAME_LENGTH + " characters");
+		}
+	}
+
+	// Null is allowed; the columns are nullable
+	private static void checkDecimal(List<String> problems, String field, BigDecimal value) {
+		if(Objects.isNull(value)) {
+			return;
+		}
+
+		if(value.signum() < 0 || value.compareTo(MAX_DECIMAL) > 0) {
+			problems.add(field + " must be from 0 to " + MAX_DECIMAL + " but was " + value.toPlainString());
+		}
+		else if(value.stripTrailingZeros().scale() > DECIMAL_SCALE) {
+			problems.add(field + " has more than " + DECIMAL_SCALE + " decimal places: " + value.toPlainString());
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package projects.service;
+
+/**
+ * A project search for {@link ProjectService#searchProjects(SearchQuery)}: the words to look for,
+ * optional difficulty and category filters, and the page of results wanted. The defaults return
+ * the first 20 matches.
+ */
+public class SearchQuery {
+
+	public static final int MAX_LIMIT = 100;
+	// Deepest result a search can page to. Ranking keeps offset + limit hits, so this bounds the work.
+	public static final int MAX_RESULT_WINDOW = 10_000;
+
+	// Words every matching project must contain. Null or blank matches every project.
+	private String text;
+	// Only projects with this difficulty. Null for any difficulty.
+	private Integer difficulty;
+	// Only projects in this category. Null for any category.
+	private Integer categoryId;
+	// Number of ranked results to skip
+	private int offset = 0;
+	private int limit = 20;
+
+
+	public SearchQuery() {
+	}
+
+	public SearchQuery(String text) {
+		this.text = text;
+	}
+
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	public Integer getDifficulty() {
+		return difficulty;
+	}
+
+	public void setDifficulty(Integer difficulty) {
+		this.difficulty = difficulty;
+	}
+
+	public Integer getCategoryId() {
+		return categoryId;
+	}
+
+	public void setCategoryId(Integer categoryId) {
+		this.categoryId = categoryId;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public void setOffset(int offset) {
+		if(offset < 0 || offset > MAX_RESULT_WINDOW) {
+			throw new IllegalArgumentException("offset must be between 0 and " + MAX_RESULT_WINDOW);
+		}
+
+		this.offset = offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		if(limit < 1 || limit > MAX_LIMIT) {
+			throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+		}
+
+		this.limit = limit;
+	}
+
+	@Override
+	public String toString() {
+		//@formatter:off
+		return "text = " + text
+				+ ", difficulty = " + difficulty
+				+ ", categoryId = " + categoryId
+				+ ", offset = " + offset
+				+ ", limit = " + limit;
+		//@formatter:on
+	}
+
+}
@@ -0,0 +1,99 @@
+package projects.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a project search, best match first, with facet counts over every match.
+ *
+ * Each facet ignores its own filter but applies the other one, so the difficulty counts show what
+ * choosing another difficulty would return within the selected category, and the other way round.
+ * Only values with at least one match are included. Projects with no difficulty are counted under
+ * a null key.
+ */
+public class SearchResults {
+
+	private final long totalHits;
+	private final List<Hit> hits;
+	private final Map<Integer, Integer> difficultyCounts;
+	private final Map<Integer, Integer> categoryCounts;
+	private final long elapsedNanos;
+
+
+	SearchResults(long totalHits, List<Hit> hits, Map<Integer, Integer> difficultyCounts, Map<Integer, Integer> categoryCounts, long elapsedNanos) {
+		this.totalHits = totalHits;
+		this.hits = hits;
+		this.difficultyCounts = difficultyCounts;
+		this.categoryCounts = categoryCounts;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	// projects matching the words and both filters, not only the ones on this page
+	public long getTotalHits() {
+		return totalHits;
+	}
+
+	public List<Hit> getHits() {
+		return hits;
+	}
+
+	// difficulty -> matching projects, in difficulty order
+	public Map<Integer, Integer> getDifficultyCounts() {
+		return difficultyCounts;
+	}
+
+	// category_id -> matching projects, in category_id order
+	public Map<Integer, Integer> getCategoryCounts() {
+		return categoryCounts;
+	}
+
+	public double getElapsedMillis() {
+		return elapsedNanos / 1_000_000.0;
+	}
+
+	@Override
+	public String toString() {
+		//@formatter:off
+		return "totalHits = " + totalHits
+				+ ", hits = " + hits.size()
+				+ ", difficulties = " + difficultyCounts
+				+ ", categories = " + categoryCounts
+				+ ", elapsedMillis = " + String.format("%.3f", getElapsedMillis());
+		//@formatter:on
+	}
+
+
+	/**
+	 * A matching project. Scores are BM25 relevance and only comparable within one search; a search
+	 * without words scores every project 0 and lists them in project_id order.
+	 */
+	public static class Hit {
+		private final int projectId;
+		private final String projectName;
+		private final double score;
+
+		Hit(int projectId, String projectName, double score) {
+			this.projectId = projectId;
+			this.projectName = projectName;
+			this.score = score;
+		}
+
+		public int getProjectId() {
+			return projectId;
+		}
+
+		public String getProjectName() {
+			return projectName;
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return projectId + " : " + projectName + " (" + String.format("%.3f", score) + ")";
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.sql.Connection;
+
+/**
+ * This is the source of database connections for the DAO classes. Callers always close the
+ * connection they are given (normally with try-with-resources). Depending on the implementation,
+ * closing the connection either closes the physical connection or returns it to a pool.
+ *
+ * @author Promineo
+ *
+ */
+public interface ConnectionProvider {
+  /**
+   * Obtain a connection to the database.
+   *
+   * @return An open connection. The caller is responsible for closing it.
+   * @throws RuntimeException Thrown by the implementation if a connection cannot be obtained.
+   */
+  Connection getConnection();
+
+  /**
+   * Obtain a connection for a read that may be served by a replica, so it may not yet see the
+   * latest writes of other sessions. Providers without replicas return {@link #getConnection()}.
+   *
+   * @return An open connection. The caller is responsible for closing it.
+   * @throws RuntimeException Thrown by the implementation if a connection cannot be obtained.
+   */
+  default Connection getReadConnection() {
+    return getConnection();
+  }
+}
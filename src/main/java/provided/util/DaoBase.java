@@ -3,20 +3,22 @@
  */
 package provided.util;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.sql.Types;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import provided.util.DaoListener.Step;
+import provided.util.TransactionOptions.Propagation;
 
 /**
  * This class contains utility methods for the DAO class.
@@ -25,6 +27,71 @@ import java.util.Objects;
  *
  */
 public abstract class DaoBase {
+  /** MySQL errors after which the transaction usually succeeds when it is run again. */
+  public static final int ER_LOCK_DEADLOCK = 1213;
+  public static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+  /* The wait before retry n is random, up to BACKOFF_BASE_MILLIS * 2^(n-1) but at most the max. */
+  private static final long BACKOFF_BASE_MILLIS = 20;
+  private static final long BACKOFF_MAX_MILLIS = 500;
+
+  /* The transaction run by executeInTransaction on this thread, for calls that join it. */
+  private static final ThreadLocal<Transaction> CURRENT_TRANSACTION = new ThreadLocal<>();
+
+  private final ConnectionProvider connectionProvider;
+  private final DaoListener listener;
+  private final ExceptionFactory exceptionFactory;
+
+  /**
+   * @param connectionProvider The source of connections used by {@link #getConnection()}.
+   */
+  protected DaoBase(ConnectionProvider connectionProvider) {
+    this(connectionProvider, DaoListener.NONE, DaoException::new);
+  }
+
+  /**
+   * @param connectionProvider The source of connections used by {@link #getConnection()}.
+   * @param listener Receives the timings and retries, for metrics.
+   * @param exceptionFactory Creates the exceptions thrown by
+   *        {@link #executeInTransaction(TransactionOptions, TransactionWork)}, so the DAO can throw
+   *        its application's own type.
+   */
+  protected DaoBase(ConnectionProvider connectionProvider, DaoListener listener,
+      ExceptionFactory exceptionFactory) {
+    this.connectionProvider = connectionProvider;
+    this.listener = Objects.requireNonNull(listener);
+    this.exceptionFactory = Objects.requireNonNull(exceptionFactory);
+  }
+
+  /**
+   * Obtains a connection from the connection provider. The caller must close the connection when
+   * finished with it, which returns it to the pool if the provider is pooled.
+   * 
+   * @return An open connection.
+   */
+  protected Connection getConnection() {
+    long start = listener.startTimer();
+    Connection conn = connectionProvider.getConnection();
+    listener.stopTimer(Step.ACQUIRE, start);
+
+    return conn;
+  }
+
+  /**
+   * Obtains a connection for a read that does not have to see the latest writes of other
+   * sessions. It may go to a replica; see {@link ConnectionProvider#getReadConnection()}. Only use
+   * it for plain reads, never for a transaction that writes.
+   * 
+   * @return An open connection.
+   */
+  protected Connection getReadConnection() {
+    long start = listener.startTimer();
+    Connection conn = connectionProvider.getReadConnection();
+    listener.stopTimer(Step.ACQUIRE, start);
+
+    return conn;
+  }
+
   /**
    * This starts a MySQL transaction. Normally MySQL starts a transaction before every request and
    * commits it after each request. By turning auto-commit off, the transaction is only committed
@@ -44,7 +111,9 @@ public abstract class DaoBase {
    * @throws SQLException Thrown if an error occurs committing the transaction.
    */
   protected void commitTransaction(Connection conn) throws SQLException {
+    long start = listener.startTimer();
     conn.commit();
+    listener.stopTimer(Step.COMMIT, start);
   }
 
   /**
@@ -54,7 +123,340 @@ public abstract class DaoBase {
    * @throws SQLException Thrown if an error occurs rolling back the transaction.
    */
   protected void rollbackTransaction(Connection conn) throws SQLException {
+    long start = listener.startTimer();
     conn.rollback();
+    listener.stopTimer(Step.ROLLBACK, start);
+  }
+
+  /**
+   * This runs work in a transaction and commits it, or rolls it back if the work throws. It
+   * replaces the connect, start, commit and rollback steps each DAO method would otherwise repeat:
+   * 
+   * <pre>
+   * return executeInTransaction(TransactionOptions.DEFAULT, conn -&gt; {
+   *   try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+   *     ...
+   *   }
+   * });
+   * </pre>
+   * 
+   * If a transaction on the same connection provider is already running on this thread, for
+   * example one started by {@link #inTransaction(TransactionOptions, Supplier)} or by another DAO
+   * method, the work joins it: it runs on that transaction's connection and is committed or rolled
+   * back with it, and its own isolation level is ignored. A joined call that fails makes the whole
+   * transaction roll back, even if the caller catches the exception. A read-write call cannot join
+   * a read-only transaction. See {@link TransactionOptions.Propagation} for the other choices.
+   * 
+   * When MySQL rolls the transaction back for a deadlock (1213) or a lock wait timeout (1205) the
+   * work is run again in a new transaction, up to {@link TransactionOptions#getMaxAttempts()} times
+   * in all, after a random wait that grows with each attempt. Only the call that started the
+   * transaction retries, so the work must be safe to run more than once. Changes it makes to
+   * objects other than through the connection can be put back with
+   * {@link #restoreOnRollback(Runnable)}. Other failures are not retried.
+   * 
+   * @param <T> The type of the result.
+   * @param options How the transaction is run.
+   * @param work The work, given the transaction's connection. It must not commit, roll back or
+   *        close the connection.
+   * @return The result of the work.
+   * @throws RuntimeException Thrown if the work fails. An unchecked exception thrown by the work is
+   *         rethrown as it is; anything else becomes the cause of an exception made by the DAO's
+   *         {@link ExceptionFactory}.
+   */
+  protected <T> T executeInTransaction(TransactionOptions options, TransactionWork<T> work) {
+    Transaction outer = CURRENT_TRANSACTION.get();
+
+    if(Objects.nonNull(outer) && outer.canJoin(connectionProvider, options)) {
+      return joinTransaction(outer, options, work);
+    }
+
+    for(int attempt = 1;; attempt++) {
+      Transaction transaction = new Transaction(connectionProvider, options);
+      CURRENT_TRANSACTION.set(transaction);
+
+      try {
+        T result = runTransaction(transaction, work);
+
+        if(attempt > 1) {
+          listener.recovered();
+        }
+
+        return result;
+      }
+      catch(RuntimeException e) {
+        // rolled back whether or not it is run again, so objects must not keep what it set
+        transaction.restore();
+
+        int errorCode = transientErrorCode(e);
+
+        if(errorCode == 0) {
+          throw e;
+        }
+
+        if(attempt >= options.getMaxAttempts()) {
+          listener.retriesExhausted(errorCode);
+          throw e;
+        }
+
+        listener.retrying(errorCode);
+
+        backoff(attempt, e);
+      }
+      finally {
+        if(Objects.isNull(outer)) {
+          CURRENT_TRANSACTION.remove();
+        }
+        else {
+          CURRENT_TRANSACTION.set(outer);
+        }
+      }
+    }
+  }
+
+  /**
+   * This runs {@link #executeInTransaction(TransactionOptions, TransactionWork)} with
+   * {@link TransactionOptions#DEFAULT}.
+   */
+  protected <T> T executeInTransaction(TransactionWork<T> work) {
+    return executeInTransaction(TransactionOptions.DEFAULT, work);
+  }
+
+  /**
+   * This runs several calls to this DAO, or to other DAOs with the same connection provider, in one
+   * transaction. The DAO methods join it rather than committing on their own, so either all of
+   * their changes are committed or none are:
+   * 
+   * <pre>
+   * projectDao.inTransaction(TransactionOptions.DEFAULT, () -&gt; {
+   *   projectDao.modifyProjectDetails(project);
+   *   return projectDao.addStep(project.getProjectId(), "Sand the edges");
+   * });
+   * </pre>
+   * 
+   * The calls are run again after a deadlock or lock wait timeout, so they must not do anything
+   * outside the database that cannot be repeated.
+   * 
+   * @param <T> The type of the result.
+   * @param options How the transaction is run.
+   * @param calls The DAO calls.
+   * @return The result of the calls.
+   */
+  public <T> T inTransaction(TransactionOptions options, Supplier<T> calls) {
+    return executeInTransaction(options, conn -> calls.get());
+  }
+
+  /**
+   * This registers how to undo a change the current transaction's work made outside the database,
+   * such as an id or version set on an entity. If the transaction fails, the registered actions
+   * run, last registered first, before it is run again or the failure is given to the caller. The
+   * objects then match the database, and a retry starts from the same state. In a call that joined
+   * an outer transaction they run when the outer transaction fails. Outside
+   * {@link #executeInTransaction(TransactionOptions, TransactionWork)} this does nothing.
+   * 
+   * @param restore The action that puts the change back.
+   */
+  protected void restoreOnRollback(Runnable restore) {
+    Transaction transaction = CURRENT_TRANSACTION.get();
+
+    if(Objects.nonNull(transaction)) {
+      transaction.restores.push(restore);
+    }
+  }
+
+  /**
+   * This has the transaction started by the current call rolled back instead of committed when
+   * the work returns, for work that finds there is nothing to change after it has taken locks. It
+   * is ignored in a call that joined an outer transaction, which commits or rolls back as a whole.
+   */
+  protected void skipCommit() {
+    Transaction transaction = CURRENT_TRANSACTION.get();
+
+    if(Objects.nonNull(transaction) && transaction.joinedCalls == 0) {
+      transaction.skipCommit = true;
+    }
+  }
+
+  private <T> T joinTransaction(Transaction outer, TransactionOptions options,
+      TransactionWork<T> work) {
+    if(outer.options.isReadOnly() && !options.isReadOnly()) {
+      throw exceptionFactory.create("A read-write call cannot join a read-only transaction", null);
+    }
+
+    outer.joinedCalls++;
+
+    try {
+      return work.run(outer.conn);
+    }
+    catch(Exception e) {
+      if(Objects.isNull(outer.joinedFailure)) {
+        outer.joinedFailure = e;
+      }
+
+      throw toUncheckedException(e);
+    }
+    finally {
+      outer.joinedCalls--;
+    }
+  }
+
+  private <T> T runTransaction(Transaction transaction, TransactionWork<T> work) {
+    TransactionOptions options = transaction.options;
+    boolean started = options.getPropagation() != Propagation.SUPPORTS;
+
+    try(Connection conn = options.isReadOnly() ? getReadConnection() : getConnection()) {
+      transaction.conn = conn;
+
+      try {
+        if(started) {
+          beginTransaction(conn, options);
+          transaction.started = true;
+        }
+
+        T result = work.run(conn);
+
+        if(Objects.nonNull(transaction.joinedFailure)) {
+          throw exceptionFactory.create(
+              "The transaction was rolled back because a call that joined it failed",
+              transaction.joinedFailure);
+        }
+
+        if(started) {
+          endTransaction(conn, options, !transaction.skipCommit);
+        }
+
+        return result;
+      }
+      catch(Exception e) {
+        if(started) {
+          rollbackAfterFailure(conn, options, e);
+        }
+
+        throw toUncheckedException(e);
+      }
+    }
+    catch(SQLException e) {
+      throw toUncheckedException(e);
+    }
+  }
+
+  /*
+   * SET TRANSACTION without SESSION only applies to the next transaction, so a pooled connection
+   * goes back with the server's isolation level. A read-only transaction is started with a
+   * statement while auto-commit stays on: ending it with Connection.commit() would be taken for a
+   * write by listeners on the connection, such as the read-your-writes tracking of ReplicaRouter.
+   */
+  private void beginTransaction(Connection conn, TransactionOptions options) throws SQLException {
+    if(Objects.nonNull(options.getIsolation()) || options.isReadOnly()) {
+      try(Statement stmt = conn.createStatement()) {
+        if(Objects.nonNull(options.getIsolation())) {
+          stmt.execute("SET TRANSACTION ISOLATION LEVEL " + options.getIsolation().getSql());
+        }
+
+        if(options.isReadOnly()) {
+          stmt.execute("START TRANSACTION READ ONLY");
+        }
+      }
+    }
+
+    if(!options.isReadOnly()) {
+      startTransaction(conn);
+    }
+  }
+
+  private void endTransaction(Connection conn, TransactionOptions options, boolean commit)
+      throws SQLException {
+    if(!options.isReadOnly()) {
+      if(commit) {
+        commitTransaction(conn);
+      }
+      else {
+        rollbackTransaction(conn);
+      }
+
+      return;
+    }
+
+    long start = listener.startTimer();
+
+    try(Statement stmt = conn.createStatement()) {
+      stmt.execute(commit ? "COMMIT" : "ROLLBACK");
+    }
+
+    listener.stopTimer(commit ? Step.COMMIT : Step.ROLLBACK, start);
+  }
+
+  /*
+   * The pool rolls back a connection returned with auto-commit off, but cannot tell that one with
+   * auto-commit on is still inside a read-only transaction. Such a connection is aborted so the
+   * pool discards it rather than handing out the open transaction.
+   */
+  private void rollbackAfterFailure(Connection conn, TransactionOptions options,
+      Exception failure) {
+    try {
+      endTransaction(conn, options, false);
+    }
+    catch(SQLException e) {
+      failure.addSuppressed(e);
+
+      if(options.isReadOnly()) {
+        try {
+          conn.abort(Runnable::run);
+        }
+        catch(SQLException abortFailure) {
+          failure.addSuppressed(abortFailure);
+        }
+      }
+    }
+  }
+
+  /*
+   * Full jitter: a random wait up to the exponential bound, so transactions that deadlocked with
+   * each other do not all come back at the same moment and collide again.
+   */
+  private void backoff(int attempt, RuntimeException failure) {
+    long bound = Math.min(BACKOFF_MAX_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt - 1, 20));
+    long millis = ThreadLocalRandom.current().nextLong(bound + 1);
+    long timer = listener.startTimer();
+    long start = System.nanoTime();
+
+    try {
+      Thread.sleep(millis);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      RuntimeException interrupted =
+          exceptionFactory.create("Interrupted while waiting to retry the transaction", e);
+      interrupted.addSuppressed(failure);
+      throw interrupted;
+    }
+    finally {
+      listener.backedOff(System.nanoTime() - start);
+      listener.stopTimer(Step.BACKOFF, timer);
+    }
+  }
+
+  /*
+   * Returns the MySQL error code if the failure was caused by a deadlock or lock wait timeout,
+   * otherwise 0.
+   */
+  private static int transientErrorCode(Throwable failure) {
+    for(Throwable cause = failure; Objects.nonNull(cause); cause = cause.getCause()) {
+      if(cause instanceof SQLException) {
+        int errorCode = ((SQLException)cause).getErrorCode();
+
+        if(errorCode == ER_LOCK_DEADLOCK || errorCode == ER_LOCK_WAIT_TIMEOUT) {
+          return errorCode;
+        }
+      }
+    }
+
+    return 0;
+  }
+
+  private RuntimeException toUncheckedException(Exception e) {
+    return e instanceof RuntimeException ? (RuntimeException)e
+        : exceptionFactory.create(e.toString(), e);
   }
 
   /**
@@ -137,30 +539,39 @@ public abstract class DaoBase {
   }
 
   /**
-   * This retrieves the number of child rows and adds one to the value. It is used to set the order
-   * of a child row. For a *real* application, a more sophisticated approach is desired. This method
-   * does not allow for entity reordering and does not allow for an entity to be deleted.
+   * This returns the order value for a child row appended after the existing children of a parent:
+   * the highest current order value plus the gap (or just the gap if there are no children). Order
+   * values are spaced by the gap so a row can later be moved between two neighbors by giving it the
+   * midpoint, without touching any other row.
+   * 
+   * With an index on (idName, orderName) the MAX is read from the end of the index, so the cost does
+   * not grow with the number of children, and deleted rows simply leave a larger gap. Two writers
+   * appending to the same parent at the same time can still compute the same value, so the caller
+   * must serialize them, for example by locking the parent row with SELECT ... FOR UPDATE first.
    * 
    * @param conn The connection
    * @param id The ID of the parent entity
    * @param tableName The name of the table with the child rows
    * @param idName The name of the parent ID field
-   * @return The count of the entities attached to the parent plus one
+   * @param orderName The name of the order field
+   * @param gap The distance between consecutive order values
+   * @return The order value to use for a new last child
    * @throws SQLException Thrown if an error occurs.
    */
-  protected Integer getNextSequenceNumber(Connection conn, Integer id, String tableName,
-      String idName) throws SQLException {
-    String sql = "SELECT COUNT(*) FROM " + tableName + " WHERE " + idName + " = ?";
+  protected Integer getNextOrderValue(Connection conn, Integer id, String tableName, String idName,
+      String orderName, int gap) throws SQLException {
+    String sql = "SELECT MAX(" + orderName + ") FROM " + tableName + " WHERE " + idName + " = ?";
 
     try(PreparedStatement stmt = conn.prepareStatement(sql)) {
       setParameter(stmt, 1, id, Integer.class);
 
       try(ResultSet rs = stmt.executeQuery()) {
         if(rs.next()) {
-          return rs.getInt(1) + 1;
+          /* MAX() of no rows is NULL, which getInt() returns as zero. */
+          return rs.getInt(1) + gap;
         }
 
-        return 1;
+        return gap;
       }
     }
   }
@@ -194,17 +605,19 @@ public abstract class DaoBase {
 
   /**
    * This extracts an object of the given type from a result set. The object must have a
-   * zero-argument constructor. It builds an object from a result set using reflection as follows:
+   * zero-argument constructor. It builds an object from a result set as follows:
    * <ol>
-   * <li>The zero-argument constructor is obtained.</li>
-   * <li>An object of the given class type is created.</li>
-   * <li>A list of fields is obtained using reflection.</li>
-   * <li>The field name is converted from Java naming to SQL naming conventions (camel case to snake
+   * <li>An object of the given class type is created using the zero-argument constructor.</li>
+   * <li>Each field name is converted from Java naming to SQL naming conventions (camel case to snake
    * case). Obviously, for this to work, the Java name must match the column name. So, if the Java
    * name is numServings, the column name must be num_servings.</li>
-   * <li>The value is assigned to the field in the object.</li>
+   * <li>The value of the matching column is assigned to the field in the object.</li>
    * </ol>
    * 
+   * The constructor, field setters and column positions are resolved once and cached by
+   * {@link RowMapper}, so looping over a large result set does not repeat the reflection for every
+   * row.
+   * 
    * Example: if a query returns values for a recipe, a Recipe object is returned. So:
    * 
    * <pre>
@@ -231,80 +644,78 @@ public abstract class DaoBase {
    * @return A populated class.
    */
   protected <T> T extract(ResultSet rs, Class<T> classType) {
-    try {
-      /* Obtain the constructor and create an object of the correct type. */
-      Constructor<T> con = classType.getConstructor();
-      T obj = con.newInstance();
-
-      /* Get the list of fields and loop through them. */
-      for(Field field : classType.getDeclaredFields()) {
-        String colName = camelCaseToSnakeCase(field.getName());
-        Class<?> fieldType = field.getType();
-
-        /*
-         * Set the field accessible flag which means that we can populate even private fields
-         * without using the setter.
-         */
-        field.setAccessible(true);
-        Object fieldValue = null;
+    long start = listener.startTimer();
+    T obj = RowMapper.forClass(classType).map(rs);
 
-        try {
-          fieldValue = rs.getObject(colName);
-        }
-        catch(SQLException e) {
-          /*
-           * An exception caught here means that the field name isn't in the result set. Don't take
-           * any action.
-           */
-        }
+    if(start != 0) {
+      listener.stopTimer(Step.MAP, start);
+      listener.rowsMapped(1);
+    }
 
-        /*
-         * Only set the value in the object if there is a value with the same name in the result
-         * set. This will preserve instance variables (like lists) that are assigned values when the
-         * object is created.
-         */
-        if(Objects.nonNull(fieldValue)) {
-          /*
-           * Convert the following types: Time -> LocalTime, and Timestamp -> LocalDateTime.
-           */
-          if(fieldValue instanceof Time && fieldType.equals(LocalTime.class)) {
-            fieldValue = ((Time)fieldValue).toLocalTime();
-          }
-          else if(fieldValue instanceof Timestamp && fieldType.equals(LocalDateTime.class)) {
-            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
-          }
-
-          field.set(obj, fieldValue);
-        }
-      }
+    return obj;
+  }
 
-      return obj;
+  /**
+   * This is the work run by
+   * {@link DaoBase#executeInTransaction(TransactionOptions, TransactionWork)}.
+   * 
+   * @param <T> The type of the result.
+   */
+  @FunctionalInterface
+  public interface TransactionWork<T> {
+    /**
+     * @param conn The transaction's connection.
+     * @return The result of the work.
+     * @throws Exception Thrown if the work fails. The transaction is then rolled back.
+     */
+    T run(Connection conn) throws Exception;
+  }
 
-    }
-    catch(Exception e) {
-      throw new DaoException("Unable to create object of type " + classType.getName(), e);
-    }
+  /**
+   * This creates the unchecked exception that
+   * {@link DaoBase#executeInTransaction(TransactionOptions, TransactionWork)} throws when the work
+   * fails with a checked exception or the transaction cannot go on. The constructor of an exception
+   * that takes a message and a cause will do, as in {@code MyException::new}.
+   */
+  @FunctionalInterface
+  public interface ExceptionFactory {
+    /**
+     * @param message The exception's message.
+     * @param cause The failure, or null if there is none.
+     * @return The exception to throw.
+     */
+    RuntimeException create(String message, Throwable cause);
   }
 
   /**
-   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
-   * 
-   * @param identifier The name in camel case to convert.
-   * @return The name converted to snake case.
+   * This is a transaction run by executeInTransaction, bound to the thread while its work runs.
    */
-  private String camelCaseToSnakeCase(String identifier) {
-    StringBuilder nameBuilder = new StringBuilder();
+  private static class Transaction {
+    private final ConnectionProvider provider;
+    private final TransactionOptions options;
+    private final Deque<Runnable> restores = new ArrayDeque<>();
+    private Connection conn;
+    /* False while the work runs with auto-commit on (SUPPORTS without a transaction to join). */
+    private boolean started;
+    private int joinedCalls;
+    private boolean skipCommit;
+    private Exception joinedFailure;
+
+    Transaction(ConnectionProvider provider, TransactionOptions options) {
+      this.provider = provider;
+      this.options = options;
+    }
 
-    for(char ch : identifier.toCharArray()) {
-      if(Character.isUpperCase(ch)) {
-        nameBuilder.append('_').append(Character.toLowerCase(ch));
-      }
-      else {
-        nameBuilder.append(ch);
-      }
+    boolean canJoin(ConnectionProvider provider, TransactionOptions options) {
+      return started && this.provider == provider
+          && options.getPropagation() != Propagation.REQUIRES_NEW;
     }
 
-    return nameBuilder.toString();
+    void restore() {
+      while(!restores.isEmpty()) {
+        restores.pop().run();
+      }
+    }
   }
 
   /**
@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package provided.util;
+
+/**
+ * This receives the timings and transaction retries of {@link DaoBase}, for an application's
+ * metrics. A DAO passes one to its DaoBase constructor. Every method does nothing by default. The
+ * methods are called on the thread doing the work, so they must be quick and safe to call from
+ * several threads at once.
+ *
+ * @author Promineo
+ *
+ */
+public interface DaoListener {
+
+  /**
+   * The parts of a DAO call that DaoBase times.
+   */
+  enum Step {
+    /** Borrowing a connection from the connection provider. */
+    ACQUIRE,
+    /** Mapping a row with {@link DaoBase#extract(java.sql.ResultSet, Class)}. */
+    MAP,
+    COMMIT,
+    ROLLBACK,
+    /** Waiting before a transaction is run again after a deadlock or lock wait timeout. */
+    BACKOFF
+  }
+
+  /** A listener that ignores everything. */
+  DaoListener NONE = new DaoListener() {};
+
+  /**
+   * Called when a step starts.
+   *
+   * @return A start time that is passed back to {@link #stopTimer(Step, long)}, or 0 if the step
+   *         is not timed.
+   */
+  default long startTimer() {
+    return 0;
+  }
+
+  /**
+   * Called when a step ends.
+   *
+   * @param step The step.
+   * @param start What {@link #startTimer()} returned when the step started.
+   */
+  default void stopTimer(Step step, long start) {
+  }
+
+  /**
+   * Called after a timed {@link Step#MAP} for the rows it mapped.
+   */
+  default void rowsMapped(long rows) {
+  }
+
+  /**
+   * Called when a transaction that failed with a deadlock or a lock wait timeout is going to be
+   * run again.
+   *
+   * @param errorCode {@link DaoBase#ER_LOCK_DEADLOCK} or {@link DaoBase#ER_LOCK_WAIT_TIMEOUT}.
+   */
+  default void retrying(int errorCode) {
+  }
+
+  /**
+   * Called when a transaction succeeds after at least one retry.
+   */
+  default void recovered() {
+  }
+
+  /**
+   * Called when a transaction fails with a deadlock or a lock wait timeout on its last attempt.
+   */
+  default void retriesExhausted(int errorCode) {
+  }
+
+  /**
+   * Called after the wait before a retry, with how long it took.
+   */
+  default void backedOff(long nanos) {
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import provided.util.DaoBase.DaoException;
+
+/**
+ * This maps result set rows to objects for {@link DaoBase#extract(ResultSet, Class)}. The
+ * reflection work is done once instead of once per row:
+ * <ol>
+ * <li>Per class, the zero-argument constructor and a setter for each instance field are resolved
+ * to method handles, and each field name is converted to its snake case column name.</li>
+ * <li>Per result set shape (the list of column labels), the fields are matched to column indexes.
+ * Fields with no matching column (like the child lists on Project) are dropped from the binding
+ * so they keep their initial value and never cost a failed column lookup.</li>
+ * <li>Per result set, the binding for its shape is looked up on the first row mapped. The other
+ * rows of the same result set reuse it without reading the metadata again.</li>
+ * </ol>
+ *
+ * @author Promineo
+ *
+ * @param <T> The type of object created from each row.
+ */
+final class RowMapper<T> {
+  private static final Map<Class<?>, RowMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+  private final Class<T> classType;
+  private final MethodHandle constructor;
+  private final List<FieldBinding> fields;
+  private final Map<String, ColumnBinding> bindingsByShape = new ConcurrentHashMap<>();
+
+  /*
+   * The result set this thread mapped last and its binding. The result set itself is the key
+   * because drivers such as Connector/J return a new metadata object from every getMetaData()
+   * call. It is held weakly so a closed result set is not kept alive by an idle thread.
+   */
+  private final ThreadLocal<ResultSetBinding> lastBinding = new ThreadLocal<>();
+
+  /**
+   * Returns the cached mapper for the given class, creating it on first use.
+   *
+   * @param <T> The type of object to map.
+   * @param classType The class, which must have a public zero-argument constructor.
+   * @return The mapper.
+   */
+  @SuppressWarnings("unchecked")
+  static <T> RowMapper<T> forClass(Class<T> classType) {
+    return (RowMapper<T>)MAPPERS.computeIfAbsent(classType, RowMapper::new);
+  }
+
+  private RowMapper(Class<T> classType) {
+    this.classType = classType;
+
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      this.constructor = lookup.unreflectConstructor(classType.getConstructor());
+      this.fields = new ArrayList<>();
+
+      for(Field field : classType.getDeclaredFields()) {
+        if(Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+
+        field.setAccessible(true);
+        fields.add(new FieldBinding(camelCaseToSnakeCase(field.getName()), field.getType(),
+            lookup.unreflectSetter(field)));
+      }
+    }
+    catch(ReflectiveOperationException e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  /**
+   * Creates an object from the current row of the result set.
+   *
+   * @param rs The result set, positioned on the row to map.
+   * @return A populated object.
+   */
+  @SuppressWarnings("unchecked")
+  T map(ResultSet rs) {
+    try {
+      ColumnBinding binding = bindingFor(rs);
+      T obj = (T)constructor.invoke();
+
+      for(int pos = 0; pos < binding.columnIndexes.length; pos++) {
+        Object fieldValue = rs.getObject(binding.columnIndexes[pos]);
+
+        /*
+         * Only set the value if it is not null. This preserves instance variables that are assigned
+         * values when the object is created.
+         */
+        if(Objects.nonNull(fieldValue)) {
+          FieldBinding field = binding.fields[pos];
+
+          if(fieldValue instanceof Time && field.type.equals(LocalTime.class)) {
+            fieldValue = ((Time)fieldValue).toLocalTime();
+          }
+          else if(fieldValue instanceof Timestamp && field.type.equals(LocalDateTime.class)) {
+            fieldValue = ((Timestamp)fieldValue).toLocalDateTime();
+          }
+
+          field.setter.invoke(obj, fieldValue);
+        }
+      }
+
+      return obj;
+    }
+    catch(Throwable e) {
+      throw new DaoException("Unable to create object of type " + classType.getName(), e);
+    }
+  }
+
+  private ColumnBinding bindingFor(ResultSet rs) throws SQLException {
+    ResultSetBinding last = lastBinding.get();
+
+    if(Objects.nonNull(last) && last.resultSet.get() == rs) {
+      return last.binding;
+    }
+
+    ResultSetMetaData metaData = rs.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    String[] labels = new String[columnCount];
+    StringBuilder shape = new StringBuilder();
+
+    for(int col = 1; col <= columnCount; col++) {
+      labels[col - 1] = metaData.getColumnLabel(col).toLowerCase(Locale.ROOT);
+      shape.append(labels[col - 1]).append(',');
+    }
+
+    ColumnBinding binding = bindingsByShape.computeIfAbsent(shape.toString(), key -> bind(labels));
+    lastBinding.set(new ResultSetBinding(rs, binding));
+
+    return binding;
+  }
+
+  /*
+   * Like ResultSet.getObject(String), the first column whose label matches (ignoring case) wins.
+   */
+  private ColumnBinding bind(String[] labels) {
+    List<FieldBinding> bound = new ArrayList<>();
+    List<Integer> indexes = new ArrayList<>();
+
+    for(FieldBinding field : fields) {
+      for(int col = 0; col < labels.length; col++) {
+        if(labels[col].equals(field.columnName)) {
+          bound.add(field);
+          indexes.add(col + 1);
+          break;
+        }
+      }
+    }
+
+    return new ColumnBinding(bound.toArray(new FieldBinding[0]),
+        indexes.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  /**
+   * This converts a camel case value (rowInsertTime) to snake case (row_insert_time).
+   *
+   * @param identifier The name in camel case to convert.
+   * @return The name converted to snake case.
+   */
+  private static String camelCaseToSnakeCase(String identifier) {
+    StringBuilder nameBuilder = new StringBuilder();
+
+    for(char ch : identifier.toCharArray()) {
+      if(Character.isUpperCase(ch)) {
+        nameBuilder.append('_').append(Character.toLowerCase(ch));
+      }
+      else {
+        nameBuilder.append(ch);
+      }
+    }
+
+    return nameBuilder.toString();
+  }
+
+  private static class FieldBinding {
+    private final String columnName;
+    private final Class<?> type;
+    private final MethodHandle setter;
+
+    FieldBinding(String columnName, Class<?> type, MethodHandle setter) {
+      this.columnName = columnName;
+      this.type = type;
+      this.setter = setter;
+    }
+  }
+
+  private static class ColumnBinding {
+    private final FieldBinding[] fields;
+    private final int[] columnIndexes;
+
+    ColumnBinding(FieldBinding[] fields, int[] columnIndexes) {
+      this.fields = fields;
+      this.columnIndexes = columnIndexes;
+    }
+  }
+
+  private static class ResultSetBinding {
+    private final WeakReference<ResultSet> resultSet;
+    private final ColumnBinding binding;
+
+    ResultSetBinding(ResultSet resultSet, ColumnBinding binding) {
+      this.resultSet = new WeakReference<>(resultSet);
+      this.binding = binding;
+    }
+  }
+}
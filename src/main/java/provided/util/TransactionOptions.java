@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package provided.util;
+
+import java.util.Objects;
+
+/**
+ * This describes how
+ * {@link DaoBase#executeInTransaction(TransactionOptions, DaoBase.TransactionWork)} runs its work.
+ * Instances are immutable; each with method returns a changed copy, so the constants can be
+ * shared:
+ *
+ * <pre>
+ * TransactionOptions options = TransactionOptions.DEFAULT.withIsolation(Isolation.READ_COMMITTED);
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public final class TransactionOptions {
+
+  /**
+   * What to do when a transaction on the same connection provider is already running on the
+   * thread.
+   */
+  public enum Propagation {
+    /** Join the running transaction, or start one if there is none. */
+    REQUIRED,
+    /** Join the running transaction, or run with auto-commit on if there is none. */
+    SUPPORTS,
+    /** Always start a transaction on a connection of its own. The running one is left alone. */
+    REQUIRES_NEW
+  }
+
+  /**
+   * The isolation levels of MySQL. InnoDB defaults to REPEATABLE_READ.
+   */
+  public enum Isolation {
+    READ_UNCOMMITTED("READ UNCOMMITTED"),
+    READ_COMMITTED("READ COMMITTED"),
+    REPEATABLE_READ("REPEATABLE READ"),
+    SERIALIZABLE("SERIALIZABLE");
+
+    private final String sql;
+
+    Isolation(String sql) {
+      this.sql = sql;
+    }
+
+    /**
+     * @return The level as it is written in SET TRANSACTION ISOLATION LEVEL.
+     */
+    public String getSql() {
+      return sql;
+    }
+  }
+
+  /** A read-write transaction that joins a running one, at the server's isolation level. */
+  public static final TransactionOptions DEFAULT =
+      new TransactionOptions(Propagation.REQUIRED, false, null, 3);
+
+  /** Like {@link #DEFAULT} but read-only, so it may run on a replica. */
+  public static final TransactionOptions READ_ONLY = DEFAULT.withReadOnly(true);
+
+  /**
+   * For a single statement: it joins a running transaction so it sees that transaction's changes,
+   * and otherwise runs with auto-commit on.
+   */
+  public static final TransactionOptions SUPPORTS = DEFAULT.withPropagation(Propagation.SUPPORTS);
+
+  private final Propagation propagation;
+  private final boolean readOnly;
+  private final Isolation isolation;
+  private final int maxAttempts;
+
+  private TransactionOptions(Propagation propagation, boolean readOnly, Isolation isolation,
+      int maxAttempts) {
+    this.propagation = propagation;
+    this.readOnly = readOnly;
+    this.isolation = isolation;
+    this.maxAttempts = maxAttempts;
+  }
+
+  public Propagation getPropagation() {
+    return propagation;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @return The isolation level, or null to use the server's default.
+   */
+  public Isolation getIsolation() {
+    return isolation;
+  }
+
+  /**
+   * @return How many times the work is run in all when the transaction keeps failing with a
+   *         deadlock or lock wait timeout. 1 means it is not retried.
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public TransactionOptions withPropagation(Propagation propagation) {
+    return new TransactionOptions(Objects.requireNonNull(propagation), readOnly, isolation,
+        maxAttempts);
+  }
+
+  /**
+   * A read-only transaction is sent to a replica when the connection provider has them, and
+   * MySQL rejects any write made in it.
+   */
+  public TransactionOptions withReadOnly(boolean readOnly) {
+    return new TransactionOptions(propagation, readOnly, isolation, maxAttempts);
+  }
+
+  /**
+   * @param isolation The isolation level, or null to use the server's default. It is set for the
+   *        one transaction only, so pooled connections keep their default.
+   */
+  public TransactionOptions withIsolation(Isolation isolation) {
+    return new TransactionOptions(propagation, readOnly, isolation, maxAttempts);
+  }
+
+  public TransactionOptions withMaxAttempts(int maxAttempts) {
+    if(maxAttempts < 1) {
+      throw new DaoBase.DaoException("maxAttempts must be at least 1 but was " + maxAttempts);
+    }
+
+    return new TransactionOptions(propagation, readOnly, isolation, maxAttempts);
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionOptions [propagation=" + propagation + ", readOnly=" + readOnly
+        + ", isolation=" + isolation + ", maxAttempts=" + maxAttempts + "]";
+  }
+}
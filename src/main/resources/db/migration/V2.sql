@@ -0,0 +1,19 @@
+-- Indexes for the child-table lookups ProjectDao makes on every aggregate load
+
+-- project_category had no primary key, so InnoDB clustered it on a hidden row id and every read
+-- through the unique key took a second lookup. The unique key becomes the primary key and the
+-- unnamed unique index it replaces is dropped.
+ALTER TABLE project_category ADD PRIMARY KEY (project_id, category_id);
+ALTER TABLE project_category DROP INDEX project_id;
+
+-- Category to project lookups, and the ON DELETE CASCADE from category. It replaces the
+-- single-column index MySQL created for the category_id foreign key.
+CREATE INDEX project_category_category ON project_category (category_id, project_id);
+
+-- Named rather than left to the index MySQL creates for the foreign key, so the index check can
+-- rely on it
+CREATE INDEX material_project ON material (project_id);
+
+-- Steps are read and renumbered in step_order within a project. Without this the aggregate load
+-- and MAX(step_order) lookups sort or scan every step of the project.
+CREATE INDEX step_project_order ON step (project_id, step_order);
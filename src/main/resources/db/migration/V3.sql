@@ -0,0 +1,13 @@
+-- Summary table for the material cost report
+
+-- Material cost per project, kept by ProjectService once summary tables are enabled so the cost
+-- report reads one row per project instead of joining and grouping every material row. Rows go
+-- away with their project; a project without a row has no materials.
+CREATE TABLE IF NOT EXISTS project_material_cost (
+	project_id INT NOT NULL,
+	material_count INT NOT NULL,
+	material_cost DECIMAL(20,2) NOT NULL,
+	PRIMARY KEY (project_id),
+	KEY project_material_cost_cost (material_cost),
+	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
+);
@@ -0,0 +1,10 @@
+-- Row versions for optimistic concurrency
+
+-- Every update made through ProjectDao adds 1 to the version of the rows it changes. A writer that
+-- read version N updates WHERE version = N, so an update based on a stale read matches no row and
+-- fails instead of overwriting the other writer's change. Adding a child row or reordering the
+-- steps also advances the project's version, so the project version covers the whole aggregate.
+-- project_category rows are only ever inserted or deleted and need no version.
+ALTER TABLE project ADD COLUMN version INT NOT NULL DEFAULT 0;
+ALTER TABLE material ADD COLUMN version INT NOT NULL DEFAULT 0;
+ALTER TABLE step ADD COLUMN version INT NOT NULL DEFAULT 0;
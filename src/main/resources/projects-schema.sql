@@ -1,3 +1,4 @@
+DROP TABLE IF EXISTS project_material_cost;
 DROP TABLE IF EXISTS step;
 DROP TABLE IF EXISTS material;
 DROP TABLE IF EXISTS project_category;
@@ -12,6 +13,7 @@ CREATE TABLE project (
 	actual_hours DECIMAL(7,2),
 	difficulty INT, 
 	notes TEXT,
+	version INT NOT NULL DEFAULT 0,
 	PRIMARY KEY (project_id)
 );
 
@@ -26,7 +28,8 @@ CREATE TABLE project_category (
 	category_id INT NOT NULL,
 	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE,
 	FOREIGN KEY (category_id) REFERENCES category (category_id) ON DELETE CASCADE,
-	UNIQUE KEY (project_id, category_id)
+	PRIMARY KEY (project_id, category_id),
+	KEY project_category_category (category_id, project_id)
 	
 );
 
@@ -36,7 +39,9 @@ CREATE TABLE material (
 	material_name VARCHAR(128) NOT NULL,
 	num_required INT,
 	cost DECIMAL(7,2),
+	version INT NOT NULL DEFAULT 0,
 	PRIMARY KEY(material_id),
+	KEY material_project (project_id),
 	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE 
 	
 );
@@ -46,6 +51,17 @@ CREATE TABLE step (
 	project_id INT NOT NULL,
 	step_text TEXT NOT NULL,
 	step_order INT NOT NULL,
+	version INT NOT NULL DEFAULT 0,
 	PRIMARY KEY (step_id),
+	KEY step_project_order (project_id, step_order),
+	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
+);
+
+CREATE TABLE project_material_cost (
+	project_id INT NOT NULL,
+	material_count INT NOT NULL,
+	material_cost DECIMAL(20,2) NOT NULL,
+	PRIMARY KEY (project_id),
+	KEY project_material_cost_cost (material_cost),
 	FOREIGN KEY (project_id) REFERENCES project (project_id) ON DELETE CASCADE
 );
\ No newline at end of file
@@ -0,0 +1,304 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.exception.DbException;
+import projects.metrics.SlowQuery;
+import projects.metrics.SlowQueryLog;
+
+/**
+ * ConnectionPool on {@link FakeDriver} connections, so the borrowing rules are tested without a
+ * database.
+ */
+class ConnectionPoolTest {
+
+	private static final String HOST = "pool";
+
+	private ConnectionPool pool;
+
+
+	@BeforeEach
+	void resetDriver() {
+		FakeDriver.reset();
+	}
+
+	@AfterEach
+	void closePool() {
+		if(pool != null) {
+			pool.close();
+		}
+	}
+
+
+	@Test
+	void returnedConnectionIsReused() throws Exception {
+		pool = newPool(0, 2, 1_000);
+
+		pool.getConnection().close();
+		pool.getConnection().close();
+
+		assertEquals(1, FakeDriver.getOpenedCount(HOST));
+		assertEquals(2, pool.getStats().getAcquireCount());
+		assertEquals(1, pool.getStats().getIdleConnections());
+	}
+
+	@Test
+	void borrowTimesOutWhenEveryConnectionIsInUse() throws Exception {
+		pool = newPool(0, 1, 100);
+
+		try(Connection held = pool.getConnection()) {
+			assertFalse(held.isClosed());
+			long start = System.nanoTime();
+
+			assertThrows(DbException.class, () -> pool.getConnection());
+
+			assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+			assertEquals(1, pool.getStats().getAcquireTimeoutCount());
+			assertNull(pool.tryGetConnection(10));
+		}
+	}
+
+	@Test
+	void waitingBorrowerGetsTheReturnedConnection() throws Exception {
+		pool = newPool(0, 1, 5_000);
+		Connection held = pool.getConnection();
+
+		CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(pool::getConnection);
+
+		awaitWaitingThreads(1);
+		held.close();
+
+		try(Connection conn = waiting.get(5, TimeUnit.SECONDS)) {
+			assertFalse(conn.isClosed());
+		}
+
+		assertEquals(1, FakeDriver.getOpenedCount(HOST));
+	}
+
+	@Test
+	void minimumIsOpenedInTheBackground() {
+		pool = newPool(2, 4, 1_000);
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+		while(pool.getStats().getTotalConnections() < 2) {
+			assertTrue(System.nanoTime() < deadline, "the minimum connections were never opened");
+			Thread.onSpinWait();
+		}
+
+		assertEquals(2, FakeDriver.getOpenedCount(HOST));
+	}
+
+	@Test
+	void growingLetsMoreConnectionsBeBorrowed() throws Exception {
+		pool = newPool(0, 1, 100);
+
+		try(Connection first = pool.getConnection()) {
+			pool.applyTunables(tunables(0, 2, 100));
+
+			try(Connection second = pool.getConnection()) {
+				assertNotSame(first, second);
+				assertEquals(2, pool.getStats().getActiveConnections());
+			}
+		}
+	}
+
+	@Test
+	void shrinkingClosesConnectionsAsTheyComeBack() throws Exception {
+		pool = newPool(0, 2, 100);
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+
+		pool.applyTunables(tunables(0, 1, 100));
+		first.close();
+		second.close();
+
+		assertEquals(1, pool.getStats().getTotalConnections());
+
+		try(Connection conn = pool.getConnection()) {
+			assertFalse(conn.isClosed());
+			assertThrows(DbException.class, () -> pool.getConnection());
+		}
+	}
+
+	@Test
+	void invalidSizesAreRefused() {
+		pool = newPool(0, 2, 100);
+
+		assertThrows(DbException.class, () -> pool.applyTunables(tunables(3, 2, 100)));
+		assertThrows(DbException.class, () -> newPool(0, 0, 100));
+	}
+
+	@Test
+	void openTransactionIsRolledBackOnReturn() throws Exception {
+		pool = newPool(0, 1, 1_000);
+
+		try(Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+		}
+
+		try(Connection conn = pool.getConnection()) {
+			assertTrue(conn.getAutoCommit());
+		}
+	}
+
+	@Test
+	void brokenIdleConnectionIsReplaced() throws Exception {
+		pool = newPool(0, 1, 1_000);
+		pool.getConnection().close();
+
+		FakeDriver.setBroken(HOST, true);
+
+		try(Connection conn = pool.getConnection()) {
+			assertFalse(conn.isClosed());
+			assertEquals(1, pool.getStats().getValidationFailureCount());
+			assertEquals(2, FakeDriver.getOpenedCount(HOST));
+		}
+	}
+
+	@Test
+	void failedConnectReturnsThePermit() {
+		pool = newPool(0, 1, 100);
+		FakeDriver.setDown(HOST, true);
+
+		assertThrows(DbException.class, () -> pool.getConnection());
+
+		FakeDriver.setDown(HOST, false);
+
+		assertEquals(0, pool.getStats().getTotalConnections());
+		pool.getConnection();
+	}
+
+	@Test
+	void everyPrepareStatementOverloadIsCached() throws Exception {
+		pool = newPool(0, 1, 1_000);
+		String sql = "SELECT * FROM project WHERE project_id = ?";
+
+		for(int round = 0; round < 2; round++) {
+			try(Connection conn = pool.getConnection()) {
+				conn.prepareStatement(sql).close();
+				conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS).close();
+				conn.prepareStatement(sql, new int[] {1}).close();
+				conn.prepareStatement(sql, new String[] {"project_id"}).close();
+				conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY).close();
+				conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT).close();
+			}
+		}
+
+		assertEquals(6, pool.getStats().getStatementPrepareCount());
+		assertEquals(6, pool.getStats().getStatementCacheHitCount());
+	}
+
+	@Test
+	void cachedStatementIsHandedBackOnClose() throws Exception {
+		pool = newPool(0, 1, 1_000);
+
+		try(Connection conn = pool.getConnection()) {
+			PreparedStatement first = conn.prepareStatement("UPDATE project SET notes = ?");
+			first.setString(1, "notes");
+			assertEquals(1, first.executeUpdate());
+			first.close();
+
+			assertTrue(first.isClosed());
+			assertThrows(SQLException.class, () -> first.setString(1, "again"));
+
+			try(PreparedStatement second = conn.prepareStatement("UPDATE project SET notes = ?")) {
+				assertFalse(second.isClosed());
+				assertEquals(conn, second.getConnection());
+			}
+		}
+
+		assertEquals(1, pool.getStats().getStatementCacheHitCount());
+	}
+
+	@Test
+	void slowQueryIsExplainedOnAnotherConnection() throws Exception {
+		pool = newPool(0, 2, 1_000);
+		SlowQueryLog.clear();
+		SlowQueryLog.setThresholdMillis(0);
+		SlowQueryLog.setCaptureExplain(true);
+
+		try(Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+
+			try(PreparedStatement stmt = conn.prepareStatement("UPDATE project SET notes = ?")) {
+				stmt.setString(1, "notes");
+				stmt.executeUpdate();
+			}
+
+			SlowQuery entry = awaitSlowQuery();
+
+			assertNotNull(entry.getPlan());
+			assertFalse(entry.getPlan().get(0).startsWith("EXPLAIN skipped"));
+			assertEquals(2, FakeDriver.getOpenedCount(HOST));
+			assertFalse(conn.getAutoCommit());
+		}
+		finally {
+			SlowQueryLog.setThresholdMillis(-1);
+			SlowQueryLog.setCaptureExplain(false);
+			SlowQueryLog.clear();
+		}
+	}
+
+	@Test
+	void closedPoolRefusesToLend() {
+		pool = newPool(0, 1, 100);
+		pool.close();
+
+		assertThrows(DbException.class, () -> pool.getConnection());
+	}
+
+
+	private SlowQuery awaitSlowQuery() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+		while(SlowQueryLog.recent().isEmpty() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertFalse(SlowQueryLog.recent().isEmpty());
+		return SlowQueryLog.recent().get(0);
+	}
+
+	private void awaitWaitingThreads(int count) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+		while(pool.getStats().getWaitingThreads() < count) {
+			assertTrue(System.nanoTime() < deadline, "no borrower started waiting");
+			Thread.onSpinWait();
+		}
+	}
+
+	private static ConnectionPool newPool(int minSize, int maxSize, long connectionTimeoutMillis) {
+		return new ConnectionPool(FakeDriver.url(HOST), null, tunables(minSize, maxSize, connectionTimeoutMillis));
+	}
+
+	private static PoolConfig tunables(int minSize, int maxSize, long connectionTimeoutMillis) {
+		PoolConfig config = new PoolConfig();
+
+		config.setMinSize(minSize);
+		config.setMaxSize(maxSize);
+		config.setConnectionTimeoutMillis(connectionTimeoutMillis);
+
+		return config;
+	}
+
+}
@@ -0,0 +1,238 @@
+package projects.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver for jdbc:fake://host/schema URLs, so the pool and the replica router can be tested
+ * without a database. Its connections accept every call and do nothing. SHOW REPLICA STATUS
+ * reports the lag set with {@link #setLagSeconds}, zero by default. A host set down refuses new
+ * connections, and the connections of a broken host fail isValid.
+ */
+final class FakeDriver implements Driver {
+
+	private static final String PREFIX = "jdbc:fake://";
+
+	private static final Map<String, Long> LAG_SECONDS = new ConcurrentHashMap<>();
+	private static final Set<String> DOWN = ConcurrentHashMap.newKeySet();
+	private static final Set<String> BROKEN = ConcurrentHashMap.newKeySet();
+	private static final Map<String, AtomicInteger> OPENED = new ConcurrentHashMap<>();
+
+	static {
+		try {
+			DriverManager.registerDriver(new FakeDriver());
+		}
+		catch(SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+
+	private FakeDriver() {
+	}
+
+
+	static String url(String host) {
+		return PREFIX + host + "/projects";
+	}
+
+	static void setLagSeconds(String host, long lagSeconds) {
+		LAG_SECONDS.put(host, lagSeconds);
+	}
+
+	static void setDown(String host, boolean down) {
+		if(down) {
+			DOWN.add(host);
+		}
+		else {
+			DOWN.remove(host);
+		}
+	}
+
+	static void setBroken(String host, boolean broken) {
+		if(broken) {
+			BROKEN.add(host);
+		}
+		else {
+			BROKEN.remove(host);
+		}
+	}
+
+	static int getOpenedCount(String host) {
+		AtomicInteger opened = OPENED.get(host);
+		return Objects.isNull(opened) ? 0 : opened.get();
+	}
+
+	static void reset() {
+		LAG_SECONDS.clear();
+		DOWN.clear();
+		BROKEN.clear();
+		OPENED.clear();
+	}
+
+	// The host of a connection from this driver, also through a pool's proxy
+	static String hostOf(Connection conn) {
+		String name = conn.toString();
+		return name.substring(name.indexOf("fake:") + "fake:".length());
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		if(!acceptsURL(url)) {
+			return null;
+		}
+
+		String host = url.substring(PREFIX.length(), url.indexOf('/', PREFIX.length()));
+
+		if(DOWN.contains(host)) {
+			throw new SQLException("Communications link failure: " + host + " is down");
+		}
+
+		OPENED.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+
+		return newConnection(host);
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return Objects.nonNull(url) && url.startsWith(PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	private static Connection newConnection(String host) {
+		boolean[] autoCommit = {true};
+		boolean[] closed = {false};
+
+		return proxy(Connection.class, (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "toString":
+				return "fake:" + host;
+			case "isValid":
+				return !closed[0] && !BROKEN.contains(host);
+			case "isClosed":
+				return closed[0];
+			case "close":
+				closed[0] = true;
+				return null;
+			case "getAutoCommit":
+				return autoCommit[0];
+			case "setAutoCommit":
+				autoCommit[0] = (Boolean)args[0];
+				return null;
+			case "createStatement":
+				return newStatement(Statement.class, host);
+			case "prepareStatement":
+				return newStatement(PreparedStatement.class, host);
+			default:
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	private static <T extends Statement> T newStatement(Class<T> type, String host) {
+		return proxy(type, (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "executeQuery":
+				return newStatusResultSet(LAG_SECONDS.getOrDefault(host, 0L));
+			case "executeUpdate":
+				return 1;
+			case "getUpdateCount":
+				// no more results
+				return -1;
+			default:
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	// One row whose every column reads as the lag
+	private static ResultSet newStatusResultSet(long lagSeconds) {
+		boolean[] before = {true};
+
+		return proxy(ResultSet.class, (proxy, method, args) -> {
+			switch(method.getName()) {
+			case "next":
+				boolean hasRow = before[0];
+				before[0] = false;
+				return hasRow;
+			case "getLong":
+				return lagSeconds;
+			default:
+				return defaultValue(proxy, method, args);
+			}
+		});
+	}
+
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		switch(method.getName()) {
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		default:
+			break;
+		}
+
+		Class<?> type = method.getReturnType();
+
+		if(type == boolean.class) {
+			return false;
+		}
+
+		if(type == int.class) {
+			return 0;
+		}
+
+		if(type == long.class) {
+			return 0L;
+		}
+
+		return null;
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+}
@@ -0,0 +1,215 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.DbException;
+
+/**
+ * ProjectDao against MySQL. See {@link TestDatabase} for how to run these tests.
+ */
+class ProjectDaoTest {
+
+	private final List<Integer> projectIds = new ArrayList<>();
+	private ProjectDao dao;
+
+
+	@BeforeEach
+	void createDao() {
+		TestDatabase.assumeAvailable();
+		dao = new ProjectDao();
+	}
+
+	@AfterEach
+	void deleteProjects() {
+		if(Objects.nonNull(dao)) {
+			projectIds.forEach(dao::deleteProject);
+		}
+	}
+
+
+	@Test
+	void failedSaveLeavesTheProjectToBeInsertedAgain() {
+		Project project = newProject("Bookshelf");
+		Category missing = new Category();
+		missing.setCategoryId(Integer.MAX_VALUE);
+		project.getCategories().add(missing);
+
+		// the project row is inserted before the category link fails
+		assertThrows(DbException.class, () -> dao.saveProjectAggregate(project));
+
+		assertNull(project.getProjectId());
+		assertNull(project.getVersion());
+		assertNull(project.getMaterials().get(0).getMaterialId());
+		assertNull(project.getSteps().get(0).getStepId());
+		assertNull(project.getSteps().get(0).getStepOrder());
+
+		project.getCategories().clear();
+		Project saved = dao.saveProjectAggregate(project);
+		projectIds.add(saved.getProjectId());
+
+		Project read = dao.fetchProjectById(saved.getProjectId()).orElseThrow();
+
+		assertEquals(1, read.getMaterials().size());
+		assertEquals(1, read.getSteps().size());
+	}
+
+
+	@Test
+	void newStepsSavedByDiffGoBetweenTheStoredOnes() {
+		Project saved = dao.saveProjectAggregate(newProject("Birdhouse"));
+		projectIds.add(saved.getProjectId());
+
+		Project read = dao.fetchProjectById(saved.getProjectId()).orElseThrow();
+		Step last = new Step();
+		last.setStepText("Paint the house");
+		read.getSteps().add(last);
+		Step first = new Step();
+		first.setStepText("Measure the boards");
+		read.getSteps().add(0, first);
+		Step second = new Step();
+		second.setStepText("Mark the cuts");
+		read.getSteps().add(1, second);
+
+		dao.saveProjectAggregate(read, ProjectDao.ChildSaveMode.DIFF);
+
+		List<Step> steps = dao.fetchProjectById(saved.getProjectId()).orElseThrow().getSteps();
+		List<String> texts = steps.stream().map(Step::getStepText).collect(Collectors.toList());
+		Set<Integer> orders = steps.stream().map(Step::getStepOrder).collect(Collectors.toSet());
+
+		assertEquals(List.of("Measure the boards", "Mark the cuts", "Cut the boards", "Paint the house"), texts);
+		assertEquals(4, orders.size());
+	}
+
+	@Test
+	void concurrentAppendsGetDistinctOrders() throws Exception {
+		int threads = 8;
+		int appendsPerThread = 10;
+
+		Project saved = dao.saveProjectAggregate(newProject("Workbench"));
+		projectIds.add(saved.getProjectId());
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<CompletableFuture<Void>> appends = new ArrayList<>();
+
+		try {
+			for(int thread = 0; thread < threads; thread++) {
+				String prefix = "Thread " + thread + " step ";
+
+				appends.add(CompletableFuture.runAsync(() -> {
+					awaitQuietly(start);
+
+					for(int append = 0; append < appendsPerThread; append++) {
+						dao.addStep(saved.getProjectId(), prefix + append);
+					}
+				}, executor));
+			}
+
+			start.countDown();
+			CompletableFuture.allOf(appends.toArray(CompletableFuture[]::new)).join();
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		List<Step> steps = dao.fetchProjectById(saved.getProjectId()).orElseThrow().getSteps();
+		Set<Integer> orders = steps.stream().map(Step::getStepOrder).collect(Collectors.toSet());
+		Set<String> texts = steps.stream().map(Step::getStepText).collect(Collectors.toSet());
+
+		assertEquals(1 + threads * appendsPerThread, steps.size());
+		assertEquals(steps.size(), orders.size());
+		assertEquals(steps.size(), texts.size());
+
+		// each thread's steps come out in the order it appended them
+		for(int thread = 0; thread < threads; thread++) {
+			String prefix = "Thread " + thread + " step ";
+			List<String> own = new ArrayList<>();
+
+			for(Step step : steps) {
+				if(step.getStepText().startsWith(prefix)) {
+					own.add(step.getStepText());
+				}
+			}
+
+			for(int append = 0; append < appendsPerThread; append++) {
+				assertEquals(prefix + append, own.get(append));
+			}
+		}
+	}
+
+	@Test
+	void movingIntoAFullGapRenumbersTheSteps() {
+		Project saved = dao.saveProjectAggregate(newProject("Planter"));
+		projectIds.add(saved.getProjectId());
+		Integer projectId = saved.getProjectId();
+
+		Step second = dao.addStep(projectId, "Sand the boards");
+		Integer firstId = saved.getSteps().get(0).getStepId();
+
+		// halving the gap in front of the first step eventually leaves no room
+		for(int move = 0; move < 40; move++) {
+			assertTrue(dao.moveStep(projectId, move % 2 == 0 ? second.getStepId() : firstId,
+					move % 2 == 0 ? firstId : second.getStepId()));
+		}
+
+		List<Step> steps = dao.fetchProjectById(projectId).orElseThrow().getSteps();
+		Set<Integer> orders = new HashSet<>();
+		steps.forEach(step -> orders.add(step.getStepOrder()));
+
+		assertEquals(2, steps.size());
+		assertEquals(2, orders.size());
+		assertEquals(firstId, steps.get(0).getStepId());
+	}
+
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Project newProject(String name) {
+		Project project = new Project();
+		project.setProjectName(name);
+		project.setEstimatedHours(new BigDecimal("4.00"));
+		project.setDifficulty(3);
+
+		Material material = new Material();
+		material.setMaterialName("Pine boards");
+		material.setNumRequired(4);
+		project.getMaterials().add(material);
+
+		Step step = new Step();
+		step.setStepText("Cut the boards");
+		project.getSteps().add(step);
+
+		return project;
+	}
+
+}
@@ -0,0 +1,126 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.ReplicaRouter.ReplicaStatus;
+
+class ReplicaRouterTest {
+
+	private ReplicaRouter router;
+
+
+	@BeforeEach
+	void createRouter() {
+		FakeDriver.reset();
+
+		ConnectionPool primary = new ConnectionPool(FakeDriver.url("primary"), null, poolConfig(10));
+		Map<String, ConnectionPool> replicas = new LinkedHashMap<>();
+		replicas.put("replica", new ConnectionPool(FakeDriver.url("replica"), null, poolConfig(1)));
+
+		ReplicaConfig config = new ReplicaConfig();
+		// one check at the start, then none while the test runs
+		config.setHealthCheckIntervalMillis(60_000);
+		config.setBorrowTimeoutMillis(50);
+
+		router = new ReplicaRouter(primary, replicas, config);
+		awaitUsable();
+	}
+
+	@AfterEach
+	void closeRouter() {
+		router.close();
+	}
+
+
+	@Test
+	void readsGoToTheReplica() throws Exception {
+		try(Connection conn = router.getReadConnection()) {
+			assertEquals("replica", FakeDriver.hostOf(conn));
+		}
+	}
+
+	@Test
+	void readsFallThroughToThePrimaryWhileTheReplicaIsSaturated() throws Exception {
+		try(Connection held = router.getReadConnection()) {
+			assertEquals("replica", FakeDriver.hostOf(held));
+
+			long start = System.nanoTime();
+
+			try(Connection conn = router.getReadConnection()) {
+				assertEquals("primary", FakeDriver.hostOf(conn));
+			}
+
+			// the replica pool would wait its full 30 second connection timeout
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		}
+
+		ReplicaStatus status = router.getReplicaStatus().get(0);
+
+		assertTrue(status.isUsable(), "a busy replica stays usable");
+		assertEquals(1, status.getBusyCount());
+		assertEquals(1, router.getFallbackReadCount());
+
+		try(Connection conn = router.getReadConnection()) {
+			assertEquals("replica", FakeDriver.hostOf(conn));
+		}
+	}
+
+	@Test
+	void saturatedReplicaDoesNotHoldUpTheOtherChecks() throws Exception {
+		router.close();
+
+		ConnectionPool busy = new ConnectionPool(FakeDriver.url("busy"), null, poolConfig(1));
+		Map<String, ConnectionPool> replicas = new LinkedHashMap<>();
+		replicas.put("busy", busy);
+		replicas.put("lagging", new ConnectionPool(FakeDriver.url("lagging"), null, poolConfig(1)));
+
+		ReplicaConfig config = new ReplicaConfig();
+		config.setHealthCheckIntervalMillis(50);
+		config.setBorrowTimeoutMillis(50);
+
+		router = new ReplicaRouter(new ConnectionPool(FakeDriver.url("primary"), null, poolConfig(10)), replicas, config);
+		awaitUsable();
+
+		try(Connection held = busy.getConnection()) {
+			assertEquals("busy", FakeDriver.hostOf(held));
+			FakeDriver.setLagSeconds("lagging", 3_600);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+			// checks behind the busy replica would wait its 30 second connection timeout
+			while(router.getReplicaStatus().get(1).isUsable()) {
+				assertTrue(System.nanoTime() < deadline, "the lagging replica was never checked");
+				Thread.sleep(10);
+			}
+		}
+	}
+
+
+	private void awaitUsable() {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+		while(!router.getReplicaStatus().stream().allMatch(ReplicaStatus::isUsable)) {
+			assertTrue(System.nanoTime() < deadline, "the replicas never became usable");
+			Thread.onSpinWait();
+		}
+	}
+
+	private static PoolConfig poolConfig(int maxSize) {
+		PoolConfig config = new PoolConfig();
+
+		config.setMinSize(0);
+		config.setMaxSize(maxSize);
+
+		return config;
+	}
+
+}
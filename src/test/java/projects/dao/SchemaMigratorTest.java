@@ -0,0 +1,25 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SchemaMigratorTest {
+
+	@Test
+	void eachChangeOnlySkipsItsOwnAlreadyAppliedError() {
+		assertEquals(1060, SchemaMigrator.alreadyAppliedError("ALTER TABLE project ADD COLUMN version INT NOT NULL DEFAULT 0"));
+		assertEquals(1061, SchemaMigrator.alreadyAppliedError("CREATE INDEX material_project ON material (project_id)"));
+		assertEquals(1061, SchemaMigrator.alreadyAppliedError("ALTER TABLE step\n\tADD UNIQUE KEY step_order (project_id, step_order)"));
+		assertEquals(1068, SchemaMigrator.alreadyAppliedError("ALTER TABLE project_category ADD PRIMARY KEY (project_id, category_id)"));
+		assertEquals(1091, SchemaMigrator.alreadyAppliedError("alter table project_category drop index project_id"));
+	}
+
+	@Test
+	void otherStatementsSkipNothing() {
+		assertEquals(0, SchemaMigrator.alreadyAppliedError("CREATE TABLE IF NOT EXISTS category (category_id INT)"));
+		assertEquals(0, SchemaMigrator.alreadyAppliedError("ALTER TABLE step MODIFY step_text TEXT NOT NULL"));
+		assertEquals(0, SchemaMigrator.alreadyAppliedError("UPDATE project SET version = 0"));
+	}
+
+}
@@ -0,0 +1,48 @@
+package projects.dao;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Support for tests that need the MySQL database described by {@link DbConfig}. They are skipped
+ * unless the build is run with -Dprojects.test.mysql=true, for example:
+ *
+ * <pre>
+ * mvn test -Dprojects.test.mysql=true -Dprojects.db.host=localhost -Dprojects.db.schema=projects_test
+ * </pre>
+ *
+ * The tests add their own rows and delete them afterwards, but use a schema of their own anyway.
+ */
+public final class TestDatabase {
+
+	public static final String ENABLED_PROPERTY = "projects.test.mysql";
+
+
+	private TestDatabase() {
+	}
+
+
+	/**
+	 * Skips the calling test unless the MySQL tests are enabled.
+	 */
+	public static void assumeAvailable() {
+		assumeTrue(Boolean.getBoolean(ENABLED_PROPERTY), "set -D" + ENABLED_PROPERTY + "=true to run tests against MySQL");
+	}
+
+	/**
+	 * Runs a statement on a connection of its own, as another client of the database would.
+	 */
+	public static int executeUpdate(String sql, Object... params) throws SQLException {
+		try(Connection conn = DbConnection.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+			for(int pos = 0; pos < params.length; pos++) {
+				stmt.setObject(pos + 1, params[pos]);
+			}
+
+			return stmt.executeUpdate();
+		}
+	}
+
+}
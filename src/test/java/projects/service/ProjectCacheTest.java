@@ -0,0 +1,123 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Category;
+import projects.entity.Material;
+import projects.entity.Project;
+import projects.entity.Step;
+
+class ProjectCacheTest {
+
+	private final ProjectCache cache = new ProjectCache(10, Duration.ofMinutes(5));
+
+
+	@Test
+	void getReturnsACopyWithTheVersion() {
+		cache.putIfCurrent(project(1, 7), cache.generation());
+
+		Project cached = cache.get(1);
+
+		assertEquals(7, cached.getVersion());
+		assertNotSame(cached, cache.get(1));
+	}
+
+
+	@Test
+	void changingAReturnedChildLeavesTheCacheAlone() {
+		Project project = project(1, 1);
+		Material material = new Material();
+		material.setMaterialName("Pine boards");
+		project.getMaterials().add(material);
+		Step step = new Step();
+		step.setStepText("Cut the boards");
+		project.getSteps().add(step);
+		Category category = new Category();
+		category.setCategoryName("Woodwork");
+		project.getCategories().add(category);
+
+		cache.putIfCurrent(project, cache.generation());
+
+		// the project put in stays the caller's own too
+		step.setStepOrder(1024);
+
+		Project returned = cache.get(1);
+		returned.getMaterials().get(0).setMaterialName("Oak boards");
+		returned.getSteps().get(0).setStepId(5);
+		returned.getCategories().get(0).setCategoryName("Garden");
+
+		Project cached = cache.get(1);
+
+		assertEquals("Pine boards", cached.getMaterials().get(0).getMaterialName());
+		assertNull(cached.getSteps().get(0).getStepId());
+		assertNull(cached.getSteps().get(0).getStepOrder());
+		assertEquals("Woodwork", cached.getCategories().get(0).getCategoryName());
+	}
+
+	@Test
+	void onlyTheInvalidatedProjectWaitsForTheReplicas() {
+		ProjectCache replicaCache = new ProjectCache(10, Duration.ofMinutes(5), Duration.ofMinutes(1));
+
+		replicaCache.invalidate(1);
+		long generation = replicaCache.generation();
+
+		replicaCache.putIfCurrent(project(1, 1), generation);
+		replicaCache.putIfCurrent(project(2, 1), generation);
+
+		assertNull(replicaCache.get(1));
+		assertNotNull(replicaCache.get(2));
+	}
+
+	@Test
+	void invalidatedProjectIsCachedAgainAfterTheReadStaleness() throws Exception {
+		ProjectCache replicaCache = new ProjectCache(10, Duration.ofMinutes(5), Duration.ofMillis(100));
+
+		replicaCache.invalidate(1);
+		replicaCache.putIfCurrent(project(1, 1), replicaCache.generation());
+		assertNull(replicaCache.get(1));
+
+		Thread.sleep(150);
+
+		replicaCache.putIfCurrent(project(1, 1), replicaCache.generation());
+		assertNotNull(replicaCache.get(1));
+	}
+
+	@Test
+	void invalidateAllWaitsForTheReplicasForEveryProject() {
+		ProjectCache replicaCache = new ProjectCache(10, Duration.ofMinutes(5), Duration.ofMinutes(1));
+
+		replicaCache.invalidateAll();
+		replicaCache.putIfCurrent(project(2, 1), replicaCache.generation());
+
+		assertNull(replicaCache.get(2));
+	}
+
+	@Test
+	void writeDuringTheReadKeepsTheProjectOut() {
+		long generation = cache.generation();
+
+		cache.invalidate(3);
+		cache.putIfCurrent(project(1, 1), generation);
+
+		assertNull(cache.get(1));
+	}
+
+
+	static Project project(int projectId, Integer version) {
+		Project project = new Project();
+
+		project.setProjectId(projectId);
+		project.setProjectName("Project " + projectId);
+		project.setVersion(version);
+
+		return project;
+	}
+
+}
@@ -0,0 +1,51 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import projects.entity.Project;
+
+class ProjectIndexTest {
+
+	private final ProjectIndex index = new ProjectIndex(16);
+
+
+	@Test
+	void projectsCarryTheirVersion() {
+		index.put(ProjectCacheTest.project(1, 3));
+		index.put(ProjectCacheTest.project(2, null));
+
+		assertEquals(3, index.fetchProject(1).orElseThrow().getVersion());
+		assertNull(index.fetchProject(2).orElseThrow().getVersion());
+	}
+
+	@Test
+	void removeKeepsTheVersionOfTheMovedRow() {
+		index.put(ProjectCacheTest.project(1, 1));
+		index.put(ProjectCacheTest.project(2, 2));
+		index.put(ProjectCacheTest.project(3, 3));
+
+		index.remove(1);
+
+		List<Project> projects = index.fetchAllProjects();
+
+		assertEquals(2, projects.size());
+		assertEquals(2, projects.get(0).getVersion());
+		assertEquals(3, projects.get(1).getVersion());
+	}
+
+	@Test
+	void growingKeepsTheVersions() {
+		for(int projectId = 1; projectId <= 100; projectId++) {
+			index.put(ProjectCacheTest.project(projectId, projectId * 10));
+		}
+
+		assertEquals(1000, index.fetchProject(100).orElseThrow().getVersion());
+		assertEquals(10, index.fetchProject(1).orElseThrow().getVersion());
+	}
+
+}
@@ -0,0 +1,124 @@
+package projects.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import projects.dao.TestDatabase;
+import projects.entity.Project;
+import projects.entity.Step;
+import projects.exception.ConcurrentUpdateException;
+
+/**
+ * A project served from the cache or the project index must still carry its version, otherwise
+ * updating it would overwrite changes made by other writers.
+ */
+class ProjectServiceVersionTest {
+
+	private ProjectService service;
+	private Integer projectId;
+
+
+	@BeforeEach
+	void addProject() {
+		TestDatabase.assumeAvailable();
+
+		service = new ProjectService();
+
+		Project project = new Project();
+		project.setProjectName("Version test");
+		project.setEstimatedHours(new BigDecimal("2.00"));
+		project.setDifficulty(2);
+
+		projectId = service.addProject(project).getProjectId();
+	}
+
+	@AfterEach
+	void deleteProject() {
+		if(Objects.nonNull(projectId)) {
+			service.deleteProject(projectId);
+		}
+	}
+
+
+	@Test
+	void cachedProjectConflictsWithAnotherWriter() throws Exception {
+		service.fetchProjectById(projectId);
+		Project cached = service.fetchProjectById(projectId);
+
+		assertEquals(1, service.getCacheStats().getHitCount());
+		assertNotNull(cached.getVersion());
+
+		writeFromAnotherClient();
+		cached.setNotes("changed from the cache");
+
+		assertThrows(ConcurrentUpdateException.class, () -> service.modifyProjectDetails(cached));
+	}
+
+	@Test
+	void indexedProjectConflictsWithAnotherWriter() throws Exception {
+		service.enableProjectIndex();
+
+		Project indexed = indexedProject();
+
+		assertNotNull(indexed.getVersion());
+
+		writeFromAnotherClient();
+		Project modified = copyOf(indexed);
+		modified.setNotes("changed from the index");
+
+		assertThrows(ConcurrentUpdateException.class, () -> service.modifyChangedDetails(indexed, modified));
+	}
+
+	@Test
+	void indexedProjectKeepsUpWithStepChanges() {
+		service.enableProjectIndex();
+
+		Step first = service.addStep(projectId, "Cut the boards");
+		Step second = service.addStep(projectId, "Sand the boards");
+		service.moveStep(projectId, second.getStepId(), first.getStepId());
+		service.deleteStep(projectId, first.getStepId());
+
+		Project indexed = indexedProject();
+
+		assertEquals(service.fetchProjectById(projectId).getVersion(), indexed.getVersion());
+
+		Project modified = copyOf(indexed);
+		modified.setNotes("changed after the step changes");
+		service.modifyChangedDetails(indexed, modified);
+	}
+
+
+	private Project indexedProject() {
+		return service.fetchAllProjects().stream()
+				.filter(project -> project.getProjectId().equals(projectId))
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private void writeFromAnotherClient() throws Exception {
+		assertEquals(1, TestDatabase.executeUpdate("UPDATE project SET actual_hours = 3, version = version + 1 WHERE project_id = ?", projectId));
+	}
+
+	private Project copyOf(Project project) {
+		Project copy = new Project();
+
+		copy.setProjectId(project.getProjectId());
+		copy.setProjectName(project.getProjectName());
+		copy.setEstimatedHours(project.getEstimatedHours());
+		copy.setActualHours(project.getActualHours());
+		copy.setDifficulty(project.getDifficulty());
+		copy.setNotes(project.getNotes());
+		copy.setVersion(project.getVersion());
+
+		return copy;
+	}
+
+}
@@ -0,0 +1,249 @@
+/**
+ *
+ */
+package provided.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs {@link DaoBase#executeInTransaction(TransactionOptions, DaoBase.TransactionWork)} on fake
+ * connections whose updates fail with the MySQL error codes a real server would send.
+ *
+ * @author Promineo
+ *
+ */
+class DaoBaseTest {
+  private static final int ER_LOCK_DEADLOCK = 1213;
+  private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+  private static final int ER_DUP_ENTRY = 1062;
+
+  private final FakeDatabase db = new FakeDatabase();
+  private final RecordingListener listener = new RecordingListener();
+  private final TestDao dao = new TestDao(db::connect, listener);
+
+  /* Stands in for an id that the work sets on an entity. */
+  private Integer projectId;
+  private int runs;
+
+  @Test
+  void deadlockIsRetriedFromTheRestoredState() {
+    db.failNextUpdates(2, ER_LOCK_DEADLOCK);
+
+    assertEquals(1, dao.insertProject(TransactionOptions.DEFAULT));
+
+    assertEquals(3, runs);
+    assertEquals(3, projectId);
+    assertEquals(2, db.rollbacks);
+    assertEquals(1, db.commits);
+    assertEquals(List.of("retrying 1213", "backedOff", "retrying 1213", "backedOff", "recovered"),
+        listener.events);
+  }
+
+  @Test
+  void lockWaitTimeoutIsRetried() {
+    db.failNextUpdates(1, ER_LOCK_WAIT_TIMEOUT);
+
+    dao.insertProject(TransactionOptions.DEFAULT);
+
+    assertEquals(2, runs);
+    assertEquals(1, db.commits);
+  }
+
+  @Test
+  void failureThatIsNotRetriedRestores() {
+    db.failNextUpdates(1, ER_DUP_ENTRY);
+
+    TestException e =
+        assertThrows(TestException.class, () -> dao.insertProject(TransactionOptions.DEFAULT));
+
+    assertEquals(ER_DUP_ENTRY, ((SQLException)e.getCause()).getErrorCode());
+    assertEquals(1, runs);
+    assertEquals(null, projectId, "the id set by the rolled back work must be put back");
+    assertEquals(1, db.rollbacks);
+    assertEquals(List.of(), listener.events);
+  }
+
+  @Test
+  void exhaustedRetriesRestore() {
+    db.failNextUpdates(10, ER_LOCK_DEADLOCK);
+
+    assertThrows(TestException.class,
+        () -> dao.insertProject(TransactionOptions.DEFAULT.withMaxAttempts(2)));
+
+    assertEquals(2, runs);
+    assertEquals(null, projectId);
+    assertEquals(0, db.commits);
+    assertEquals(List.of("retrying 1213", "backedOff", "retriesExhausted 1213"), listener.events);
+  }
+
+  @Test
+  void joinedCallIsRestoredWhenTheOuterTransactionFails() {
+    assertThrows(IllegalStateException.class,
+        () -> dao.inTransaction(TransactionOptions.DEFAULT, () -> {
+          dao.insertProject(TransactionOptions.DEFAULT);
+          assertEquals(1, projectId);
+          throw new IllegalStateException("a later step failed");
+        }));
+
+    assertEquals(null, projectId);
+    assertEquals(1, db.connections, "the joined call must use the outer connection");
+    assertEquals(0, db.commits);
+  }
+
+  @Test
+  void committedWorkKeepsItsChanges() {
+    dao.insertProject(TransactionOptions.DEFAULT);
+
+    assertEquals(1, projectId);
+    assertEquals(0, db.rollbacks);
+  }
+
+  @Test
+  void requiresNewCommitsOnItsOwn() {
+    assertThrows(IllegalStateException.class,
+        () -> dao.inTransaction(TransactionOptions.DEFAULT, () -> {
+          dao.insertProject(
+              TransactionOptions.DEFAULT.withPropagation(TransactionOptions.Propagation.REQUIRES_NEW));
+          throw new IllegalStateException("the outer transaction fails");
+        }));
+
+    assertEquals(1, projectId, "the inner transaction committed, so its id stays");
+    assertEquals(2, db.connections);
+    assertEquals(1, db.commits);
+    assertTrue(db.rollbacks >= 1);
+  }
+
+  @Test
+  void readWriteCallCannotJoinAReadOnlyTransaction() {
+    TestException e = assertThrows(TestException.class,
+        () -> dao.inTransaction(TransactionOptions.READ_ONLY,
+            () -> dao.insertProject(TransactionOptions.DEFAULT)));
+
+    assertEquals("A read-write call cannot join a read-only transaction", e.getMessage());
+    assertEquals(0, runs);
+  }
+
+  /**
+   * A DAO whose only method inserts a row and sets the generated id, as ProjectDao does.
+   */
+  private class TestDao extends DaoBase {
+    TestDao(ConnectionProvider connectionProvider, DaoListener listener) {
+      super(connectionProvider, listener, TestException::new);
+    }
+
+    int insertProject(TransactionOptions options) {
+      return executeInTransaction(options, conn -> {
+        runs++;
+
+        Integer before = projectId;
+        restoreOnRollback(() -> projectId = before);
+        projectId = runs;
+
+        try(Statement stmt = conn.createStatement()) {
+          return stmt.executeUpdate("INSERT INTO project (project_name) VALUES ('Table')");
+        }
+      });
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static class TestException extends RuntimeException {
+    TestException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  /**
+   * Records the retry events. Timings are not taken, as startTimer returns 0.
+   */
+  private static class RecordingListener implements DaoListener {
+    private final List<String> events = new ArrayList<>();
+
+    @Override
+    public void retrying(int errorCode) {
+      events.add("retrying " + errorCode);
+    }
+
+    @Override
+    public void recovered() {
+      events.add("recovered");
+    }
+
+    @Override
+    public void retriesExhausted(int errorCode) {
+      events.add("retriesExhausted " + errorCode);
+    }
+
+    @Override
+    public void backedOff(long nanos) {
+      events.add("backedOff");
+    }
+  }
+
+  /**
+   * Hands out connections that count commits and rollbacks. The next updates can be made to fail
+   * with a given MySQL error code.
+   */
+  private static class FakeDatabase {
+    private int connections;
+    private int commits;
+    private int rollbacks;
+    private int failures;
+    private int errorCode;
+
+    void failNextUpdates(int failures, int errorCode) {
+      this.failures = failures;
+      this.errorCode = errorCode;
+    }
+
+    Connection connect() {
+      connections++;
+
+      return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+            switch(method.getName()) {
+              case "commit":
+                commits++;
+                return null;
+
+              case "rollback":
+                rollbacks++;
+                return null;
+
+              case "createStatement":
+                return newStatement();
+
+              default:
+                return method.getReturnType() == boolean.class ? false : null;
+            }
+          });
+    }
+
+    private Statement newStatement() {
+      return (Statement)Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {Statement.class}, (proxy, method, args) -> {
+            if(method.getName().equals("executeUpdate")) {
+              if(failures > 0) {
+                failures--;
+                throw new SQLException("Update failed", "40001", errorCode);
+              }
+
+              return 1;
+            }
+
+            return method.getReturnType() == boolean.class ? false : null;
+          });
+    }
+  }
+}